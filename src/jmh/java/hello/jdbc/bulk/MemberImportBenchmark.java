@@ -0,0 +1,85 @@
+package hello.jdbc.bulk;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.MemoryDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CSV import - 쓰기 쓰레드 수에 따른 처리 시간 비교 (기준: 한 건씩 save 하는 루프)
+ *
+ * 실행: ./gradlew jmh -PjmhInclude=MemberImportBenchmark
+ * - 한 번의 호출(operation)에 rows 건을 처리하므로 결과는 "rows건 처리에 걸린 시간" 이다.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+public class MemberImportBenchmark {
+
+    @Param( { "100000" } )
+    int rows;
+
+    @Param( { "1", "4" } )
+    int writerThreads;
+
+    HikariDataSource dataSource;
+    MemberRepositoryV1 repository;
+    Path file;
+    List<Member> members;
+
+    @Setup( Level.Trial )
+    public void setUp() throws SQLException, IOException {
+        MemoryDataSource.create( "import" );
+
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl( MemoryDataSource.url( "import" ) );
+        dataSource.setUsername( MemoryDataSource.USERNAME );
+        dataSource.setPassword( MemoryDataSource.PASSWORD );
+        dataSource.setMaximumPoolSize( 8 );
+        repository = new MemberRepositoryV1( dataSource );
+
+        members = new ArrayList<>( rows );
+        for ( int i = 0; i < rows; i++ ) {
+            members.add( new Member( "m" + i, i ) );
+        }
+        repository.saveAll( members );
+
+        file = Files.createTempFile( "members", ".csv" );
+        new MemberExporter( repository ).exportFile( file, BulkFormat.CSV );
+    }
+
+    @Setup( Level.Invocation )
+    public void truncate() throws SQLException {
+        MemoryDataSource.truncate( dataSource );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+        dataSource.close();
+        Files.deleteIfExists( file );
+    }
+
+    @Benchmark
+    public BulkProgress importCsv() throws IOException, SQLException {
+        MemberImporter importer = new MemberImporter( repository );
+        importer.setWriterThreads( writerThreads );
+        return importer.importFile( file, BulkFormat.CSV );
+    }
+
+    @Benchmark
+    public void saveLoop() throws SQLException {
+        for ( Member member : members ) {
+            repository.save( member );
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 커넥션 빌리기 + 반납 비용 비교 - DriverManager(매번 생성) vs HikariCP vs SimpleConnectionPool
+ *
+ * 실행: ./gradlew jmh -PjmhInclude=ConnectionPoolBenchmark
+ * - 풀 크기(8)보다 쓰레드(16)가 많아서 반납되는 커넥션을 기다리는 경우도 포함된다.
+ * - SimpleConnectionPool의 대기 통계(대기 횟수, 평균/최대 대기 시간)는 측정이 끝나면 로그로 남긴다.
+ */
+@Slf4j
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@State( Scope.Benchmark )
+public class ConnectionPoolBenchmark {
+
+    static final int POOL_SIZE = 8;
+
+    @Param( { "driverManager", "hikari", "simple" } )
+    String pool;
+
+    DataSource dataSource;
+
+    @Setup( Level.Trial )
+    public void setUp() throws SQLException {
+        DataSource driverDataSource = MemoryDataSource.create( "pool" );
+
+        if ( pool.equals( "hikari" ) ) {
+            HikariDataSource hikari = new HikariDataSource();
+            hikari.setDataSource( driverDataSource );
+            hikari.setMaximumPoolSize( POOL_SIZE );
+            hikari.setPoolName( "HikariBench" );
+            dataSource = hikari;
+        }
+        else if ( pool.equals( "simple" ) ) {
+            SimpleConnectionPool simple = new SimpleConnectionPool( driverDataSource, "SimpleBench" );
+            simple.setMaximumPoolSize( POOL_SIZE );
+            dataSource = simple;
+        }
+        else {
+            dataSource = driverDataSource;
+        }
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+        if ( dataSource instanceof SimpleConnectionPool ) {
+            SimpleConnectionPool simple = (SimpleConnectionPool) dataSource;
+            log.info( "SimpleConnectionPool borrow={}, wait={}, avgWait={}ns, maxWait={}ns, timeout={}",
+                    simple.getBorrowCount(), simple.getWaitCount(),
+                    simple.getWaitCount() == 0 ? 0 : simple.getTotalWaitNanos() / simple.getWaitCount(),
+                    simple.getMaxWaitNanos(), simple.getTimeoutCount() );
+            simple.close();
+        }
+        if ( dataSource instanceof HikariDataSource ) {
+            ( (HikariDataSource) dataSource ).close();
+        }
+    }
+
+    @Benchmark
+    @Threads( 1 )
+    public boolean borrowSingleThread() throws SQLException {
+        try ( Connection con = dataSource.getConnection() ) {
+            return con.getAutoCommit();
+        }
+    }
+
+    @Benchmark
+    @Threads( 16 )
+    public boolean borrowContended() throws SQLException {
+        try ( Connection con = dataSource.getConnection() ) {
+            return con.getAutoCommit();
+        }
+    }
+
+}
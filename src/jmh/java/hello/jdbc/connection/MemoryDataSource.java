@@ -0,0 +1,52 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.schema.SchemaManager;
+import hello.jdbc.schema.SchemaProperties;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 벤치마크용 H2 메모리 DB
+ * - H2 서버(ConnectionConst.URL) 없이도 실행할 수 있도록 JVM 안에서 DB를 띄운다.
+ * - DB_CLOSE_DELAY=-1 : 마지막 커넥션이 닫혀도 JVM이 살아있는 동안 DB를 유지한다.
+ */
+public abstract class MemoryDataSource {
+
+    public static final String USERNAME = "sa";
+    public static final String PASSWORD = "";
+
+    public static String url( String name ) {
+        return "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+    }
+
+    /**
+     * member 테이블을 (다시) 만들고 DriverManagerDataSource를 돌려준다
+     */
+    public static DataSource create( String name ) throws SQLException {
+        DataSource dataSource = new DriverManagerDataSource( url( name ), USERNAME, PASSWORD );
+        createMemberTable( dataSource );
+        return dataSource;
+    }
+
+    /**
+     * member 테이블을 지우고 SchemaManager 기본 단계로 다시 만든다 (애플리케이션과 같은 스키마)
+     */
+    public static void createMemberTable( DataSource dataSource ) throws SQLException {
+        try ( Connection con = dataSource.getConnection(); Statement stmt = con.createStatement() ) {
+            stmt.execute( "drop table if exists member" );
+            stmt.execute( "drop table if exists " + SchemaManager.VERSION_TABLE );
+        }
+        new SchemaManager( dataSource, new SchemaProperties() ).migrate();
+    }
+
+    public static void truncate( DataSource dataSource ) throws SQLException {
+        try ( Connection con = dataSource.getConnection(); Statement stmt = con.createStatement() ) {
+            stmt.execute( "truncate table member" );
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * findById 처리량 - PreparedStatement 캐시 사용 vs 미사용
+ *
+ * 실행: ./gradlew jmh -PjmhInclude=StatementCacheBenchmark
+ * - 둘 다 HikariCP 풀을 사용하고, cache=on 이면 풀 안쪽에 StatementCachingDataSource를 둔다.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+public class StatementCacheBenchmark {
+
+    static final int MEMBER_COUNT = 1000;
+
+    @Param( { "off", "on" } )
+    String cache;
+
+    HikariDataSource dataSource;
+    MemberRepositoryV1 repository;
+
+    @Setup( Level.Trial )
+    public void setUp() throws SQLException {
+        String name = "statementCache_" + cache;
+        MemoryDataSource.create( name );
+
+        DriverManagerDataSource driverDataSource = new DriverManagerDataSource( MemoryDataSource.url( name ), MemoryDataSource.USERNAME, MemoryDataSource.PASSWORD );
+
+        dataSource = new HikariDataSource();
+        dataSource.setMaximumPoolSize( 8 );
+        dataSource.setPoolName( "StatementCache-" + cache );
+        dataSource.setDataSource( "on".equals( cache ) ? new StatementCachingDataSource( driverDataSource ) : driverDataSource );
+
+        repository = new MemberRepositoryV1( dataSource );
+
+        List<Member> members = new ArrayList<>( MEMBER_COUNT );
+        for ( int i = 0; i < MEMBER_COUNT; i++ ) {
+            members.add( new Member( "m" + i, i ) );
+        }
+        repository.saveAll( members );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    @Threads( 4 )
+    public Member findById() throws SQLException {
+        return repository.findById( "m" + ThreadLocalRandom.current().nextInt( MEMBER_COUNT ) );
+    }
+
+}
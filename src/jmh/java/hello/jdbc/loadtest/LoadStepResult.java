@@ -0,0 +1,56 @@
+package hello.jdbc.loadtest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 쓰레드 수 한 단계의 측정 결과 (워커 결과를 merge 한 것)
+ */
+public class LoadStepResult {
+
+    final int threads;
+    final LatencyHistogram latency = new LatencyHistogram();
+    final LatencyHistogram poolWait = new LatencyHistogram();
+    long reads;
+    long writes;
+    // 풀이 connectionTimeout 동안 커넥션을 주지 못한 수 (SQLTransientConnectionException)
+    long timeouts;
+    long errors;
+    long elapsedNanos;
+
+    LoadStepResult( int threads ) {
+        this.threads = threads;
+    }
+
+    /**
+     * 성공한 요청 수/초
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : ( reads + writes ) * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * DB에서 동시에 일하고 있던 평균 커넥션 수 (Little's law: 처리량 x (지연시간 - 풀 대기시간))
+     * - 이 값이 poolSize에 붙어 있으면 풀이 병목이고, 한참 아래인데 처리량이 안 늘면 DB가 병목이다.
+     */
+    public double getBusyConnections() {
+        double holdNanos = Math.max( latency.getMean() - poolWait.getMean(), 0 );
+        return getThroughput() * holdNanos / 1e9;
+    }
+
+    static String header() {
+        return String.format( "%8s %12s %10s %10s %10s %10s %12s %12s %9s %7s %6s",
+                "threads", "ops/s", "p50(ms)", "p99(ms)", "p99.9(ms)", "max(ms)", "wait p99(ms)", "wait max(ms)", "busyCons", "timeout", "error" );
+    }
+
+    String row() {
+        return String.format( "%8d %12.0f %10.3f %10.3f %10.3f %10.3f %12.3f %12.3f %9.1f %7d %6d",
+                threads, getThroughput(), millis( latency.valueAtPercentile( 50 ) ), millis( latency.valueAtPercentile( 99 ) ),
+                millis( latency.valueAtPercentile( 99.9 ) ), millis( latency.getMax() ),
+                millis( poolWait.valueAtPercentile( 99 ) ), millis( poolWait.getMax() ), getBusyConnections(), timeouts, errors );
+    }
+
+    static double millis( long nanos ) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos( 1 );
+    }
+
+}
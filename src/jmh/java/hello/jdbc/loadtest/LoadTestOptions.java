@@ -0,0 +1,108 @@
+package hello.jdbc.loadtest;
+
+import hello.jdbc.connection.ConnectionConst;
+
+import java.util.Arrays;
+
+/**
+ * 부하 테스트 옵션 - 실행 인자 --이름=값 으로 바꾼다
+ *
+ *      ./gradlew loadTest --args='--poolSize=10 --threads=1,4,16,64 --readRatio=0.8 --zipfTheta=0.99'
+ */
+public class LoadTestOptions {
+
+    // 접속할 DB. server=true 이면 무시하고 같은 JVM에 띄운 H2 TCP 서버의 메모리 DB를 사용한다
+    String url = ConnectionConst.URL;
+    boolean server = false;
+    int serverPort = 9194;
+
+    // HikariCP maximumPoolSize, connectionTimeout (풀이 비었을 때 기다리는 최대 시간, Hikari 기본 30초)
+    int poolSize = 10;
+    long connectionTimeoutMs = 30_000;
+
+    // 회원 수, 시작 전에 member 테이블을 다시 만들고 회원을 채울지
+    int members = 100_000;
+    boolean load = true;
+
+    // 조회(findById) 비율. 나머지는 쓰기(addMoney)
+    double readRatio = 0.9;
+
+    // 키 치우침 (0 = 균등, 0.99 = YCSB 기본)
+    double zipfTheta = 0.99;
+
+    // 단계별 쓰레드 수
+    int[] threads = { 1, 2, 4, 8, 16, 32, 64 };
+
+    // 단계마다 워밍업 / 측정 시간
+    int warmupSeconds = 5;
+    int durationSeconds = 15;
+
+    // 쓰레드당 목표 요청 수/초. 0이면 쉬지 않고 보낸다 (closed loop)
+    // 0보다 크면 정해진 시각에 보내고 지연시간을 "보냈어야 할 시각" 부터 잰다 (coordinated omission 보정)
+    double ratePerThread = 0;
+
+    // 쓰레드를 늘린 만큼 처리량이 이 비율보다 적게 늘면 포화로 본다 (0.1 = 쓰레드 2배에 처리량 10% 미만 증가)
+    double kneeEfficiency = 0.1;
+
+    public static LoadTestOptions parse( String[] args ) {
+        LoadTestOptions options = new LoadTestOptions();
+        for ( String arg : args ) {
+            if ( !arg.startsWith( "--" ) || arg.indexOf( '=' ) < 0 ) {
+                throw new IllegalArgumentException( "argument must be --name=value, argument = " + arg );
+            }
+            String name = arg.substring( 2, arg.indexOf( '=' ) );
+            String value = arg.substring( arg.indexOf( '=' ) + 1 );
+            options.set( name, value );
+        }
+        options.validate();
+        return options;
+    }
+
+    private void set( String name, String value ) {
+        switch ( name ) {
+            case "url": url = value; break;
+            case "server": server = Boolean.parseBoolean( value ); break;
+            case "serverPort": serverPort = Integer.parseInt( value ); break;
+            case "poolSize": poolSize = Integer.parseInt( value ); break;
+            case "connectionTimeoutMs": connectionTimeoutMs = Long.parseLong( value ); break;
+            case "members": members = Integer.parseInt( value ); break;
+            case "load": load = Boolean.parseBoolean( value ); break;
+            case "readRatio": readRatio = Double.parseDouble( value ); break;
+            case "zipfTheta": zipfTheta = Double.parseDouble( value ); break;
+            case "threads": threads = Arrays.stream( value.split( "," ) ).mapToInt( count -> Integer.parseInt( count.trim() ) ).toArray(); break;
+            case "warmupSeconds": warmupSeconds = Integer.parseInt( value ); break;
+            case "durationSeconds": durationSeconds = Integer.parseInt( value ); break;
+            case "ratePerThread": ratePerThread = Double.parseDouble( value ); break;
+            case "kneeEfficiency": kneeEfficiency = Double.parseDouble( value ); break;
+            default: throw new IllegalArgumentException( "unknown option, name = " + name );
+        }
+    }
+
+    private void validate() {
+        if ( poolSize <= 0 ) {
+            throw new IllegalArgumentException( "poolSize must be positive, poolSize = " + poolSize );
+        }
+        if ( members <= 0 ) {
+            throw new IllegalArgumentException( "members must be positive, members = " + members );
+        }
+        if ( readRatio < 0 || readRatio > 1 ) {
+            throw new IllegalArgumentException( "readRatio must be in [0, 1], readRatio = " + readRatio );
+        }
+        if ( durationSeconds <= 0 ) {
+            throw new IllegalArgumentException( "durationSeconds must be positive, durationSeconds = " + durationSeconds );
+        }
+        for ( int count : threads ) {
+            if ( count <= 0 ) {
+                throw new IllegalArgumentException( "threads must be positive, threads = " + Arrays.toString( threads ) );
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "url=" + ( server ? "H2 TCP server (in JVM)" : url ) + ", poolSize=" + poolSize + ", connectionTimeoutMs=" + connectionTimeoutMs
+                + ", members=" + members + ", readRatio=" + readRatio + ", zipfTheta=" + zipfTheta + ", threads=" + Arrays.toString( threads )
+                + ", warmup=" + warmupSeconds + "s, duration=" + durationSeconds + "s, ratePerThread=" + ratePerThread;
+    }
+
+}
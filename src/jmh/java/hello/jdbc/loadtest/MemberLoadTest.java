@@ -0,0 +1,257 @@
+package hello.jdbc.loadtest;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.MemoryDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import org.h2.tools.Server;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * MemberRepositoryV1 부하 테스트 - 쓰레드 수를 늘려가며 풀 크기(maximumPoolSize)의 포화 지점(knee)을 찾는다
+ *
+ * 실행: ./gradlew loadTest --args='--poolSize=10 --connectionTimeoutMs=1000'
+ *      (H2 서버 없이 실행: --server=true)
+ *
+ * 1. 부하
+ *  - 쓰레드마다 readRatio 비율로 findById, 나머지는 addMoney(+1)
+ *  - 회원 키는 Zipfian 분포 (인기 회원에 요청이 몰린다). 인기 회원이 member_id 순서로 붙어 있지 않도록 순위 -> 회원을 섞어둔다.
+ *
+ * 2. 측정 (쓰레드마다 LatencyHistogram에 기록하고 단계가 끝나면 합친다)
+ *  - 지연시간: 리포지토리 호출 전체 (풀 대기 + SQL)
+ *  - 풀 대기시간: DataSource.getConnection() 에 걸린 시간
+ *  - timeout: 풀이 connectionTimeout 안에 커넥션을 주지 못한 수 (SQLTransientConnectionException)
+ *
+ * 3. 포화 지점
+ *  - 쓰레드를 늘렸는데 처리량이 늘지 않는 첫 단계 바로 앞을 knee로 본다. 그 뒤로는 지연시간(대부분 풀 대기)만 늘어난다.
+ *  - busyCons(DB에서 일하는 평균 커넥션 수)가 poolSize에 붙어 있으면 풀이 병목, 한참 아래면 DB/CPU가 병목이다.
+ */
+public class MemberLoadTest {
+
+    private final LoadTestOptions options;
+
+    // 워커 쓰레드가 자기 풀 대기시간 히스토그램을 등록한다
+    private final ThreadLocal<LatencyHistogram> poolWaits = new ThreadLocal<>();
+
+    private MemberRepositoryV1 repository;
+    private ZipfianGenerator zipfian;
+    private String[] memberIdByRank;
+
+    public MemberLoadTest( LoadTestOptions options ) {
+        this.options = options;
+    }
+
+    public static void main( String[] args ) throws Exception {
+        new MemberLoadTest( LoadTestOptions.parse( args ) ).run();
+    }
+
+    public List<LoadStepResult> run() throws SQLException, InterruptedException, ExecutionException {
+        System.out.printf( "%s%n", options );
+
+        Server server = null;
+        String url = options.url;
+        if ( options.server ) {
+            server = Server.createTcpServer( "-tcpPort", String.valueOf( options.serverPort ), "-ifNotExists" ).start();
+            url = "jdbc:h2:tcp://localhost:" + options.serverPort + "/mem:loadtest;DB_CLOSE_DELAY=-1";
+        }
+
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl( url );
+        dataSource.setUsername( MemoryDataSource.USERNAME );
+        dataSource.setPassword( MemoryDataSource.PASSWORD );
+        dataSource.setMaximumPoolSize( options.poolSize );
+        dataSource.setConnectionTimeout( options.connectionTimeoutMs );
+        dataSource.setPoolName( "LoadTestPool" );
+
+        try {
+            repository = new MemberRepositoryV1( new PoolWaitDataSource( dataSource ) );
+            prepareMembers( dataSource );
+
+            List<LoadStepResult> results = new ArrayList<>();
+            System.out.printf( "%n%s%n", LoadStepResult.header() );
+            for ( int threads : options.threads ) {
+                LoadStepResult result = runStep( threads );
+                results.add( result );
+                System.out.printf( "%s%n", result.row() );
+            }
+            printKnee( results );
+            return results;
+        }
+        finally {
+            dataSource.close();
+            if ( server != null ) {
+                server.stop();
+            }
+        }
+    }
+
+    private void prepareMembers( DataSource dataSource ) throws SQLException {
+        if ( options.load ) {
+            MemoryDataSource.createMemberTable( dataSource );
+            List<Member> members = new ArrayList<>( options.members );
+            for ( int i = 0; i < options.members; i++ ) {
+                members.add( new Member( "m" + i, 0 ) );
+            }
+            repository.saveAll( members );
+        }
+
+        List<String> memberIds = new ArrayList<>( options.members );
+        for ( int i = 0; i < options.members; i++ ) {
+            memberIds.add( "m" + i );
+        }
+        Collections.shuffle( memberIds );
+        memberIdByRank = memberIds.toArray( new String[0] );
+        zipfian = new ZipfianGenerator( options.members, options.zipfTheta );
+    }
+
+    private LoadStepResult runStep( int threads ) throws InterruptedException, ExecutionException {
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos( options.warmupSeconds );
+        long end = measureStart + TimeUnit.SECONDS.toNanos( options.durationSeconds );
+
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try {
+            List<Future<LoadStepResult>> futures = new ArrayList<>( threads );
+            for ( int i = 0; i < threads; i++ ) {
+                futures.add( executor.submit( () -> work( measureStart, end ) ) );
+            }
+
+            LoadStepResult total = new LoadStepResult( threads );
+            for ( Future<LoadStepResult> future : futures ) {
+                LoadStepResult result = future.get();
+                total.latency.merge( result.latency );
+                total.poolWait.merge( result.poolWait );
+                total.reads += result.reads;
+                total.writes += result.writes;
+                total.timeouts += result.timeouts;
+                total.errors += result.errors;
+            }
+            total.elapsedNanos = end - measureStart;
+            return total;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private LoadStepResult work( long measureStart, long end ) {
+        LoadStepResult result = new LoadStepResult( 1 );
+        poolWaits.set( result.poolWait );
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long intervalNanos = options.ratePerThread > 0 ? (long) ( 1e9 / options.ratePerThread ) : 0;
+
+        boolean measuring = false;
+        long intended = System.nanoTime();
+        try {
+            while ( true ) {
+                long now = System.nanoTime();
+                if ( intervalNanos > 0 ) {
+                    intended += intervalNanos;
+                    if ( intended > now ) {
+                        LockSupport.parkNanos( intended - now );
+                    }
+                }
+                else {
+                    intended = now;
+                }
+                if ( intended >= end ) {
+                    return result;
+                }
+                // 워밍업 동안 기록한 것은 버린다
+                if ( !measuring && intended >= measureStart ) {
+                    result.latency.reset();
+                    result.poolWait.reset();
+                    result.reads = result.writes = result.timeouts = result.errors = 0;
+                    measuring = true;
+                }
+
+                String memberId = memberIdByRank[ zipfian.next() ];
+                boolean read = random.nextDouble() < options.readRatio;
+                try {
+                    if ( read ) {
+                        repository.findById( memberId );
+                        result.reads++;
+                    }
+                    else {
+                        repository.addMoney( memberId, 1 );
+                        result.writes++;
+                    }
+                }
+                catch (SQLTransientConnectionException e) {
+                    result.timeouts++;
+                }
+                catch (SQLException | RuntimeException e) {
+                    result.errors++;
+                }
+                // open loop 이면 보냈어야 할 시각부터 잰다 (앞 요청이 늦어서 밀린 시간도 지연시간에 포함)
+                result.latency.record( System.nanoTime() - intended );
+            }
+        }
+        finally {
+            poolWaits.remove();
+        }
+    }
+
+    private void printKnee( List<LoadStepResult> results ) {
+        int knee = results.size() - 1;
+        for ( int i = 1; i < results.size(); i++ ) {
+            LoadStepResult previous = results.get( i - 1 );
+            LoadStepResult current = results.get( i );
+            double threadGain = (double) current.threads / previous.threads - 1;
+            double throughputGain = current.getThroughput() / Math.max( previous.getThroughput(), 1e-9 ) - 1;
+            if ( threadGain > 0 && throughputGain / threadGain < options.kneeEfficiency ) {
+                knee = i - 1;
+                break;
+            }
+        }
+
+        LoadStepResult result = results.get( knee );
+        System.out.printf( "%nsaturation knee (poolSize=%d): threads=%d, ops/s=%.0f, p99=%.3fms, busyCons=%.1f%s%n",
+                options.poolSize, result.threads, result.getThroughput(), LoadStepResult.millis( result.latency.valueAtPercentile( 99 ) ),
+                result.getBusyConnections(), knee == results.size() - 1 ? " (not saturated, add more threads)" : "" );
+        long timeouts = results.stream().mapToLong( step -> step.timeouts ).sum();
+        if ( timeouts > 0 ) {
+            System.out.printf( "pool timeouts=%d (connectionTimeoutMs=%d)%n", timeouts, options.connectionTimeoutMs );
+        }
+    }
+
+    /**
+     * getConnection() 시간 = 풀에서 커넥션을 기다린 시간 (타임아웃으로 실패한 대기도 포함)
+     */
+    private final class PoolWaitDataSource extends DelegatingDataSource {
+
+        private PoolWaitDataSource( DataSource targetDataSource ) {
+            super( targetDataSource );
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return super.getConnection();
+            }
+            finally {
+                LatencyHistogram histogram = poolWaits.get();
+                if ( histogram != null ) {
+                    histogram.record( System.nanoTime() - start );
+                }
+            }
+        }
+    }
+
+}
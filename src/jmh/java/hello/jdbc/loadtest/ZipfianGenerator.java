@@ -0,0 +1,65 @@
+package hello.jdbc.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 0 ~ n-1 사이의 Zipfian 분포 난수 (작은 값일수록 자주 나온다)
+ *
+ * - Gray et al. "Quickly Generating Billion-Record Synthetic Databases" 방식 (YCSB와 같다)
+ *   zeta(n)을 생성할 때 한 번만 계산하고, next()는 pow 두 번으로 끝나므로 호출마다 O(1) 이다.
+ * - theta가 클수록 치우침이 심하다. (YCSB 기본 0.99, 회원 10만명: 상위 1% 키가 요청의 절반 이상을 받는다)
+ * - theta = 0 이면 균등 분포
+ * - 불변이므로 여러 쓰레드가 같이 사용해도 된다. (난수는 ThreadLocalRandom)
+ */
+public final class ZipfianGenerator {
+
+    private final int n;
+    private final double theta;
+    private final double zetaN;
+    private final double alpha;
+    private final double eta;
+    private final double halfPowTheta;
+
+    public ZipfianGenerator( int n, double theta ) {
+        if ( n <= 0 ) {
+            throw new IllegalArgumentException( "n must be positive, n = " + n );
+        }
+        if ( theta < 0 || theta >= 1 ) {
+            throw new IllegalArgumentException( "theta must be in [0, 1), theta = " + theta );
+        }
+        this.n = n;
+        this.theta = theta;
+        this.zetaN = zeta( n, theta );
+        this.alpha = 1.0 / ( 1.0 - theta );
+        this.eta = ( 1 - Math.pow( 2.0 / n, 1 - theta ) ) / ( 1 - zeta( 2, theta ) / zetaN );
+        this.halfPowTheta = 1 + Math.pow( 0.5, theta );
+    }
+
+    public int next() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        if ( theta == 0 ) {
+            return (int) ( u * n );
+        }
+        double uz = u * zetaN;
+        if ( uz < 1 ) {
+            return 0;
+        }
+        if ( uz < halfPowTheta ) {
+            return Math.min( 1, n - 1 );
+        }
+        return (int) Math.min( n - 1, (long) ( n * Math.pow( eta * u - eta + 1, alpha ) ) );
+    }
+
+    public int getN() {
+        return n;
+    }
+
+    private static double zeta( long n, double theta ) {
+        double sum = 0;
+        for ( long i = 1; i <= n; i++ ) {
+            sum += 1 / Math.pow( i, theta );
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,79 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.MemoryDataSource;
+import hello.jdbc.domain.Member;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 높은 동시성에서 블로킹 findById vs 비동기 findById 처리량 비교
+ *
+ * 실행: ./gradlew jmh -PjmhInclude=AsyncMemberRepositoryBenchmark
+ * - blocking : 256개 쓰레드가 각자 findById 를 호출 (풀 크기 16이므로 나머지는 풀에서 대기)
+ * - async    : 4개 쓰레드가 한 번에 64건씩 비동기로 요청하고 모두 끝날 때까지 기다린다
+ * 두 경우 모두 동시에 진행 중인 요청은 256건이고, 결과는 "회원 1건 조회" 기준으로 맞췄다. (@OperationsPerInvocation)
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+public class AsyncMemberRepositoryBenchmark {
+
+    static final int MEMBER_COUNT = 1000;
+    static final int POOL_SIZE = 16;
+    static final int FAN_OUT = 64;
+
+    HikariDataSource dataSource;
+    MemberRepositoryV1 repository;
+    AsyncMemberRepository asyncRepository;
+
+    @Setup( Level.Trial )
+    public void setUp() throws SQLException {
+        MemoryDataSource.create( "async" );
+
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl( MemoryDataSource.url( "async" ) );
+        dataSource.setUsername( MemoryDataSource.USERNAME );
+        dataSource.setPassword( MemoryDataSource.PASSWORD );
+        dataSource.setMaximumPoolSize( POOL_SIZE );
+
+        repository = new MemberRepositoryV1( dataSource );
+        asyncRepository = new AsyncMemberRepository( repository, POOL_SIZE );
+
+        List<Member> members = new ArrayList<>( MEMBER_COUNT );
+        for ( int i = 0; i < MEMBER_COUNT; i++ ) {
+            members.add( new Member( "m" + i, i ) );
+        }
+        repository.saveAll( members );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws InterruptedException {
+        asyncRepository.close();
+        dataSource.close();
+    }
+
+    @Benchmark
+    @Threads( 256 )
+    public Member blocking() throws SQLException {
+        return repository.findById( "m" + ThreadLocalRandom.current().nextInt( MEMBER_COUNT ) );
+    }
+
+    @Benchmark
+    @Threads( 4 )
+    @OperationsPerInvocation( FAN_OUT )
+    public Object async() {
+        CompletableFuture<?>[] futures = new CompletableFuture[ FAN_OUT ];
+        for ( int i = 0; i < FAN_OUT; i++ ) {
+            futures[i] = asyncRepository.findById( "m" + ThreadLocalRandom.current().nextInt( MEMBER_COUNT ) );
+        }
+        return CompletableFuture.allOf( futures ).join();
+    }
+
+}
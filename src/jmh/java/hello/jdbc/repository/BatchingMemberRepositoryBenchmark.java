@@ -0,0 +1,77 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.MemoryDataSource;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 256 쓰레드가 동시에 findById - 각자 호출 vs BatchingMemberRepository로 모아서 호출
+ *
+ * 실행: ./gradlew jmh -PjmhInclude=BatchingMemberRepositoryBenchmark
+ * - 풀 크기 16이므로 blocking은 240 쓰레드가 풀에서 기다린다.
+ * - batched는 window(마이크로초) 동안 모은 호출을 IN 절 한 번으로 처리한다.
+ */
+@Slf4j
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+public class BatchingMemberRepositoryBenchmark {
+
+    static final int MEMBER_COUNT = 10_000;
+    static final int POOL_SIZE = 16;
+
+    @Param( { "50", "200", "1000" } )
+    long windowMicros;
+
+    HikariDataSource dataSource;
+    MemberRepositoryV1 repository;
+    BatchingMemberRepository batchingRepository;
+
+    @Setup( Level.Trial )
+    public void setUp() throws SQLException {
+        MemoryDataSource.create( "batching" );
+
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl( MemoryDataSource.url( "batching" ) );
+        dataSource.setUsername( MemoryDataSource.USERNAME );
+        dataSource.setPassword( MemoryDataSource.PASSWORD );
+        dataSource.setMaximumPoolSize( POOL_SIZE );
+
+        repository = new MemberRepositoryV1( dataSource );
+        batchingRepository = new BatchingMemberRepository( repository );
+        batchingRepository.setBatchWindowMicros( windowMicros );
+
+        List<Member> members = new ArrayList<>( MEMBER_COUNT );
+        for ( int i = 0; i < MEMBER_COUNT; i++ ) {
+            members.add( new Member( "m" + i, i ) );
+        }
+        repository.saveAll( members );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+        log.info( "requests={}, batches={}", batchingRepository.getRequestCount(), batchingRepository.getBatchCount() );
+        dataSource.close();
+    }
+
+    @Benchmark
+    @Threads( 256 )
+    public Member blocking() throws SQLException {
+        return repository.findById( "m" + ThreadLocalRandom.current().nextInt( MEMBER_COUNT ) );
+    }
+
+    @Benchmark
+    @Threads( 256 )
+    public Member batched() throws SQLException {
+        return batchingRepository.findById( "m" + ThreadLocalRandom.current().nextInt( MEMBER_COUNT ) );
+    }
+
+}
@@ -0,0 +1,179 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.ConnectionConst;
+import hello.jdbc.connection.MemoryDataSource;
+import hello.jdbc.connection.SimpleConnectionPool;
+import hello.jdbc.domain.Member;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 리포지토리 버전 / DataSource 전략 별 save, findById, update, delete 성능 비교
+ *
+ * 실행: ./gradlew jmh -PjmhInclude=MemberRepositoryBenchmark
+ *
+ * strategy
+ *  - V0_CONNECTION_UTIL : MemberRepositoryV0 (DBConnectionUtil -> SimpleConnectionPool)
+ *  - V1_DRIVER_MANAGER : MemberRepositoryV1 + DriverManagerDataSource (호출마다 새 커넥션)
+ *  - V1_HIKARI_n       : MemberRepositoryV1 + HikariDataSource (maximumPoolSize = n)
+ *  - V1_SIMPLE_POOL_n  : MemberRepositoryV1 + SimpleConnectionPool (maximumPoolSize = n)
+ *
+ * 측정값
+ *  - Throughput : 초당 처리 수
+ *  - SampleTime : 지연시간 분포 (p0.50, p0.99, p0.999 ...)
+ *  - gc 프로파일러(build.gradle) : gc.alloc.rate.norm = 연산당 할당 바이트
+ *
+ * 쓰레드 수는 @Threads가 파라미터로 받을 수 없으므로 1, 8, 64 쓰레드 하위 클래스로 나눴다.
+ * H2 서버 없이 실행되도록 fork된 JVM에서 ConnectionConst.URL을 메모리 DB로 바꾼다.
+ */
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+@Fork( value = 1, jvmArgsAppend = "-Dhello.jdbc.url=jdbc:h2:mem:repository;DB_CLOSE_DELAY=-1" )
+public abstract class MemberRepositoryBenchmark {
+
+    static final int MEMBER_COUNT = 10_000;
+
+    @Param( { "V0_CONNECTION_UTIL", "V1_DRIVER_MANAGER", "V1_HIKARI_8", "V1_HIKARI_32", "V1_SIMPLE_POOL_8", "V1_SIMPLE_POOL_32" } )
+    String strategy;
+
+    Repository repository;
+    HikariDataSource hikariDataSource;
+    SimpleConnectionPool simpleConnectionPool;
+
+    @Setup( Level.Trial )
+    public void setUp() throws SQLException {
+        DataSource dataSource = new DriverManagerDataSource( ConnectionConst.URL, ConnectionConst.USERNAME, ConnectionConst.PASSWORD );
+        MemoryDataSource.createMemberTable( dataSource );
+
+        List<Member> members = new ArrayList<>( MEMBER_COUNT );
+        for ( int i = 0; i < MEMBER_COUNT; i++ ) {
+            members.add( new Member( "m" + i, i ) );
+        }
+        new MemberRepositoryV1( dataSource ).saveAll( members );
+
+        if ( strategy.equals( "V0_CONNECTION_UTIL" ) ) {
+            MemberRepositoryV0 v0 = new MemberRepositoryV0();
+            repository = new Repository() {
+                public Member save( Member member ) throws SQLException { return v0.save( member ); }
+                public Member findById( String memberId ) throws SQLException { return v0.findById( memberId ); }
+                public void update( String memberId, int money ) throws SQLException { v0.update( memberId, money ); }
+                public void delete( String memberId ) throws SQLException { v0.delete( memberId ); }
+            };
+            return;
+        }
+
+        if ( strategy.startsWith( "V1_HIKARI_" ) ) {
+            hikariDataSource = new HikariDataSource();
+            hikariDataSource.setJdbcUrl( ConnectionConst.URL );
+            hikariDataSource.setUsername( ConnectionConst.USERNAME );
+            hikariDataSource.setPassword( ConnectionConst.PASSWORD );
+            hikariDataSource.setMaximumPoolSize( Integer.parseInt( strategy.substring( "V1_HIKARI_".length() ) ) );
+            hikariDataSource.setPoolName( strategy );
+            dataSource = hikariDataSource;
+        }
+
+        if ( strategy.startsWith( "V1_SIMPLE_POOL_" ) ) {
+            simpleConnectionPool = new SimpleConnectionPool( dataSource, strategy );
+            simpleConnectionPool.setMaximumPoolSize( Integer.parseInt( strategy.substring( "V1_SIMPLE_POOL_".length() ) ) );
+            dataSource = simpleConnectionPool;
+        }
+
+        MemberRepositoryV1 v1 = new MemberRepositoryV1( dataSource );
+        repository = new Repository() {
+            public Member save( Member member ) throws SQLException { return v1.save( member ); }
+            public Member findById( String memberId ) throws SQLException { return v1.findById( memberId ); }
+            public void update( String memberId, int money ) throws SQLException { v1.update( memberId, money ); }
+            public void delete( String memberId ) throws SQLException { v1.delete( memberId ); }
+        };
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+        if ( hikariDataSource != null ) {
+            hikariDataSource.close();
+        }
+        if ( simpleConnectionPool != null ) {
+            simpleConnectionPool.close();
+        }
+    }
+
+    @State( Scope.Thread )
+    public static class ThreadState {
+        // save 할 때 쓰레드끼리 member_id가 겹치지 않도록 쓰레드마다 번호를 붙인다
+        static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+        String prefix;
+        long sequence;
+
+        @Setup( Level.Trial )
+        public void setUp() {
+            // member_id 는 varchar(10) : "s" + 쓰레드번호(36진수) + "_" + 일련번호(36진수)
+            prefix = "s" + Integer.toString( THREAD_INDEX.getAndIncrement(), 36 ) + "_";
+        }
+
+        String nextMemberId() {
+            return prefix + Long.toString( sequence++, 36 );
+        }
+    }
+
+    static String randomMemberId() {
+        return "m" + ThreadLocalRandom.current().nextInt( MEMBER_COUNT );
+    }
+
+    @Benchmark
+    public Member save( ThreadState state ) throws SQLException {
+        return repository.save( new Member( state.nextMemberId(), 10000 ) );
+    }
+
+    @Benchmark
+    public Member findById() throws SQLException {
+        return repository.findById( randomMemberId() );
+    }
+
+    @Benchmark
+    public void update() throws SQLException {
+        repository.update( randomMemberId(), ThreadLocalRandom.current().nextInt( 100_000 ) );
+    }
+
+    /**
+     * 미리 넣어둔 회원 중에서 무작위로 삭제한다.
+     * 측정이 진행되면서 이미 지워진 member_id도 나오는데, 이 경우도 PK 인덱스 조회 + 네트워크 왕복 비용은 같다.
+     */
+    @Benchmark
+    public void delete() throws SQLException {
+        repository.delete( randomMemberId() );
+    }
+
+    /**
+     * V0와 V1은 공통 인터페이스가 없으므로 벤치마크 안에서만 사용하는 어댑터
+     */
+    interface Repository {
+        Member save( Member member ) throws SQLException;
+        Member findById( String memberId ) throws SQLException;
+        void update( String memberId, int money ) throws SQLException;
+        void delete( String memberId ) throws SQLException;
+    }
+
+    @Threads( 1 )
+    public static class Threads1 extends MemberRepositoryBenchmark {
+    }
+
+    @Threads( 8 )
+    public static class Threads8 extends MemberRepositoryBenchmark {
+    }
+
+    @Threads( 64 )
+    public static class Threads64 extends MemberRepositoryBenchmark {
+    }
+
+}
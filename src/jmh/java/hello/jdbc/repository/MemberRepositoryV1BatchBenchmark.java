@@ -0,0 +1,91 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.connection.MemoryDataSource;
+import hello.jdbc.domain.Member;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 한 건씩 save/update/delete 하는 루프 vs JDBC 배치(saveAll/updateAll/deleteAll) 비교
+ *
+ * 실행: ./gradlew jmh -PjmhInclude=MemberRepositoryV1BatchBenchmark
+ * - 한 번의 호출(operation)에 rows 건을 처리하므로 결과는 "rows건 처리에 걸린 시간" 이다.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+public class MemberRepositoryV1BatchBenchmark {
+
+    @Param( { "1000", "10000" } )
+    int rows;
+
+    @Param( { "100", "1000" } )
+    int batchSize;
+
+    DataSource dataSource;
+    MemberRepositoryV1 repository;
+    List<Member> members;
+    List<Member> updatedMembers;
+    List<String> memberIds;
+
+    @Setup( Level.Trial )
+    public void setUp() throws SQLException {
+        dataSource = MemoryDataSource.create( "batch" );
+        repository = new MemberRepositoryV1( dataSource );
+        repository.setBatchSize( batchSize );
+
+        members = new ArrayList<>( rows );
+        updatedMembers = new ArrayList<>( rows );
+        memberIds = new ArrayList<>( rows );
+        for ( int i = 0; i < rows; i++ ) {
+            String memberId = "m" + i;
+            members.add( new Member( memberId, i ) );
+            updatedMembers.add( new Member( memberId, i + 1 ) );
+            memberIds.add( memberId );
+        }
+    }
+
+    // 매 호출마다 같은 상태(테이블 비어있음)에서 시작하도록 정리
+    @Setup( Level.Invocation )
+    public void truncate() throws SQLException {
+        MemoryDataSource.truncate( dataSource );
+    }
+
+    @Benchmark
+    public void saveLoop() throws SQLException {
+        for ( Member member : members ) {
+            repository.save( member );
+        }
+    }
+
+    @Benchmark
+    public int[] saveAll() throws SQLException {
+        return repository.saveAll( members );
+    }
+
+    @Benchmark
+    public void saveUpdateDeleteLoop() throws SQLException {
+        for ( Member member : members ) {
+            repository.save( member );
+        }
+        for ( Member member : updatedMembers ) {
+            repository.update( member.getMemberId(), member.getMoney() );
+        }
+        for ( String memberId : memberIds ) {
+            repository.delete( memberId );
+        }
+    }
+
+    @Benchmark
+    public int[] saveUpdateDeleteBatch() throws SQLException {
+        repository.saveAll( members );
+        repository.updateAll( updatedMembers );
+        return repository.deleteAll( memberIds );
+    }
+
+}
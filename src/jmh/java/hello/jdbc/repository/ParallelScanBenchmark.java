@@ -0,0 +1,89 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.MemoryDataSource;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * money 합계 - findAll 한 커넥션으로 전체 읽기 vs ParallelMemberScanner 구간 병렬 읽기
+ *
+ * 실행: ./gradlew jmh -PjmhInclude=ParallelScanBenchmark
+ *
+ * QueryProfileBenchmark와 같이 같은 JVM 안에 띄운 H2 TCP 서버를 통해 읽는다. (서버가 커넥션마다 쓰레드를 따로 쓰므로 병렬로 처리된다)
+ * - serial   : findAll 스트림 (parallelism 값과 상관없다)
+ * - parallel : parallelism 개 커넥션으로 구간을 나눠서 읽는다. 구간 경계는 setUp에서 한 번 정한다.
+ * parallelism을 늘려도 시간이 더 줄지 않는 지점이 DB(또는 CPU 코어 수)가 포화되는 지점이다.
+ */
+@Slf4j
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+public class ParallelScanBenchmark {
+
+    static final int TCP_PORT = 9194;
+    static final int POOL_SIZE = 16;
+
+    @Param( { "500000" } )
+    int rows;
+
+    @Param( { "1", "2", "4", "8", "16" } )
+    int parallelism;
+
+    Server server;
+    HikariDataSource dataSource;
+    MemberRepositoryV1 repository;
+    ParallelMemberScanner scanner;
+
+    @Setup( Level.Trial )
+    public void setUp() throws SQLException {
+        // -ifNotExists : 클라이언트가 원격으로 메모리 DB를 만들 수 있도록 허용
+        server = Server.createTcpServer( "-tcpPort", String.valueOf( TCP_PORT ), "-ifNotExists" ).start();
+
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl( "jdbc:h2:tcp://localhost:" + TCP_PORT + "/mem:scan;DB_CLOSE_DELAY=-1" );
+        dataSource.setUsername( MemoryDataSource.USERNAME );
+        dataSource.setPassword( MemoryDataSource.PASSWORD );
+        dataSource.setMaximumPoolSize( POOL_SIZE );
+        MemoryDataSource.createMemberTable( dataSource );
+
+        repository = new MemberRepositoryV1( dataSource );
+        List<Member> members = new ArrayList<>( rows );
+        for ( int i = 0; i < rows; i++ ) {
+            members.add( new Member( String.format( "m%07d", i ), i ) );
+        }
+        repository.saveAll( members );
+
+        // 풀 크기(POOL_SIZE)는 HikariDataSource에서 읽는다
+        scanner = new ParallelMemberScanner( repository, parallelism );
+        log.info( "parallelism={}, ranges={}", scanner.getParallelism(), scanner.sampleRanges().size() + 1 );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws InterruptedException {
+        scanner.close();
+        dataSource.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public long serial() throws SQLException {
+        try ( Stream<Member> members = repository.findAll() ) {
+            return members.mapToLong( Member::getMoney ).sum();
+        }
+    }
+
+    @Benchmark
+    public long parallel() throws SQLException {
+        return scanner.scan( ParallelMemberScanner.sumMoney() );
+    }
+
+}
@@ -0,0 +1,116 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.MemoryDataSource;
+import hello.jdbc.domain.Member;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 쿼리 실행 프로파일(QueryProfile) 별 큰 member 테이블 조회 비교
+ *
+ * 실행: ./gradlew jmh -PjmhInclude=QueryProfileBenchmark
+ *
+ * ConnectionConst.URL과 같은 H2 TCP 서버 구성 - fetchSize는 네트워크 왕복이 있어야 차이가 나므로 메모리 DB에 직접 붙지 않고
+ * 같은 JVM 안에 띄운 H2 TCP 서버(localhost)를 통해 조회한다.
+ *
+ * profile
+ *  - DRIVER_DEFAULT     : JDBC 기본값 (H2 TCP fetchSize = 100)
+ *  - FETCH_10 / FETCH_500 / FETCH_5000 : fetchSize만 변경
+ *  - SCROLL_INSENSITIVE : fetchSize 500 + TYPE_SCROLL_INSENSITIVE 커서
+ *  - READ_ONLY          : fetchSize 500 + Connection.setReadOnly(true) 힌트 (설정/되돌리기 비용)
+ *  - MAX_ROWS_1000      : fetchSize 500 + maxRows 1000 (findAll이 1000건에서 끝난다)
+ *
+ * 측정값
+ *  - scanAll : findAll 스트림으로 rows건 전체 읽기
+ *  - page    : findAllAfter 키셋 페이지 1000건 읽기
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+public class QueryProfileBenchmark {
+
+    static final int TCP_PORT = 9193;
+    static final int PAGE_SIZE = 1000;
+
+    @Param( { "200000" } )
+    int rows;
+
+    @Param( { "DRIVER_DEFAULT", "FETCH_10", "FETCH_500", "FETCH_5000", "SCROLL_INSENSITIVE", "READ_ONLY", "MAX_ROWS_1000" } )
+    String profile;
+
+    Server server;
+    HikariDataSource dataSource;
+    MemberRepositoryV1 repository;
+
+    @Setup( Level.Trial )
+    public void setUp() throws SQLException {
+        // -ifNotExists : 클라이언트가 원격으로 메모리 DB를 만들 수 있도록 허용
+        server = Server.createTcpServer( "-tcpPort", String.valueOf( TCP_PORT ), "-ifNotExists" ).start();
+
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl( "jdbc:h2:tcp://localhost:" + TCP_PORT + "/mem:profile;DB_CLOSE_DELAY=-1" );
+        dataSource.setUsername( MemoryDataSource.USERNAME );
+        dataSource.setPassword( MemoryDataSource.PASSWORD );
+        dataSource.setMaximumPoolSize( 4 );
+        MemoryDataSource.createMemberTable( dataSource );
+
+        repository = new MemberRepositoryV1( dataSource );
+        List<Member> members = new ArrayList<>( rows );
+        for ( int i = 0; i < rows; i++ ) {
+            members.add( new Member( String.format( "m%07d", i ), i ) );
+        }
+        repository.saveAll( members );
+
+        QueryProfile queryProfile = queryProfile( profile );
+        repository.setQueryProfile( RepositoryOperation.FIND_ALL, queryProfile );
+        repository.setQueryProfile( RepositoryOperation.FIND_ALL_AFTER, queryProfile );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+        dataSource.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public long scanAll() throws SQLException {
+        try ( Stream<Member> members = repository.findAll() ) {
+            return members.mapToLong( Member::getMoney ).sum();
+        }
+    }
+
+    @Benchmark
+    public List<Member> page() throws SQLException {
+        return repository.findAllAfter( "m0100000", PAGE_SIZE );
+    }
+
+    private static QueryProfile queryProfile( String profile ) {
+        QueryProfile fetch500 = QueryProfile.DEFAULT.withFetchSize( 500 );
+        switch ( profile ) {
+            case "DRIVER_DEFAULT":
+                return QueryProfile.DEFAULT;
+            case "FETCH_10":
+                return QueryProfile.DEFAULT.withFetchSize( 10 );
+            case "FETCH_500":
+                return fetch500;
+            case "FETCH_5000":
+                return QueryProfile.DEFAULT.withFetchSize( 5000 );
+            case "SCROLL_INSENSITIVE":
+                return fetch500.withForwardOnly( false );
+            case "READ_ONLY":
+                return fetch500.withReadOnly( true );
+            case "MAX_ROWS_1000":
+                return fetch500.withMaxRows( 1000 );
+            default:
+                throw new IllegalArgumentException( "unknown profile, profile = " + profile );
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.MemoryDataSource;
+import hello.jdbc.domain.Member;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 계좌이체 - 조회 후 update 2번(메서드마다 커넥션, auto commit) vs transfer(커넥션 1개, 배치 1번, 커밋 1번) 비교
+ *
+ * 실행: ./gradlew jmh -PjmhInclude=TransferBenchmark
+ * - 8개 쓰레드가 accounts 명 중에서 랜덤으로 두 명을 골라 이체한다. (accounts가 작을수록 락 경합이 심하다)
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@State( Scope.Benchmark )
+@Threads( 8 )
+public class TransferBenchmark {
+
+    @Param( { "16", "1000" } )
+    int accounts;
+
+    HikariDataSource dataSource;
+    MemberRepositoryV1 repository;
+    String[] memberIds;
+
+    @Setup( Level.Trial )
+    public void setUp() throws SQLException {
+        MemoryDataSource.create( "transfer" );
+
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl( MemoryDataSource.url( "transfer" ) );
+        dataSource.setUsername( MemoryDataSource.USERNAME );
+        dataSource.setPassword( MemoryDataSource.PASSWORD );
+        dataSource.setMaximumPoolSize( 8 );
+
+        repository = new MemberRepositoryV1( dataSource );
+
+        memberIds = new String[ accounts ];
+        List<Member> members = new ArrayList<>( accounts );
+        for ( int i = 0; i < accounts; i++ ) {
+            memberIds[i] = "m" + i;
+            members.add( new Member( memberIds[i], 1_000_000 ) );
+        }
+        repository.saveAll( members );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public void autoCommit() throws SQLException {
+        int from = ThreadLocalRandom.current().nextInt( accounts );
+        int to = ( from + 1 + ThreadLocalRandom.current().nextInt( accounts - 1 ) ) % accounts;
+
+        Member fromMember = repository.findById( memberIds[from] );
+        Member toMember = repository.findById( memberIds[to] );
+        repository.update( fromMember.getMemberId(), fromMember.getMoney() - 1 );
+        repository.update( toMember.getMemberId(), toMember.getMoney() + 1 );
+    }
+
+    @Benchmark
+    public void transfer() throws SQLException {
+        int from = ThreadLocalRandom.current().nextInt( accounts );
+        int to = ( from + 1 + ThreadLocalRandom.current().nextInt( accounts - 1 ) ) % accounts;
+
+        repository.transfer( memberIds[from], memberIds[to], 1 );
+    }
+
+}
@@ -0,0 +1,106 @@
+package hello.jdbc.repository.mapper;
+
+import hello.jdbc.connection.MemoryDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * row 매핑 방식 비교 - 컬럼 이름(label) vs 컬럼 위치(MemberRowMapper)
+ *
+ * 실행: ./gradlew jmh -PjmhInclude=MemberRowMapperBenchmark
+ * - 호출 한 번에 ROWS 건을 읽으므로 @OperationsPerInvocation으로 row 1건 기준 시간/할당량(gc.alloc.rate.norm)을 보여준다.
+ * - 커넥션과 PreparedStatement는 미리 열어두고 executeQuery + 매핑만 측정한다.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@OperationsPerInvocation( MemberRowMapperBenchmark.ROWS )
+@State( Scope.Benchmark )
+public class MemberRowMapperBenchmark {
+
+    static final int ROWS = 10_000;
+
+    Connection con;
+    PreparedStatement pstmt;
+
+    @Setup( Level.Trial )
+    public void setUp() throws SQLException {
+        DataSource dataSource = MemoryDataSource.create( "rowMapper" );
+        List<Member> members = new ArrayList<>( ROWS );
+        for ( int i = 0; i < ROWS; i++ ) {
+            members.add( new Member( "m" + i, i ) );
+        }
+        new MemberRepositoryV1( dataSource ).saveAll( members );
+
+        con = dataSource.getConnection();
+        pstmt = con.prepareStatement( "select * from member" );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws SQLException {
+        pstmt.close();
+        con.close();
+    }
+
+    /**
+     * 기존 방식 - 컬럼 이름으로 꺼내고, setter로 새 Member를 채운다
+     */
+    @Benchmark
+    public void labelBased( Blackhole blackhole ) throws SQLException {
+        try ( ResultSet rs = pstmt.executeQuery() ) {
+            while ( rs.next() ) {
+                Member member = new Member();
+                member.setMemberId( rs.getString("member_id") );
+                member.setMoney( rs.getInt("money") );
+                blackhole.consume( member );
+            }
+        }
+    }
+
+    @Benchmark
+    public void indexBased( Blackhole blackhole ) throws SQLException {
+        try ( ResultSet rs = pstmt.executeQuery() ) {
+            MemberRowMapper mapper = MemberRowMapper.of( rs );
+            while ( rs.next() ) {
+                blackhole.consume( mapper.mapRow( rs ) );
+            }
+        }
+    }
+
+    @Benchmark
+    public void indexBasedReuse( Blackhole blackhole ) throws SQLException {
+        Member member = new Member();
+        try ( ResultSet rs = pstmt.executeQuery() ) {
+            MemberRowMapper mapper = MemberRowMapper.of( rs );
+            while ( rs.next() ) {
+                blackhole.consume( mapper.mapInto( rs, member ) );
+            }
+        }
+    }
+
+    /**
+     * money만 필요할 때 - Member도, member_id String도 만들지 않는다
+     */
+    @Benchmark
+    public long primitiveMoneySum() throws SQLException {
+        long sum = 0;
+        try ( ResultSet rs = pstmt.executeQuery() ) {
+            MemberRowMapper mapper = MemberRowMapper.of( rs );
+            while ( rs.next() ) {
+                sum += mapper.money( rs );
+            }
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,77 @@
+package hello.jdbc.repository.snapshot;
+
+import hello.jdbc.connection.MemoryDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * memberId -> money 조회 - MemberSnapshot(컬럼 저장) vs HashMap<String, Member>
+ *
+ * 실행: ./gradlew jmh -PjmhInclude=MemberSnapshotBenchmark
+ * - gc 프로파일러의 gc.alloc.rate.norm 으로 조회 1번에 할당이 없는지 확인한다.
+ * - 메모리 사용량은 setUp에서 로그로 남긴다. (HashMap 쪽은 JOL 없이 대략적인 객체 크기로 계산)
+ */
+@Slf4j
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@State( Scope.Benchmark )
+public class MemberSnapshotBenchmark {
+
+    @Param( { "1000000" } )
+    int members;
+
+    @Param( { "false", "true" } )
+    boolean offHeap;
+
+    MemberSnapshotStore store;
+    Map<String, Member> map;
+    String[] memberIds;
+
+    @Setup( Level.Trial )
+    public void setUp() throws SQLException {
+        DataSource dataSource = MemoryDataSource.create( "snapshot" );
+        MemberRepositoryV1 repository = new MemberRepositoryV1( dataSource );
+
+        List<Member> list = new ArrayList<>( members );
+        memberIds = new String[ members ];
+        for ( int i = 0; i < members; i++ ) {
+            list.add( new Member( "m" + i, i ) );
+            memberIds[i] = "m" + i;
+        }
+        repository.saveAll( list );
+
+        store = new MemberSnapshotStore( repository, offHeap );
+        MemberSnapshot snapshot = store.load();
+
+        map = new HashMap<>( members * 4 / 3 + 1 );
+        for ( Member member : list ) {
+            map.put( member.getMemberId(), member );
+        }
+
+        // Member(24) + String(24) + byte[](16 + 길이) + HashMap.Node(32) + 테이블 칸(4~8)
+        log.info( "snapshot bytes/member={}, HashMap<String, Member> bytes/member~{}",
+                String.format( "%.1f", snapshot.memoryBytes() / (double) snapshot.size() ), 24 + 24 + 24 + 32 + 8 );
+    }
+
+    @Benchmark
+    public int snapshot() {
+        return store.getMoney( memberIds[ ThreadLocalRandom.current().nextInt( members ) ] );
+    }
+
+    @Benchmark
+    public int hashMap() {
+        return map.get( memberIds[ ThreadLocalRandom.current().nextInt( members ) ] ).getMoney();
+    }
+
+}
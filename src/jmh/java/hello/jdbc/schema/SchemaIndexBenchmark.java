@@ -0,0 +1,91 @@
+package hello.jdbc.schema;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.MemoryDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 인덱스 유무에 따른 조회 비교 - SchemaManager로 만든 테이블(PK + money 인덱스) vs PK/인덱스 없는 테이블
+ *
+ * 실행: ./gradlew jmh -PjmhInclude=SchemaIndexBenchmark
+ *
+ * - findById       : member_id = ? (PK가 없으면 테이블 전체를 읽는다)
+ * - memberIdRange  : findAllAfter 키셋 페이지 100건 (PK가 없으면 전체를 읽고 정렬한다)
+ * - moneyRange     : findAllByMoneyBetween 100건 (money 인덱스가 없으면 전체를 읽고 정렬한다)
+ * rows가 늘어날 때 indexed=true 쪽은 거의 그대로이고 false 쪽은 rows에 비례해서 느려진다.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@State( Scope.Benchmark )
+public class SchemaIndexBenchmark {
+
+    static final int PAGE_SIZE = 100;
+
+    @Param( { "10000", "100000" } )
+    int rows;
+
+    @Param( { "true", "false" } )
+    boolean indexed;
+
+    HikariDataSource dataSource;
+    MemberRepositoryV1 repository;
+
+    @Setup( Level.Trial )
+    public void setUp() throws SQLException {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl( MemoryDataSource.url( "index-" + indexed + "-" + rows ) );
+        dataSource.setUsername( MemoryDataSource.USERNAME );
+        dataSource.setPassword( MemoryDataSource.PASSWORD );
+        dataSource.setMaximumPoolSize( 2 );
+
+        try ( Connection con = dataSource.getConnection(); Statement stmt = con.createStatement() ) {
+            stmt.execute( "drop table if exists member" );
+            stmt.execute( "drop table if exists " + SchemaManager.VERSION_TABLE );
+            if ( !indexed ) {
+                stmt.execute( "create table member ( member_id varchar(10) not null, money integer not null default 0 )" );
+            }
+        }
+        if ( indexed ) {
+            new SchemaManager( dataSource, new SchemaProperties() ).migrate();
+        }
+
+        repository = new MemberRepositoryV1( dataSource );
+        List<Member> members = new ArrayList<>( rows );
+        for ( int i = 0; i < rows; i++ ) {
+            members.add( new Member( String.format( "m%07d", i ), ( i * 7919 ) % rows ) );
+        }
+        repository.saveAll( members );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public Member findById() throws SQLException {
+        return repository.findById( String.format( "m%07d", ThreadLocalRandom.current().nextInt( rows ) ) );
+    }
+
+    @Benchmark
+    public List<Member> memberIdRange() throws SQLException {
+        return repository.findAllAfter( String.format( "m%07d", ThreadLocalRandom.current().nextInt( rows - PAGE_SIZE ) ), PAGE_SIZE );
+    }
+
+    @Benchmark
+    public List<Member> moneyRange() throws SQLException {
+        int from = ThreadLocalRandom.current().nextInt( rows - PAGE_SIZE );
+        return repository.findAllByMoneyBetween( from, from + PAGE_SIZE - 1, PAGE_SIZE );
+    }
+
+}
@@ -0,0 +1,17 @@
+package hello.jdbc.bulk;
+
+/**
+ * 회원 import/export 파일 형식
+ *
+ * - CSV : "member_id,money" 헤더 + 한 줄에 회원 하나 (UTF-8, 줄바꿈 \n 또는 \r\n)
+ * - BINARY : 매직 넘버 "MBR1" + 회원마다 [memberId 길이(unsigned short), memberId(UTF-8), money(int)] (big-endian)
+ */
+public enum BulkFormat {
+
+    CSV,
+    BINARY;
+
+    static final String CSV_HEADER = "member_id,money";
+    static final int BINARY_MAGIC = 0x4D425231; // "MBR1"
+
+}
@@ -0,0 +1,80 @@
+package hello.jdbc.bulk;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * import/export 진행 상황 - 다른 쓰레드에서 실행 중에 읽어도 된다
+ *
+ * - rowsRead : 파일(import) 또는 DB(export)에서 읽은 row 수
+ * - rowsWritten : DB(import) 또는 파일(export)에 쓴 row 수
+ * - bytes : 파일에서 읽거나 파일에 쓴 바이트 수
+ * - batches : DB에 보낸 배치 수 (import)
+ */
+public class BulkProgress {
+
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos;
+
+    void addRowsRead( long rows ) {
+        rowsRead.add( rows );
+    }
+
+    void addRowsWritten( long rows ) {
+        rowsWritten.add( rows );
+    }
+
+    void addBytes( long count ) {
+        bytes.add( count );
+    }
+
+    void addBatch() {
+        batches.increment();
+    }
+
+    void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    public long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public boolean isFinished() {
+        return endNanos != 0;
+    }
+
+    public long getElapsedMillis() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis( end - startNanos );
+    }
+
+    public double getRowsWrittenPerSecond() {
+        long millis = Math.max( 1, getElapsedMillis() );
+        return getRowsWritten() * 1000.0 / millis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "rowsRead=%d, rowsWritten=%d, bytes=%d, batches=%d, elapsed=%dms, rows/s=%.0f",
+                getRowsRead(), getRowsWritten(), getBytes(), getBatches(), getElapsedMillis(), getRowsWrittenPerSecond() );
+    }
+
+}
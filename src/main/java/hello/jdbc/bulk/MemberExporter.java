@@ -0,0 +1,178 @@
+package hello.jdbc.bulk;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+
+/**
+ * member 테이블 -> 파일 대량 저장
+ *
+ * - findAll(콜백)로 ResultSet을 fetchSize 씩 읽으면서 (전체를 메모리에 올리지 않는다) 회원마다 바로 버퍼에 인코딩한다.
+ * - 버퍼는 direct ByteBuffer 하나를 재사용하고, 가득 차면 FileChannel에 한 번에 쓴다. (row마다 write 하지 않는다)
+ * - memberId는 ASCII면 문자를 바로 바이트로 넣고, money는 String을 만들지 않고 숫자를 직접 쓴다.
+ */
+@Slf4j
+public class MemberExporter {
+
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    private final MemberRepositoryV1 repository;
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    public MemberExporter( MemberRepositoryV1 repository ) {
+        this.repository = repository;
+    }
+
+    public void setBufferSize( int bufferSize ) {
+        if ( bufferSize < 1024 ) {
+            throw new IllegalArgumentException( "bufferSize must be at least 1024, bufferSize = " + bufferSize );
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    public BulkProgress exportFile( Path path, BulkFormat format ) throws IOException, SQLException {
+        return exportFile( path, format, new BulkProgress() );
+    }
+
+    /**
+     * @param progress 진행 상황 (실행 중에 다른 쓰레드에서 읽을 수 있다)
+     */
+    public BulkProgress exportFile( Path path, BulkFormat format, BulkProgress progress ) throws IOException, SQLException {
+        try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) ) {
+            Encoder encoder = new Encoder( channel, format, progress );
+            encoder.header();
+            try {
+                // 콜백에서는 Checked Exception을 던질 수 없으므로 UncheckedIOException으로 감싸서 꺼낸다
+                repository.findAll( member -> {
+                    try {
+                        encoder.write( member );
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException( e );
+                    }
+                } );
+            }
+            catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            encoder.flush();
+        }
+        finally {
+            progress.finish();
+        }
+        log.info( "export done, path={}, {}", path, progress );
+        return progress;
+    }
+
+    private final class Encoder {
+
+        private final FileChannel channel;
+        private final BulkFormat format;
+        private final BulkProgress progress;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect( bufferSize );
+
+        // 버퍼에 있지만 아직 파일에 쓰지 않은 row 수
+        private int pendingRows;
+
+        private Encoder( FileChannel channel, BulkFormat format, BulkProgress progress ) {
+            this.channel = channel;
+            this.format = format;
+            this.progress = progress;
+        }
+
+        private void header() {
+            if ( format == BulkFormat.CSV ) {
+                buffer.put( BulkFormat.CSV_HEADER.getBytes( StandardCharsets.US_ASCII ) ).put( (byte) '\n' );
+            }
+            else {
+                buffer.putInt( BulkFormat.BINARY_MAGIC );
+            }
+        }
+
+        private void write( Member member ) throws IOException {
+            String memberId = member.getMemberId();
+            // UTF-8 최대 3바이트/문자 + 길이/구분자/숫자(최대 11자리) 여유
+            int maxLength = memberId.length() * 3 + 16;
+            if ( buffer.remaining() < maxLength ) {
+                flush();
+            }
+            progress.addRowsRead( 1 );
+
+            if ( format == BulkFormat.CSV ) {
+                putMemberId( memberId );
+                buffer.put( (byte) ',' );
+                putDigits( member.getMoney() );
+                buffer.put( (byte) '\n' );
+            }
+            else {
+                int lengthPosition = buffer.position();
+                buffer.putShort( (short) 0 );
+                int length = putMemberId( memberId );
+                buffer.putShort( lengthPosition, (short) length );
+                buffer.putInt( member.getMoney() );
+            }
+            pendingRows++;
+        }
+
+        /**
+         * @return 쓴 바이트 수
+         */
+        private int putMemberId( String memberId ) {
+            int start = buffer.position();
+            for ( int i = 0; i < memberId.length(); i++ ) {
+                char c = memberId.charAt( i );
+                if ( c >= 0x80 ) {
+                    // ASCII가 아니면 그 회원만 인코더를 사용한다
+                    buffer.position( start );
+                    buffer.put( memberId.getBytes( StandardCharsets.UTF_8 ) );
+                    return buffer.position() - start;
+                }
+                buffer.put( (byte) c );
+            }
+            return memberId.length();
+        }
+
+        private void putDigits( int value ) {
+            if ( value == Integer.MIN_VALUE ) {
+                buffer.put( "-2147483648".getBytes( StandardCharsets.US_ASCII ) );
+                return;
+            }
+            if ( value < 0 ) {
+                buffer.put( (byte) '-' );
+                value = -value;
+            }
+            // 가장 큰 자리부터 쓰기 위해 자릿수를 먼저 구한다
+            int divisor = 1;
+            while ( value / divisor >= 10 ) {
+                divisor *= 10;
+            }
+            for ( ; divisor > 0; divisor /= 10 ) {
+                buffer.put( (byte) ( '0' + value / divisor % 10 ) );
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            int bytes = buffer.remaining();
+            while ( buffer.hasRemaining() ) {
+                channel.write( buffer );
+            }
+            buffer.clear();
+
+            progress.addBytes( bytes );
+            progress.addRowsWritten( pendingRows );
+            pendingRows = 0;
+        }
+    }
+
+}
@@ -0,0 +1,427 @@
+package hello.jdbc.bulk;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 파일 -> member 테이블 대량 저장
+ *
+ * 1. 읽기 (호출한 쓰레드)
+ *  - 파일을 chunkSize 단위로 메모리 매핑(FileChannel.map)해서 바이트를 직접 파싱한다. (BufferedReader처럼 줄마다 String을 만들지 않는다)
+ *  - money는 바이트에서 바로 int로 바꾸고, String은 Member에 필요한 memberId 하나만 만든다.
+ *  - 청크 끝에 걸린 row는 다음 청크에서 다시 읽는다.
+ *
+ * 2. 쓰기 (writerThreads 개의 쓰레드)
+ *  - 파싱한 회원을 batchSize 개씩 묶어서 크기 제한이 있는 큐(queueCapacity)에 넣는다.
+ *    큐가 가득 차면 읽기가 기다린다. -> DB가 느려도 메모리에 파일 전체가 쌓이지 않는다.
+ *  - 쓰기 쓰레드는 묶음마다 트랜잭션 하나로 saveAll(JDBC 배치) 한다. (row마다 커밋하지 않는다)
+ *  - 쓰기 쓰레드 수는 커넥션 풀 크기 이하로 둔다. 더 많아봐야 풀에서 커넥션을 기다린다.
+ *
+ * 3. 실패
+ *  - 한 묶음이라도 실패하거나 읽기가 실패하면(잘못된 row 등) 읽기를 멈추고 남은 묶음은 버린다. 이미 커밋한 묶음은 그대로 남는다.
+ *  - 실패해도 쓰기 쓰레드가 모두 끝날 때까지 기다린 뒤에 예외를 던진다. 돌아간 뒤에는 커밋이 늘지 않으므로 progress.getRowsWritten()이 저장된 row 수다.
+ *  - CSV 첫 줄이 정확히 "member_id,money" 이면 헤더로 보고 건너뛴다.
+ *  - upsert = true 이면 saveAll 대신 upsertAll을 사용하므로, 실패한 뒤 같은 파일로 다시 실행할 수 있다.
+ */
+@Slf4j
+public class MemberImporter {
+
+    public static final int DEFAULT_WRITER_THREADS = 4;
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    // 쓰기 쓰레드에게 더 이상 묶음이 없다고 알리는 표시
+    private static final List<Member> END = Collections.emptyList();
+
+    private static final byte[] HEADER = BulkFormat.CSV_HEADER.getBytes( StandardCharsets.US_ASCII );
+
+    private final MemberRepositoryV1 repository;
+
+    private int writerThreads = DEFAULT_WRITER_THREADS;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int queueCapacity = DEFAULT_WRITER_THREADS * 2;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private boolean upsert;
+
+    public MemberImporter( MemberRepositoryV1 repository ) {
+        this.repository = repository;
+    }
+
+    public void setWriterThreads( int writerThreads ) {
+        if ( writerThreads <= 0 ) {
+            throw new IllegalArgumentException( "writerThreads must be positive, writerThreads = " + writerThreads );
+        }
+        this.writerThreads = writerThreads;
+    }
+
+    public void setBatchSize( int batchSize ) {
+        if ( batchSize <= 0 ) {
+            throw new IllegalArgumentException( "batchSize must be positive, batchSize = " + batchSize );
+        }
+        this.batchSize = batchSize;
+    }
+
+    public void setQueueCapacity( int queueCapacity ) {
+        if ( queueCapacity <= 0 ) {
+            throw new IllegalArgumentException( "queueCapacity must be positive, queueCapacity = " + queueCapacity );
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    public void setChunkSize( int chunkSize ) {
+        if ( chunkSize <= 0 ) {
+            throw new IllegalArgumentException( "chunkSize must be positive, chunkSize = " + chunkSize );
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public void setUpsert( boolean upsert ) {
+        this.upsert = upsert;
+    }
+
+    public BulkProgress importFile( Path path, BulkFormat format ) throws IOException, SQLException {
+        return importFile( path, format, new BulkProgress() );
+    }
+
+    /**
+     * @param progress 진행 상황 (실행 중에 다른 쓰레드에서 읽을 수 있다)
+     */
+    public BulkProgress importFile( Path path, BulkFormat format, BulkProgress progress ) throws IOException, SQLException {
+        BlockingQueue<List<Member>> queue = new ArrayBlockingQueue<>( queueCapacity );
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        AtomicInteger sequence = new AtomicInteger();
+        ExecutorService writers = Executors.newFixedThreadPool( writerThreads, runnable -> {
+            Thread thread = new Thread( runnable, "member-import-" + sequence.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        } );
+
+        try {
+            List<Future<?>> futures = new ArrayList<>( writerThreads );
+            for ( int i = 0; i < writerThreads; i++ ) {
+                futures.add( writers.submit( () -> {
+                    write( queue, failure, progress );
+                    return null;
+                } ) );
+            }
+
+            Batcher batcher = new Batcher( queue, failure, progress );
+            try {
+                read( path, format, batcher, progress );
+                batcher.flush();
+            }
+            catch (IOException | RuntimeException e) {
+                // 읽기 실패도 failure에 남긴다 -> 쓰기 쓰레드는 큐에 남은 묶음을 저장하지 않고 버린다
+                if ( failure.compareAndSet( null, e ) ) {
+                    log.error( "import read failed, path={}", path, e );
+                }
+            }
+
+            // 읽기가 실패해도 쓰기 쓰레드가 모두 끝난 뒤에 돌아간다 (돌아간 뒤에는 더 커밋하지 않는다)
+            for ( int i = 0; i < writerThreads; i++ ) {
+                batcher.put( END );
+            }
+            ExecutionException writerFailure = null;
+            for ( Future<?> future : futures ) {
+                try {
+                    future.get();
+                }
+                catch (ExecutionException e) {
+                    writerFailure = writerFailure == null ? e : writerFailure;
+                }
+            }
+            if ( writerFailure != null ) {
+                throw new IllegalStateException( writerFailure.getCause() );
+            }
+        }
+        catch (InterruptedException e) {
+            // 중단된 경우에만 쓰기 쓰레드를 인터럽트한다
+            writers.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "import interrupted" );
+        }
+        finally {
+            writers.shutdown();
+            progress.finish();
+        }
+
+        Exception e = failure.get();
+        if ( e instanceof IOException ) {
+            throw (IOException) e;
+        }
+        if ( e instanceof SQLException ) {
+            throw (SQLException) e;
+        }
+        if ( e instanceof RuntimeException ) {
+            throw (RuntimeException) e;
+        }
+        if ( e != null ) {
+            throw new IllegalStateException( e );
+        }
+        log.info( "import done, path={}, {}", path, progress );
+        return progress;
+    }
+
+    /**
+     * 쓰기 쓰레드 - END를 받을 때까지 묶음을 꺼내서 저장한다. 실패한 뒤에는 저장하지 않고 꺼내기만 한다.
+     */
+    private void write( BlockingQueue<List<Member>> queue, AtomicReference<Exception> failure, BulkProgress progress ) throws InterruptedException {
+        while ( true ) {
+            List<Member> batch = queue.take();
+            if ( batch == END ) {
+                return;
+            }
+            if ( failure.get() != null ) {
+                continue;
+            }
+
+            try {
+                repository.inTransaction( tx -> upsert ? tx.upsertAll( batch ) : tx.saveAll( batch ) );
+                progress.addRowsWritten( batch.size() );
+                progress.addBatch();
+            }
+            catch (Exception e) {
+                if ( failure.compareAndSet( null, e ) ) {
+                    log.error( "import batch failed, first memberId={}", batch.get( 0 ).getMemberId(), e );
+                }
+            }
+        }
+    }
+
+    private void read( Path path, BulkFormat format, Batcher batcher, BulkProgress progress ) throws IOException, InterruptedException {
+        try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) ) {
+            long size = channel.size();
+            long position = 0;
+
+            if ( format == BulkFormat.BINARY ) {
+                ByteBuffer magic = ByteBuffer.allocate( 4 );
+                channel.read( magic, 0 );
+                if ( magic.position() < 4 || magic.getInt( 0 ) != BulkFormat.BINARY_MAGIC ) {
+                    throw new IOException( "not a member binary file, path = " + path );
+                }
+                position = 4;
+                progress.addBytes( 4 );
+            }
+
+            RowParser parser = format == BulkFormat.CSV ? new CsvParser() : new BinaryParser();
+            while ( position < size ) {
+                if ( batcher.failed() ) {
+                    return;
+                }
+                long length = Math.min( chunkSize, size - position );
+                boolean last = position + length == size;
+                MappedByteBuffer chunk = channel.map( FileChannel.MapMode.READ_ONLY, position, length );
+
+                int consumed = parser.parse( chunk, last, batcher );
+                if ( consumed == 0 && !last ) {
+                    throw new IOException( "row is larger than chunkSize, position = " + position );
+                }
+                position += consumed;
+                progress.addBytes( consumed );
+                if ( last ) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 파싱한 회원을 batchSize 개씩 묶어서 큐에 넣는다
+     */
+    private final class Batcher {
+
+        private final BlockingQueue<List<Member>> queue;
+        private final AtomicReference<Exception> failure;
+        private final BulkProgress progress;
+        private List<Member> batch = new ArrayList<>( batchSize );
+
+        private Batcher( BlockingQueue<List<Member>> queue, AtomicReference<Exception> failure, BulkProgress progress ) {
+            this.queue = queue;
+            this.failure = failure;
+            this.progress = progress;
+        }
+
+        private void add( Member member ) throws InterruptedException {
+            batch.add( member );
+            if ( batch.size() == batchSize ) {
+                flush();
+            }
+        }
+
+        private void flush() throws InterruptedException {
+            if ( batch.isEmpty() || failed() ) {
+                return;
+            }
+            progress.addRowsRead( batch.size() );
+            put( batch );
+            batch = new ArrayList<>( batchSize );
+        }
+
+        private void put( List<Member> members ) throws InterruptedException {
+            queue.put( members );
+        }
+
+        private boolean failed() {
+            return failure.get() != null;
+        }
+    }
+
+    /**
+     * 청크 하나를 파싱해서 Batcher에 넘긴다
+     * @return 파싱한(다음 청크에서 다시 읽지 않아도 되는) 바이트 수
+     */
+    private interface RowParser {
+        int parse( ByteBuffer chunk, boolean last, Batcher batcher ) throws IOException, InterruptedException;
+    }
+
+    /**
+     * CSV - 줄바꿈을 찾아서 줄 단위로 파싱한다. 마지막 청크가 아니면 줄바꿈이 없는 마지막 줄은 다음 청크로 넘긴다.
+     */
+    private final class CsvParser implements RowParser {
+
+        private final byte[] idBytes = new byte[ 256 ];
+        private long line;
+
+        @Override
+        public int parse( ByteBuffer chunk, boolean last, Batcher batcher ) throws IOException, InterruptedException {
+            int limit = chunk.limit();
+            int lineStart = 0;
+            for ( int i = 0; i < limit; i++ ) {
+                if ( chunk.get( i ) == '\n' ) {
+                    parseLine( chunk, lineStart, i, batcher );
+                    lineStart = i + 1;
+                }
+            }
+            if ( last && lineStart < limit ) {
+                parseLine( chunk, lineStart, limit, batcher );
+                lineStart = limit;
+            }
+            return lineStart;
+        }
+
+        private void parseLine( ByteBuffer chunk, int from, int to, Batcher batcher ) throws IOException, InterruptedException {
+            line++;
+            if ( to > from && chunk.get( to - 1 ) == '\r' ) {
+                to--;
+            }
+            if ( to == from ) {
+                return;
+            }
+
+            int comma = -1;
+            for ( int i = from; i < to; i++ ) {
+                if ( chunk.get( i ) == ',' ) {
+                    comma = i;
+                    break;
+                }
+            }
+            if ( comma <= from || comma - from > idBytes.length ) {
+                throw new IOException( "invalid csv row, line = " + line );
+            }
+
+            // 첫 줄이 헤더면 건너뛴다
+            if ( line == 1 && isHeader( chunk, from, to ) ) {
+                return;
+            }
+
+            for ( int i = from; i < comma; i++ ) {
+                idBytes[ i - from ] = chunk.get( i );
+            }
+            String memberId = new String( idBytes, 0, comma - from, StandardCharsets.UTF_8 );
+
+            batcher.add( new Member( memberId, parseInt( chunk, comma + 1, to ) ) );
+        }
+
+        private boolean isHeader( ByteBuffer chunk, int from, int to ) {
+            if ( to - from != HEADER.length ) {
+                return false;
+            }
+            for ( int i = 0; i < HEADER.length; i++ ) {
+                if ( chunk.get( from + i ) != HEADER[ i ] ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int parseInt( ByteBuffer chunk, int from, int to ) throws IOException {
+            boolean negative = from < to && chunk.get( from ) == '-';
+            int i = negative ? from + 1 : from;
+            if ( i == to ) {
+                throw new IOException( "invalid money, line = " + line );
+            }
+
+            long value = 0;
+            for ( ; i < to; i++ ) {
+                int digit = chunk.get( i ) - '0';
+                if ( digit < 0 || digit > 9 ) {
+                    throw new IOException( "invalid money, line = " + line );
+                }
+                value = value * 10 + digit;
+                if ( value > (long) Integer.MAX_VALUE + 1 ) {
+                    throw new IOException( "money out of range, line = " + line );
+                }
+            }
+            value = negative ? -value : value;
+            if ( value > Integer.MAX_VALUE ) {
+                throw new IOException( "money out of range, line = " + line );
+            }
+            return (int) value;
+        }
+    }
+
+    /**
+     * BINARY - [길이][memberId][money] 를 통째로 읽을 수 있는 만큼 파싱한다.
+     */
+    private static final class BinaryParser implements RowParser {
+
+        private final byte[] idBytes = new byte[ 0xFFFF ];
+
+        @Override
+        public int parse( ByteBuffer chunk, boolean last, Batcher batcher ) throws IOException, InterruptedException {
+            int limit = chunk.limit();
+            int position = 0;
+            while ( limit - position >= 2 ) {
+                int length = chunk.getShort( position ) & 0xFFFF;
+                if ( limit - position < 2 + length + 4 ) {
+                    break;
+                }
+                chunk.position( position + 2 );
+                chunk.get( idBytes, 0, length );
+                String memberId = new String( idBytes, 0, length, StandardCharsets.UTF_8 );
+                int money = chunk.getInt( position + 2 + length );
+
+                batcher.add( new Member( memberId, money ) );
+                position += 2 + length + 4;
+            }
+            if ( last && position < limit ) {
+                throw new IOException( "truncated member binary file, trailing bytes = " + ( limit - position ) );
+            }
+            return position;
+        }
+    }
+
+}
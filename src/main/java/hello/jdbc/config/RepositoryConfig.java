@@ -0,0 +1,35 @@
+package hello.jdbc.config;
+
+import hello.jdbc.repository.MemberRepositoryV1;
+import hello.jdbc.repository.QueryProfileProperties;
+import hello.jdbc.repository.RepositoryMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * 리포지토리 스프링 빈 등록
+ * - DataSource(HikariCP)는 스프링 부트가 자동으로 만들어준 것을 주입 받는다.
+ * - MeterRegistry는 Actuator가 만들어준 것을 사용하므로 리포지토리 메트릭이 /actuator/metrics 에 노출된다.
+ * - 메서드별 쿼리 실행 프로파일은 hello.jdbc.query.profiles.* 설정을 적용한다.
+ */
+@Configuration
+@EnableConfigurationProperties( QueryProfileProperties.class )
+public class RepositoryConfig {
+
+    @Bean
+    public RepositoryMetrics repositoryMetrics( MeterRegistry meterRegistry ) {
+        return new RepositoryMetrics( meterRegistry );
+    }
+
+    @Bean
+    public MemberRepositoryV1 memberRepositoryV1( DataSource dataSource, RepositoryMetrics repositoryMetrics, QueryProfileProperties queryProfileProperties ) {
+        MemberRepositoryV1 repository = new MemberRepositoryV1( dataSource, repositoryMetrics );
+        queryProfileProperties.applyTo( repository );
+        return repository;
+    }
+
+}
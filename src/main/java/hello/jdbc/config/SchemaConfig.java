@@ -0,0 +1,29 @@
+package hello.jdbc.config;
+
+import hello.jdbc.schema.SchemaManager;
+import hello.jdbc.schema.SchemaMigration;
+import hello.jdbc.schema.SchemaProperties;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.stream.Collectors;
+
+/**
+ * 기동시 스키마 관리 - hello.jdbc.schema.enabled=false 이면 등록하지 않는다
+ * - 스프링 빈으로 등록한 SchemaMigration은 기본 단계 뒤에 실행된다.
+ */
+@Configuration
+@EnableConfigurationProperties( SchemaProperties.class )
+public class SchemaConfig {
+
+    @Bean
+    @ConditionalOnProperty( prefix = "hello.jdbc.schema", name = "enabled", havingValue = "true", matchIfMissing = true )
+    public SchemaManager schemaManager( DataSource dataSource, SchemaProperties schemaProperties, ObjectProvider<SchemaMigration> schemaMigrations ) {
+        return new SchemaManager( dataSource, schemaProperties, schemaMigrations.orderedStream().collect( Collectors.toList() ) );
+    }
+
+}
@@ -0,0 +1,26 @@
+package hello.jdbc.config;
+
+import hello.jdbc.repository.MemberRepositoryV1;
+import hello.jdbc.warmup.StartupWarmup;
+import hello.jdbc.warmup.WarmupProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * 기동시 워밍업 - hello.jdbc.warmup.enabled=true 일 때만 등록
+ */
+@Configuration
+@EnableConfigurationProperties( WarmupProperties.class )
+public class WarmupConfig {
+
+    @Bean
+    @ConditionalOnProperty( prefix = "hello.jdbc.warmup", name = "enabled", havingValue = "true" )
+    public StartupWarmup startupWarmup( DataSource dataSource, MemberRepositoryV1 memberRepositoryV1, WarmupProperties warmupProperties ) {
+        return new StartupWarmup( dataSource, memberRepositoryV1, warmupProperties );
+    }
+
+}
@@ -2,7 +2,8 @@ package hello.jdbc.connection;
 
 // abstract를 사용한 이유 : 상수를 모아둔 곳이므로 더 객체를 생성할 수 없도록 막음
 public abstract class ConnectionConst {
-    public static final String URL = "jdbc:h2:tcp://localhost/~/test";
+    // -Dhello.jdbc.url=... 로 바꿀 수 있다 (벤치마크에서 H2 서버 없이 메모리 DB를 사용할 때)
+    public static final String URL = System.getProperty( "hello.jdbc.url", "jdbc:h2:tcp://localhost/~/test" );
     public static final String USERNAME = "sa";
     public static final String PASSWORD = "";
 
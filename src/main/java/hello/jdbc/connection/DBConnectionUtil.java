@@ -1,28 +1,38 @@
 package hello.jdbc.connection;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 import static hello.jdbc.connection.ConnectionConst.*;
 
 /**
  * DB 연결
+ *
+ * - 예전에는 호출할 때마다 DriverManager.getConnection()으로 새 커넥션을 만들었다. (TCP 연결 + 인증을 매번 반복)
+ * - 이제는 SimpleConnectionPool에서 빌려준다. 사용한 커넥션을 close() 하면 풀에 반납된다.
  */
 @Slf4j
 public class DBConnectionUtil {
 
+    /**
+     * 처음 getConnection()을 호출할 때 풀을 만든다 (holder 클래스는 처음 사용할 때 초기화된다)
+     */
+    private static class PoolHolder {
+        private static final SimpleConnectionPool POOL = new SimpleConnectionPool( new DriverManagerDataSource( URL, USERNAME, PASSWORD ), "DBConnectionUtilPool" );
+    }
+
     /**
      * JDBC 표준 인터페이스가 제공하는 커넥션
      * @return
      */
     public static Connection getConnection(){
         try {
-            Connection connection = DriverManager.getConnection(URL, USERNAME, PASSWORD);
-            log.info( "get connection={}, class={}", connection, connection.getClass() );
-            // INFO hello.jdbc.connection.DBConnectionUtil - get connection=conn0: url=jdbc:h2:tcp://localhost/~/test user=SA, class=class org.h2.jdbc.JdbcConnection
+            Connection connection = PoolHolder.POOL.getConnection();
+            log.debug( "get connection={}, class={}", connection, connection.getClass() );
+            // DEBUG hello.jdbc.connection.DBConnectionUtil - get connection=conn0: url=jdbc:h2:tcp://localhost/~/test user=SA, class=class com.sun.proxy.$Proxy..
             return connection;
         }
         // Checked Exception -> Runtime Exception 으로 변경!
@@ -30,4 +40,8 @@ public class DBConnectionUtil {
             throw new IllegalStateException(e);
         }
     }
+
+    public static SimpleConnectionPool getPool() {
+        return PoolHolder.POOL;
+    }
 }
@@ -0,0 +1,504 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * 커넥션 보유 시간 프로파일러 + 누수 탐지 DataSource
+ *
+ * - 커넥션 풀(HikariCP) 바깥에 두어서 리포지토리가 커넥션을 빌린 시점부터 close() 할 때까지를 잰다.
+ *      DataSource dataSource = new LeakDetectingDataSource( hikariDataSource );
+ *  - close를 빠뜨린 코드 하나가 풀을 조금씩 비우면, 결국 모든 호출이 connectionTimeout(기본 30초) 동안 기다리다 실패한다.
+ *  - 누수가 아니어도 오래 들고 있는 코드는 그만큼 풀의 실제 크기를 줄인다.
+ *
+ * 1. 호출 위치(call site) 별 보유 시간
+ *  - 커넥션을 빌린 스택에서 풀/스프링/JDK/getConnection 을 건너뛴 첫 프레임(클래스.메서드:줄)을 호출 위치로 본다.
+ *  - 스택을 얻는 비용이 있으므로 sampleRate 비율의 커넥션만 스택을 얻는다. 나머지는 "(unsampled)" 로 모아서 센다.
+ *
+ * 2. 누수 의심
+ *  - 별도 쓰레드가 주기적으로 빌려준 커넥션을 확인해서 leakThresholdMs 보다 오래 들고 있으면 (스택과 함께) WARN 로그를 남긴다.
+ *  - 같은 커넥션은 한 번만 알리고, 나중에 반납되면 INFO 로그를 남긴다. (누수가 아니라 오래 걸린 작업이었다)
+ *
+ * 3. 조회 (dump, getTopHolders, getLongestHeld)
+ *  - 보유 시간 합계가 큰 호출 위치 순서 -> 풀을 가장 많이 차지하는 코드
+ *  - 지금 빌려간 커넥션 중 가장 오래된 순서 -> 누수 후보
+ */
+@Slf4j
+public class LeakDetectingDataSource implements DataSource, AutoCloseable {
+
+    public static final long DEFAULT_LEAK_THRESHOLD_MS = 2000;
+    public static final double DEFAULT_SAMPLE_RATE = 0.1;
+
+    public static final String UNSAMPLED = "(unsampled)";
+
+    // 스택을 저장할 최대 프레임 수
+    private static final int MAX_STACK_DEPTH = 32;
+
+    // 호출 위치를 찾을 때 건너뛰는 패키지/클래스
+    private static final String[] IGNORED_PREFIXES = {
+            "java.", "javax.", "jdk.", "sun.", "com.sun.", "com.zaxxer.hikari.",
+            "org.springframework.jdbc.", "org.springframework.transaction.", LeakDetectingDataSource.class.getName()
+    };
+
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+    private final DataSource dataSource;
+    private final long leakThresholdNanos;
+    private final double sampleRate;
+
+    // 지금 빌려준 커넥션
+    private final Set<Checkout> active = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, CallSite> callSites = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder checkoutCount = new LongAdder();
+    private final LongAdder leakCount = new LongAdder();
+
+    private final ScheduledExecutorService scanner;
+
+    public LeakDetectingDataSource( DataSource dataSource ) {
+        this( dataSource, DEFAULT_LEAK_THRESHOLD_MS, DEFAULT_SAMPLE_RATE );
+    }
+
+    /**
+     * @param leakThresholdMs 이 시간보다 오래 들고 있으면 누수 의심 (0 = 주기적으로 확인하지 않는다. checkLeaks()로 직접 확인)
+     * @param sampleRate 스택을 얻을 커넥션 비율 (0 ~ 1)
+     */
+    public LeakDetectingDataSource( DataSource dataSource, long leakThresholdMs, double sampleRate ) {
+        if ( leakThresholdMs < 0 ) {
+            throw new IllegalArgumentException( "leakThresholdMs must not be negative, leakThresholdMs = " + leakThresholdMs );
+        }
+        if ( sampleRate < 0 || sampleRate > 1 ) {
+            throw new IllegalArgumentException( "sampleRate must be in [0, 1], sampleRate = " + sampleRate );
+        }
+        this.dataSource = dataSource;
+        this.leakThresholdNanos = TimeUnit.MILLISECONDS.toNanos( leakThresholdMs );
+        this.sampleRate = sampleRate;
+
+        if ( leakThresholdMs > 0 ) {
+            scanner = Executors.newSingleThreadScheduledExecutor( runnable -> {
+                Thread thread = new Thread( runnable, "connection-leak-detector" );
+                thread.setDaemon( true );
+                return thread;
+            } );
+            // 임계값의 절반마다 확인 -> 임계값을 넘고 나서 늦어도 절반 안에 알린다
+            long periodMs = Math.max( leakThresholdMs / 2, 10 );
+            scanner.scheduleWithFixedDelay( this::checkLeaks, periodMs, periodMs, TimeUnit.MILLISECONDS );
+        }
+        else {
+            scanner = null;
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return track( dataSource.getConnection() );
+    }
+
+    @Override
+    public Connection getConnection( String username, String password ) throws SQLException {
+        return track( dataSource.getConnection( username, password ) );
+    }
+
+    public long getCheckoutCount() {
+        return checkoutCount.sum();
+    }
+
+    public long getLeakCount() {
+        return leakCount.sum();
+    }
+
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * 임계값보다 오래 들고 있는 커넥션을 찾아서 알린다 (주기적으로 실행된다)
+     * @return 이번에 새로 찾은 수
+     */
+    public int checkLeaks() {
+        if ( leakThresholdNanos == 0 ) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        int found = 0;
+        for ( Checkout checkout : active ) {
+            // 검사 쓰레드와 checkLeaks()를 직접 부른 쓰레드가 겹쳐도 한 번만 센다
+            if ( now - checkout.acquiredNanos > leakThresholdNanos && checkout.reported.compareAndSet( false, true ) ) {
+                checkout.callSite.leaks.increment();
+                leakCount.increment();
+                found++;
+                log.warn( "possible connection leak, held {}ms by thread={}, callSite={}{}",
+                        TimeUnit.NANOSECONDS.toMillis( now - checkout.acquiredNanos ), checkout.threadName, checkout.callSite.name,
+                        formatStack( checkout.stack ) );
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 보유 시간 합계가 큰 호출 위치 순서로 limit 개
+     */
+    public List<CallSiteStats> getTopHolders( int limit ) {
+        List<CallSiteStats> stats = new ArrayList<>( callSites.size() );
+        for ( CallSite callSite : callSites.values() ) {
+            stats.add( callSite.toStats() );
+        }
+        stats.sort( Comparator.comparingDouble( CallSiteStats::getTotalHoldMs ).reversed() );
+        return stats.subList( 0, Math.min( limit, stats.size() ) );
+    }
+
+    /**
+     * 지금 빌려간 커넥션 중 가장 오래 들고 있는 순서로 limit 개
+     */
+    public List<ActiveConnection> getLongestHeld( int limit ) {
+        long now = System.nanoTime();
+        List<ActiveConnection> held = new ArrayList<>( active.size() );
+        for ( Checkout checkout : active ) {
+            held.add( new ActiveConnection( checkout.threadName, checkout.callSite.name, ( now - checkout.acquiredNanos ) / 1e6, checkout.stack ) );
+        }
+        held.sort( Comparator.comparingDouble( ActiveConnection::getHeldMs ).reversed() );
+        return held.subList( 0, Math.min( limit, held.size() ) );
+    }
+
+    /**
+     * 로그/관리 화면용 텍스트
+     */
+    public String dump( int limit ) {
+        StringBuilder sb = new StringBuilder();
+        sb.append( String.format( "connections checkout=%d, active=%d, leaks=%d%n", getCheckoutCount(), getActiveCount(), getLeakCount() ) );
+        sb.append( "top holders (total hold time)" ).append( System.lineSeparator() );
+        for ( CallSiteStats stats : getTopHolders( limit ) ) {
+            sb.append( "  " ).append( stats ).append( System.lineSeparator() );
+        }
+        sb.append( "longest held" ).append( System.lineSeparator() );
+        for ( ActiveConnection connection : getLongestHeld( limit ) ) {
+            sb.append( "  " ).append( connection ).append( formatStack( connection.stack ) ).append( System.lineSeparator() );
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() {
+        if ( scanner != null ) {
+            scanner.shutdownNow();
+        }
+    }
+
+    private Connection track( Connection con ) {
+        checkoutCount.increment();
+
+        StackTraceElement[] stack = null;
+        String callSiteName = UNSAMPLED;
+        if ( sampleRate > 0 && ( sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate ) ) {
+            stack = STACK_WALKER.walk( frames -> frames.limit( MAX_STACK_DEPTH )
+                    .map( StackWalker.StackFrame::toStackTraceElement )
+                    .toArray( StackTraceElement[]::new ) );
+            callSiteName = callSiteOf( stack );
+        }
+
+        CallSite callSite = callSites.computeIfAbsent( callSiteName, CallSite::new );
+        Checkout checkout = new Checkout( sequence.incrementAndGet(), con, Thread.currentThread().getName(), callSite, stack );
+        callSite.active.incrementAndGet();
+        active.add( checkout );
+
+        checkout.proxy = (Connection) Proxy.newProxyInstance( Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, checkout );
+        return checkout.proxy;
+    }
+
+    private void release( Checkout checkout ) {
+        long heldNanos = System.nanoTime() - checkout.acquiredNanos;
+        active.remove( checkout );
+
+        CallSite callSite = checkout.callSite;
+        callSite.active.decrementAndGet();
+        callSite.count.increment();
+        callSite.totalHoldNanos.add( heldNanos );
+        callSite.maxHoldNanos.accumulateAndGet( heldNanos, Math::max );
+
+        if ( checkout.reported.get() ) {
+            log.info( "reported connection returned after {}ms, callSite={}", TimeUnit.NANOSECONDS.toMillis( heldNanos ), callSite.name );
+        }
+    }
+
+    private static String callSiteOf( StackTraceElement[] stack ) {
+        for ( StackTraceElement frame : stack ) {
+            if ( isIgnored( frame ) ) {
+                continue;
+            }
+            return frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber();
+        }
+        return UNSAMPLED;
+    }
+
+    private static boolean isIgnored( StackTraceElement frame ) {
+        String method = frame.getMethodName();
+        // 리포지토리의 커넥션 획득 헬퍼(getConnection)는 건너뛰고 그것을 호출한 메서드를 호출 위치로 본다
+        if ( method.equals( "getConnection" ) || method.equals( "doGetConnection" ) || method.equals( "getReadConnection" ) ) {
+            return true;
+        }
+        String className = frame.getClassName();
+        for ( String prefix : IGNORED_PREFIXES ) {
+            if ( className.startsWith( prefix ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String formatStack( StackTraceElement[] stack ) {
+        if ( stack == null ) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for ( StackTraceElement frame : stack ) {
+            sb.append( System.lineSeparator() ).append( "\tat " ).append( frame );
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter( PrintWriter out ) throws SQLException {
+        dataSource.setLogWriter( out );
+    }
+
+    @Override
+    public void setLoginTimeout( int seconds ) throws SQLException {
+        dataSource.setLoginTimeout( seconds );
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap( Class<T> iface ) throws SQLException {
+        if ( iface.isInstance( this ) ) {
+            return iface.cast( this );
+        }
+        return dataSource.unwrap( iface );
+    }
+
+    @Override
+    public boolean isWrapperFor( Class<?> iface ) throws SQLException {
+        return iface.isInstance( this ) || dataSource.isWrapperFor( iface );
+    }
+
+    /**
+     * 빌려준 커넥션 하나 - close()를 가로채서 보유 시간을 기록한다
+     */
+    private final class Checkout implements InvocationHandler {
+
+        private final long id;
+        private final Connection con;
+        private final String threadName;
+        private final CallSite callSite;
+        private final StackTraceElement[] stack;
+        private final long acquiredNanos = System.nanoTime();
+        private Connection proxy;
+        // 누수 의심으로 알렸는지 (검사하는 쓰레드가 쓰고 반납하는 쓰레드가 읽는다)
+        private final AtomicBoolean reported = new AtomicBoolean();
+        private boolean closed;
+
+        private Checkout( long id, Connection con, String threadName, CallSite callSite, StackTraceElement[] stack ) {
+            this.id = id;
+            this.con = con;
+            this.threadName = threadName;
+            this.callSite = callSite;
+            this.stack = stack;
+        }
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+            String name = method.getName();
+
+            if ( "close".equals( name ) ) {
+                close();
+                return null;
+            }
+            if ( "toString".equals( name ) ) {
+                return "LeakDetecting#" + id + "[" + con + "]";
+            }
+            if ( "hashCode".equals( name ) ) {
+                return System.identityHashCode( proxy );
+            }
+            if ( "equals".equals( name ) ) {
+                return proxy == args[0];
+            }
+
+            try {
+                return method.invoke( con, args );
+            }
+            catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+
+        private void close() throws SQLException {
+            // close()를 두 번 호출해도 한 번만 기록한다
+            synchronized ( this ) {
+                if ( closed ) {
+                    return;
+                }
+                closed = true;
+            }
+            try {
+                con.close();
+            }
+            finally {
+                release( this );
+            }
+        }
+    }
+
+    private static final class CallSite {
+
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalHoldNanos = new LongAdder();
+        private final AtomicLong maxHoldNanos = new AtomicLong();
+        private final LongAdder leaks = new LongAdder();
+        private final AtomicInteger active = new AtomicInteger();
+
+        private CallSite( String name ) {
+            this.name = name;
+        }
+
+        private CallSiteStats toStats() {
+            return new CallSiteStats( name, count.sum(), totalHoldNanos.sum() / 1e6, maxHoldNanos.get() / 1e6, leaks.sum(), active.get() );
+        }
+    }
+
+    /**
+     * 호출 위치별 보유 시간 (조회 시점의 값)
+     */
+    public static final class CallSiteStats {
+
+        private final String callSite;
+        private final long count;
+        private final double totalHoldMs;
+        private final double maxHoldMs;
+        private final long leaks;
+        private final int active;
+
+        private CallSiteStats( String callSite, long count, double totalHoldMs, double maxHoldMs, long leaks, int active ) {
+            this.callSite = callSite;
+            this.count = count;
+            this.totalHoldMs = totalHoldMs;
+            this.maxHoldMs = maxHoldMs;
+            this.leaks = leaks;
+            this.active = active;
+        }
+
+        public String getCallSite() {
+            return callSite;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getTotalHoldMs() {
+            return totalHoldMs;
+        }
+
+        public double getMaxHoldMs() {
+            return maxHoldMs;
+        }
+
+        public double getAverageHoldMs() {
+            return count == 0 ? 0 : totalHoldMs / count;
+        }
+
+        public long getLeaks() {
+            return leaks;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        @Override
+        public String toString() {
+            return String.format( "%s[count=%d, totalHoldMs=%.3f, avgHoldMs=%.3f, maxHoldMs=%.3f, leaks=%d, active=%d]",
+                    callSite, count, totalHoldMs, getAverageHoldMs(), maxHoldMs, leaks, active );
+        }
+    }
+
+    /**
+     * 지금 빌려간 커넥션 (조회 시점의 값)
+     */
+    public static final class ActiveConnection {
+
+        private final String threadName;
+        private final String callSite;
+        private final double heldMs;
+        private final StackTraceElement[] stack;
+
+        private ActiveConnection( String threadName, String callSite, double heldMs, StackTraceElement[] stack ) {
+            this.threadName = threadName;
+            this.callSite = callSite;
+            this.heldMs = heldMs;
+            this.stack = stack;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        public String getCallSite() {
+            return callSite;
+        }
+
+        public double getHeldMs() {
+            return heldMs;
+        }
+
+        /**
+         * 샘플링되지 않았으면 null
+         */
+        public StackTraceElement[] getStack() {
+            return stack == null ? null : stack.clone();
+        }
+
+        @Override
+        public String toString() {
+            return String.format( "%s[thread=%s, heldMs=%.3f]", callSite, threadName, heldMs );
+        }
+    }
+
+}
@@ -0,0 +1,447 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * 읽기/쓰기 분리 DataSource
+ *
+ * - getConnection() : 항상 primary (쓰기, 트랜잭션, 이 클래스를 모르는 코드)
+ * - getReadConnection() : replica 중 하나 (조회 전용)
+ *
+ * 1. replica 선택 (Balancing)
+ *  - ROUND_ROBIN : 순서대로 돌아가면서
+ *  - LEAST_IN_FLIGHT : 지금 빌려준 커넥션이 가장 적은 replica (같으면 순서대로)
+ *
+ * 2. read-your-writes
+ *  - 쓰레드가 primary 커넥션을 반납한 뒤 stickyWindowMs 동안은 그 쓰레드의 조회도 primary로 보낸다.
+ *    replica는 primary보다 늦게 반영되므로, 방금 저장한 회원을 바로 조회했는데 없다고 나오는 것을 막는다.
+ *  - 쓰레드 단위이므로 다른 쓰레드(비동기 실행 등)에서 조회하면 보장되지 않는다.
+ *
+ * 3. 대상별 지연 시간 (getTargetStats)
+ *  - 빌려준 커넥션으로 만든 Statement의 execute* 실행 시간의 지수 이동 평균(EWMA)을 대상별로 기록한다.
+ *    커넥션 풀에서 커넥션을 얻는 시간은 풀이 고갈되기 전까지는 대상이 느려도 짧으므로 재지 않는다.
+ *    빌려간 쪽이 커넥션을 쥐고 다른 일을 하는 시간(트랜잭션 중 다른 작업, ResultSet을 읽으면서 하는 처리)도 재지 않는다.
+ *  - replica의 평균이 ejectLatencyMs를 넘으면 ejectDurationMs 동안 선택하지 않는다. 기간이 지나면 평균을 지우고 다시 측정한다.
+ *  - replica에서 커넥션을 얻지 못해도 빼고, 이번 조회는 primary로 보낸다.
+ *  - 사용할 수 있는 replica가 없으면 조회도 primary로 보낸다.
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource implements DataSource {
+
+    public enum Balancing {
+        ROUND_ROBIN,
+        LEAST_IN_FLIGHT
+    }
+
+    public static final long DEFAULT_STICKY_WINDOW_MS = 1000;
+    public static final long DEFAULT_EJECT_LATENCY_MS = 500;
+    public static final long DEFAULT_EJECT_DURATION_MS = 30_000;
+
+    // EWMA 가중치 - 새 측정값을 20% 반영
+    private static final double EWMA_ALPHA = 0.2;
+
+    // 측정값이 이 개수보다 적으면 평균을 믿지 않는다 (빼지 않는다)
+    private static final int MIN_SAMPLES_TO_EJECT = 10;
+
+    private final Target primary;
+    private final List<Target> replicas;
+
+    private Balancing balancing = Balancing.ROUND_ROBIN;
+    private long stickyWindowNanos = TimeUnit.MILLISECONDS.toNanos( DEFAULT_STICKY_WINDOW_MS );
+    private long ejectLatencyNanos = TimeUnit.MILLISECONDS.toNanos( DEFAULT_EJECT_LATENCY_MS );
+    private long ejectDurationNanos = TimeUnit.MILLISECONDS.toNanos( DEFAULT_EJECT_DURATION_MS );
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    // 쓰레드가 마지막으로 primary 커넥션을 반납한 시각 (nanoTime)
+    private final ThreadLocal<long[]> lastWrite = ThreadLocal.withInitial( () -> new long[] { Long.MIN_VALUE } );
+
+    public ReadWriteRoutingDataSource( DataSource primary, List<DataSource> replicas ) {
+        this.primary = new Target( "primary", primary );
+        this.replicas = new ArrayList<>( replicas.size() );
+        for ( int i = 0; i < replicas.size(); i++ ) {
+            this.replicas.add( new Target( "replica-" + i, replicas.get( i ) ) );
+        }
+    }
+
+    public void setBalancing( Balancing balancing ) {
+        this.balancing = balancing;
+    }
+
+    public void setStickyWindowMs( long stickyWindowMs ) {
+        if ( stickyWindowMs < 0 ) {
+            throw new IllegalArgumentException( "stickyWindowMs must not be negative, stickyWindowMs = " + stickyWindowMs );
+        }
+        this.stickyWindowNanos = TimeUnit.MILLISECONDS.toNanos( stickyWindowMs );
+    }
+
+    public void setEjectLatencyMs( long ejectLatencyMs ) {
+        if ( ejectLatencyMs <= 0 ) {
+            throw new IllegalArgumentException( "ejectLatencyMs must be positive, ejectLatencyMs = " + ejectLatencyMs );
+        }
+        this.ejectLatencyNanos = TimeUnit.MILLISECONDS.toNanos( ejectLatencyMs );
+    }
+
+    public void setEjectDurationMs( long ejectDurationMs ) {
+        if ( ejectDurationMs < 0 ) {
+            throw new IllegalArgumentException( "ejectDurationMs must not be negative, ejectDurationMs = " + ejectDurationMs );
+        }
+        this.ejectDurationNanos = TimeUnit.MILLISECONDS.toNanos( ejectDurationMs );
+    }
+
+    /**
+     * 쓰기용 커넥션 - 항상 primary
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        return primary.borrow( true );
+    }
+
+    @Override
+    public Connection getConnection( String username, String password ) throws SQLException {
+        throw new SQLFeatureNotSupportedException( "getConnection( username, password ) is not supported by routing data source" );
+    }
+
+    /**
+     * 조회용 커넥션 - replica (read-your-writes 기간이거나 사용할 replica가 없으면 primary)
+     */
+    public Connection getReadConnection() throws SQLException {
+        long now = System.nanoTime();
+        if ( now - lastWrite.get()[0] < stickyWindowNanos ) {
+            return primary.borrow( false );
+        }
+
+        Target replica = selectReplica( now );
+        if ( replica == null ) {
+            return primary.borrow( false );
+        }
+
+        try {
+            return replica.borrow( false );
+        }
+        catch (SQLException e) {
+            log.warn( "replica connection failed, eject target={}", replica.name, e );
+            replica.eject( now );
+            return primary.borrow( false );
+        }
+    }
+
+    private Target selectReplica( long now ) {
+        int size = replicas.size();
+        if ( size == 0 ) {
+            return null;
+        }
+
+        int start = Math.floorMod( nextReplica.getAndIncrement(), size );
+        Target selected = null;
+        for ( int i = 0; i < size; i++ ) {
+            Target candidate = replicas.get( ( start + i ) % size );
+            if ( !candidate.isAvailable( now ) ) {
+                continue;
+            }
+            if ( balancing == Balancing.ROUND_ROBIN ) {
+                return candidate;
+            }
+            if ( selected == null || candidate.inFlight.get() < selected.inFlight.get() ) {
+                selected = candidate;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 대상별 현재 상태 (primary가 첫 번째)
+     */
+    public List<TargetStats> getTargetStats() {
+        long now = System.nanoTime();
+        List<TargetStats> stats = new ArrayList<>( replicas.size() + 1 );
+        stats.add( primary.stats( now ) );
+        for ( Target replica : replicas ) {
+            stats.add( replica.stats( now ) );
+        }
+        return stats;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter( PrintWriter out ) throws SQLException {
+        primary.dataSource.setLogWriter( out );
+    }
+
+    @Override
+    public void setLoginTimeout( int seconds ) throws SQLException {
+        primary.dataSource.setLoginTimeout( seconds );
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return primary.dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap( Class<T> iface ) throws SQLException {
+        if ( iface.isInstance( this ) ) {
+            return iface.cast( this );
+        }
+        return primary.dataSource.unwrap( iface );
+    }
+
+    @Override
+    public boolean isWrapperFor( Class<?> iface ) throws SQLException {
+        return iface.isInstance( this ) || primary.dataSource.isWrapperFor( iface );
+    }
+
+    /**
+     * 대상 하나의 상태 스냅샷
+     */
+    public static final class TargetStats {
+
+        private final String name;
+        private final int inFlight;
+        private final long requests;
+        private final double latencyEwmaMs;
+        private final boolean ejected;
+
+        private TargetStats( String name, int inFlight, long requests, double latencyEwmaMs, boolean ejected ) {
+            this.name = name;
+            this.inFlight = inFlight;
+            this.requests = requests;
+            this.latencyEwmaMs = latencyEwmaMs;
+            this.ejected = ejected;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public double getLatencyEwmaMs() {
+            return latencyEwmaMs;
+        }
+
+        public boolean isEjected() {
+            return ejected;
+        }
+
+        @Override
+        public String toString() {
+            return String.format( "%s[inFlight=%d, requests=%d, latencyEwmaMs=%.3f, ejected=%s]", name, inFlight, requests, latencyEwmaMs, ejected );
+        }
+    }
+
+    /**
+     * primary 또는 replica 하나
+     */
+    private final class Target {
+
+        private final String name;
+        private final DataSource dataSource;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+
+        // 지연 시간 EWMA (nanos, Double 비트) 와 현재 평균에 반영된 측정값 수
+        private final AtomicLong latencyEwmaBits = new AtomicLong( Double.doubleToRawLongBits( 0.0 ) );
+        private final AtomicInteger samples = new AtomicInteger();
+
+        // 이 시각(nanoTime)까지 선택하지 않는다
+        private volatile long ejectedUntil;
+        private volatile boolean ejected;
+
+        private Target( String name, DataSource dataSource ) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        private Connection borrow( boolean write ) throws SQLException {
+            Connection con = dataSource.getConnection();
+            inFlight.incrementAndGet();
+            requests.increment();
+
+            RoutedConnection handler = new RoutedConnection( this, con, write );
+            return (Connection) Proxy.newProxyInstance( Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, handler );
+        }
+
+        private void release( boolean write ) {
+            inFlight.decrementAndGet();
+            if ( write ) {
+                lastWrite.get()[0] = System.nanoTime();
+            }
+        }
+
+        private void record( long latencyNanos, long now ) {
+            double updated;
+            while ( true ) {
+                long bits = latencyEwmaBits.get();
+                double current = Double.longBitsToDouble( bits );
+                updated = samples.get() == 0 ? latencyNanos : current + EWMA_ALPHA * ( latencyNanos - current );
+                if ( latencyEwmaBits.compareAndSet( bits, Double.doubleToRawLongBits( updated ) ) ) {
+                    break;
+                }
+            }
+
+            if ( samples.incrementAndGet() >= MIN_SAMPLES_TO_EJECT && updated > ejectLatencyNanos && this != primary && !ejected ) {
+                log.warn( "slow replica, eject target={}, latencyEwmaMs={}", name, updated / 1_000_000.0 );
+                eject( now );
+            }
+        }
+
+        private void eject( long now ) {
+            ejectedUntil = now + ejectDurationNanos;
+            ejected = true;
+        }
+
+        private boolean isAvailable( long now ) {
+            if ( !ejected ) {
+                return true;
+            }
+            if ( now - ejectedUntil < 0 ) {
+                return false;
+            }
+            // 기간이 지났으면 평균을 지우고 다시 측정한다
+            latencyEwmaBits.set( Double.doubleToRawLongBits( 0.0 ) );
+            samples.set( 0 );
+            ejected = false;
+            log.info( "replica back in rotation, target={}", name );
+            return true;
+        }
+
+        private TargetStats stats( long now ) {
+            double latencyEwmaMs = Double.longBitsToDouble( latencyEwmaBits.get() ) / 1_000_000.0;
+            return new TargetStats( name, inFlight.get(), requests.sum(), latencyEwmaMs, ejected && now - ejectedUntil < 0 );
+        }
+    }
+
+    /**
+     * 빌려준 커넥션 프록시. close() 시점에 빌려준 수와 마지막 쓰기 시각을 기록한다.
+     * 이 커넥션으로 만든 Statement는 RoutedStatement로 감싼다.
+     */
+    private static final class RoutedConnection implements InvocationHandler {
+
+        private final Target target;
+        private final Connection con;
+        private final boolean write;
+        private boolean closed;
+
+        private RoutedConnection( Target target, Connection con, boolean write ) {
+            this.target = target;
+            this.con = con;
+            this.write = write;
+        }
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+            String name = method.getName();
+
+            if ( "close".equals( name ) ) {
+                if ( !closed ) {
+                    closed = true;
+                    target.release( write );
+                    con.close();
+                }
+                return null;
+            }
+            if ( "isClosed".equals( name ) ) {
+                return closed || con.isClosed();
+            }
+            if ( "toString".equals( name ) ) {
+                return target.name + "[" + con + "]";
+            }
+
+            Object result;
+            try {
+                result = method.invoke( con, args );
+            }
+            catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+
+            // createStatement, prepareStatement, prepareCall
+            if ( result instanceof Statement ) {
+                Class<?> type = method.getReturnType();
+                RoutedStatement handler = new RoutedStatement( target, (Connection) proxy, (Statement) result );
+                return Proxy.newProxyInstance( type.getClassLoader(), new Class<?>[] { type }, handler );
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 빌려준 커넥션으로 만든 Statement 프록시. execute* 실행 시간을 대상의 지연 시간으로 기록한다.
+     */
+    private static final class RoutedStatement implements InvocationHandler {
+
+        private final Target target;
+        private final Connection connection;
+        private final Statement stmt;
+
+        private RoutedStatement( Target target, Connection connection, Statement stmt ) {
+            this.target = target;
+            this.connection = connection;
+            this.stmt = stmt;
+        }
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+            String name = method.getName();
+
+            // 원래 커넥션이 아니라 빌려준 커넥션 프록시를 돌려준다 (close()를 거치도록)
+            if ( "getConnection".equals( name ) ) {
+                return connection;
+            }
+            if ( "toString".equals( name ) ) {
+                return target.name + "[" + stmt + "]";
+            }
+
+            boolean execute = name.startsWith( "execute" );
+            long start = execute ? System.nanoTime() : 0;
+            try {
+                return method.invoke( stmt, args );
+            }
+            catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+            finally {
+                if ( execute ) {
+                    long now = System.nanoTime();
+                    target.record( now - start, now );
+                }
+            }
+        }
+    }
+
+}
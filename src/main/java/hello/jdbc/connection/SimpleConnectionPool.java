@@ -0,0 +1,551 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * 직접 만든 커넥션 풀 DataSource
+ *
+ * DBConnectionUtil은 호출할 때마다 DriverManager로 새 커넥션을 만든다. (TCP 연결 + 인증 -> 느리다)
+ * 커넥션을 미리 만들어두고 빌려주고 돌려받는 방식으로, 커넥션을 만드는 비용을 호출 경로(hot path)에서 뺀다.
+ * 구조는 HikariCP의 ConcurrentBag을 단순하게 따라 만들었다.
+ *
+ * 1. 커넥션 빌리기 (락 없이)
+ *  - 쓰레드 로컬 : 이 쓰레드가 최근에 반납한 커넥션부터 찾는다. 대부분 여기서 바로 찾는다.
+ *  - 공유 목록 : 모든 커넥션 목록(CopyOnWriteArrayList)을 돌면서 사용 중이 아닌 것을 CAS로 차지한다.
+ *  - 기다리기 : 없으면 커넥션 생성을 요청하고, 다른 쓰레드가 반납하는 커넥션을 SynchronousQueue로 직접 넘겨받는다.
+ *    connectionTimeout 안에 못 받으면 SQLTransientConnectionException
+ *
+ * 2. 검증은 필요할 때만
+ *  - 빌려줄 때마다 isValid()로 DB에 물어보면 그만큼 왕복이 늘어난다.
+ *  - validationIdleThreshold 보다 오래 쉬었던 커넥션만 검증한다.
+ *
+ * 3. 별도 쓰레드에서 채우기/정리하기
+ *  - 커넥션 생성은 "connection adder" 쓰레드가, 오래 쉰 커넥션(idleTimeout)과 오래된 커넥션(maxLifetime) 정리 및
+ *    minimumIdle 까지 채우기는 "housekeeper" 쓰레드가 한다.
+ *
+ * 4. 통계
+ *  - 빌린 횟수, 기다린 횟수, 기다린 시간 합계/최대, 타임아웃 횟수
+ */
+@Slf4j
+public class SimpleConnectionPool implements DataSource, AutoCloseable {
+
+    private static final int NOT_IN_USE = 0;
+    private static final int IN_USE = 1;
+    private static final int REMOVED = -1;
+
+    // 쓰레드 로컬 목록에 보관할 최대 커넥션 수
+    private static final int THREAD_LOCAL_MAX = 16;
+
+    private final DataSource dataSource;
+    private final String poolName;
+
+    private int maximumPoolSize = 10;
+    private int minimumIdle = 10;
+    private long connectionTimeoutMs = 30_000;
+    private long validationIdleThresholdMs = 500;
+    private int validationTimeoutSeconds = 5;
+    private long idleTimeoutMs = 600_000;
+    private long maxLifetimeMs = 1_800_000;
+    private long housekeepingPeriodMs = 30_000;
+
+    private final CopyOnWriteArrayList<PoolEntry> entries = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<List<WeakReference<PoolEntry>>> threadLocalEntries = ThreadLocal.withInitial( () -> new ArrayList<>( THREAD_LOCAL_MAX ) );
+    private final SynchronousQueue<PoolEntry> handoffQueue = new SynchronousQueue<>( true );
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    // 만들었거나 만들고 있는 커넥션 수 (maximumPoolSize를 넘지 않게 CAS로 관리)
+    private final AtomicInteger totalConnections = new AtomicInteger();
+
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder waitCount = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator( Math::max, 0 );
+    private final LongAdder timeoutCount = new LongAdder();
+
+    private ScheduledExecutorService adder;
+    private ScheduledExecutorService housekeeper;
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    public SimpleConnectionPool( DataSource dataSource, String poolName ) {
+        this.dataSource = dataSource;
+        this.poolName = poolName;
+    }
+
+    public void setMaximumPoolSize( int maximumPoolSize ) {
+        if ( maximumPoolSize <= 0 ) {
+            throw new IllegalArgumentException( "maximumPoolSize must be positive, maximumPoolSize = " + maximumPoolSize );
+        }
+        this.maximumPoolSize = maximumPoolSize;
+        this.minimumIdle = Math.min( minimumIdle, maximumPoolSize );
+    }
+
+    public void setMinimumIdle( int minimumIdle ) {
+        this.minimumIdle = Math.min( minimumIdle, maximumPoolSize );
+    }
+
+    public void setConnectionTimeoutMs( long connectionTimeoutMs ) {
+        this.connectionTimeoutMs = connectionTimeoutMs;
+    }
+
+    public void setValidationIdleThresholdMs( long validationIdleThresholdMs ) {
+        this.validationIdleThresholdMs = validationIdleThresholdMs;
+    }
+
+    public void setIdleTimeoutMs( long idleTimeoutMs ) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    public void setMaxLifetimeMs( long maxLifetimeMs ) {
+        this.maxLifetimeMs = maxLifetimeMs;
+    }
+
+    public void setHousekeepingPeriodMs( long housekeepingPeriodMs ) {
+        this.housekeepingPeriodMs = housekeepingPeriodMs;
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if ( !started ) {
+            start();
+        }
+        if ( closed ) {
+            throw new SQLException( poolName + " - pool is closed" );
+        }
+
+        long startNanos = System.nanoTime();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos( connectionTimeoutMs );
+
+        while ( true ) {
+            PoolEntry entry = borrow( startNanos, timeoutNanos );
+            if ( entry == null ) {
+                timeoutCount.increment();
+                throw new SQLTransientConnectionException( poolName + " - Connection is not available, request timed out after "
+                        + TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startNanos ) + "ms." );
+            }
+
+            // 오래 쉬었던 커넥션만 검증한다
+            long idleNanos = System.nanoTime() - entry.lastAccessed;
+            if ( idleNanos > TimeUnit.MILLISECONDS.toNanos( validationIdleThresholdMs ) && !isValid( entry ) ) {
+                log.warn( "{} - remove invalid connection={}", poolName, entry.connection );
+                remove( entry );
+                continue;
+            }
+
+            borrowCount.increment();
+            return entry.newProxy();
+        }
+    }
+
+    @Override
+    public Connection getConnection( String username, String password ) throws SQLException {
+        throw new SQLFeatureNotSupportedException( "use getConnection()" );
+    }
+
+    /**
+     * 커넥션 빌리기 - 쓰레드 로컬 -> 공유 목록 -> 반납되는 커넥션 기다리기
+     * @return 시간 안에 못 빌리면 null
+     */
+    private PoolEntry borrow( long startNanos, long timeoutNanos ) throws SQLException {
+        List<WeakReference<PoolEntry>> local = threadLocalEntries.get();
+        for ( int i = local.size() - 1; i >= 0; i-- ) {
+            PoolEntry entry = local.remove( i ).get();
+            if ( entry != null && entry.compareAndSet( NOT_IN_USE, IN_USE ) ) {
+                return entry;
+            }
+        }
+
+        int waiting = waiters.incrementAndGet();
+        try {
+            for ( PoolEntry entry : entries ) {
+                if ( entry.compareAndSet( NOT_IN_USE, IN_USE ) ) {
+                    // 내가 가져가서 다른 대기자 몫이 모자랄 수 있으므로 하나 더 만들어둔다
+                    if ( waiting > 1 ) {
+                        requestAdd();
+                    }
+                    return entry;
+                }
+            }
+
+            requestAdd();
+            waitCount.increment();
+            try {
+                long remaining = timeoutNanos - ( System.nanoTime() - startNanos );
+                while ( remaining > 0 ) {
+                    PoolEntry entry = handoffQueue.poll( remaining, TimeUnit.NANOSECONDS );
+                    if ( entry != null && entry.compareAndSet( NOT_IN_USE, IN_USE ) ) {
+                        return entry;
+                    }
+                    remaining = timeoutNanos - ( System.nanoTime() - startNanos );
+                }
+                return null;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException( poolName + " - interrupted during connection acquisition", e );
+            }
+            finally {
+                long waited = System.nanoTime() - startNanos;
+                waitNanos.add( waited );
+                maxWaitNanos.accumulate( waited );
+            }
+        }
+        finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * 커넥션 반납 - 기다리는 쓰레드가 있으면 직접 넘겨주고, 없으면 이 쓰레드의 쓰레드 로컬 목록에 넣어둔다
+     */
+    private void requite( PoolEntry entry ) {
+        entry.lastAccessed = System.nanoTime();
+        entry.set( NOT_IN_USE );
+
+        for ( int i = 0; waiters.get() > 0; i++ ) {
+            // 이미 다른 쓰레드가 공유 목록에서 가져갔거나, 대기자가 받아갔다
+            if ( entry.get() != NOT_IN_USE || handoffQueue.offer( entry ) ) {
+                return;
+            }
+            // 대기자가 아직 poll()에 도착하지 않았을 수 있으므로 잠깐 양보하고 다시 시도한다
+            if ( ( i & 0xff ) == 0xff ) {
+                LockSupport.parkNanos( TimeUnit.MICROSECONDS.toNanos( 10 ) );
+            }
+            else {
+                Thread.yield();
+            }
+        }
+
+        List<WeakReference<PoolEntry>> local = threadLocalEntries.get();
+        if ( local.size() < THREAD_LOCAL_MAX ) {
+            local.add( new WeakReference<>( entry ) );
+        }
+    }
+
+    /**
+     * connection adder 쓰레드에 커넥션 하나 생성을 요청한다 (maximumPoolSize 까지만)
+     */
+    private void requestAdd() {
+        while ( true ) {
+            int total = totalConnections.get();
+            if ( total >= maximumPoolSize || closed ) {
+                return;
+            }
+            if ( totalConnections.compareAndSet( total, total + 1 ) ) {
+                adder.execute( this::addConnection );
+                return;
+            }
+        }
+    }
+
+    private void addConnection() {
+        try {
+            Connection connection = dataSource.getConnection();
+            PoolEntry entry = new PoolEntry( connection );
+            entries.add( entry );
+            log.debug( "{} - added connection={}", poolName, connection );
+            // 기다리는 쓰레드가 있으면 바로 넘겨준다
+            requite( entry );
+        }
+        catch (SQLException e) {
+            totalConnections.decrementAndGet();
+            log.error( "{} - cannot create connection", poolName, e );
+        }
+    }
+
+    private boolean isValid( PoolEntry entry ) {
+        try {
+            return entry.connection.isValid( validationTimeoutSeconds );
+        }
+        catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void remove( PoolEntry entry ) {
+        entry.set( REMOVED );
+        if ( entries.remove( entry ) ) {
+            totalConnections.decrementAndGet();
+        }
+        try {
+            entry.connection.close();
+        }
+        catch (SQLException e) {
+            log.error( "error", e );
+        }
+    }
+
+    /**
+     * housekeeper - 오래 쉰 커넥션(minimumIdle 초과분)과 maxLifetime이 지난 커넥션을 정리하고, minimumIdle 까지 채운다
+     */
+    private void housekeep() {
+        long now = System.nanoTime();
+        int idle = getIdleConnections();
+        for ( PoolEntry entry : entries ) {
+            boolean expired = now - entry.createdAt > TimeUnit.MILLISECONDS.toNanos( maxLifetimeMs );
+            boolean idleTooLong = idle > minimumIdle && now - entry.lastAccessed > TimeUnit.MILLISECONDS.toNanos( idleTimeoutMs );
+            if ( ( expired || idleTooLong ) && entry.compareAndSet( NOT_IN_USE, REMOVED ) ) {
+                log.debug( "{} - retire connection={}, expired={}", poolName, entry.connection, expired );
+                remove( entry );
+                idle--;
+            }
+        }
+        fillPool();
+    }
+
+    private void fillPool() {
+        int toAdd = minimumIdle - getIdleConnections();
+        for ( int i = 0; i < toAdd; i++ ) {
+            requestAdd();
+        }
+    }
+
+    private synchronized void start() {
+        if ( started ) {
+            return;
+        }
+        adder = Executors.newSingleThreadScheduledExecutor( daemon( poolName + " connection adder" ) );
+        housekeeper = Executors.newSingleThreadScheduledExecutor( daemon( poolName + " housekeeper" ) );
+        housekeeper.scheduleWithFixedDelay( this::housekeep, housekeepingPeriodMs, housekeepingPeriodMs, TimeUnit.MILLISECONDS );
+        started = true;
+        fillPool();
+        log.info( "{} - started, maximumPoolSize={}, minimumIdle={}", poolName, maximumPoolSize, minimumIdle );
+    }
+
+    @Override
+    public synchronized void close() {
+        if ( closed ) {
+            return;
+        }
+        closed = true;
+        if ( started ) {
+            adder.shutdownNow();
+            housekeeper.shutdownNow();
+        }
+        for ( PoolEntry entry : entries ) {
+            remove( entry );
+        }
+        log.info( "{} - closed", poolName );
+    }
+
+    public int getTotalConnections() {
+        return entries.size();
+    }
+
+    public int getIdleConnections() {
+        int idle = 0;
+        for ( PoolEntry entry : entries ) {
+            if ( entry.get() == NOT_IN_USE ) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    public int getActiveConnections() {
+        return getTotalConnections() - getIdleConnections();
+    }
+
+    public int getThreadsAwaitingConnection() {
+        return waiters.get();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    /**
+     * 쓰레드 로컬/공유 목록에서 바로 못 찾고 기다린 횟수
+     */
+    public long getWaitCount() {
+        return waitCount.sum();
+    }
+
+    public long getTotalWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    private static ThreadFactory daemon( String name ) {
+        return runnable -> {
+            Thread thread = new Thread( runnable, name );
+            thread.setDaemon( true );
+            return thread;
+        };
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter( PrintWriter out ) throws SQLException {
+        dataSource.setLogWriter( out );
+    }
+
+    @Override
+    public void setLoginTimeout( int seconds ) throws SQLException {
+        dataSource.setLoginTimeout( seconds );
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap( Class<T> iface ) throws SQLException {
+        if ( iface.isInstance( this ) ) {
+            return iface.cast( this );
+        }
+        return dataSource.unwrap( iface );
+    }
+
+    @Override
+    public boolean isWrapperFor( Class<?> iface ) throws SQLException {
+        return iface.isInstance( this ) || dataSource.isWrapperFor( iface );
+    }
+
+    /**
+     * 풀에 들어있는 물리 커넥션 하나. 상태(NOT_IN_USE, IN_USE, REMOVED)를 CAS로 바꾼다.
+     */
+    private final class PoolEntry extends AtomicInteger {
+
+        private final Connection connection;
+        private final long createdAt = System.nanoTime();
+        private volatile long lastAccessed = createdAt;
+
+        private PoolEntry( Connection connection ) {
+            super( NOT_IN_USE );
+            this.connection = connection;
+        }
+
+        private Connection newProxy() {
+            return (Connection) Proxy.newProxyInstance( Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, new PooledConnection( this ) );
+        }
+    }
+
+    /**
+     * 빌려준 커넥션 프록시 - close()를 호출하면 물리 커넥션을 닫지 않고 풀에 반납한다.
+     * 빌려줄 때마다 새로 만들기 때문에, 반납한 뒤에 예전 프록시를 사용하면 에러가 난다.
+     */
+    private final class PooledConnection implements InvocationHandler {
+
+        private final PoolEntry entry;
+        private boolean closed;
+        // 연결이 끊기는 종류의 에러(SQLState 08xxx)가 나면 반납할 때 버린다
+        private boolean broken;
+
+        private PooledConnection( PoolEntry entry ) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+            String name = method.getName();
+
+            if ( "close".equals( name ) ) {
+                close();
+                return null;
+            }
+            if ( "isClosed".equals( name ) ) {
+                return closed;
+            }
+            if ( closed ) {
+                if ( "toString".equals( name ) ) {
+                    return "closed PooledConnection";
+                }
+                throw new SQLException( "connection is closed" );
+            }
+
+            try {
+                return method.invoke( entry.connection, args );
+            }
+            catch (InvocationTargetException e) {
+                Throwable target = e.getTargetException();
+                if ( target instanceof SQLException ) {
+                    String sqlState = ( (SQLException) target ).getSQLState();
+                    broken |= sqlState != null && sqlState.startsWith( "08" );
+                }
+                throw target;
+            }
+        }
+
+        private void close() {
+            if ( closed ) {
+                return;
+            }
+            closed = true;
+
+            if ( !broken ) {
+                try {
+                    // 빌려간 쪽에서 바꾼 상태를 되돌린다 (트랜잭션 중이었다면 롤백)
+                    if ( !entry.connection.getAutoCommit() ) {
+                        entry.connection.rollback();
+                        entry.connection.setAutoCommit( true );
+                    }
+                    if ( entry.connection.isReadOnly() ) {
+                        entry.connection.setReadOnly( false );
+                    }
+                }
+                catch (SQLException e) {
+                    log.warn( "{} - connection reset failed", poolName, e );
+                    broken = true;
+                }
+            }
+
+            boolean expired = System.nanoTime() - entry.createdAt > TimeUnit.MILLISECONDS.toNanos( maxLifetimeMs );
+            if ( broken || expired || SimpleConnectionPool.this.closed ) {
+                remove( entry );
+                if ( !SimpleConnectionPool.this.closed ) {
+                    requestAdd();
+                }
+                return;
+            }
+            requite( entry );
+        }
+    }
+
+}
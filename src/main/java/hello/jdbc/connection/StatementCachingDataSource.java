@@ -0,0 +1,297 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * PreparedStatement 캐시 DataSource
+ *
+ * - 리포지토리는 매번 같은 SQL로 con.prepareStatement(sql)을 호출하고 close() 한다.
+ *   그러면 드라이버는 매번 SQL을 다시 파싱하고 DB에 다시 준비(prepare) 요청을 보낸다.
+ * - 이 DataSource가 만든 커넥션은 prepareStatement(sql)로 만든 PreparedStatement를 close() 해도 실제로 닫지 않고
+ *   SQL을 키로 커넥션 안의 캐시에 보관했다가, 다음에 같은 SQL이 오면 그대로 다시 꺼내준다.
+ *
+ * [사용법] 물리 커넥션마다 캐시가 있어야 하므로 커넥션 풀(HikariCP) 안쪽에 둔다.
+ *      HikariDataSource dataSource = new HikariDataSource();
+ *      dataSource.setDataSource( new StatementCachingDataSource( new DriverManagerDataSource( URL, USERNAME, PASSWORD ) ) );
+ *  - 풀이 커넥션을 빌려주고 돌려받아도 물리 커넥션은 그대로이므로 캐시도 그대로 재사용된다.
+ *  - 풀이 커넥션을 폐기(maxLifetime, 에러 등)할 때 con.close()를 호출하면 캐시된 PreparedStatement도 모두 닫는다.
+ *
+ * 캐시 크기
+ *  - 커넥션마다 최대 cacheSize 개를 보관하고, 넘치면 가장 오래 사용되지 않은(LRU) PreparedStatement를 닫는다.
+ */
+@Slf4j
+public class StatementCachingDataSource implements DataSource {
+
+    public static final int DEFAULT_CACHE_SIZE = 32;
+
+    private final DataSource dataSource;
+    private final int cacheSize;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public StatementCachingDataSource( DataSource dataSource ) {
+        this( dataSource, DEFAULT_CACHE_SIZE );
+    }
+
+    public StatementCachingDataSource( DataSource dataSource, int cacheSize ) {
+        if ( cacheSize <= 0 ) {
+            throw new IllegalArgumentException( "cacheSize must be positive, cacheSize = " + cacheSize );
+        }
+        this.dataSource = dataSource;
+        this.cacheSize = cacheSize;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap( dataSource.getConnection() );
+    }
+
+    @Override
+    public Connection getConnection( String username, String password ) throws SQLException {
+        return wrap( dataSource.getConnection( username, password ) );
+    }
+
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    private Connection wrap( Connection con ) {
+        CachingConnection handler = new CachingConnection( con );
+        handler.proxy = (Connection) Proxy.newProxyInstance( Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, handler );
+        return handler.proxy;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter( PrintWriter out ) throws SQLException {
+        dataSource.setLogWriter( out );
+    }
+
+    @Override
+    public void setLoginTimeout( int seconds ) throws SQLException {
+        dataSource.setLoginTimeout( seconds );
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap( Class<T> iface ) throws SQLException {
+        if ( iface.isInstance( this ) ) {
+            return iface.cast( this );
+        }
+        return dataSource.unwrap( iface );
+    }
+
+    @Override
+    public boolean isWrapperFor( Class<?> iface ) throws SQLException {
+        return iface.isInstance( this ) || dataSource.isWrapperFor( iface );
+    }
+
+    /**
+     * 물리 커넥션 하나에 대한 프록시. 사용하지 않는(idle) PreparedStatement를 SQL 별로 보관한다.
+     * - 커넥션은 한 번에 한 쓰레드만 사용하지만, 풀의 정리 쓰레드가 close() 할 수 있으므로 synchronized로 보호한다.
+     */
+    private final class CachingConnection implements InvocationHandler {
+
+        private final Connection con;
+        private Connection proxy;
+        private boolean closed;
+
+        // accessOrder = true : 꺼내 쓸 때마다 맨 뒤로 이동 -> 맨 앞이 가장 오래 사용되지 않은 것
+        private final LinkedHashMap<String, CachedStatement> idle = new LinkedHashMap<>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, CachedStatement> eldest ) {
+                if ( size() > cacheSize ) {
+                    evictionCount.increment();
+                    eldest.getValue().closePhysical();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        private CachingConnection( Connection con ) {
+            this.con = con;
+        }
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+            String name = method.getName();
+
+            if ( "prepareStatement".equals( name ) && args.length == 1 ) {
+                return prepareStatement( (String) args[0] );
+            }
+            if ( "close".equals( name ) ) {
+                close();
+                return null;
+            }
+            if ( "isClosed".equals( name ) ) {
+                return closed || con.isClosed();
+            }
+            if ( "toString".equals( name ) ) {
+                return "StatementCaching[" + con + "]";
+            }
+
+            try {
+                return method.invoke( con, args );
+            }
+            catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+
+        private synchronized PreparedStatement prepareStatement( String sql ) throws SQLException {
+            CachedStatement cached = idle.remove( sql );
+            if ( cached != null ) {
+                hitCount.increment();
+                cached.closed = false;
+                return cached.proxy;
+            }
+
+            missCount.increment();
+            CachedStatement created = new CachedStatement( this, sql, con.prepareStatement( sql ) );
+            created.proxy = (PreparedStatement) Proxy.newProxyInstance( PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, created );
+            return created.proxy;
+        }
+
+        /**
+         * PreparedStatement.close() 시 호출 - 실제로 닫지 않고 캐시로 돌려놓는다.
+         * 같은 SQL의 PreparedStatement가 이미 캐시에 있거나 커넥션이 닫혔으면 실제로 닫는다.
+         */
+        private synchronized void release( CachedStatement statement ) {
+            if ( closed || idle.containsKey( statement.sql ) ) {
+                statement.closePhysical();
+                return;
+            }
+            idle.put( statement.sql, statement );
+        }
+
+        private synchronized void close() throws SQLException {
+            if ( closed ) {
+                return;
+            }
+            closed = true;
+
+            List<CachedStatement> statements = new ArrayList<>( idle.values() );
+            idle.clear();
+            for ( CachedStatement statement : statements ) {
+                statement.closePhysical();
+            }
+            log.debug( "close connection={}, cached statements={}", con, statements.size() );
+            con.close();
+        }
+    }
+
+    /**
+     * 캐시되는 PreparedStatement 프록시. close()만 가로채서 커넥션의 캐시로 돌려놓는다.
+     */
+    private static final class CachedStatement implements InvocationHandler {
+
+        private final CachingConnection owner;
+        private final String sql;
+        private final PreparedStatement pstmt;
+        private PreparedStatement proxy;
+        private boolean closed;
+
+        private CachedStatement( CachingConnection owner, String sql, PreparedStatement pstmt ) {
+            this.owner = owner;
+            this.sql = sql;
+            this.pstmt = pstmt;
+        }
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+            String name = method.getName();
+
+            if ( "close".equals( name ) ) {
+                close();
+                return null;
+            }
+            if ( "isClosed".equals( name ) ) {
+                return closed || pstmt.isClosed();
+            }
+            if ( "getConnection".equals( name ) ) {
+                return owner.proxy;
+            }
+            if ( closed ) {
+                throw new SQLException( "statement is closed, sql = " + sql );
+            }
+
+            try {
+                return method.invoke( pstmt, args );
+            }
+            catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+
+        private void close() {
+            if ( closed ) {
+                return;
+            }
+            closed = true;
+
+            // 다음 사용자를 위해 바인딩한 파라미터와 모아둔 배치를 비운다. 실패하면 재사용하지 않고 닫는다.
+            try {
+                pstmt.clearParameters();
+                pstmt.clearBatch();
+            }
+            catch (SQLException e) {
+                log.warn( "statement reset failed, sql={}", sql, e );
+                closePhysical();
+                return;
+            }
+            owner.release( this );
+        }
+
+        private void closePhysical() {
+            closed = true;
+            try {
+                pstmt.close();
+            }
+            catch (SQLException e) {
+                log.error( "error", e );
+            }
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MemberRepositoryV1 비동기 버전 - 결과를 CompletableFuture로 돌려준다
+ *
+ * - 호출한 쓰레드는 DB 왕복을 기다리지 않고 바로 다음 일을 할 수 있다. (여러 회원을 동시에 조회 등)
+ * - 실제 JDBC 호출은 executor 쓰레드에서 블로킹으로 실행된다. JDBC 자체는 비동기 API가 없기 때문.
+ *
+ * 동시 실행 수 제한 (Semaphore)
+ *  - 커넥션 풀 크기보다 많이 동시에 실행해봐야 나머지는 풀에서 커넥션을 기다리다가 타임아웃(기본 30초)이 난다.
+ *  - maxConcurrency(보통 maximumPoolSize와 같게)만큼만 동시에 DB를 사용하고, 나머지는 세마포어에서 순서를 기다린다.
+ *
+ * Executor
+ *  - 가상 쓰레드(JDK 21+)를 사용할 수 있으면 작업마다 가상 쓰레드를 만든다. 세마포어에서 기다리는 비용이 거의 없다.
+ *  - 아니면 maxConcurrency 개의 쓰레드 + 크기 제한이 있는 큐를 사용한다. 큐가 가득 차면 RejectedExecutionException으로 실패한 future를 돌려준다.
+ */
+@Slf4j
+public class AsyncMemberRepository implements AutoCloseable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+    private final MemberRepositoryV1 repository;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    public AsyncMemberRepository( MemberRepositoryV1 repository, int maxConcurrency ) {
+        this( repository, maxConcurrency, createExecutor( maxConcurrency, DEFAULT_QUEUE_CAPACITY ) );
+    }
+
+    public AsyncMemberRepository( MemberRepositoryV1 repository, int maxConcurrency, ExecutorService executor ) {
+        if ( maxConcurrency <= 0 ) {
+            throw new IllegalArgumentException( "maxConcurrency must be positive, maxConcurrency = " + maxConcurrency );
+        }
+        this.repository = repository;
+        this.executor = executor;
+        this.permits = new Semaphore( maxConcurrency, true );
+    }
+
+    public CompletableFuture<Member> save( Member member ) {
+        return submit( () -> repository.save( member ) );
+    }
+
+    public CompletableFuture<Member> findById( String memberId ) {
+        return submit( () -> repository.findById( memberId ) );
+    }
+
+    public CompletableFuture<Void> update( String memberId, int money ) {
+        return submit( () -> {
+            repository.update( memberId, money );
+            return null;
+        } );
+    }
+
+    public CompletableFuture<Void> delete( String memberId ) {
+        return submit( () -> {
+            repository.delete( memberId );
+            return null;
+        } );
+    }
+
+    public CompletableFuture<int[]> saveAll( Collection<Member> members ) {
+        return submit( () -> repository.saveAll( members ) );
+    }
+
+    /**
+     * 지금 세마포어에서 DB 사용 차례를 기다리고 있는 작업 수
+     */
+    public int getQueueLength() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        if ( !executor.awaitTermination( 30, TimeUnit.SECONDS ) ) {
+            log.warn( "executor did not terminate in 30 seconds" );
+            executor.shutdownNow();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit( SqlCallable<T> callable ) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute( () -> run( callable, future ) );
+        }
+        catch (RejectedExecutionException e) {
+            future.completeExceptionally( e );
+        }
+        return future;
+    }
+
+    private <T> void run( SqlCallable<T> callable, CompletableFuture<T> future ) {
+        try {
+            permits.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally( e );
+            return;
+        }
+
+        try {
+            future.complete( callable.call() );
+        }
+        // SQLException, NoSuchElementException 등은 그대로 future에 담아서 호출한 쪽에서 처리하게 한다
+        catch (Exception e) {
+            future.completeExceptionally( e );
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 가상 쓰레드를 지원하는 JDK면 작업마다 가상 쓰레드를, 아니면 크기가 고정된 쓰레드 풀을 만든다.
+     * - 소스는 Java 11 기준이므로 Executors.newVirtualThreadPerTaskExecutor()를 리플렉션으로 찾는다.
+     */
+    public static ExecutorService createExecutor( int maxConcurrency, int queueCapacity ) {
+        try {
+            Method factory = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+            log.info( "use virtual threads" );
+            return (ExecutorService) factory.invoke( null );
+        }
+        catch (ReflectiveOperationException e) {
+            log.info( "virtual threads not available, use {} platform threads", maxConcurrency );
+        }
+
+        AtomicInteger sequence = new AtomicInteger();
+        return new ThreadPoolExecutor( maxConcurrency, maxConcurrency, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>( queueCapacity ),
+                runnable -> {
+                    Thread thread = new Thread( runnable, "member-repository-async-" + sequence.incrementAndGet() );
+                    thread.setDaemon( true );
+                    return thread;
+                } );
+    }
+
+    @FunctionalInterface
+    private interface SqlCallable<T> {
+        T call() throws SQLException;
+    }
+
+}
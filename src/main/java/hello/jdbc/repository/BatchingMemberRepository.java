@@ -0,0 +1,199 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 동시에 들어온 findById를 모아서 findAllByIds 한 번으로 처리한다 (DataLoader 방식)
+ *
+ * 1. 배치 모으기
+ *  - 열린 배치가 없을 때 들어온 호출이 리더가 되어 새 배치를 연다.
+ *  - 뒤에 들어온 호출(팔로워)은 열린 배치에 memberId를 넣고 자기 결과를 기다린다. 같은 memberId는 결과를 같이 받는다.
+ *  - 리더는 batchWindow 동안 기다리거나, maxBatchSize 만큼 모이면 (마지막으로 넣은 쓰레드가 깨운다) 배치를 닫는다.
+ *
+ * 2. 실행
+ *  - 리더가 자기 쓰레드에서 findAllByIds를 실행한다. (별도 쓰레드 풀 없이 호출한 쓰레드가 일한다)
+ *    -> 커넥션 획득 1번, IN 절 SQL 1번으로 배치 전체를 처리하므로 풀에서 빌리는 횟수가 배치 크기만큼 줄어든다.
+ *  - 없는 회원은 그 memberId를 기다리던 호출에만 NoSuchElementException을 던진다. DB 에러는 배치 전체에 같은 예외를 던진다.
+ *
+ * 3. 비용
+ *  - 리더는 최대 batchWindow 만큼 늦게 시작하므로 한가할 때는 지연시간이 그만큼 늘어난다. 동시 호출이 많을 때 사용한다.
+ *
+ * 4. 트랜잭션
+ *  - 리더는 자기 쓰레드의 커넥션으로 배치를 실행하므로, 트랜잭션 안의 호출이 리더가 되면 다른 쓰레드들이 그 트랜잭션의 커밋 전 데이터를 보게 된다.
+ *  - 그래서 트랜잭션(또는 트랜잭션 동기화) 안에서 호출하면 모으지 않고 repository.findById를 바로 호출한다.
+ *    -> 자기 트랜잭션에서 쓴 커밋 전 회원도 보이고, 다른 쓰레드의 배치에는 섞이지 않는다.
+ *
+ * 5. 같은 memberId
+ *  - 같은 배치에서 같은 memberId를 찾은 호출들은 결과를 같이 받는다. 처음 찾은 호출은 조회한 Member를 그대로 받고,
+ *    뒤에 찾은 호출은 각자 복사본을 받는다. (돌려받은 Member를 수정해도 다른 호출에 영향이 없다)
+ */
+@Slf4j
+public class BatchingMemberRepository {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = MemberRepositoryV1.DEFAULT_IN_LIST_CHUNK_SIZE;
+    public static final long DEFAULT_BATCH_WINDOW_MICROS = 200;
+
+    private final MemberRepositoryV1 repository;
+
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private long batchWindowNanos = TimeUnit.MICROSECONDS.toNanos( DEFAULT_BATCH_WINDOW_MICROS );
+
+    // current(열린 배치)를 바꾸거나 배치에 memberId를 넣을 때만 잡는다 (DB 호출 중에는 잡지 않는다)
+    private final ReentrantLock lock = new ReentrantLock();
+    private Batch current;
+
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+
+    public BatchingMemberRepository( MemberRepositoryV1 repository ) {
+        this.repository = repository;
+    }
+
+    public void setMaxBatchSize( int maxBatchSize ) {
+        if ( maxBatchSize <= 0 ) {
+            throw new IllegalArgumentException( "maxBatchSize must be positive, maxBatchSize = " + maxBatchSize );
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public void setBatchWindowMicros( long batchWindowMicros ) {
+        if ( batchWindowMicros < 0 ) {
+            throw new IllegalArgumentException( "batchWindowMicros must not be negative, batchWindowMicros = " + batchWindowMicros );
+        }
+        this.batchWindowNanos = TimeUnit.MICROSECONDS.toNanos( batchWindowMicros );
+    }
+
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    /**
+     * @throws NoSuchElementException 회원이 없으면
+     */
+    public Member findById( String memberId ) throws SQLException {
+        requestCount.increment();
+
+        if ( TransactionSynchronizationManager.isActualTransactionActive() || TransactionSynchronizationManager.isSynchronizationActive() ) {
+            return repository.findById( memberId );
+        }
+
+        Batch batch;
+        CompletableFuture<Member> future;
+        boolean leader = false;
+        boolean duplicate;
+        Thread wakeUp = null;
+
+        lock.lock();
+        try {
+            if ( current == null ) {
+                current = new Batch( Thread.currentThread() );
+                leader = true;
+            }
+            batch = current;
+            duplicate = batch.futures.containsKey( memberId );
+            future = batch.futures.computeIfAbsent( memberId, id -> new CompletableFuture<>() );
+            if ( batch.futures.size() >= maxBatchSize ) {
+                close( batch );
+                wakeUp = batch.leader;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+
+        if ( !leader ) {
+            if ( wakeUp != null ) {
+                LockSupport.unpark( wakeUp );
+            }
+            return result( future, duplicate );
+        }
+
+        awaitWindow( batch );
+        execute( batch );
+        return result( future, duplicate );
+    }
+
+    private static Member result( CompletableFuture<Member> future, boolean duplicate ) throws SQLException {
+        Member member = Futures.await( future );
+        return duplicate ? new Member( member.getMemberId(), member.getMoney() ) : member;
+    }
+
+    /**
+     * 리더 - batchWindow가 지나거나 배치가 가득 찰 때까지 기다린 뒤 배치를 닫는다
+     */
+    private void awaitWindow( Batch batch ) {
+        long deadline = System.nanoTime() + batchWindowNanos;
+        for ( long remaining = batchWindowNanos; remaining > 0 && !batch.closed; remaining = deadline - System.nanoTime() ) {
+            LockSupport.parkNanos( this, remaining );
+        }
+
+        lock.lock();
+        try {
+            close( batch );
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    // lock 안에서 호출
+    private void close( Batch batch ) {
+        batch.closed = true;
+        if ( current == batch ) {
+            current = null;
+        }
+    }
+
+    private void execute( Batch batch ) {
+        batchCount.increment();
+        try {
+            MultiGetResult result = repository.findAllByIds( batch.futures.keySet() );
+            for ( Map.Entry<String, CompletableFuture<Member>> entry : batch.futures.entrySet() ) {
+                Member member = result.get( entry.getKey() );
+                if ( member != null ) {
+                    entry.getValue().complete( member );
+                }
+                else {
+                    entry.getValue().completeExceptionally( new NoSuchElementException( "member not found, memberId = " + entry.getKey() ) );
+                }
+            }
+            log.debug( "batch size={}", batch.futures.size() );
+        }
+        // 어떤 예외든 기다리는 쓰레드가 모두 깨어나도록 전달한다
+        catch (Throwable e) {
+            for ( CompletableFuture<Member> future : batch.futures.values() ) {
+                future.completeExceptionally( e );
+            }
+        }
+    }
+
+    private static final class Batch {
+
+        private final Thread leader;
+        // memberId -> 결과 (요청 순서). lock 안에서만 추가하고, 닫힌 뒤에는 리더만 읽는다
+        private final Map<String, CompletableFuture<Member>> futures = new LinkedHashMap<>();
+        // 닫힌 뒤에는 memberId를 더 넣지 않는다. 리더가 lock 없이 읽으므로 volatile
+        private volatile boolean closed;
+
+        private Batch( Thread leader ) {
+            this.leader = leader;
+        }
+    }
+
+}
@@ -0,0 +1,268 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MemberRepositoryV1 앞에 두는 읽기 캐시 (read-through)
+ *
+ * 1. findById
+ *  - 캐시에 있으면 DB에 가지 않고 바로 돌려준다. 캐시 히트는 락을 잡지 않고 객체를 새로 만들지 않는다.
+ *  - 캐시에 없으면 DB에서 읽어서 캐시에 넣는다. 같은 memberId를 동시에 여러 쓰레드가 찾으면 SQL은 한 번만 실행하고 결과를 나눠 받는다.
+ *  - 캐시에는 수정할 수 없는 Member(setter를 부르면 UnsupportedOperationException)를 담아서 그대로 돌려준다.
+ *    여러 호출이 같은 인스턴스를 받으므로 값을 바꾸려면 new Member(...)로 복사해서 쓴다. (DB에서 직접 읽은 호출은 수정 가능한 Member를 받는다)
+ *
+ * 2. 캐시 크기 제한 - CLOCK (근사 LRU)
+ *  - 엔트리는 ConcurrentHashMap에 두고, 조회할 때는 엔트리의 referenced 표시만 켠다. (LinkedHashMap처럼 조회가 구조를 바꾸지 않는다)
+ *  - 넣은 순서대로 엔트리를 큐(clock)에 넣어두고, maximumSize를 넘으면 큐 앞에서부터
+ *    referenced가 켜진 엔트리는 표시를 끄고 뒤로 보내고(한 번 더 기회), 꺼진 엔트리를 제거한다.
+ *  - 제거는 캐시에 넣는 쪽(miss)에서만 하고, evictionLock으로 한 쓰레드만 한다.
+ *
+ * 3. TTL (선택)
+ *  - ttl이 지난 엔트리는 캐시에 없는 것으로 보고 다시 DB에서 읽는다. Duration.ZERO 이면 TTL을 사용하지 않는다.
+ *
+ * 4. 무효화
+ *  - 이 인스턴스를 통해 update/delete 하면 해당 memberId를 캐시에서 제거한다.
+ *  - 다른 인스턴스나 다른 애플리케이션에서 변경한 것은 알 수 없으므로 TTL로 보완한다.
+ */
+@Slf4j
+public class CachedMemberRepository {
+
+    private final MemberRepositoryV1 repository;
+    private final int maximumSize;
+    private final long ttlNanos;
+
+    private final ConcurrentHashMap<String, CacheEntry> cache = new ConcurrentHashMap<>();
+
+    // CLOCK 순서 - 캐시에서 빠진 엔트리도 남아있을 수 있다 (제거할 때 건너뛴다)
+    private final ConcurrentLinkedQueue<CacheEntry> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger clockSize = new AtomicInteger();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // 지금 DB에서 읽고 있는 memberId -> 결과. 같은 memberId를 찾는 다른 쓰레드는 이 결과를 기다린다
+    private final ConcurrentHashMap<String, CompletableFuture<Member>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public CachedMemberRepository( MemberRepositoryV1 repository, int maximumSize ) {
+        this( repository, maximumSize, Duration.ZERO );
+    }
+
+    public CachedMemberRepository( MemberRepositoryV1 repository, int maximumSize, Duration ttl ) {
+        if ( maximumSize <= 0 ) {
+            throw new IllegalArgumentException( "maximumSize must be positive, maximumSize = " + maximumSize );
+        }
+        this.repository = repository;
+        this.maximumSize = maximumSize;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public Member save( Member member ) throws SQLException {
+        Member saved = repository.save( member );
+        invalidate( member.getMemberId() );
+        return saved;
+    }
+
+    public Member findById( String memberId ) throws SQLException {
+        Member cached = getIfPresent( memberId );
+        if ( cached != null ) {
+            hitCount.increment();
+            return cached;
+        }
+        missCount.increment();
+
+        CompletableFuture<Member> future = new CompletableFuture<>();
+        CompletableFuture<Member> inFlight = loading.putIfAbsent( memberId, future );
+        // 이미 다른 쓰레드가 같은 memberId를 읽고 있으면 그 결과(캐시에 담긴 것과 같은 인스턴스)를 기다린다
+        if ( inFlight != null ) {
+            return Futures.await( inFlight );
+        }
+
+        try {
+            Member member = repository.findById( memberId );
+            CacheEntry entry = new CacheEntry( memberId, new CachedMember( member ), expireAt() );
+            // 읽는 도중에 update/delete로 무효화되었다면 loading에서 이미 빠져있으므로 캐시에 넣지 않는다
+            // (compute는 같은 memberId의 invalidate와 순서대로 실행된다)
+            CacheEntry stored = cache.compute( memberId, ( key, current ) -> loading.remove( key, future ) ? entry : current );
+            if ( stored == entry ) {
+                clock.add( entry );
+                clockSize.incrementAndGet();
+                evictIfNeeded();
+            }
+            future.complete( entry.member );
+            return member;
+        }
+        // 없는 회원(NoSuchElementException)이나 DB 에러는 캐시하지 않고, 기다리던 쓰레드들에게도 같은 예외를 전달한다
+        catch (SQLException | RuntimeException e) {
+            loading.remove( memberId, future );
+            future.completeExceptionally( e );
+            throw e;
+        }
+    }
+
+    public void update( String memberId, int money ) throws SQLException {
+        try {
+            repository.update( memberId, money );
+        }
+        finally {
+            invalidate( memberId );
+        }
+    }
+
+    public void delete( String memberId ) throws SQLException {
+        try {
+            repository.delete( memberId );
+        }
+        finally {
+            invalidate( memberId );
+        }
+    }
+
+    public void invalidate( String memberId ) {
+        cache.compute( memberId, ( key, current ) -> {
+            loading.remove( key );
+            return null;
+        } );
+    }
+
+    public void invalidateAll() {
+        loading.clear();
+        cache.clear();
+        evictionLock.lock();
+        try {
+            clock.clear();
+            clockSize.set( 0 );
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    private Member getIfPresent( String memberId ) {
+        CacheEntry entry = cache.get( memberId );
+        if ( entry == null ) {
+            return null;
+        }
+        if ( ttlNanos > 0 && System.nanoTime() - entry.expireAt > 0 ) {
+            if ( cache.remove( memberId, entry ) ) {
+                evictionCount.increment();
+            }
+            return null;
+        }
+        // 이미 켜져 있으면 쓰지 않는다 (여러 코어가 같은 캐시 라인을 번갈아 쓰지 않도록)
+        if ( !entry.referenced ) {
+            entry.referenced = true;
+        }
+        return entry.member;
+    }
+
+    /**
+     * maximumSize를 넘었으면 CLOCK으로 제거한다. 큐에 빠진 엔트리가 많이 쌓였으면 같이 정리한다.
+     */
+    private void evictIfNeeded() {
+        if ( cache.size() <= maximumSize && clockSize.get() <= maximumSize * 2 ) {
+            return;
+        }
+        evictionLock.lock();
+        try {
+            while ( cache.size() > maximumSize ) {
+                CacheEntry entry = clock.poll();
+                if ( entry == null ) {
+                    break;
+                }
+                clockSize.decrementAndGet();
+                // 무효화되었거나 다시 읽어서 바뀐 엔트리
+                if ( cache.get( entry.memberId ) != entry ) {
+                    continue;
+                }
+                if ( entry.referenced ) {
+                    entry.referenced = false;
+                    clock.add( entry );
+                    clockSize.incrementAndGet();
+                    continue;
+                }
+                if ( cache.remove( entry.memberId, entry ) ) {
+                    evictionCount.increment();
+                }
+            }
+            if ( clockSize.get() > maximumSize * 2 ) {
+                clock.removeIf( entry -> {
+                    boolean removed = cache.get( entry.memberId ) != entry;
+                    if ( removed ) {
+                        clockSize.decrementAndGet();
+                    }
+                    return removed;
+                } );
+            }
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private long expireAt() {
+        return ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0;
+    }
+
+    private static final class CacheEntry {
+        private final String memberId;
+        private final Member member;
+        private final long expireAt;
+        // 마지막으로 clock이 지나간 뒤에 조회되었는지
+        private volatile boolean referenced;
+
+        private CacheEntry( String memberId, Member member, long expireAt ) {
+            this.memberId = memberId;
+            this.member = member;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 캐시에 담는 수정할 수 없는 Member
+     */
+    private static final class CachedMember extends Member {
+
+        private CachedMember( Member member ) {
+            super( member.getMemberId(), member.getMoney() );
+        }
+
+        @Override
+        public void setMemberId( String memberId ) {
+            throw new UnsupportedOperationException( "cached member is read-only, memberId = " + getMemberId() );
+        }
+
+        @Override
+        public void setMoney( int money ) {
+            throw new UnsupportedOperationException( "cached member is read-only, memberId = " + getMemberId() );
+        }
+    }
+
+}
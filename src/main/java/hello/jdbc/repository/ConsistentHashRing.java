@@ -0,0 +1,111 @@
+package hello.jdbc.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 일관된 해시(consistent hashing) 링 - memberId -> 샤드 이름
+ *
+ * - 샤드마다 virtualNodes 개의 점을 링(long 해시 공간)에 찍고, memberId의 해시에서 시계 방향으로 처음 만나는 점의 샤드를 사용한다.
+ * - hash % N 방식은 샤드를 하나 추가하면 거의 모든 키의 샤드가 바뀌지만, 링은 약 1/(N+1) 의 키만 새 샤드로 옮겨간다.
+ * - 가상 노드가 많을수록 샤드별 키 분포가 고르게 된다.
+ *
+ * 불변 객체 - 샤드를 추가하면 새 링을 만든다. (여러 쓰레드가 락 없이 읽을 수 있다)
+ */
+public final class ConsistentHashRing {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final int virtualNodes;
+    private final List<String> nodes;
+    private final long[] points;
+    private final String[] owners;
+
+    public ConsistentHashRing( Collection<String> nodes ) {
+        this( nodes, DEFAULT_VIRTUAL_NODES );
+    }
+
+    public ConsistentHashRing( Collection<String> nodes, int virtualNodes ) {
+        if ( nodes.isEmpty() ) {
+            throw new IllegalArgumentException( "nodes must not be empty" );
+        }
+        if ( virtualNodes <= 0 ) {
+            throw new IllegalArgumentException( "virtualNodes must be positive, virtualNodes = " + virtualNodes );
+        }
+        this.virtualNodes = virtualNodes;
+        this.nodes = Collections.unmodifiableList( new ArrayList<>( nodes ) );
+
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for ( String node : nodes ) {
+            for ( int i = 0; i < virtualNodes; i++ ) {
+                // 해시가 겹치면 이름이 작은 샤드가 갖는다 (샤드 추가 순서와 상관없이 같은 링이 만들어지도록)
+                ring.merge( hash( node + "#" + i ), node, ( a, b ) -> a.compareTo( b ) <= 0 ? a : b );
+            }
+        }
+
+        // 조회할 때마다 TreeMap을 타지 않도록 정렬된 배열로 바꿔둔다 (이진 탐색)
+        this.points = new long[ ring.size() ];
+        this.owners = new String[ ring.size() ];
+        int i = 0;
+        for ( Map.Entry<Long, String> point : ring.entrySet() ) {
+            points[i] = point.getKey();
+            owners[i] = point.getValue();
+            i++;
+        }
+    }
+
+    public ConsistentHashRing withNode( String node ) {
+        if ( nodes.contains( node ) ) {
+            throw new IllegalArgumentException( "node already exists, node = " + node );
+        }
+        List<String> added = new ArrayList<>( nodes );
+        added.add( node );
+        return new ConsistentHashRing( added, virtualNodes );
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public String nodeFor( String key ) {
+        long hash = hash( key );
+
+        // hash 보다 크거나 같은 첫 번째 점, 없으면 링의 처음으로 돌아간다
+        int low = 0;
+        int high = points.length;
+        while ( low < high ) {
+            int mid = ( low + high ) >>> 1;
+            if ( points[mid] < hash ) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return owners[ low == points.length ? 0 : low ];
+    }
+
+    /**
+     * 64bit FNV-1a + 마지막에 비트를 섞는다 (memberId 처럼 앞부분이 같은 짧은 문자열도 링 전체에 고르게 퍼지도록)
+     * - String.hashCode()는 JVM 마다 같지만 32bit라 충돌이 많고 분포가 나쁘다.
+     */
+    static long hash( String key ) {
+        long hash = 0xcbf29ce484222325L;
+        for ( byte b : key.getBytes( StandardCharsets.UTF_8 ) ) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
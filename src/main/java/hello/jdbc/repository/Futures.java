@@ -0,0 +1,34 @@
+package hello.jdbc.repository;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * CompletableFuture 결과 기다리기
+ */
+final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * 결과를 기다린다. CompletionException으로 감싸진 예외는 원래 예외로 꺼내서 던진다.
+     */
+    static <T> T await( CompletableFuture<T> future ) throws SQLException {
+        try {
+            return future.join();
+        }
+        catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof SQLException ) {
+                throw (SQLException) cause;
+            }
+            if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+}
@@ -8,7 +8,7 @@ import java.sql.*;
 import java.util.NoSuchElementException;
 
 /**
- * JDBC - DriverManager 사용
+ * JDBC - DriverManager 사용 (DBConnectionUtil -> SimpleConnectionPool)
  */
 @Slf4j
 public class MemberRepositoryV0 {
@@ -1,13 +1,37 @@
 package hello.jdbc.repository;
 
 import hello.jdbc.connection.DBConnectionUtil;
+import hello.jdbc.connection.ReadWriteRoutingDataSource;
 import hello.jdbc.domain.Member;
+import hello.jdbc.repository.mapper.MemberRowMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.StringJoiner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * JDBC - DataSource 사용, JdbcUtils 사용
@@ -23,19 +47,274 @@ import java.util.NoSuchElementException;
  *          JdbcUtils.closeResultSet( rs );
  *         JdbcUtils.closeStatement( stmt );
  *         JdbcUtils.closeConnection( con );
+ *
+ * 3. row -> Member 변환은 MemberRowMapper 사용
+ *  - 조회 SQL은 select * 대신 "select member_id, money ..." 로 컬럼을 적어서 결과의 컬럼 위치를 SQL이 정한다.
+ *    (replica나 마이그레이션한 테이블의 컬럼 순서가 달라도 결과 컬럼 순서는 같다)
+ *  - 그래서 ResultSetMetaData를 읽지 않고 MemberRowMapper.BY_POSITION으로 위치(1, 2)로 꺼낸다.
+ *
+ * 4. 메트릭 (RepositoryMetrics)
+ *  - 메서드(RepositoryOperation) 별로 커넥션 획득 시간, SQL 실행 시간, 영향받은 row 수, 에러 수를 기록한다.
+ *  - 호출마다 남기던 커넥션 로그는 DEBUG로 내렸다. (운영에서 INFO로 매번 찍으면 그 자체가 병목이 된다)
+ *
+ * 5. 트랜잭션 (inTransaction, transfer)
+ *  - 커넥션은 DataSourceUtils로 얻고 반납한다. 트랜잭션이 없으면 지금까지처럼 메서드마다 커넥션을 얻고 닫는다.
+ *  - 트랜잭션 안에서는 쓰레드에 묶인(TransactionSynchronizationManager) 커넥션 하나를 모든 메서드가 같이 쓰고, 커밋은 한 번만 한다.
+ *  - 같은 DataSource의 DataSourceTransactionManager(@Transactional)로 시작한 트랜잭션에도 그대로 참여한다.
+ *
+ * 6. 읽기/쓰기 분리 (ReadWriteRoutingDataSource)
+ *  - 주입받은 DataSource가 ReadWriteRoutingDataSource이면 조회(findById, findAll, findAllAfter, findAllByIds, findRange, sampleIds, findAllByMoneyBetween)는 replica로 보낸다.
+ *  - 트랜잭션 안의 조회는 트랜잭션 커넥션(primary)을 그대로 사용한다.
+ *
+ * 7. 쿼리 실행 프로파일 (QueryProfile)
+ *  - 메서드(RepositoryOperation) 별로 fetchSize, maxRows, queryTimeout, readOnly 힌트, 커서 종류를 정한다.
+ *  - 기본값은 JDBC 기본값이고, 전체 조회(findAll, findAllAfter, findRange, sampleIds)만 fetchSize를 DEFAULT_FETCH_SIZE로 키운다.
  */
 @Slf4j
 public class MemberRepositoryV1 {
 
+    // 리포지토리가 사용하는 SQL (기동시 미리 prepare 해둘 수 있도록 모아둔다)
+    public static final String SAVE_SQL = "insert into member(member_id, money) values(?, ?)";
+    public static final String FIND_BY_ID_SQL = "select member_id, money from member where member_id = ?";
+    public static final String UPDATE_SQL = "update member set money=? where member_id=?";
+    public static final String DELETE_SQL = "delete from member where member_id=?";
+    public static final String FIND_ALL_SQL = "select member_id, money from member order by member_id";
+    public static final String FIND_ALL_AFTER_SQL = "select member_id, money from member where member_id > ? order by member_id limit ?";
+    public static final String FIND_RANGE_SQL = "select member_id, money from member where member_id >= ? and member_id < ?";
+    public static final String FIND_FROM_SQL = "select member_id, money from member where member_id >= ?";
+    public static final String FIND_BY_MONEY_RANGE_SQL = "select member_id, money from member where money between ? and ? order by money limit ?";
+    public static final String COUNT_SQL = "select count(*) from member";
+    public static final String SAMPLE_IDS_SQL = "select member_id from member where rand() < ?";
+    public static final String ADD_MONEY_SQL = "update member set money = money + ? where member_id = ?";
+    public static final String ADD_MONEY_AND_GET_SQL = "select money from final table ( update member set money = money + ? where member_id = ? )";
+    public static final String UPSERT_SQL = "merge into member(member_id, money) key(member_id) values(?, ?)";
+    public static final String TRANSFER_SQL = ADD_MONEY_SQL;
+    public static final List<String> SQL_STATEMENTS = List.of( SAVE_SQL, FIND_BY_ID_SQL, UPDATE_SQL, DELETE_SQL, FIND_ALL_SQL, FIND_ALL_AFTER_SQL,
+            FIND_RANGE_SQL, FIND_FROM_SQL, FIND_BY_MONEY_RANGE_SQL, ADD_MONEY_SQL, ADD_MONEY_AND_GET_SQL, UPSERT_SQL );
+
+    // 배치 한 번에 모아서 보낼 row 수 기본값
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    // 전체 조회(findAll, findAllAfter)시 드라이버가 DB에서 한 번에 가져올 row 수 기본값
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    // findAllByIds 에서 IN (?, ?, ...) 하나에 넣을 id 수 기본값
+    public static final int DEFAULT_IN_LIST_CHUNK_SIZE = 128;
+
+    // transfer 가 데드락/락 타임아웃으로 실패했을 때 트랜잭션 전체를 다시 시도하는 횟수 기본값
+    public static final int DEFAULT_TRANSFER_MAX_RETRIES = 3;
+
+    // 재시도 전 대기 시간 기본값 (시도마다 2배, 0 ~ 대기 시간 사이에서 랜덤)
+    public static final long DEFAULT_TRANSFER_RETRY_BACKOFF_MS = 10;
+
+    // 다시 시도하면 성공할 수 있는 SQLState - 40001: 데드락(serialization failure), HYT00: H2 락 타임아웃
+    private static final Set<String> RETRYABLE_SQL_STATES = Set.of( "40001", "HYT00" );
+
     // 의존관계 주입
     private final DataSource dataSource;
+    private final RepositoryMetrics metrics;
+    private final DataSourceTransactionManager transactionManager;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    // 메서드별 쿼리 실행 프로파일 (설정 시점에만 바꾸고, 호출 경로에서는 읽기만 한다)
+    private final Map<RepositoryOperation, QueryProfile> queryProfiles = new EnumMap<>( RepositoryOperation.class );
+
+    private int inListChunkSize = DEFAULT_IN_LIST_CHUNK_SIZE;
+
+    private int transferMaxRetries = DEFAULT_TRANSFER_MAX_RETRIES;
+
+    private long transferRetryBackoffMs = DEFAULT_TRANSFER_RETRY_BACKOFF_MS;
 
     public MemberRepositoryV1 ( DataSource dataSource ) {
+        this( dataSource, new RepositoryMetrics() );
+    }
+
+    public MemberRepositoryV1 ( DataSource dataSource, RepositoryMetrics metrics ) {
         this.dataSource = dataSource;
+        this.metrics = metrics;
+        this.transactionManager = new DataSourceTransactionManager( dataSource );
+
+        for ( RepositoryOperation operation : RepositoryOperation.values() ) {
+            queryProfiles.put( operation, QueryProfile.DEFAULT );
+        }
+        queryProfiles.put( RepositoryOperation.FIND_ALL, QueryProfile.DEFAULT.withFetchSize( DEFAULT_FETCH_SIZE ) );
+        queryProfiles.put( RepositoryOperation.FIND_ALL_AFTER, QueryProfile.DEFAULT.withFetchSize( DEFAULT_FETCH_SIZE ) );
+        queryProfiles.put( RepositoryOperation.FIND_RANGE, QueryProfile.DEFAULT.withFetchSize( DEFAULT_FETCH_SIZE ) );
+        queryProfiles.put( RepositoryOperation.SAMPLE_IDS, QueryProfile.DEFAULT.withFetchSize( DEFAULT_FETCH_SIZE ) );
+    }
+
+    public RepositoryMetrics getMetrics() {
+        return metrics;
+    }
+
+    // 같은 패키지의 도우미(ParallelMemberScanner 등)가 풀 설정을 읽을 때 사용한다
+    DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public void setBatchSize( int batchSize ) {
+        if ( batchSize <= 0 ) {
+            throw new IllegalArgumentException( "batchSize must be positive, batchSize = " + batchSize );
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 전체 조회(findAll, findAllAfter, findRange) 프로파일의 fetchSize만 바꾼다
+     */
+    public void setFetchSize( int fetchSize ) {
+        if ( fetchSize < 0 ) {
+            throw new IllegalArgumentException( "fetchSize must not be negative, fetchSize = " + fetchSize );
+        }
+        setQueryProfile( RepositoryOperation.FIND_ALL, getQueryProfile( RepositoryOperation.FIND_ALL ).withFetchSize( fetchSize ) );
+        setQueryProfile( RepositoryOperation.FIND_ALL_AFTER, getQueryProfile( RepositoryOperation.FIND_ALL_AFTER ).withFetchSize( fetchSize ) );
+        setQueryProfile( RepositoryOperation.FIND_RANGE, getQueryProfile( RepositoryOperation.FIND_RANGE ).withFetchSize( fetchSize ) );
+    }
+
+    public void setQueryProfile( RepositoryOperation operation, QueryProfile queryProfile ) {
+        if ( queryProfile == null ) {
+            throw new IllegalArgumentException( "queryProfile must not be null, operation = " + operation );
+        }
+        queryProfiles.put( operation, queryProfile );
+    }
+
+    public QueryProfile getQueryProfile( RepositoryOperation operation ) {
+        return queryProfiles.get( operation );
+    }
+
+    public void setInListChunkSize( int inListChunkSize ) {
+        if ( inListChunkSize <= 0 ) {
+            throw new IllegalArgumentException( "inListChunkSize must be positive, inListChunkSize = " + inListChunkSize );
+        }
+        this.inListChunkSize = inListChunkSize;
+    }
+
+    public void setTransferMaxRetries( int transferMaxRetries ) {
+        if ( transferMaxRetries < 0 ) {
+            throw new IllegalArgumentException( "transferMaxRetries must not be negative, transferMaxRetries = " + transferMaxRetries );
+        }
+        this.transferMaxRetries = transferMaxRetries;
+    }
+
+    public void setTransferRetryBackoffMs( long transferRetryBackoffMs ) {
+        if ( transferRetryBackoffMs < 0 ) {
+            throw new IllegalArgumentException( "transferRetryBackoffMs must not be negative, transferRetryBackoffMs = " + transferRetryBackoffMs );
+        }
+        this.transferRetryBackoffMs = transferRetryBackoffMs;
+    }
+
+    /**
+     * 트랜잭션 안에서 실행할 작업
+     * - 파라미터로 받은 리포지토리(tx)의 save/findById/update/delete 등은 모두 같은 커넥션을 사용한다.
+     */
+    @FunctionalInterface
+    public interface TransactionCallback<T> {
+        T doInTransaction( MemberRepositoryV1 tx ) throws SQLException;
+    }
+
+    /**
+     * 커넥션 하나로 트랜잭션을 시작하고, callback이 정상 종료하면 커밋, 예외가 나면 롤백한다.
+     * - 이미 트랜잭션이 진행 중이면 그 트랜잭션에 참여한다. (커밋/롤백은 바깥 트랜잭션이 한다)
+     */
+    public <T> T inTransaction( TransactionCallback<T> callback ) throws SQLException {
+        TransactionStatus status = transactionManager.getTransaction( new DefaultTransactionDefinition() );
+
+        T result;
+        try {
+            result = callback.doInTransaction( this );
+        }
+        catch (Throwable e) {
+            transactionManager.rollback( status );
+            throw e;
+        }
+        transactionManager.commit( status );
+        return result;
+    }
+
+    /**
+     * 계좌이체 - fromId의 money를 amount 만큼 빼서 toId에 더한다.
+     *
+     * - 두 update를 하나의 트랜잭션, 하나의 배치로 보낸다. (커넥션 1번 획득, 네트워크 왕복 1번, 커밋 1번)
+     * - update는 항상 member_id 순서로 보낸다. 서로 반대 방향으로 이체하는 두 트랜잭션이 락을 같은 순서로 잡으므로 데드락이 잘 생기지 않는다.
+     * - 그래도 데드락/락 타임아웃이 나면 transferMaxRetries 번까지 트랜잭션 전체를 다시 시도한다.
+     *   (바깥 트랜잭션에 참여한 경우는 이미 롤백 대상이므로 다시 시도하지 않는다)
+     * @throws NoSuchElementException 회원이 없으면 (롤백된다)
+     */
+    public void transfer( String fromId, String toId, int amount ) throws SQLException {
+        if ( amount <= 0 ) {
+            throw new IllegalArgumentException( "amount must be positive, amount = " + amount );
+        }
+        if ( fromId.equals( toId ) ) {
+            throw new IllegalArgumentException( "fromId and toId must be different, memberId = " + fromId );
+        }
+
+        if ( TransactionSynchronizationManager.hasResource( dataSource ) ) {
+            transferInTransaction( fromId, toId, amount );
+            return;
+        }
+
+        for ( int attempt = 0; ; attempt++ ) {
+            try {
+                inTransaction( tx -> {
+                    transferInTransaction( fromId, toId, amount );
+                    return null;
+                } );
+                return;
+            }
+            catch (SQLException e) {
+                if ( attempt >= transferMaxRetries || !isRetryable( e ) ) {
+                    throw e;
+                }
+                log.debug( "transfer retry attempt={}, sqlState={}", attempt + 1, e.getSQLState() );
+                backoff( attempt );
+            }
+        }
+    }
+
+    private void transferInTransaction( String fromId, String toId, int amount ) throws SQLException {
+        List<Map.Entry<String, Integer>> deltas = new ArrayList<>( 2 );
+        deltas.add( Map.entry( fromId, -amount ) );
+        deltas.add( Map.entry( toId, amount ) );
+        deltas.sort( Map.Entry.comparingByKey( Comparator.naturalOrder() ) );
+
+        int[] counts = batchUpdate( RepositoryOperation.TRANSFER, TRANSFER_SQL, deltas, ( pstmt, delta ) -> {
+            pstmt.setInt(1, delta.getValue() );
+            pstmt.setString(2, delta.getKey() );
+        } );
+
+        for ( int i = 0; i < counts.length; i++ ) {
+            if ( counts[i] == 0 ) {
+                throw new NoSuchElementException( "member not found, memberId = " + deltas.get( i ).getKey() );
+            }
+        }
+    }
+
+    private static boolean isRetryable( SQLException e ) {
+        for ( SQLException next = e; next != null; next = next.getNextException() ) {
+            if ( RETRYABLE_SQL_STATES.contains( next.getSQLState() ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void backoff( int attempt ) throws SQLException {
+        long maxSleepMs = transferRetryBackoffMs << Math.min( attempt, 10 );
+        if ( maxSleepMs <= 0 ) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep( ThreadLocalRandom.current().nextLong( maxSleepMs + 1 ) );
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException( "interrupted while waiting to retry transfer", e );
+        }
     }
 
     public Member save( Member member ) throws SQLException {
-        String sql = "insert into member(member_id, money) values(?, ?)";
+        String sql = SAVE_SQL;
 
         // Connection이 있어야 연결을 할 수 있다.
         Connection con = null;
@@ -44,26 +323,27 @@ public class MemberRepositoryV1 {
 
         try {
 
-            con = getConnection();
-            pstmt = con.prepareStatement( sql );
+            con = getConnection( RepositoryOperation.SAVE );
+            pstmt = prepareStatement( con, RepositoryOperation.SAVE, sql );
             // 파라미터 바인딩
             pstmt.setString(1, member.getMemberId() );
             pstmt.setInt(2, member.getMoney() );
 
             // 실행
-            int count = pstmt.executeUpdate(); // count: 영향받은 row 수
+            int count = executeUpdate( RepositoryOperation.SAVE, pstmt ); // count: 영향받은 row 수
 
             return member;
         }
         // error log 남기고 밖으로 Exception 던지기
         catch (SQLException e) {
+            metrics.recordError( RepositoryOperation.SAVE );
             log.error("db error", e);
             throw e;
         }
         // [중요!] 오픈과 역순으로 닫아주기! 항상 닫는것이 보장되도록 finally에서 리소스를 정리하기
         // TCP/IP 커넥션에 걸려서 외부 리소스를 쓰는 것이기 때문에 닫아주지 않으면 계~~속 유지될 수 있다.
         finally {
-            close( con, pstmt, null );
+            close( RepositoryOperation.SAVE, con, pstmt, null );
             }
 
 
@@ -71,125 +351,765 @@ public class MemberRepositoryV1 {
 
     public Member findById( String memberId ) throws SQLException {
 
-        String sql = "select * from Member where member_id = ?";
+        String sql = FIND_BY_ID_SQL;
 
         Connection con = null; // finally 구문에서 호출해야 하기 떄문에 밖으로 빼서 선언한다
         PreparedStatement pstmt = null;
         ResultSet rs = null;
 
         try{
-            con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            con = getConnection( RepositoryOperation.FIND_BY_ID );
+            pstmt = prepareStatement( con, RepositoryOperation.FIND_BY_ID, sql );
             pstmt.setString(1, memberId );
 
             // executeUpdate()는 변경할때 사용하고, select 쿼리는 executeQuery()를 사용한다
-            rs = pstmt.executeQuery();
+            rs = executeQuery( RepositoryOperation.FIND_BY_ID, pstmt );
 
             // rs.next()를 한 번은 호출해줘야 그 다음부터 실제 응답을 출력한다
             if ( rs.next() ){
-
-                Member member = new Member();
-                member.setMemberId( rs.getString("member_id") );
-                member.setMoney( rs.getInt("money") );
-                return member;
+                metrics.recordRows( RepositoryOperation.FIND_BY_ID, 1 );
+                return MemberRowMapper.BY_POSITION.mapRow( rs );
             }
             // 데이터가 없는 경우
             else{
+                metrics.recordRows( RepositoryOperation.FIND_BY_ID, 0 );
                 /* 에러 메시지를 작성할 떄 key값을 잘 넣어줘야 실제 운영에서 문제를 찾을 때 편리하다 */
                 throw new NoSuchElementException("member not found, memberId = " + memberId );
             }
         } catch (SQLException e) {
+            metrics.recordError( RepositoryOperation.FIND_BY_ID );
             log.error( "db error", e );
             throw e;
         }
         finally {
-            close( con, pstmt, rs );
+            close( RepositoryOperation.FIND_BY_ID, con, pstmt, rs );
         }
 
     }
 
     public void update( String memberId, int money ) throws SQLException {
-        String sql = "update member set money=? where member_id=?";
+        String sql = UPDATE_SQL;
 
         Connection con = null;
         PreparedStatement pstmt = null;
 
         try {
 
-            con = getConnection();
-            pstmt = con.prepareStatement( sql );
+            con = getConnection( RepositoryOperation.UPDATE );
+            pstmt = prepareStatement( con, RepositoryOperation.UPDATE, sql );
             // 파라미터 바인딩
             pstmt.setInt(1, money );
             pstmt.setString(2, memberId );
 
             // 실행
-            int count = pstmt.executeUpdate(); // count: 영향받은 row 수
-            log.info( "result size={}", count );
+            int count = executeUpdate( RepositoryOperation.UPDATE, pstmt ); // count: 영향받은 row 수
 
         }
         // error log 남기고 밖으로 Exception 던지기
         catch (SQLException e) {
+            metrics.recordError( RepositoryOperation.UPDATE );
             log.error("db error", e);
             throw e;
         }
         // [중요!] 오픈과 역순으로 닫아주기! 항상 닫는것이 보장되도록 finally에서 리소스를 정리하기
         // TCP/IP 커넥션에 걸려서 외부 리소스를 쓰는 것이기 때문에 닫아주지 않으면 계~~속 유지될 수 있다.
         finally {
-            close( con, pstmt, null );
+            close( RepositoryOperation.UPDATE, con, pstmt, null );
         }
 
     }
 
     public void delete( String memberId ) throws SQLException {
 
-        String sql = "delete from member where member_id=?";
+        String sql = DELETE_SQL;
 
         Connection con = null;
         PreparedStatement pstmt = null;
 
         try {
 
-            con = getConnection();
-            pstmt = con.prepareStatement( sql );
+            con = getConnection( RepositoryOperation.DELETE );
+            pstmt = prepareStatement( con, RepositoryOperation.DELETE, sql );
             pstmt.setString(1, memberId );
 
             // 실행
-            int count = pstmt.executeUpdate(); // count: 영향받은 row 수
-            log.info( "result size={}", count );
+            int count = executeUpdate( RepositoryOperation.DELETE, pstmt ); // count: 영향받은 row 수
 
         }
         catch (SQLException e) {
+            metrics.recordError( RepositoryOperation.DELETE );
             log.error("db error", e);
             throw e;
         }
         finally {
-            close( con, pstmt, null );
+            close( RepositoryOperation.DELETE, con, pstmt, null );
         }
 
     }
 
+    /**
+     * 여러 회원을 한 번에 조회 - select member_id, money from member where member_id in (?, ?, ...)
+     *
+     * - findById를 N번 호출하면 커넥션 획득 N번 + 네트워크 왕복 N번이 필요하다.
+     *   IN 절로 묶으면 커넥션 하나로 (id 수 / inListChunkSize) 번만 왕복한다.
+     * - IN 절의 ? 개수가 달라지면 SQL이 달라져서 DB가 매번 새로 파싱해야 하므로, ? 개수는 2의 제곱수(최대 inListChunkSize)로 맞추고
+     *   모자란 자리는 마지막 id를 반복해서 채운다. -> 청크가 여러 개여도 PreparedStatement 하나를 재사용한다.
+     * - 없는 회원은 findById처럼 NoSuchElementException을 던지지 않고 missingIds로 따로 알려준다.
+     */
+    public MultiGetResult findAllByIds( Collection<String> memberIds ) throws SQLException {
+        // 중복 제거 (요청 순서 유지)
+        List<String> ids = new ArrayList<>( new LinkedHashSet<>( memberIds ) );
+        Map<String, Member> found = new HashMap<>( ids.size() * 4 / 3 + 1 );
+        if ( ids.isEmpty() ) {
+            return new MultiGetResult( found, new LinkedHashSet<>() );
+        }
+
+        int chunkSize = Math.min( inListChunkSize, ceilPowerOfTwo( ids.size() ) );
+        String sql = inListSql( chunkSize );
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection( RepositoryOperation.FIND_ALL_BY_IDS );
+            pstmt = prepareStatement( con, RepositoryOperation.FIND_ALL_BY_IDS, sql );
+
+            MemberRowMapper mapper = MemberRowMapper.BY_POSITION;
+            for ( int from = 0; from < ids.size(); from += chunkSize ) {
+                int last = Math.min( from + chunkSize, ids.size() ) - 1;
+                for ( int i = 0; i < chunkSize; i++ ) {
+                    pstmt.setString( i + 1, ids.get( Math.min( from + i, last ) ) );
+                }
+
+                rs = executeQuery( RepositoryOperation.FIND_ALL_BY_IDS, pstmt );
+                while ( rs.next() ) {
+                    Member member = mapper.mapRow( rs );
+                    found.put( member.getMemberId(), member );
+                }
+                JdbcUtils.closeResultSet( rs );
+                rs = null;
+            }
+            metrics.recordRows( RepositoryOperation.FIND_ALL_BY_IDS, found.size() );
+
+            LinkedHashSet<String> missingIds = new LinkedHashSet<>();
+            for ( String memberId : ids ) {
+                if ( !found.containsKey( memberId ) ) {
+                    missingIds.add( memberId );
+                }
+            }
+            return new MultiGetResult( found, missingIds );
+        }
+        catch (SQLException e) {
+            metrics.recordError( RepositoryOperation.FIND_ALL_BY_IDS );
+            log.error( "db error", e );
+            throw e;
+        }
+        finally {
+            close( RepositoryOperation.FIND_ALL_BY_IDS, con, pstmt, rs );
+        }
+    }
+
+    private static int ceilPowerOfTwo( int n ) {
+        return n <= 1 ? 1 : Integer.highestOneBit( n - 1 ) << 1;
+    }
+
+    private static String inListSql( int size ) {
+        StringJoiner placeholders = new StringJoiner( ", ", "select member_id, money from member where member_id in (", ")" );
+        for ( int i = 0; i < size; i++ ) {
+            placeholders.add( "?" );
+        }
+        return placeholders.toString();
+    }
+
+    /**
+     * 전체 회원 조회 - Stream으로 한 row씩 꺼내서 사용
+     *
+     * - 모든 회원을 List에 담아서 돌려주면 테이블이 커질수록 메모리가 같이 커진다.
+     *   대신 ResultSet을 열어둔 채로 Stream이 요청할 때마다 rs.next()로 한 row씩 읽어서 Member로 만든다.
+     * - fetchSize(FIND_ALL 프로파일) 만큼씩 드라이버가 DB에서 가져오므로 메모리 사용량은 테이블 크기와 상관없이 일정하다.
+     *
+     * [중요!] 커넥션, PreparedStatement, ResultSet은 Stream을 닫을 때 close()로 정리된다.
+     * 반드시 try-with-resources로 사용해야 한다.
+     *      try ( Stream<Member> members = repository.findAll() ) { ... }
+     */
+    public Stream<Member> findAll() throws SQLException {
+        String sql = FIND_ALL_SQL;
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection( RepositoryOperation.FIND_ALL );
+            pstmt = prepareStatement( con, RepositoryOperation.FIND_ALL, sql );
+            rs = executeQuery( RepositoryOperation.FIND_ALL, pstmt );
+        }
+        catch (SQLException e) {
+            metrics.recordError( RepositoryOperation.FIND_ALL );
+            log.error( "db error", e );
+            // Stream을 만들지 못했으므로 여기서 바로 정리한다
+            close( RepositoryOperation.FIND_ALL, con, pstmt, rs );
+            throw e;
+        }
+
+        // 람다에서 사용하기 위해 final 변수로 옮긴다
+        Connection openCon = con;
+        PreparedStatement openPstmt = pstmt;
+        ResultSet openRs = rs;
+        MemberRowMapper openMapper = MemberRowMapper.BY_POSITION;
+
+        long[] rows = new long[1];
+
+        Spliterator<Member> spliterator = new Spliterators.AbstractSpliterator<>( Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL ) {
+            @Override
+            public boolean tryAdvance( Consumer<? super Member> action ) {
+                try {
+                    if ( !openRs.next() ) {
+                        return false;
+                    }
+                    rows[0]++;
+                    action.accept( openMapper.mapRow( openRs ) );
+                    return true;
+                }
+                // Stream은 Checked Exception을 던질 수 없으므로 Runtime Exception 으로 변경
+                catch (SQLException e) {
+                    metrics.recordError( RepositoryOperation.FIND_ALL );
+                    log.error( "db error", e );
+                    throw new IllegalStateException( e );
+                }
+            }
+        };
+
+        return StreamSupport.stream( spliterator, false )
+                .onClose( () -> {
+                    metrics.recordRows( RepositoryOperation.FIND_ALL, rows[0] );
+                    close( RepositoryOperation.FIND_ALL, openCon, openPstmt, openRs );
+                } );
+    }
+
+    /**
+     * 전체 회원 조회 - 콜백 방식
+     * - Stream을 닫는 것을 깜빡할 걱정 없이 메서드가 끝나면 리소스가 정리된다.
+     */
+    public void findAll( Consumer<Member> callback ) throws SQLException {
+        try ( Stream<Member> members = findAll() ) {
+            members.forEach( callback );
+        }
+    }
+
+    /**
+     * 키셋 페이징 조회 - member_id가 lastMemberId 보다 큰 회원을 member_id 순서로 limit 건 조회
+     *
+     * - offset 페이징은 뒤로 갈수록 앞의 row를 읽고 버리는 비용이 커지지만,
+     *   키셋 페이징은 PK 인덱스에서 바로 시작 위치를 찾으므로 어느 페이지든 비용이 같다.
+     * - 마지막으로 받은 member_id를 저장해두면 중간에 멈췄다가 그 다음부터 다시 이어서 읽을 수 있다.
+     * @param lastMemberId 이전 페이지의 마지막 member_id (처음부터 읽을 때는 null)
+     */
+    public List<Member> findAllAfter( String lastMemberId, int limit ) throws SQLException {
+        String sql = FIND_ALL_AFTER_SQL;
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection( RepositoryOperation.FIND_ALL_AFTER );
+            pstmt = prepareStatement( con, RepositoryOperation.FIND_ALL_AFTER, sql );
+            // 빈 문자열보다 큰 member_id = 전체
+            pstmt.setString(1, lastMemberId == null ? "" : lastMemberId );
+            pstmt.setInt(2, limit );
+            pstmt.setFetchSize( getQueryProfile( RepositoryOperation.FIND_ALL_AFTER ).fetchSizeFor( limit ) );
+
+            rs = executeQuery( RepositoryOperation.FIND_ALL_AFTER, pstmt );
+
+            MemberRowMapper mapper = MemberRowMapper.BY_POSITION;
+            List<Member> members = new ArrayList<>();
+            while ( rs.next() ) {
+                members.add( mapper.mapRow( rs ) );
+            }
+            metrics.recordRows( RepositoryOperation.FIND_ALL_AFTER, members.size() );
+            return members;
+        }
+        catch (SQLException e) {
+            metrics.recordError( RepositoryOperation.FIND_ALL_AFTER );
+            log.error( "db error", e );
+            throw e;
+        }
+        finally {
+            close( RepositoryOperation.FIND_ALL_AFTER, con, pstmt, rs );
+        }
+    }
+
+    /**
+     * money 구간 조회 - minMoney <= money <= maxMoney 인 회원을 money 순서로 limit 건 조회
+     * - money 보조 인덱스(SchemaManager가 만드는 idx_member_money)가 있어야 구간만 읽는다. 없으면 테이블 전체를 읽고 정렬한다.
+     */
+    public List<Member> findAllByMoneyBetween( int minMoney, int maxMoney, int limit ) throws SQLException {
+        String sql = FIND_BY_MONEY_RANGE_SQL;
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection( RepositoryOperation.FIND_BY_MONEY_RANGE );
+            pstmt = prepareStatement( con, RepositoryOperation.FIND_BY_MONEY_RANGE, sql );
+            pstmt.setInt(1, minMoney );
+            pstmt.setInt(2, maxMoney );
+            pstmt.setInt(3, limit );
+
+            rs = executeQuery( RepositoryOperation.FIND_BY_MONEY_RANGE, pstmt );
+
+            MemberRowMapper mapper = MemberRowMapper.BY_POSITION;
+            List<Member> members = new ArrayList<>();
+            while ( rs.next() ) {
+                members.add( mapper.mapRow( rs ) );
+            }
+            metrics.recordRows( RepositoryOperation.FIND_BY_MONEY_RANGE, members.size() );
+            return members;
+        }
+        catch (SQLException e) {
+            metrics.recordError( RepositoryOperation.FIND_BY_MONEY_RANGE );
+            log.error( "db error", e );
+            throw e;
+        }
+        finally {
+            close( RepositoryOperation.FIND_BY_MONEY_RANGE, con, pstmt, rs );
+        }
+    }
+
+    /**
+     * member_id 구간 조회 - fromMemberId <= member_id < toMemberId 인 회원을 한 row씩 callback에 넘긴다
+     *
+     * - PK 인덱스에서 구간의 시작 위치를 바로 찾으므로 구간 하나의 비용은 구간 안의 row 수에만 비례한다.
+     *   -> 구간을 나눠서 서로 다른 커넥션으로 동시에 읽을 수 있다. (ParallelMemberScanner)
+     * - 구간 안의 순서는 보장하지 않는다. (order by가 없다)
+     * @param fromMemberId 시작 (포함, null이면 처음부터)
+     * @param toMemberId 끝 (제외, null이면 끝까지)
+     * @return 읽은 row 수
+     */
+    public long findRange( String fromMemberId, String toMemberId, Consumer<Member> callback ) throws SQLException {
+        String sql = toMemberId == null ? FIND_FROM_SQL : FIND_RANGE_SQL;
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection( RepositoryOperation.FIND_RANGE );
+            pstmt = prepareStatement( con, RepositoryOperation.FIND_RANGE, sql );
+            // 빈 문자열 이상인 member_id = 전체
+            pstmt.setString(1, fromMemberId == null ? "" : fromMemberId );
+            if ( toMemberId != null ) {
+                pstmt.setString(2, toMemberId );
+            }
+
+            rs = executeQuery( RepositoryOperation.FIND_RANGE, pstmt );
+
+            MemberRowMapper mapper = MemberRowMapper.BY_POSITION;
+            long rows = 0;
+            while ( rs.next() ) {
+                callback.accept( mapper.mapRow( rs ) );
+                rows++;
+            }
+            metrics.recordRows( RepositoryOperation.FIND_RANGE, rows );
+            return rows;
+        }
+        catch (SQLException e) {
+            metrics.recordError( RepositoryOperation.FIND_RANGE );
+            log.error( "db error", e );
+            throw e;
+        }
+        finally {
+            close( RepositoryOperation.FIND_RANGE, con, pstmt, rs );
+        }
+    }
+
+    /**
+     * member_id를 대략 sampleSize 건 무작위로 뽑는다 (구간을 나눌 경계를 정할 때 사용)
+     * - 전체 row 수를 먼저 세고, 각 row를 sampleSize / 전체 확률로 뽑는다. 결과 수는 sampleSize 근처에서 조금씩 달라진다.
+     * - member_id 컬럼만 읽으므로 전체 조회보다 가볍지만 테이블(PK 인덱스) 전체를 한 번 읽는다.
+     * @return 정렬되지 않은 member_id 목록
+     */
+    public List<String> sampleIds( int sampleSize ) throws SQLException {
+        if ( sampleSize <= 0 ) {
+            throw new IllegalArgumentException( "sampleSize must be positive, sampleSize = " + sampleSize );
+        }
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection( RepositoryOperation.SAMPLE_IDS );
+
+            pstmt = prepareStatement( con, RepositoryOperation.SAMPLE_IDS, COUNT_SQL );
+            rs = executeQuery( RepositoryOperation.SAMPLE_IDS, pstmt );
+            long count = rs.next() ? rs.getLong(1) : 0;
+            JdbcUtils.closeResultSet( rs );
+            JdbcUtils.closeStatement( pstmt );
+            rs = null;
+            pstmt = null;
+
+            List<String> memberIds = new ArrayList<>( sampleSize + sampleSize / 4 );
+            if ( count == 0 ) {
+                metrics.recordRows( RepositoryOperation.SAMPLE_IDS, 0 );
+                return memberIds;
+            }
+
+            pstmt = prepareStatement( con, RepositoryOperation.SAMPLE_IDS, SAMPLE_IDS_SQL );
+            pstmt.setDouble(1, Math.min( 1.0, sampleSize / (double) count ) );
+            rs = executeQuery( RepositoryOperation.SAMPLE_IDS, pstmt );
+            while ( rs.next() ) {
+                memberIds.add( rs.getString(1) );
+            }
+            metrics.recordRows( RepositoryOperation.SAMPLE_IDS, memberIds.size() );
+            return memberIds;
+        }
+        catch (SQLException e) {
+            metrics.recordError( RepositoryOperation.SAMPLE_IDS );
+            log.error( "db error", e );
+            throw e;
+        }
+        finally {
+            close( RepositoryOperation.SAMPLE_IDS, con, pstmt, rs );
+        }
+    }
+
+    /**
+     * 회원의 money를 delta 만큼 더한다 - update member set money = money + ? where member_id = ?
+     *
+     * - findById로 읽고 update로 쓰면 왕복이 2번이고, 그 사이에 다른 쓰레드가 수정하면 그 수정이 사라진다(lost update).
+     * - DB가 한 문장 안에서 읽고 더해서 쓰므로 왕복 1번이고, 동시에 호출해도 모든 delta가 반영된다.
+     * @return 영향받은 row 수 (회원이 없으면 0)
+     */
+    public int addMoney( String memberId, int delta ) throws SQLException {
+        String sql = ADD_MONEY_SQL;
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection( RepositoryOperation.ADD_MONEY );
+            pstmt = prepareStatement( con, RepositoryOperation.ADD_MONEY, sql );
+            pstmt.setInt(1, delta );
+            pstmt.setString(2, memberId );
+
+            return executeUpdate( RepositoryOperation.ADD_MONEY, pstmt );
+        }
+        catch (SQLException e) {
+            metrics.recordError( RepositoryOperation.ADD_MONEY );
+            log.error("db error", e);
+            throw e;
+        }
+        finally {
+            close( RepositoryOperation.ADD_MONEY, con, pstmt, null );
+        }
+    }
+
+    /**
+     * addMoney + 더한 뒤의 money를 돌려준다
+     * - H2의 FINAL TABLE(data change delta table)로 update 결과 row를 같은 문장에서 바로 읽는다. (왕복 1번)
+     */
+    public int addMoneyAndGet( String memberId, int delta ) throws SQLException {
+        String sql = ADD_MONEY_AND_GET_SQL;
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection( RepositoryOperation.ADD_MONEY );
+            pstmt = prepareStatement( con, RepositoryOperation.ADD_MONEY, sql );
+            pstmt.setInt(1, delta );
+            pstmt.setString(2, memberId );
+
+            rs = executeQuery( RepositoryOperation.ADD_MONEY, pstmt );
+            if ( rs.next() ) {
+                metrics.recordRows( RepositoryOperation.ADD_MONEY, 1 );
+                return rs.getInt(1);
+            }
+            else {
+                metrics.recordRows( RepositoryOperation.ADD_MONEY, 0 );
+                throw new NoSuchElementException("member not found, memberId = " + memberId );
+            }
+        }
+        catch (SQLException e) {
+            metrics.recordError( RepositoryOperation.ADD_MONEY );
+            log.error("db error", e);
+            throw e;
+        }
+        finally {
+            close( RepositoryOperation.ADD_MONEY, con, pstmt, rs );
+        }
+    }
+
+    /**
+     * 있으면 수정, 없으면 저장 - H2 MERGE INTO ... KEY(member_id)
+     */
+    public Member upsert( Member member ) throws SQLException {
+        String sql = UPSERT_SQL;
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection( RepositoryOperation.UPSERT );
+            pstmt = prepareStatement( con, RepositoryOperation.UPSERT, sql );
+            pstmt.setString(1, member.getMemberId() );
+            pstmt.setInt(2, member.getMoney() );
+
+            executeUpdate( RepositoryOperation.UPSERT, pstmt );
+            return member;
+        }
+        catch (SQLException e) {
+            metrics.recordError( RepositoryOperation.UPSERT );
+            log.error("db error", e);
+            throw e;
+        }
+        finally {
+            close( RepositoryOperation.UPSERT, con, pstmt, null );
+        }
+    }
+
+    /**
+     * JDBC 배치 - 여러 회원을 한 번에 저장
+     *
+     * - 커넥션 하나, PreparedStatement 하나를 재사용하면서 addBatch()로 파라미터를 모아두고
+     *   batchSize 만큼 모이면 executeBatch()로 한 번에 DB에 보낸다. -> row마다 커넥션 획득 + 네트워크 왕복하는 비용을 줄인다.
+     * @return row별 영향받은 row 수 (members 순서와 동일)
+     */
+    public int[] saveAll( Collection<Member> members ) throws SQLException {
+        return batchUpdate( RepositoryOperation.SAVE_ALL, SAVE_SQL, members, ( pstmt, member ) -> {
+            pstmt.setString(1, member.getMemberId() );
+            pstmt.setInt(2, member.getMoney() );
+        } );
+    }
+
+    /**
+     * JDBC 배치 - 여러 회원의 money를 한 번에 수정
+     * @return row별 영향받은 row 수 (members 순서와 동일)
+     */
+    public int[] updateAll( Collection<Member> members ) throws SQLException {
+        return batchUpdate( RepositoryOperation.UPDATE_ALL, UPDATE_SQL, members, ( pstmt, member ) -> {
+            pstmt.setInt(1, member.getMoney() );
+            pstmt.setString(2, member.getMemberId() );
+        } );
+    }
+
+    /**
+     * JDBC 배치 - 여러 회원을 한 번에 삭제
+     * @return row별 영향받은 row 수 (memberIds 순서와 동일)
+     */
+    public int[] deleteAll( Collection<String> memberIds ) throws SQLException {
+        return batchUpdate( RepositoryOperation.DELETE_ALL, DELETE_SQL, memberIds, ( pstmt, memberId ) -> {
+            pstmt.setString(1, memberId );
+        } );
+    }
+
+    /**
+     * JDBC 배치 - 여러 회원의 money에 delta를 한 번에 더한다 (memberId -> delta)
+     * @return row별 영향받은 row 수 (deltas 순회 순서와 동일)
+     */
+    public int[] addMoneyAll( Map<String, Integer> deltas ) throws SQLException {
+        return batchUpdate( RepositoryOperation.ADD_MONEY_ALL, ADD_MONEY_SQL, deltas.entrySet(), ( pstmt, delta ) -> {
+            pstmt.setInt(1, delta.getValue() );
+            pstmt.setString(2, delta.getKey() );
+        } );
+    }
+
+    /**
+     * JDBC 배치 - 여러 회원을 한 번에 upsert
+     * @return row별 영향받은 row 수 (members 순서와 동일)
+     */
+    public int[] upsertAll( Collection<Member> members ) throws SQLException {
+        return batchUpdate( RepositoryOperation.UPSERT_ALL, UPSERT_SQL, members, ( pstmt, member ) -> {
+            pstmt.setString(1, member.getMemberId() );
+            pstmt.setInt(2, member.getMoney() );
+        } );
+    }
+
+    /**
+     * JDBC 배치 공통 - 커넥션 하나, PreparedStatement 하나로 items를 batchSize 씩 나눠서 executeBatch() 한다
+     */
+    private <T> int[] batchUpdate( RepositoryOperation operation, String sql, Collection<T> items, ParameterBinder<T> binder ) throws SQLException {
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection( operation );
+            pstmt = prepareStatement( con, operation, sql );
+
+            int[] counts = new int[ items.size() ];
+            int index = 0;
+            int pending = 0;
+            for ( T item : items ) {
+                binder.bind( pstmt, item );
+                pstmt.addBatch();
+
+                if ( ++pending == batchSize ) {
+                    index = executeBatch( operation, pstmt, counts, index );
+                    pending = 0;
+                }
+            }
+            if ( pending > 0 ) {
+                executeBatch( operation, pstmt, counts, index );
+            }
+
+            return counts;
+        }
+        catch (SQLException e) {
+            metrics.recordError( operation );
+            log.error("db error", e);
+            throw e;
+        }
+        finally {
+            close( operation, con, pstmt, null );
+        }
+    }
+
+    /**
+     * 배치 한 건의 파라미터 바인딩
+     */
+    @FunctionalInterface
+    private interface ParameterBinder<T> {
+        void bind( PreparedStatement pstmt, T item ) throws SQLException;
+    }
+
+    /**
+     * 모아둔 배치를 실행하고, 결과(row별 영향받은 row 수)를 counts의 index 위치부터 복사한다.
+     * @return 다음 배치 결과를 복사할 위치
+     */
+    private int executeBatch( RepositoryOperation operation, PreparedStatement pstmt, int[] counts, int index ) throws SQLException {
+        long start = System.nanoTime();
+        int[] result = pstmt.executeBatch();
+        metrics.recordExecute( operation, System.nanoTime() - start );
+
+        int rows = 0;
+        for ( int count : result ) {
+            rows += Math.max( count, 0 ); // SUCCESS_NO_INFO(-2) 는 0으로 본다
+        }
+        metrics.recordRows( operation, rows );
+
+        System.arraycopy( result, 0, counts, index, result.length );
+        log.debug( "batch size={}", result.length );
+        return index + result.length;
+    }
+
+    /**
+     * executeUpdate() + 실행 시간, 영향받은 row 수 기록
+     */
+    private int executeUpdate( RepositoryOperation operation, PreparedStatement pstmt ) throws SQLException {
+        long start = System.nanoTime();
+        int count = pstmt.executeUpdate();
+        metrics.recordExecute( operation, System.nanoTime() - start );
+        metrics.recordRows( operation, count );
+        log.debug( "result size={}", count );
+        return count;
+    }
+
+    /**
+     * executeQuery() + 실행 시간 기록 (row 수는 결과를 다 읽은 뒤에 기록한다)
+     */
+    private ResultSet executeQuery( RepositoryOperation operation, PreparedStatement pstmt ) throws SQLException {
+        long start = System.nanoTime();
+        ResultSet rs = pstmt.executeQuery();
+        metrics.recordExecute( operation, System.nanoTime() - start );
+        return rs;
+    }
+
     /**
      * 따로 if문으로 묶어주는 이유??
      * => 따로 처리하지 않으면 Statement를 close하다가 Exception이 발생하면 그대로 끝나버려서 Connection을 닫아주지 못하는 상황이 발생하기 때문에!
      * => 지금은 만약에 stmt에서 SQLException이 발생해도 catch문에서 잡히고 다음 Connection을 닫는 if절로 이동할 수 있다.
+     * @param operation
      * @param con
      * @param stmt
      * @param rs
      */
     // Prestatement를 보냈는데 Statement로 받는다? -> 상속받은거라 가능
-    private void close(Connection con, Statement stmt, ResultSet rs ){
+    private void close( RepositoryOperation operation, Connection con, Statement stmt, ResultSet rs ){
 
         JdbcUtils.closeResultSet( rs );
         JdbcUtils.closeStatement( stmt );
-        JdbcUtils.closeConnection( con );
+        // getConnection에서 켠 readOnly 힌트는 반납 전에 되돌린다 (풀이 되돌려주지 않으면 다음에 그 커넥션을 받은 쓰기가 실패할 수 있다)
+        if ( con != null && isReadOnlyHint( operation ) ) {
+            try {
+                con.setReadOnly( false );
+            }
+            catch (SQLException e) {
+                log.debug( "could not reset readOnly", e );
+            }
+        }
+        // 트랜잭션에 묶인 커넥션이면 닫지 않고 그대로 둔다 (트랜잭션이 끝날 때 반납된다)
+        DataSourceUtils.releaseConnection( con, dataSource );
 
     }
 
-    private Connection getConnection() throws SQLException {
-        Connection con = dataSource.getConnection();
-        log.info( "get connection={}, class={}" , con, con.getClass() );
+    /**
+     * 커넥션 획득 + 획득에 걸린 시간 기록 (풀에 커넥션이 없어서 기다린 시간도 여기에 포함된다)
+     */
+    private Connection getConnection( RepositoryOperation operation ) throws SQLException {
+        long start = System.nanoTime();
+        Connection con = isReplicaRead( operation )
+                ? ( (ReadWriteRoutingDataSource) dataSource ).getReadConnection()
+                : DataSourceUtils.doGetConnection( dataSource );
+        metrics.recordAcquire( operation, System.nanoTime() - start );
+        log.debug( "get connection={}", con );
+
+        if ( isReadOnlyHint( operation ) ) {
+            try {
+                con.setReadOnly( true );
+            }
+            catch (SQLException e) {
+                DataSourceUtils.releaseConnection( con, dataSource );
+                throw e;
+            }
+        }
         return con;
     }
 
+    /**
+     * 프로파일 적용 - 커서 종류, maxRows, fetchSize, queryTimeout
+     * - forwardOnly(기본)면 prepareStatement(sql) 그대로 호출하므로 StatementCachingDataSource 캐시를 그대로 탄다.
+     * - 캐시된 PreparedStatement는 다른 메서드와 같이 쓸 수 있으므로(TRANSFER, ADD_MONEY) 값은 매번 모두 설정한다.
+     */
+    private PreparedStatement prepareStatement( Connection con, RepositoryOperation operation, String sql ) throws SQLException {
+        QueryProfile profile = queryProfiles.get( operation );
+        PreparedStatement pstmt = profile.isForwardOnly()
+                ? con.prepareStatement( sql )
+                : con.prepareStatement( sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY );
+        try {
+            // maxRows를 먼저 바꿔야 fetchSize <= maxRows 검사에 걸리지 않는다
+            pstmt.setMaxRows( profile.getMaxRows() );
+            pstmt.setFetchSize( profile.getFetchSize() );
+            pstmt.setQueryTimeout( profile.getQueryTimeoutSeconds() );
+        }
+        catch (SQLException e) {
+            JdbcUtils.closeStatement( pstmt );
+            throw e;
+        }
+        return pstmt;
+    }
+
+    /**
+     * 조회 전용 메서드이고, 트랜잭션 밖이고, 읽기/쓰기 분리 DataSource이면 replica 커넥션을 사용한다
+     */
+    private boolean isReplicaRead( RepositoryOperation operation ) {
+        return operation.isReadOnly()
+                && dataSource instanceof ReadWriteRoutingDataSource
+                && !TransactionSynchronizationManager.hasResource( dataSource );
+    }
+
+    /**
+     * readOnly 프로파일이고 트랜잭션 밖이면 커넥션에 readOnly 힌트를 준다
+     * (트랜잭션 커넥션은 트랜잭션 매니저가 관리하므로 건드리지 않는다)
+     */
+    private boolean isReadOnlyHint( RepositoryOperation operation ) {
+        return queryProfiles.get( operation ).isReadOnly()
+                && !TransactionSynchronizationManager.hasResource( dataSource );
+    }
+
 
 }
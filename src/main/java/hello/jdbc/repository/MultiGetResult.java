@@ -0,0 +1,34 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * findAllByIds 결과
+ * - found : 찾은 회원 (memberId -> Member)
+ * - missingIds : 요청했지만 없는 memberId (요청 순서)
+ */
+@Getter
+public class MultiGetResult {
+
+    private final Map<String, Member> found;
+    private final Set<String> missingIds;
+
+    public MultiGetResult( Map<String, Member> found, Set<String> missingIds ) {
+        this.found = Collections.unmodifiableMap( found );
+        this.missingIds = Collections.unmodifiableSet( missingIds );
+    }
+
+    public Member get( String memberId ) {
+        return found.get( memberId );
+    }
+
+    public boolean hasMissing() {
+        return !missingIds.isEmpty();
+    }
+
+}
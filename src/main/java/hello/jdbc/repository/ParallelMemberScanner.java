@@ -0,0 +1,271 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import hello.jdbc.connection.SimpleConnectionPool;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * member 테이블 전체를 member_id 구간으로 나눠서 여러 커넥션으로 동시에 읽고 합친다 (합계, 최소/최대, 분포 같은 집계용)
+ *
+ * 1. 구간 나누기 (sampleRanges)
+ *  - member_id를 무작위로 뽑아서(sampleIds) 정렬한 뒤 같은 간격으로 경계를 고른다. -> 구간마다 row 수가 비슷해진다.
+ *  - 구간 수 = parallelism x rangesPerWorker. 구간을 쓰레드 수보다 잘게 나눠서 먼저 끝난 쓰레드가 남은 구간을 가져가게 한다.
+ *  - 경계는 다음 sampleRanges 전까지 재사용한다. 그 사이에 데이터가 바뀌어도 구간들이 전체 member_id를 빠짐없이 덮으므로
+ *    결과는 항상 정확하고, 구간 크기만 조금 고르지 않게 된다.
+ *  - 경계 비교는 String.compareTo 순서이므로 DB의 member_id 정렬(H2 기본)이 같은 순서여야 한다.
+ *
+ * 2. 읽기 (scan)
+ *  - 구간 목록을 ForkJoinPool에서 반씩 나눠서 fork 하고, 구간 하나는 findRange로 커넥션 하나를 빌려서 읽는다.
+ *  - 결과는 호출한 쪽이 준 Collector(supplier, accumulator, combiner)로 구간마다 모은 뒤 combiner로 합친다.
+ *  - 기본 집계: sumMoney, minMoney, maxMoney, moneyHistogram
+ *
+ * 3. 병렬도
+ *  - parallelism은 커넥션 풀 크기를 넘지 않는다. 풀보다 많은 쓰레드는 커넥션을 기다리기만 한다.
+ *  - 풀 크기는 리포지토리의 DataSource가 HikariCP(HikariConfigMXBean)나 SimpleConnectionPool이면 거기서 읽는다.
+ *    생성자에 준 poolSize는 그 위에 추가로 거는 상한이다. (풀 설정을 모르는 DataSource는 poolSize만 적용)
+ *  - ForkJoinPool의 최대 쓰레드 수도 parallelism으로 막아서 join에서 기다리는 동안 보상 쓰레드가 생겨 커넥션을 더 빌리지 않게 한다.
+ *  - 같은 풀을 다른 요청도 같이 쓴다면 풀 크기보다 작은 값을 준다.
+ *
+ * [주의] 구간마다 다른 커넥션(다른 트랜잭션)으로 읽으므로 전체가 한 시점의 스냅샷은 아니다.
+ */
+@Slf4j
+public class ParallelMemberScanner implements AutoCloseable {
+
+    public static final int DEFAULT_RANGES_PER_WORKER = 4;
+
+    // 구간 하나당 뽑을 member_id 수 (많을수록 구간 크기가 고르다)
+    public static final int DEFAULT_SAMPLES_PER_RANGE = 32;
+
+    private final MemberRepositoryV1 repository;
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    private int rangesPerWorker = DEFAULT_RANGES_PER_WORKER;
+    private int samplesPerRange = DEFAULT_SAMPLES_PER_RANGE;
+
+    // 정렬된 구간 경계 (경계 n개 -> 구간 n+1개). null이면 아직 나누지 않았다
+    private volatile List<String> boundaries;
+
+    /**
+     * @param parallelism 동시에 읽을 구간 수 (DataSource의 풀 크기가 상한)
+     */
+    public ParallelMemberScanner( MemberRepositoryV1 repository, int parallelism ) throws SQLException {
+        this( repository, parallelism, Integer.MAX_VALUE );
+    }
+
+    /**
+     * @param parallelism 동시에 읽을 구간 수
+     * @param poolSize 이 스캐너가 쓸 커넥션 수 상한 (DataSource의 풀 크기와 작은 쪽을 쓴다)
+     */
+    public ParallelMemberScanner( MemberRepositoryV1 repository, int parallelism, int poolSize ) throws SQLException {
+        if ( parallelism <= 0 ) {
+            throw new IllegalArgumentException( "parallelism must be positive, parallelism = " + parallelism );
+        }
+        if ( poolSize <= 0 ) {
+            throw new IllegalArgumentException( "poolSize must be positive, poolSize = " + poolSize );
+        }
+        this.repository = repository;
+        this.parallelism = Math.min( parallelism, Math.min( poolSize, maximumPoolSize( repository.getDataSource() ) ) );
+        this.pool = new ForkJoinPool( this.parallelism, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread( forkJoinPool );
+            thread.setName( "member-scan-" + thread.getPoolIndex() );
+            return thread;
+        }, null, false, 0, this.parallelism, 1, forkJoinPool -> true, 60, TimeUnit.SECONDS );
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * DataSource의 최대 풀 크기. 풀 설정을 모르면 Integer.MAX_VALUE
+     */
+    static int maximumPoolSize( DataSource dataSource ) throws SQLException {
+        if ( dataSource.isWrapperFor( HikariConfigMXBean.class ) ) {
+            return dataSource.unwrap( HikariConfigMXBean.class ).getMaximumPoolSize();
+        }
+        if ( dataSource.isWrapperFor( SimpleConnectionPool.class ) ) {
+            return dataSource.unwrap( SimpleConnectionPool.class ).getMaximumPoolSize();
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    public void setRangesPerWorker( int rangesPerWorker ) {
+        if ( rangesPerWorker <= 0 ) {
+            throw new IllegalArgumentException( "rangesPerWorker must be positive, rangesPerWorker = " + rangesPerWorker );
+        }
+        this.rangesPerWorker = rangesPerWorker;
+    }
+
+    public void setSamplesPerRange( int samplesPerRange ) {
+        if ( samplesPerRange <= 0 ) {
+            throw new IllegalArgumentException( "samplesPerRange must be positive, samplesPerRange = " + samplesPerRange );
+        }
+        this.samplesPerRange = samplesPerRange;
+    }
+
+    /**
+     * member_id를 다시 뽑아서 구간 경계를 새로 정한다 (데이터가 많이 늘거나 줄었을 때 호출)
+     * @return 정렬된 구간 경계
+     */
+    public synchronized List<String> sampleRanges() throws SQLException {
+        int ranges = parallelism * rangesPerWorker;
+        List<String> sampled = new ArrayList<>();
+        if ( ranges > 1 ) {
+            List<String> samples = repository.sampleIds( ranges * samplesPerRange );
+            Collections.sort( samples );
+            for ( int i = 1; i < ranges && !samples.isEmpty(); i++ ) {
+                String boundary = samples.get( (int) ( (long) i * samples.size() / ranges ) );
+                // 뽑힌 수가 구간 수보다 적으면 같은 경계가 나올 수 있다
+                if ( sampled.isEmpty() || !sampled.get( sampled.size() - 1 ).equals( boundary ) ) {
+                    sampled.add( boundary );
+                }
+            }
+        }
+        boundaries = Collections.unmodifiableList( sampled );
+        log.debug( "member scan ranges={}", sampled.size() + 1 );
+        return boundaries;
+    }
+
+    /**
+     * 전체 회원을 구간별로 동시에 읽어서 collector로 모은다
+     */
+    public <A, R> R scan( Collector<? super Member, A, R> collector ) throws SQLException {
+        List<String> ranges = boundaries;
+        if ( ranges == null ) {
+            ranges = sampleRanges();
+        }
+
+        long start = System.nanoTime();
+        A container;
+        try {
+            container = pool.invoke( new RangeTask<>( collector, ranges, 0, ranges.size() + 1 ) );
+        }
+        catch (RuntimeException e) {
+            // 다른 쓰레드에서 난 예외는 ForkJoinPool이 한 번 더 감싸서 던질 수 있으므로 원인을 따라가서 SQLException을 찾는다
+            for ( Throwable cause = e; cause != null; cause = cause.getCause() ) {
+                if ( cause instanceof SQLException ) {
+                    throw (SQLException) cause;
+                }
+            }
+            throw e;
+        }
+        log.debug( "member scan done, ranges={}, elapsedMs={}", ranges.size() + 1, TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) );
+        return collector.finisher().apply( container );
+    }
+
+    /**
+     * 호출한 쪽이 준 supplier, accumulator, combiner로 모은다
+     */
+    public <A> A scan( Supplier<A> supplier, BiConsumer<A, Member> accumulator, BinaryOperator<A> combiner ) throws SQLException {
+        return scan( Collector.of( supplier, accumulator, combiner ) );
+    }
+
+    /**
+     * money 합계
+     */
+    public static Collector<Member, ?, Long> sumMoney() {
+        return Collectors.summingLong( Member::getMoney );
+    }
+
+    /**
+     * money 최소값 (회원이 없으면 empty)
+     */
+    public static Collector<Member, ?, OptionalInt> minMoney() {
+        return Collectors.collectingAndThen( Collectors.summarizingInt( Member::getMoney ),
+                stats -> stats.getCount() == 0 ? OptionalInt.empty() : OptionalInt.of( stats.getMin() ) );
+    }
+
+    /**
+     * money 최대값 (회원이 없으면 empty)
+     */
+    public static Collector<Member, ?, OptionalInt> maxMoney() {
+        return Collectors.collectingAndThen( Collectors.summarizingInt( Member::getMoney ),
+                stats -> stats.getCount() == 0 ? OptionalInt.empty() : OptionalInt.of( stats.getMax() ) );
+    }
+
+    /**
+     * money 분포 - 구간 시작값(bucketWidth의 배수) -> 회원 수
+     */
+    public static Collector<Member, ?, SortedMap<Integer, Long>> moneyHistogram( int bucketWidth ) {
+        if ( bucketWidth <= 0 ) {
+            throw new IllegalArgumentException( "bucketWidth must be positive, bucketWidth = " + bucketWidth );
+        }
+        return Collectors.groupingBy( member -> Math.floorDiv( member.getMoney(), bucketWidth ) * bucketWidth, TreeMap::new, Collectors.counting() );
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        pool.shutdown();
+        if ( !pool.awaitTermination( 30, TimeUnit.SECONDS ) ) {
+            log.warn( "scan pool did not terminate in 30 seconds" );
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 구간 [from, to) 를 반씩 나눠서 fork 하고, 구간 하나가 남으면 직접 읽는다
+     */
+    private final class RangeTask<A> extends RecursiveTask<A> {
+
+        private final Collector<? super Member, A, ?> collector;
+        private final List<String> boundaries;
+        private final int from;
+        private final int to;
+
+        private RangeTask( Collector<? super Member, A, ?> collector, List<String> boundaries, int from, int to ) {
+            this.collector = collector;
+            this.boundaries = boundaries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected A compute() {
+            if ( to - from == 1 ) {
+                return scanRange( from );
+            }
+            int mid = ( from + to ) >>> 1;
+            RangeTask<A> left = new RangeTask<>( collector, boundaries, from, mid );
+            left.fork();
+            A right = new RangeTask<>( collector, boundaries, mid, to ).compute();
+            return collector.combiner().apply( left.join(), right );
+        }
+
+        private A scanRange( int range ) {
+            String fromMemberId = range == 0 ? null : boundaries.get( range - 1 );
+            String toMemberId = range == boundaries.size() ? null : boundaries.get( range );
+
+            A container = collector.supplier().get();
+            BiConsumer<A, ? super Member> accumulator = collector.accumulator();
+            try {
+                repository.findRange( fromMemberId, toMemberId, member -> accumulator.accept( container, member ) );
+            }
+            // RecursiveTask는 Checked Exception을 던질 수 없으므로 Runtime Exception 으로 변경 (scan에서 다시 꺼낸다)
+            catch (SQLException e) {
+                throw new IllegalStateException( e );
+            }
+            return container;
+        }
+    }
+
+}
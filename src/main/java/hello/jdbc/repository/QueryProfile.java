@@ -0,0 +1,107 @@
+package hello.jdbc.repository;
+
+/**
+ * 쿼리 실행 프로파일 - RepositoryOperation 마다 PreparedStatement/Connection에 적용할 값 (불변)
+ *
+ * - fetchSize : 드라이버가 DB에서 한 번에 가져올 row 수 (0 = 드라이버 기본값, H2 TCP는 100)
+ *               클수록 네트워크 왕복이 줄지만 클라이언트가 한 번에 들고 있는 row가 늘어난다.
+ * - maxRows : 최대 row 수 (0 = 제한 없음). 넘는 row는 DB가 보내지 않는다.
+ * - queryTimeoutSeconds : SQL 실행 시간 제한 (0 = 제한 없음). 넘으면 드라이버가 취소하고 SQLTimeoutException을 던진다.
+ * - readOnly : Connection.setReadOnly(true) 힌트. DB/드라이버가 읽기 전용 최적화(또는 쓰기 거부)를 할 수 있다.
+ *              트랜잭션 밖에서만 적용하고 커넥션을 반납하기 전에 되돌린다.
+ * - forwardOnly : TYPE_FORWARD_ONLY 커서 (기본). false이면 TYPE_SCROLL_INSENSITIVE 이고,
+ *                 드라이버가 결과 전체를 버퍼링하거나 서버에 커서를 유지해야 하므로 큰 결과에서는 느리다.
+ */
+public final class QueryProfile {
+
+    // JDBC 기본값과 같은 프로파일
+    public static final QueryProfile DEFAULT = new QueryProfile( 0, 0, 0, false, true );
+
+    private final int fetchSize;
+    private final int maxRows;
+    private final int queryTimeoutSeconds;
+    private final boolean readOnly;
+    private final boolean forwardOnly;
+
+    public QueryProfile( int fetchSize, int maxRows, int queryTimeoutSeconds, boolean readOnly, boolean forwardOnly ) {
+        if ( fetchSize < 0 ) {
+            throw new IllegalArgumentException( "fetchSize must not be negative, fetchSize = " + fetchSize );
+        }
+        if ( maxRows < 0 ) {
+            throw new IllegalArgumentException( "maxRows must not be negative, maxRows = " + maxRows );
+        }
+        if ( queryTimeoutSeconds < 0 ) {
+            throw new IllegalArgumentException( "queryTimeoutSeconds must not be negative, queryTimeoutSeconds = " + queryTimeoutSeconds );
+        }
+        // maxRows 보다 큰 fetchSize는 드라이버가 거부한다 (H2: Invalid value)
+        if ( maxRows > 0 && fetchSize > maxRows ) {
+            throw new IllegalArgumentException( "fetchSize must not exceed maxRows, fetchSize = " + fetchSize + ", maxRows = " + maxRows );
+        }
+        this.fetchSize = fetchSize;
+        this.maxRows = maxRows;
+        this.queryTimeoutSeconds = queryTimeoutSeconds;
+        this.readOnly = readOnly;
+        this.forwardOnly = forwardOnly;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public int getQueryTimeoutSeconds() {
+        return queryTimeoutSeconds;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public boolean isForwardOnly() {
+        return forwardOnly;
+    }
+
+    public QueryProfile withFetchSize( int fetchSize ) {
+        return new QueryProfile( fetchSize, maxRows, queryTimeoutSeconds, readOnly, forwardOnly );
+    }
+
+    public QueryProfile withMaxRows( int maxRows ) {
+        return new QueryProfile( fetchSize, maxRows, queryTimeoutSeconds, readOnly, forwardOnly );
+    }
+
+    public QueryProfile withQueryTimeoutSeconds( int queryTimeoutSeconds ) {
+        return new QueryProfile( fetchSize, maxRows, queryTimeoutSeconds, readOnly, forwardOnly );
+    }
+
+    public QueryProfile withReadOnly( boolean readOnly ) {
+        return new QueryProfile( fetchSize, maxRows, queryTimeoutSeconds, readOnly, forwardOnly );
+    }
+
+    public QueryProfile withForwardOnly( boolean forwardOnly ) {
+        return new QueryProfile( fetchSize, maxRows, queryTimeoutSeconds, readOnly, forwardOnly );
+    }
+
+    /**
+     * 결과가 최대 expectedRows 건인 조회(limit)의 fetchSize - 필요 이상으로 크게 잡지 않는다
+     */
+    int fetchSizeFor( int expectedRows ) {
+        int size = expectedRows;
+        if ( fetchSize > 0 ) {
+            size = Math.min( size, fetchSize );
+        }
+        if ( maxRows > 0 ) {
+            size = Math.min( size, maxRows );
+        }
+        return Math.max( size, 0 );
+    }
+
+    @Override
+    public String toString() {
+        return "QueryProfile{fetchSize=" + fetchSize + ", maxRows=" + maxRows + ", queryTimeoutSeconds=" + queryTimeoutSeconds
+                + ", readOnly=" + readOnly + ", forwardOnly=" + forwardOnly + "}";
+    }
+
+}
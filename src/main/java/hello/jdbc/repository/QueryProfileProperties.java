@@ -0,0 +1,65 @@
+package hello.jdbc.repository;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 쿼리 실행 프로파일 설정 (application.properties - hello.jdbc.query.profiles.<operation>.*)
+ *
+ *      hello.jdbc.query.profiles.find-all.fetch-size=2000
+ *      hello.jdbc.query.profiles.find-all.query-timeout-seconds=30
+ *
+ * - operation은 RepositoryOperation 이름 (find-all, find-all-after, find-by-id ...)
+ * - 적지 않은 항목은 리포지토리 기본 프로파일 값을 그대로 사용한다.
+ */
+@Getter
+@Setter
+@ConfigurationProperties( prefix = "hello.jdbc.query" )
+public class QueryProfileProperties {
+
+    private Map<RepositoryOperation, Profile> profiles = new EnumMap<>( RepositoryOperation.class );
+
+    /**
+     * 설정한 항목만 리포지토리의 현재 프로파일에 덮어쓴다
+     */
+    public void applyTo( MemberRepositoryV1 repository ) {
+        for ( Map.Entry<RepositoryOperation, Profile> entry : profiles.entrySet() ) {
+            QueryProfile base = repository.getQueryProfile( entry.getKey() );
+            repository.setQueryProfile( entry.getKey(), entry.getValue().applyTo( base ) );
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Profile {
+
+        // 드라이버가 DB에서 한 번에 가져올 row 수 (0 = 드라이버 기본값)
+        private Integer fetchSize;
+
+        // 최대 row 수 (0 = 제한 없음)
+        private Integer maxRows;
+
+        // SQL 실행 시간 제한 (0 = 제한 없음)
+        private Integer queryTimeoutSeconds;
+
+        // Connection.setReadOnly(true) 힌트 (트랜잭션 밖에서만)
+        private Boolean readOnly;
+
+        // false이면 TYPE_SCROLL_INSENSITIVE 커서
+        private Boolean forwardOnly;
+
+        QueryProfile applyTo( QueryProfile base ) {
+            return new QueryProfile(
+                    fetchSize != null ? fetchSize : base.getFetchSize(),
+                    maxRows != null ? maxRows : base.getMaxRows(),
+                    queryTimeoutSeconds != null ? queryTimeoutSeconds : base.getQueryTimeoutSeconds(),
+                    readOnly != null ? readOnly : base.isReadOnly(),
+                    forwardOnly != null ? forwardOnly : base.isForwardOnly() );
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package hello.jdbc.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 리포지토리 메트릭 (Micrometer)
+ *
+ * operation(RepositoryOperation) 태그 별로 아래 메트릭을 기록한다.
+ *  - member.repository.connection.acquire : dataSource.getConnection() 에 걸린 시간 (풀 대기 시간 포함)
+ *  - member.repository.execute            : executeUpdate/executeQuery/executeBatch 에 걸린 시간
+ *  - member.repository.rows               : 영향받은(조회된) row 수
+ *  - member.repository.errors             : SQLException 발생 수
+ *
+ * - Timer의 백분위(p50, p99, p999)는 HdrHistogram 기반으로 계산되고, 기록(record)할 때 락을 잡지 않는다.
+ * - 호출마다 태그로 미터를 찾으면 그 자체가 비용이므로, 생성할 때 operation 별로 미터를 만들어서 EnumMap에 담아둔다.
+ * - 스프링 빈으로 등록하면 Actuator의 MeterRegistry에 붙어서 /actuator/metrics 로 조회할 수 있고,
+ *   코드에서는 acquireTimer(operation) 처럼 직접 꺼내서 읽을 수 있다.
+ */
+public class RepositoryMetrics {
+
+    public static final String ACQUIRE = "member.repository.connection.acquire";
+    public static final String EXECUTE = "member.repository.execute";
+    public static final String ROWS = "member.repository.rows";
+    public static final String ERRORS = "member.repository.errors";
+
+    private final MeterRegistry registry;
+    private final Map<RepositoryOperation, Meters> meters = new EnumMap<>( RepositoryOperation.class );
+
+    /**
+     * 스프링 없이 사용할 때 - 인스턴스 전용 SimpleMeterRegistry에 기록한다
+     */
+    public RepositoryMetrics() {
+        this( new SimpleMeterRegistry() );
+    }
+
+    public RepositoryMetrics( MeterRegistry registry ) {
+        this.registry = registry;
+        for ( RepositoryOperation operation : RepositoryOperation.values() ) {
+            meters.put( operation, new Meters( registry, operation ) );
+        }
+    }
+
+    public void recordAcquire( RepositoryOperation operation, long nanos ) {
+        meters.get( operation ).acquire.record( nanos, TimeUnit.NANOSECONDS );
+    }
+
+    public void recordExecute( RepositoryOperation operation, long nanos ) {
+        meters.get( operation ).execute.record( nanos, TimeUnit.NANOSECONDS );
+    }
+
+    public void recordRows( RepositoryOperation operation, long rows ) {
+        meters.get( operation ).rows.record( rows );
+    }
+
+    public void recordError( RepositoryOperation operation ) {
+        meters.get( operation ).errors.increment();
+    }
+
+    public Timer acquireTimer( RepositoryOperation operation ) {
+        return meters.get( operation ).acquire;
+    }
+
+    public Timer executeTimer( RepositoryOperation operation ) {
+        return meters.get( operation ).execute;
+    }
+
+    public DistributionSummary rows( RepositoryOperation operation ) {
+        return meters.get( operation ).rows;
+    }
+
+    public Counter errors( RepositoryOperation operation ) {
+        return meters.get( operation ).errors;
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    private static final class Meters {
+        private final Timer acquire;
+        private final Timer execute;
+        private final DistributionSummary rows;
+        private final Counter errors;
+
+        private Meters( MeterRegistry registry, RepositoryOperation operation ) {
+            String tag = operation.tagValue();
+            this.acquire = Timer.builder( ACQUIRE )
+                    .tag( "operation", tag )
+                    .publishPercentiles( 0.5, 0.99, 0.999 )
+                    .register( registry );
+            this.execute = Timer.builder( EXECUTE )
+                    .tag( "operation", tag )
+                    .publishPercentiles( 0.5, 0.99, 0.999 )
+                    .register( registry );
+            this.rows = DistributionSummary.builder( ROWS )
+                    .tag( "operation", tag )
+                    .register( registry );
+            this.errors = Counter.builder( ERRORS )
+                    .tag( "operation", tag )
+                    .register( registry );
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package hello.jdbc.repository;
+
+/**
+ * 리포지토리 메서드 구분 - 메트릭의 operation 태그로 사용한다
+ */
+public enum RepositoryOperation {
+
+    SAVE( "save" ),
+    FIND_BY_ID( "findById", true ),
+    UPDATE( "update" ),
+    DELETE( "delete" ),
+    FIND_ALL( "findAll", true ),
+    FIND_ALL_AFTER( "findAllAfter", true ),
+    FIND_ALL_BY_IDS( "findAllByIds", true ),
+    FIND_RANGE( "findRange", true ),
+    SAMPLE_IDS( "sampleIds", true ),
+    FIND_BY_MONEY_RANGE( "findByMoneyRange", true ),
+    SAVE_ALL( "saveAll" ),
+    UPDATE_ALL( "updateAll" ),
+    DELETE_ALL( "deleteAll" ),
+    ADD_MONEY( "addMoney" ),
+    ADD_MONEY_ALL( "addMoneyAll" ),
+    UPSERT( "upsert" ),
+    UPSERT_ALL( "upsertAll" ),
+    TRANSFER( "transfer" );
+
+    private final String tagValue;
+
+    // 조회 전용 - ReadWriteRoutingDataSource를 사용하면 replica로 보낸다
+    private final boolean readOnly;
+
+    RepositoryOperation( String tagValue ) {
+        this( tagValue, false );
+    }
+
+    RepositoryOperation( String tagValue, boolean readOnly ) {
+        this.tagValue = tagValue;
+        this.readOnly = readOnly;
+    }
+
+    public String tagValue() {
+        return tagValue;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+}
@@ -0,0 +1,229 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.resilience.CircuitBreaker;
+import hello.jdbc.repository.resilience.CircuitOpenException;
+import hello.jdbc.repository.resilience.RetryBudget;
+import hello.jdbc.repository.resilience.SqlErrorType;
+import hello.jdbc.repository.resilience.SqlExceptionClassifier;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MemberRepositoryV1 앞에 두는 재시도 + 서킷 브레이커
+ *
+ * 1. 실패 분류 (SqlExceptionClassifier)
+ *  - PERMANENT(PK 중복 등)는 다시 시도하지 않고 그대로 던진다. DB는 정상 응답한 것이므로 서킷 브레이커에는 성공으로 센다.
+ *  - 없는 회원(NoSuchElementException)도 서킷 브레이커에는 성공으로 센다. 그 외 RuntimeException은 다시 시도하지 않고 실패로 센다.
+ *  - TRANSIENT는 다시 시도한다.
+ *  - CONNECTION_LOST는 SQL이 반영되었는지 알 수 없으므로 멱등(idempotent)한 메서드만 다시 시도한다.
+ *    (save, addMoney 등은 두 번 반영될 수 있으므로 다시 시도하지 않는다)
+ *  - 메서드별로 RetryMode를 정한다. (IDEMPOTENT: TRANSIENT, CONNECTION_LOST / NON_IDEMPOTENT: TRANSIENT만 / NONE: 다시 시도하지 않는다)
+ *
+ * 2. 재시도
+ *  - 최대 maxAttempts 번 (처음 호출 포함)
+ *  - 대기 시간은 0 ~ min(maxBackoff, baseBackoff * 2^n) 사이에서 랜덤 (full jitter) -> 동시에 실패한 호출들이 같은 순간에 다시 몰리지 않는다.
+ *  - 재시도 예산(RetryBudget)이 없으면 다시 시도하지 않는다. -> 장애 중에 재시도가 풀과 DB에 부하를 더하지 않는다.
+ *
+ * 3. 서킷 브레이커 (CircuitBreaker)
+ *  - 실패율이 높으면 DB를 호출하지 않고 바로 CircuitOpenException(SQLTransientException)을 던진다.
+ *
+ * 상태는 모두 Atomic/LongAdder 이므로 호출 경로에 락이 없다.
+ */
+@Slf4j
+public class ResilientMemberRepository {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_BACKOFF_MS = 10;
+    public static final long DEFAULT_MAX_BACKOFF_MS = 200;
+
+    /**
+     * 실패했을 때 다시 시도하는 범위
+     */
+    private enum RetryMode {
+        // TRANSIENT, CONNECTION_LOST 모두 다시 시도한다
+        IDEMPOTENT,
+        // TRANSIENT만 다시 시도한다
+        NON_IDEMPOTENT,
+        // 다시 시도하지 않는다 (서킷 브레이커만 적용)
+        NONE
+    }
+
+    private final MemberRepositoryV1 repository;
+    private final CircuitBreaker circuitBreaker;
+    private final RetryBudget retryBudget;
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long baseBackoffMs = DEFAULT_BASE_BACKOFF_MS;
+    private long maxBackoffMs = DEFAULT_MAX_BACKOFF_MS;
+
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder budgetExhaustedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    public ResilientMemberRepository( MemberRepositoryV1 repository ) {
+        this( repository, new CircuitBreaker(), new RetryBudget() );
+    }
+
+    public ResilientMemberRepository( MemberRepositoryV1 repository, CircuitBreaker circuitBreaker, RetryBudget retryBudget ) {
+        this.repository = repository;
+        this.circuitBreaker = circuitBreaker;
+        this.retryBudget = retryBudget;
+    }
+
+    public void setMaxAttempts( int maxAttempts ) {
+        if ( maxAttempts <= 0 ) {
+            throw new IllegalArgumentException( "maxAttempts must be positive, maxAttempts = " + maxAttempts );
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    public void setBackoffMs( long baseBackoffMs, long maxBackoffMs ) {
+        if ( baseBackoffMs < 0 || maxBackoffMs < baseBackoffMs ) {
+            throw new IllegalArgumentException( "invalid backoff, baseBackoffMs = " + baseBackoffMs + ", maxBackoffMs = " + maxBackoffMs );
+        }
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    public long getBudgetExhaustedCount() {
+        return budgetExhaustedCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public Member save( Member member ) throws SQLException {
+        return call( RetryMode.NON_IDEMPOTENT, () -> repository.save( member ) );
+    }
+
+    public Member findById( String memberId ) throws SQLException {
+        return call( RetryMode.IDEMPOTENT, () -> repository.findById( memberId ) );
+    }
+
+    public void update( String memberId, int money ) throws SQLException {
+        call( RetryMode.IDEMPOTENT, () -> {
+            repository.update( memberId, money );
+            return null;
+        } );
+    }
+
+    public void delete( String memberId ) throws SQLException {
+        call( RetryMode.IDEMPOTENT, () -> {
+            repository.delete( memberId );
+            return null;
+        } );
+    }
+
+    public Member upsert( Member member ) throws SQLException {
+        return call( RetryMode.IDEMPOTENT, () -> repository.upsert( member ) );
+    }
+
+    public int addMoney( String memberId, int delta ) throws SQLException {
+        return call( RetryMode.NON_IDEMPOTENT, () -> repository.addMoney( memberId, delta ) );
+    }
+
+    public MultiGetResult findAllByIds( Collection<String> memberIds ) throws SQLException {
+        return call( RetryMode.IDEMPOTENT, () -> repository.findAllByIds( memberIds ) );
+    }
+
+    public List<Member> findAllAfter( String lastMemberId, int limit ) throws SQLException {
+        return call( RetryMode.IDEMPOTENT, () -> repository.findAllAfter( lastMemberId, limit ) );
+    }
+
+    /**
+     * transfer는 데드락 재시도를 자체적으로 하므로 여기서는 서킷 브레이커만 적용한다
+     * (여기서도 다시 시도하면 재시도 횟수가 곱해진다)
+     */
+    public void transfer( String fromId, String toId, int amount ) throws SQLException {
+        call( RetryMode.NONE, () -> {
+            repository.transfer( fromId, toId, amount );
+            return null;
+        } );
+    }
+
+    private <T> T call( RetryMode retryMode, SqlCallable<T> callable ) throws SQLException {
+        retryBudget.deposit();
+
+        for ( int attempt = 1; ; attempt++ ) {
+            if ( !circuitBreaker.tryAcquire() ) {
+                rejectedCount.increment();
+                throw new CircuitOpenException( "circuit breaker is open" );
+            }
+
+            try {
+                T result = callable.call();
+                circuitBreaker.onSuccess();
+                return result;
+            }
+            // 없는 회원 - DB는 정상 응답했다
+            catch (NoSuchElementException e) {
+                circuitBreaker.onSuccess();
+                throw e;
+            }
+            // 그 외 RuntimeException(스프링 트랜잭션 예외 등)은 DB가 정상인지 알 수 없으므로 실패로 센다 (다시 시도하지는 않는다)
+            catch (RuntimeException e) {
+                circuitBreaker.onFailure();
+                throw e;
+            }
+            catch (SQLException e) {
+                SqlErrorType type = SqlExceptionClassifier.classify( e );
+                if ( type == SqlErrorType.PERMANENT ) {
+                    circuitBreaker.onSuccess();
+                    throw e;
+                }
+                circuitBreaker.onFailure();
+
+                boolean retryable = retryMode == RetryMode.IDEMPOTENT || ( retryMode == RetryMode.NON_IDEMPOTENT && type == SqlErrorType.TRANSIENT );
+                if ( !retryable || attempt >= maxAttempts ) {
+                    throw e;
+                }
+                if ( !retryBudget.tryWithdraw() ) {
+                    budgetExhaustedCount.increment();
+                    log.debug( "retry budget exhausted" );
+                    throw e;
+                }
+
+                retryCount.increment();
+                log.debug( "retry attempt={}, type={}, sqlState={}", attempt, type, e.getSQLState() );
+                backoff( attempt, e );
+            }
+        }
+    }
+
+    private void backoff( int attempt, SQLException cause ) throws SQLException {
+        long maxSleepMs = Math.min( maxBackoffMs, baseBackoffMs << Math.min( attempt - 1, 20 ) );
+        if ( maxSleepMs <= 0 ) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep( ThreadLocalRandom.current().nextLong( maxSleepMs + 1 ) );
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlCallable<T> {
+        T call() throws SQLException;
+    }
+
+}
@@ -0,0 +1,494 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 여러 DB(샤드)에 회원을 나눠 저장하는 리포지토리
+ *
+ * 1. 라우팅
+ *  - memberId의 일관된 해시(ConsistentHashRing)로 샤드를 정한다. save/findById/update/delete는 그 샤드 하나만 사용한다.
+ *  - 샤드마다 MemberRepositoryV1을 하나씩 둔다.
+ *
+ * 2. 여러 샤드 조회 (fan-out)
+ *  - findAllByIds : memberId를 샤드별로 나눠서 샤드마다 findAllByIds를 동시에 실행하고 합친다.
+ *  - findAll / findAllAfter : 모든 샤드를 동시에 조회하고 memberId 순서로 합친다.
+ *
+ * 3. 샤드 추가 (addShard) - 서비스 중에 실행할 수 있다
+ *  - 링에 새 샤드를 추가하면 새 샤드로 옮겨가야 하는 회원이 생긴다. (약 1/(N+1))
+ *  - 이동 중 : 조회는 기존 샤드, 쓰기는 기존 샤드 + 새 샤드 양쪽에 한다. (dual-write)
+ *    옮길 회원을 페이지 단위로 읽어서 새 샤드에 upsert 한다.
+ *  - 이동이 끝나면 조회/쓰기를 새 링으로 바꾸고, 기존 샤드에 남은 사본을 지운다.
+ *  - 쓰기와 복사가 같은 회원을 동시에 건드리지 않도록 memberId 별 락(striped lock)을 잡는다.
+ *  - 조회시에는 샤드가 현재 링에서 그 회원의 주인인 경우만 결과에 포함한다. (이동 중 사본이 중복되어 보이지 않는다)
+ *  - 새 샤드에 이미 회원이 있으면(이전에 실패한 addShard의 사본 등) 시작하기 전에 모두 지운다.
+ *    그 사이에 기존 샤드에서 지워진 회원은 복사 대상이 아니므로, 남겨두면 새 링으로 바뀐 뒤에 지워진 회원이 다시 보인다.
+ *  - 복사에 실패하면 이전 구성으로 되돌리고 새 샤드에 쓴 사본을 지운다.
+ */
+@Slf4j
+public class ShardedMemberRepository implements AutoCloseable {
+
+    public static final int DEFAULT_REBALANCE_PAGE_SIZE = 500;
+
+    // 쓰기/복사 락 개수 (2의 제곱)
+    private static final int LOCK_STRIPES = 64;
+
+    private final RepositoryMetrics metrics;
+    private final ExecutorService executor;
+    private final ReentrantLock[] locks = new ReentrantLock[ LOCK_STRIPES ];
+
+    // 샤드 구성은 통째로 바꾼다 (읽는 쪽은 락 없이 한 번 읽은 구성을 끝까지 사용)
+    private volatile Topology topology;
+
+    private int rebalancePageSize = DEFAULT_REBALANCE_PAGE_SIZE;
+
+    public ShardedMemberRepository( Map<String, DataSource> dataSources ) {
+        this( dataSources, new RepositoryMetrics(), ConsistentHashRing.DEFAULT_VIRTUAL_NODES );
+    }
+
+    public ShardedMemberRepository( Map<String, DataSource> dataSources, RepositoryMetrics metrics, int virtualNodes ) {
+        this.metrics = metrics;
+
+        Map<String, MemberRepositoryV1> shards = new LinkedHashMap<>();
+        dataSources.forEach( ( name, dataSource ) -> shards.put( name, new MemberRepositoryV1( dataSource, metrics ) ) );
+        ConsistentHashRing ring = new ConsistentHashRing( shards.keySet(), virtualNodes );
+        this.topology = new Topology( shards, ring, ring );
+
+        for ( int i = 0; i < LOCK_STRIPES; i++ ) {
+            locks[i] = new ReentrantLock();
+        }
+
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool( runnable -> {
+            Thread thread = new Thread( runnable, "member-shard-" + sequence.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        } );
+    }
+
+    public void setRebalancePageSize( int rebalancePageSize ) {
+        if ( rebalancePageSize <= 0 ) {
+            throw new IllegalArgumentException( "rebalancePageSize must be positive, rebalancePageSize = " + rebalancePageSize );
+        }
+        this.rebalancePageSize = rebalancePageSize;
+    }
+
+    public List<String> getShardNames() {
+        return new ArrayList<>( topology.shards.keySet() );
+    }
+
+    /**
+     * memberId를 조회할 샤드 이름
+     */
+    public String shardFor( String memberId ) {
+        return topology.readRing.nodeFor( memberId );
+    }
+
+    public Member save( Member member ) throws SQLException {
+        write( member.getMemberId(), ( primary, secondary ) -> {
+            primary.save( member );
+            if ( secondary != null ) {
+                secondary.upsert( member );
+            }
+        } );
+        return member;
+    }
+
+    public Member findById( String memberId ) throws SQLException {
+        Topology current = topology;
+        return current.shards.get( current.readRing.nodeFor( memberId ) ).findById( memberId );
+    }
+
+    public void update( String memberId, int money ) throws SQLException {
+        write( memberId, ( primary, secondary ) -> {
+            primary.update( memberId, money );
+            // 아직 복사되지 않았으면 0건 수정 -> 나중에 복사할 때 바뀐 값이 그대로 복사된다
+            if ( secondary != null ) {
+                secondary.update( memberId, money );
+            }
+        } );
+    }
+
+    public void delete( String memberId ) throws SQLException {
+        write( memberId, ( primary, secondary ) -> {
+            primary.delete( memberId );
+            if ( secondary != null ) {
+                secondary.delete( memberId );
+            }
+        } );
+    }
+
+    /**
+     * 여러 회원 조회 - 샤드별로 나눠서 동시에 조회하고 합친다
+     */
+    public MultiGetResult findAllByIds( Collection<String> memberIds ) throws SQLException {
+        Topology current = topology;
+
+        Map<String, List<String>> idsByShard = new LinkedHashMap<>();
+        for ( String memberId : memberIds ) {
+            idsByShard.computeIfAbsent( current.readRing.nodeFor( memberId ), name -> new ArrayList<>() ).add( memberId );
+        }
+
+        List<MultiGetResult> results = fanOut( current.shards, idsByShard.keySet(), ( name, shard ) -> shard.findAllByIds( idsByShard.get( name ) ) );
+
+        Map<String, Member> found = new HashMap<>();
+        for ( MultiGetResult result : results ) {
+            found.putAll( result.getFound() );
+        }
+        LinkedHashSet<String> missingIds = new LinkedHashSet<>();
+        for ( String memberId : memberIds ) {
+            if ( !found.containsKey( memberId ) ) {
+                missingIds.add( memberId );
+            }
+        }
+        return new MultiGetResult( found, missingIds );
+    }
+
+    /**
+     * 전체 회원 조회 - 모든 샤드를 동시에 조회하고 memberId 순서로 합친다
+     * - 결과를 모두 메모리에 올리므로 회원이 많으면 findAllAfter로 나눠서 조회한다.
+     */
+    public List<Member> findAll() throws SQLException {
+        Topology current = topology;
+        List<List<Member>> results = fanOut( current.shards, current.shards.keySet(), ( name, shard ) -> {
+            try ( Stream<Member> members = shard.findAll() ) {
+                return members.filter( member -> current.owns( name, member.getMemberId() ) ).collect( Collectors.toList() );
+            }
+        } );
+        return mergeSorted( results, Integer.MAX_VALUE );
+    }
+
+    /**
+     * 전체 회원 페이지 조회 (keyset) - 샤드마다 lastMemberId 다음 limit 건을 동시에 조회하고, 합쳐서 앞의 limit 건을 돌려준다
+     */
+    public List<Member> findAllAfter( String lastMemberId, int limit ) throws SQLException {
+        Topology current = topology;
+        List<List<Member>> results = fanOut( current.shards, current.shards.keySet(), ( name, shard ) -> ownedAfter( current, name, shard, lastMemberId, limit ) );
+        return mergeSorted( results, limit );
+    }
+
+    /**
+     * 샤드 추가 + 새 샤드로 옮겨야 하는 회원 이동 (서비스 중 실행 가능, 한 번에 하나만 실행된다)
+     * @return 새 샤드로 옮긴 회원 수
+     */
+    public synchronized long addShard( String name, DataSource dataSource ) throws SQLException {
+        Topology before = topology;
+        if ( before.shards.containsKey( name ) ) {
+            throw new IllegalArgumentException( "shard already exists, name = " + name );
+        }
+
+        Map<String, MemberRepositoryV1> shards = new LinkedHashMap<>( before.shards );
+        MemberRepositoryV1 target = new MemberRepositoryV1( dataSource, metrics );
+        shards.put( name, target );
+        ConsistentHashRing newRing = before.readRing.withNode( name );
+
+        // 0. 새 샤드에 남아있는 회원 정리 (아직 링에 없으므로 읽히거나 쓰이지 않는다)
+        long stale = clearShard( target );
+        if ( stale > 0 ) {
+            log.warn( "new shard was not empty, deleted stale members={}, shard={}", stale, name );
+        }
+
+        // 1. 이중 쓰기 시작 (조회는 아직 기존 링)
+        Topology migrating = new Topology( shards, before.readRing, newRing );
+        topology = migrating;
+        // 락을 잡고 이전 구성(before)을 읽은 쓰기가 모두 끝날 때까지 기다린다.
+        // 그런 쓰기는 기존 샤드에만 쓰므로, 복사가 그 회원을 이미 지나갔다면 새 샤드에 없는 채로 4단계에서 지워진다.
+        awaitWriters();
+        log.info( "rebalance start, add shard={}", name );
+
+        long moved = 0;
+        try {
+            // 2. 옮겨갈 회원 복사
+            for ( Map.Entry<String, MemberRepositoryV1> source : before.shards.entrySet() ) {
+                long copied = forEachMovingPage( source.getValue(), newRing, name, movingIds -> {
+                    MultiGetResult current = source.getValue().findAllByIds( movingIds );
+                    target.upsertAll( current.getFound().values() );
+                    if ( current.hasMissing() ) {
+                        target.deleteAll( current.getMissingIds() );
+                    }
+                    return current.getFound().size();
+                } );
+                log.info( "rebalance copied from shard={}, members={}", source.getKey(), copied );
+                moved += copied;
+            }
+
+            // 3. 새 링으로 전환
+            topology = new Topology( shards, newRing, newRing );
+        }
+        // 복사에 실패하면 이중 쓰기를 멈추고 이전 구성으로 되돌린 뒤 새 샤드에 쓴 사본(복사, 이중 쓰기)을 지운다
+        catch (SQLException | RuntimeException e) {
+            topology = before;
+            log.error( "rebalance failed, add shard={}", name, e );
+            // 진행 중이던 이중 쓰기가 끝난 뒤에 지워야 지운 뒤에 다시 쓰이지 않는다
+            awaitWriters();
+            try {
+                clearShard( target );
+            }
+            // 새 샤드가 원인이면 정리도 실패할 수 있다. 다음 addShard가 시작할 때 다시 지운다
+            catch (SQLException | RuntimeException cleanup) {
+                log.warn( "failed to clear shard after rebalance failure, shard={}", name, cleanup );
+                e.addSuppressed( cleanup );
+            }
+            throw e;
+        }
+
+        // 4. 기존 샤드에 남은 사본 정리
+        for ( MemberRepositoryV1 source : before.shards.values() ) {
+            forEachMovingPage( source, newRing, name, movingIds -> {
+                source.deleteAll( movingIds );
+                return movingIds.size();
+            } );
+        }
+        log.info( "rebalance done, add shard={}, moved={}", name, moved );
+        return moved;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        if ( !executor.awaitTermination( 30, TimeUnit.SECONDS ) ) {
+            log.warn( "executor did not terminate in 30 seconds" );
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 샤드의 회원을 모두 지운다 (링에 없는 샤드에만 사용한다)
+     * @return 지운 회원 수
+     */
+    private long clearShard( MemberRepositoryV1 shard ) throws SQLException {
+        long count = 0;
+        while ( true ) {
+            List<Member> page = shard.findAllAfter( "", rebalancePageSize );
+            if ( page.isEmpty() ) {
+                return count;
+            }
+            List<String> memberIds = new ArrayList<>( page.size() );
+            for ( Member member : page ) {
+                memberIds.add( member.getMemberId() );
+            }
+            shard.deleteAll( memberIds );
+            count += memberIds.size();
+        }
+    }
+
+    /**
+     * source 샤드를 memberId 순서로 페이지 단위로 읽으면서, newRing에서 target 샤드로 가야 하는 memberId를 락을 잡은 상태로 action에 넘긴다.
+     */
+    private long forEachMovingPage( MemberRepositoryV1 source, ConsistentHashRing newRing, String target, PageAction action ) throws SQLException {
+        long count = 0;
+        String lastMemberId = "";
+        while ( true ) {
+            List<Member> page = source.findAllAfter( lastMemberId, rebalancePageSize );
+            if ( page.isEmpty() ) {
+                return count;
+            }
+            lastMemberId = page.get( page.size() - 1 ).getMemberId();
+
+            List<String> movingIds = new ArrayList<>();
+            for ( Member member : page ) {
+                if ( target.equals( newRing.nodeFor( member.getMemberId() ) ) ) {
+                    movingIds.add( member.getMemberId() );
+                }
+            }
+            if ( movingIds.isEmpty() ) {
+                continue;
+            }
+
+            List<ReentrantLock> held = lockAll( movingIds );
+            try {
+                count += action.apply( movingIds );
+            }
+            finally {
+                unlockAll( held );
+            }
+        }
+    }
+
+    /**
+     * 샤드 하나에서 lastMemberId 다음, 그 샤드가 주인인 회원 limit 건 (이동 중 사본은 건너뛴다)
+     */
+    private static List<Member> ownedAfter( Topology current, String name, MemberRepositoryV1 shard, String lastMemberId, int limit ) throws SQLException {
+        List<Member> owned = new ArrayList<>( limit );
+        String cursor = lastMemberId;
+        while ( owned.size() < limit ) {
+            int want = limit - owned.size();
+            List<Member> page = shard.findAllAfter( cursor, want );
+            for ( Member member : page ) {
+                if ( current.owns( name, member.getMemberId() ) ) {
+                    owned.add( member );
+                }
+            }
+            // 샤드에 더 이상 회원이 없다
+            if ( page.size() < want ) {
+                break;
+            }
+            cursor = page.get( page.size() - 1 ).getMemberId();
+        }
+        return owned;
+    }
+
+    /**
+     * 샤드별로 memberId 순서로 정렬된 결과를 합쳐서 앞의 limit 건
+     * - List.sort(TimSort)는 이미 정렬된 구간(run)을 찾아서 병합하므로 샤드 수 만큼의 run을 합치는 비용만 든다.
+     */
+    private static List<Member> mergeSorted( List<List<Member>> results, int limit ) {
+        int size = 0;
+        for ( List<Member> result : results ) {
+            size += result.size();
+        }
+        List<Member> merged = new ArrayList<>( size );
+        for ( List<Member> result : results ) {
+            merged.addAll( result );
+        }
+        merged.sort( Comparator.comparing( Member::getMemberId ) );
+        return merged.size() > limit ? new ArrayList<>( merged.subList( 0, limit ) ) : merged;
+    }
+
+    /**
+     * memberId 락을 잡고 현재 구성의 주 샤드(primary)와 이중 쓰기 대상(secondary, 없으면 null)에 쓴다
+     */
+    private void write( String memberId, ShardWrite write ) throws SQLException {
+        ReentrantLock lock = locks[ stripe( memberId ) ];
+        lock.lock();
+        try {
+            // 락을 잡은 뒤에 구성을 읽어야 복사/정리와 순서가 맞는다
+            Topology current = topology;
+            String primaryName = current.readRing.nodeFor( memberId );
+            String secondaryName = current.writeRing.nodeFor( memberId );
+
+            MemberRepositoryV1 primary = current.shards.get( primaryName );
+            MemberRepositoryV1 secondary = primaryName.equals( secondaryName ) ? null : current.shards.get( secondaryName );
+            write.apply( primary, secondary );
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 모든 stripe 락을 한 번씩 잡았다 놓는다 - 그 전에 락을 잡고 있던 쓰기가 모두 끝났음을 보장한다 (barrier)
+     */
+    private void awaitWriters() {
+        for ( ReentrantLock lock : locks ) {
+            lock.lock();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 여러 memberId의 락을 데드락이 나지 않도록 항상 stripe 번호 순서로 잡는다
+     */
+    private List<ReentrantLock> lockAll( Collection<String> memberIds ) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for ( String memberId : memberIds ) {
+            stripes.add( stripe( memberId ) );
+        }
+        List<ReentrantLock> held = new ArrayList<>( stripes.size() );
+        for ( int stripe : stripes ) {
+            locks[stripe].lock();
+            held.add( locks[stripe] );
+        }
+        return held;
+    }
+
+    private static void unlockAll( List<ReentrantLock> held ) {
+        for ( int i = held.size() - 1; i >= 0; i-- ) {
+            held.get( i ).unlock();
+        }
+    }
+
+    private static int stripe( String memberId ) {
+        int hash = memberId.hashCode();
+        return ( hash ^ ( hash >>> 16 ) ) & ( LOCK_STRIPES - 1 );
+    }
+
+    /**
+     * 샤드마다 call을 동시에 실행하고 결과를 모은다. 샤드가 하나면 호출한 쓰레드에서 바로 실행한다.
+     */
+    private <T> List<T> fanOut( Map<String, MemberRepositoryV1> shards, Collection<String> names, ShardCall<T> call ) throws SQLException {
+        if ( names.size() == 1 ) {
+            String name = names.iterator().next();
+            return Collections.singletonList( call.apply( name, shards.get( name ) ) );
+        }
+
+        List<CompletableFuture<T>> futures = new ArrayList<>( names.size() );
+        for ( String name : names ) {
+            MemberRepositoryV1 shard = shards.get( name );
+            futures.add( CompletableFuture.supplyAsync( () -> {
+                try {
+                    return call.apply( name, shard );
+                }
+                catch (SQLException e) {
+                    throw new CompletionException( e );
+                }
+            }, executor ) );
+        }
+
+        List<T> results = new ArrayList<>( futures.size() );
+        for ( CompletableFuture<T> future : futures ) {
+            results.add( Futures.await( future ) );
+        }
+        return results;
+    }
+
+    /**
+     * 샤드 구성 (불변)
+     * - readRing : 조회와 주 쓰기 대상
+     * - writeRing : 이동 중이면 새 링 (주 쓰기 대상과 다르면 이중 쓰기), 아니면 readRing과 같다
+     */
+    private static final class Topology {
+
+        private final Map<String, MemberRepositoryV1> shards;
+        private final ConsistentHashRing readRing;
+        private final ConsistentHashRing writeRing;
+
+        private Topology( Map<String, MemberRepositoryV1> shards, ConsistentHashRing readRing, ConsistentHashRing writeRing ) {
+            this.shards = Collections.unmodifiableMap( shards );
+            this.readRing = readRing;
+            this.writeRing = writeRing;
+        }
+
+        private boolean owns( String name, String memberId ) {
+            return name.equals( readRing.nodeFor( memberId ) );
+        }
+    }
+
+    @FunctionalInterface
+    private interface ShardCall<T> {
+        T apply( String name, MemberRepositoryV1 shard ) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ShardWrite {
+        void apply( MemberRepositoryV1 primary, MemberRepositoryV1 secondary ) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface PageAction {
+        int apply( List<String> memberIds ) throws SQLException;
+    }
+
+}
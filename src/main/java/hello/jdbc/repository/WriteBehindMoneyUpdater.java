@@ -0,0 +1,209 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * money 수정 write-behind (나중에 모아서 쓰기)
+ *
+ * - update(memberId, money)를 바로 DB에 쓰지 않고 버퍼(memberId -> 마지막 money)에 담아둔다.
+ *   같은 회원을 여러 번 수정하면 마지막 값만 남기 때문에, DB 쓰기 횟수가 호출 수가 아니라 "수정된 회원 수"에 비례한다.
+ * - 버퍼는 ConcurrentHashMap이다. 내부적으로 버킷 단위로 락을 나눠 잡으므로(striped) 쓰레드가 많아도 서로 잘 막지 않는다.
+ *
+ * flush (MemberRepositoryV1.updateAll - JDBC 배치)
+ *  - flushInterval 마다 주기적으로
+ *  - 버퍼에 쌓인 회원 수가 flushThreshold 이상이 되면
+ *  - flush()를 직접 호출하거나, close() 할 때, JVM이 종료될 때(shutdown hook)
+ *
+ * backpressure
+ *  - 버퍼에는 최대 maxPending 명까지만 담을 수 있다. 가득 차면 update()를 호출한 쓰레드는 flush로 자리가 날 때까지 기다린다.
+ *  - flush 중인 회원도 DB에 다 쓸 때까지는 자리를 차지한다. DB 쓰기가 실패하면 (그 사이 새 값이 들어오지 않았다면) 버퍼로 되돌린다.
+ *
+ * [주의] 버퍼에만 있고 아직 flush 되지 않은 값은 findById로 조회되지 않는다.
+ */
+@Slf4j
+public class WriteBehindMoneyUpdater implements AutoCloseable {
+
+    private final MemberRepositoryV1 repository;
+    private final int flushThreshold;
+
+    private final ConcurrentHashMap<String, Integer> pending = new ConcurrentHashMap<>();
+    private final Semaphore capacity;
+
+    // flush는 한 번에 하나만 실행한다
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final ScheduledExecutorService scheduler;
+    private final Thread shutdownHook;
+    private volatile boolean closed;
+
+    private final LongAdder updateCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+    private final LongAdder flushedCount = new LongAdder();
+
+    public WriteBehindMoneyUpdater( MemberRepositoryV1 repository, int maxPending, int flushThreshold, Duration flushInterval ) {
+        if ( maxPending <= 0 || flushThreshold <= 0 ) {
+            throw new IllegalArgumentException( "maxPending and flushThreshold must be positive, maxPending = " + maxPending + ", flushThreshold = " + flushThreshold );
+        }
+        this.repository = repository;
+        this.flushThreshold = flushThreshold;
+        this.capacity = new Semaphore( maxPending );
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor( runnable -> {
+            Thread thread = new Thread( runnable, "member-write-behind" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        long intervalMillis = flushInterval.toMillis();
+        scheduler.scheduleWithFixedDelay( this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS );
+
+        this.shutdownHook = new Thread( this::flushQuietly, "member-write-behind-shutdown" );
+        Runtime.getRuntime().addShutdownHook( shutdownHook );
+    }
+
+    /**
+     * money 수정을 버퍼에 담는다. 버퍼가 가득 차 있으면 자리가 날 때까지 기다린다.
+     */
+    public void update( String memberId, int money ) throws InterruptedException {
+        if ( closed ) {
+            throw new IllegalStateException( "write-behind updater is closed" );
+        }
+        updateCount.increment();
+
+        // 이미 버퍼에 있는 회원이면 값만 바꾼다 (자리를 새로 차지하지 않는다)
+        if ( pending.replace( memberId, money ) != null ) {
+            coalescedCount.increment();
+            return;
+        }
+
+        capacity.acquire();
+        if ( pending.put( memberId, money ) != null ) {
+            // 그 사이 다른 쓰레드가 같은 회원을 먼저 넣었다
+            capacity.release();
+            coalescedCount.increment();
+            return;
+        }
+
+        if ( pending.size() >= flushThreshold && flushRequested.compareAndSet( false, true ) ) {
+            scheduler.execute( this::flushQuietly );
+        }
+    }
+
+    /**
+     * 버퍼에 쌓인 수정을 JDBC 배치로 DB에 쓴다
+     * @return DB에 쓴 회원 수
+     */
+    public int flush() throws SQLException {
+        flushLock.lock();
+        try {
+            flushRequested.set( false );
+
+            List<Member> members = new ArrayList<>( pending.size() );
+            for ( String memberId : pending.keySet() ) {
+                // remove()는 그 순간의 마지막 값을 꺼내므로, 꺼낸 뒤에 들어온 수정은 다음 flush에 쓰인다
+                Integer money = pending.remove( memberId );
+                if ( money != null ) {
+                    members.add( new Member( memberId, money ) );
+                }
+            }
+            if ( members.isEmpty() ) {
+                return 0;
+            }
+
+            try {
+                int[] counts = repository.updateAll( members );
+                int missing = 0;
+                for ( int count : counts ) {
+                    if ( count == 0 ) {
+                        missing++;
+                    }
+                }
+                if ( missing > 0 ) {
+                    log.warn( "write-behind flush: {} members not found", missing );
+                }
+            }
+            catch (SQLException | RuntimeException e) {
+                restore( members );
+                throw e;
+            }
+
+            capacity.release( members.size() );
+            flushedCount.add( members.size() );
+            log.debug( "write-behind flush size={}", members.size() );
+            return members.size();
+        }
+        finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 남은 수정을 모두 flush 하고 종료한다
+     */
+    @Override
+    public void close() throws SQLException {
+        closed = true;
+        scheduler.shutdown();
+        try {
+            Runtime.getRuntime().removeShutdownHook( shutdownHook );
+        }
+        catch (IllegalStateException e) {
+            // 이미 JVM 종료 중 (shutdown hook 실행 중)
+        }
+        flush();
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public long updateCount() {
+        return updateCount.sum();
+    }
+
+    public long coalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    public long flushedCount() {
+        return flushedCount.sum();
+    }
+
+    /**
+     * DB 쓰기 실패 - 그 사이 새 값이 들어오지 않은 회원만 버퍼로 되돌린다.
+     * 되돌린 회원은 꺼낼 때 차지하던 자리를 그대로 사용하고, 새 값이 있던 회원은 자리를 반납한다.
+     */
+    private void restore( List<Member> members ) {
+        int released = 0;
+        for ( Member member : members ) {
+            if ( pending.putIfAbsent( member.getMemberId(), member.getMoney() ) != null ) {
+                released++;
+            }
+        }
+        capacity.release( released );
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        }
+        catch (Exception e) {
+            log.error( "write-behind flush failed", e );
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package hello.jdbc.repository.mapper;
+
+import hello.jdbc.domain.Member;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * member 테이블 row -> Member
+ *
+ * - rs.getString("member_id") 처럼 컬럼 이름으로 꺼내면 드라이버가 row마다 이름으로 컬럼 위치를 찾는다.
+ * - MemberRowMapper.of(rs)로 ResultSet을 연 직후에 ResultSetMetaData에서 컬럼 위치를 한 번만 찾아두고,
+ *   row마다 rs.getString(index) 처럼 위치로 꺼낸다.
+ * - "select member_id, money ..." 처럼 SQL에 컬럼을 순서대로 적었다면 위치가 정해져 있으므로
+ *   ResultSetMetaData를 읽지 않고 BY_POSITION을 쓴다. (select * 는 테이블의 컬럼 순서를 따르므로 of(rs)를 쓴다)
+ *
+ * 대량 조회(scan)에서는 row마다 Member를 새로 만들지 않아도 되도록
+ *  - mapInto(rs, member) : 재사용하는 Member에 값만 덮어쓴다
+ *  - memberId(rs), money(rs) : 컬럼 값만 꺼낸다 (money는 int 그대로)
+ */
+public final class MemberRowMapper implements RowMapper<Member> {
+
+    /**
+     * "select member_id, money ..." 결과용 - member_id = 1, money = 2
+     */
+    public static final MemberRowMapper BY_POSITION = new MemberRowMapper( 1, 2 );
+
+    private final int memberIdIndex;
+    private final int moneyIndex;
+
+    private MemberRowMapper( int memberIdIndex, int moneyIndex ) {
+        this.memberIdIndex = memberIdIndex;
+        this.moneyIndex = moneyIndex;
+    }
+
+    /**
+     * ResultSet의 컬럼 구성에서 member_id, money 위치를 찾는다. 같은 ResultSet 안에서는 계속 재사용한다.
+     */
+    public static MemberRowMapper of( ResultSet rs ) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int memberIdIndex = 0;
+        int moneyIndex = 0;
+        for ( int i = 1; i <= metaData.getColumnCount(); i++ ) {
+            String label = metaData.getColumnLabel( i );
+            if ( "member_id".equalsIgnoreCase( label ) ) {
+                memberIdIndex = i;
+            }
+            else if ( "money".equalsIgnoreCase( label ) ) {
+                moneyIndex = i;
+            }
+        }
+        if ( memberIdIndex == 0 || moneyIndex == 0 ) {
+            throw new SQLException( "member_id and money columns are required, memberIdIndex = " + memberIdIndex + ", moneyIndex = " + moneyIndex );
+        }
+        return new MemberRowMapper( memberIdIndex, moneyIndex );
+    }
+
+    @Override
+    public Member mapRow( ResultSet rs ) throws SQLException {
+        return new Member( rs.getString( memberIdIndex ), rs.getInt( moneyIndex ) );
+    }
+
+    public Member mapInto( ResultSet rs, Member member ) throws SQLException {
+        member.setMemberId( rs.getString( memberIdIndex ) );
+        member.setMoney( rs.getInt( moneyIndex ) );
+        return member;
+    }
+
+    public String memberId( ResultSet rs ) throws SQLException {
+        return rs.getString( memberIdIndex );
+    }
+
+    public int money( ResultSet rs ) throws SQLException {
+        return rs.getInt( moneyIndex );
+    }
+
+}
@@ -0,0 +1,15 @@
+package hello.jdbc.repository.mapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * ResultSet의 현재 row 하나를 객체로 바꾼다
+ * - rs.next()는 호출하는 쪽에서 한다.
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    T mapRow( ResultSet rs ) throws SQLException;
+
+}
@@ -0,0 +1,170 @@
+package hello.jdbc.repository.resilience;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 서킷 브레이커 - 실패율이 높으면 일정 시간 DB를 호출하지 않고 바로 실패시킨다 (fail fast)
+ *
+ * 1. CLOSED : 평소. 최근 window 동안의 성공/실패 수를 센다.
+ *    호출 수가 minimumCalls 이상이고 실패율이 failureRateThreshold 이상이면 OPEN
+ * 2. OPEN : tryAcquire()가 false -> 호출하지 않는다. openDuration이 지나면 호출 하나만 통과시킨다(HALF_OPEN).
+ * 3. HALF_OPEN : 통과시킨 호출(probe)이 성공하면 CLOSED, 실패하면 다시 OPEN
+ *    probe가 openDuration 동안 결과를 알려주지 않으면 다음 호출을 probe로 통과시킨다.
+ *
+ * 락 없이 구현
+ *  - 상태는 AtomicInteger, 성공/실패 수는 1초(bucketMillis) 단위 버킷의 AtomicLongArray로 센다.
+ *  - 버킷이 오래되면 처음 쓰는 쓰레드가 CAS로 비운다. 비우는 순간 다른 쓰레드가 센 1~2건은 사라질 수 있다. (실패율 계산에는 영향이 거의 없다)
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+    public static final int DEFAULT_MINIMUM_CALLS = 20;
+    public static final int DEFAULT_WINDOW_SECONDS = 10;
+    public static final long DEFAULT_OPEN_DURATION_MS = 5000;
+
+    // 아직 사용하지 않은 버킷
+    private static final long NO_EPOCH = Long.MIN_VALUE;
+
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long bucketMillis;
+    private final int buckets;
+    private final long openDurationNanos;
+
+    private final AtomicInteger state = new AtomicInteger( State.CLOSED.ordinal() );
+    // OPEN 이 된 시각, 또는 마지막 probe를 통과시킨 시각 (nanoTime)
+    private final AtomicLong openedAt = new AtomicLong();
+
+    private final AtomicLongArray epochs;
+    private final AtomicLongArray successes;
+    private final AtomicLongArray failures;
+
+    public CircuitBreaker() {
+        this( DEFAULT_FAILURE_RATE_THRESHOLD, DEFAULT_MINIMUM_CALLS, DEFAULT_WINDOW_SECONDS * 1000L, DEFAULT_OPEN_DURATION_MS );
+    }
+
+    public CircuitBreaker( double failureRateThreshold, int minimumCalls, long windowMillis, long openDurationMillis ) {
+        if ( failureRateThreshold <= 0 || failureRateThreshold > 1 ) {
+            throw new IllegalArgumentException( "failureRateThreshold must be between 0 and 1, failureRateThreshold = " + failureRateThreshold );
+        }
+        if ( minimumCalls <= 0 ) {
+            throw new IllegalArgumentException( "minimumCalls must be positive, minimumCalls = " + minimumCalls );
+        }
+        if ( windowMillis <= 0 ) {
+            throw new IllegalArgumentException( "windowMillis must be positive, windowMillis = " + windowMillis );
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos( openDurationMillis );
+
+        // 창을 10개 버킷으로 나눈다 (창이 짧으면 버킷도 짧게)
+        this.buckets = 10;
+        this.bucketMillis = Math.max( 1, windowMillis / buckets );
+        this.epochs = new AtomicLongArray( buckets );
+        this.successes = new AtomicLongArray( buckets );
+        this.failures = new AtomicLongArray( buckets );
+        for ( int i = 0; i < buckets; i++ ) {
+            epochs.set( i, NO_EPOCH );
+        }
+    }
+
+    public State getState() {
+        return State.values()[ state.get() ];
+    }
+
+    /**
+     * 호출해도 되는지 - false 이면 호출하지 않고 바로 실패시킨다
+     */
+    public boolean tryAcquire() {
+        if ( state.get() == State.CLOSED.ordinal() ) {
+            return true;
+        }
+
+        long now = System.nanoTime();
+        long opened = openedAt.get();
+        if ( now - opened >= openDurationNanos && openedAt.compareAndSet( opened, now ) ) {
+            state.set( State.HALF_OPEN.ordinal() );
+            log.info( "circuit half open, probe call" );
+            return true;
+        }
+        return false;
+    }
+
+    public void onSuccess() {
+        if ( state.get() == State.HALF_OPEN.ordinal() && state.compareAndSet( State.HALF_OPEN.ordinal(), State.CLOSED.ordinal() ) ) {
+            reset();
+            log.info( "circuit closed" );
+            return;
+        }
+        record( successes );
+    }
+
+    public void onFailure() {
+        int current = state.get();
+        if ( current == State.HALF_OPEN.ordinal() ) {
+            open( State.HALF_OPEN );
+            return;
+        }
+        if ( current == State.OPEN.ordinal() ) {
+            return;
+        }
+
+        record( failures );
+        long failed = 0;
+        long total = 0;
+        long bucket = currentBucket();
+        for ( int i = 0; i < buckets; i++ ) {
+            long epoch = epochs.get( i );
+            if ( epoch != NO_EPOCH && bucket - epoch < buckets ) {
+                failed += failures.get( i );
+                total += failures.get( i ) + successes.get( i );
+            }
+        }
+        if ( total >= minimumCalls && failed >= failureRateThreshold * total ) {
+            open( State.CLOSED );
+        }
+    }
+
+    private void open( State from ) {
+        if ( state.compareAndSet( from.ordinal(), State.OPEN.ordinal() ) ) {
+            openedAt.set( System.nanoTime() );
+            log.warn( "circuit open, from={}", from );
+        }
+    }
+
+    private void record( AtomicLongArray counts ) {
+        long bucket = currentBucket();
+        int index = (int) Math.floorMod( bucket, (long) buckets );
+        long epoch = epochs.get( index );
+        if ( epoch != bucket && epochs.compareAndSet( index, epoch, bucket ) ) {
+            successes.set( index, 0 );
+            failures.set( index, 0 );
+        }
+        counts.incrementAndGet( index );
+    }
+
+    private void reset() {
+        for ( int i = 0; i < buckets; i++ ) {
+            epochs.set( i, NO_EPOCH );
+            successes.set( i, 0 );
+            failures.set( i, 0 );
+        }
+    }
+
+    private long currentBucket() {
+        return TimeUnit.NANOSECONDS.toMillis( System.nanoTime() ) / bucketMillis;
+    }
+
+}
@@ -0,0 +1,15 @@
+package hello.jdbc.repository.resilience;
+
+import java.sql.SQLTransientException;
+
+/**
+ * 서킷 브레이커가 열려 있어서 DB를 호출하지 않고 바로 실패했다
+ * - SQLTransientException 이므로 호출한 쪽은 "잠시 후 다시 시도하면 될 수 있는 실패"로 처리하면 된다.
+ */
+public class CircuitOpenException extends SQLTransientException {
+
+    public CircuitOpenException( String reason ) {
+        super( reason );
+    }
+
+}
@@ -0,0 +1,73 @@
+package hello.jdbc.repository.resilience;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 재시도 예산 (token bucket)
+ *
+ * - 호출할 때마다 ratio 만큼 토큰이 쌓이고(최대 maxRetries 개), 재시도할 때마다 1개를 쓴다.
+ *   -> 평소에는 호출 수의 ratio 비율만큼만 재시도한다. (ratio = 0.1 이면 최대 10%)
+ * - DB 장애로 모든 호출이 실패하면 토큰이 금방 바닥나서 재시도가 멈춘다. 재시도가 장애를 키우지 않는다.
+ * - 토큰은 정수(1개 = SCALE)로 AtomicLong 하나에 보관한다. (락 없음)
+ */
+public class RetryBudget {
+
+    public static final double DEFAULT_RATIO = 0.1;
+    public static final int DEFAULT_MAX_RETRIES = 100;
+
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long maximum;
+    private final AtomicLong balance;
+
+    public RetryBudget() {
+        this( DEFAULT_RATIO, DEFAULT_MAX_RETRIES );
+    }
+
+    public RetryBudget( double ratio, int maxRetries ) {
+        if ( ratio < 0 || ratio > 1 ) {
+            throw new IllegalArgumentException( "ratio must be between 0 and 1, ratio = " + ratio );
+        }
+        if ( maxRetries < 0 ) {
+            throw new IllegalArgumentException( "maxRetries must not be negative, maxRetries = " + maxRetries );
+        }
+        this.deposit = Math.round( ratio * SCALE );
+        this.maximum = maxRetries * SCALE;
+        // 기동 직후에도 재시도할 수 있도록 가득 채워서 시작한다
+        this.balance = new AtomicLong( maximum );
+    }
+
+    /**
+     * 호출 1번
+     */
+    public void deposit() {
+        if ( balance.get() >= maximum ) {
+            return;
+        }
+        balance.getAndUpdate( current -> Math.min( maximum, current + deposit ) );
+    }
+
+    /**
+     * 재시도 1번 - 토큰이 없으면 false
+     */
+    public boolean tryWithdraw() {
+        while ( true ) {
+            long current = balance.get();
+            if ( current < SCALE ) {
+                return false;
+            }
+            if ( balance.compareAndSet( current, current - SCALE ) ) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 지금 할 수 있는 재시도 수
+     */
+    public long available() {
+        return balance.get() / SCALE;
+    }
+
+}
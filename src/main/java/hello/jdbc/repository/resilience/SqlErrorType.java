@@ -0,0 +1,24 @@
+package hello.jdbc.repository.resilience;
+
+/**
+ * SQLException 분류 (SqlExceptionClassifier)
+ */
+public enum SqlErrorType {
+
+    /**
+     * 다시 시도하면 성공할 수 있고, 실패한 SQL은 반영되지 않았다 (데드락 롤백, 락 타임아웃, 풀에서 커넥션을 못 얻음 등)
+     */
+    TRANSIENT,
+
+    /**
+     * 다시 시도하면 성공할 수 있지만, 실패한 SQL이 반영되었는지 알 수 없다 (실행 중에 커넥션이 끊김)
+     * - 같은 SQL을 여러 번 실행해도 결과가 같은(멱등) 경우만 다시 시도한다.
+     */
+    CONNECTION_LOST,
+
+    /**
+     * 다시 시도해도 똑같이 실패한다 (PK 중복, SQL 문법 오류, 데이터 오류 등)
+     */
+    PERMANENT
+
+}
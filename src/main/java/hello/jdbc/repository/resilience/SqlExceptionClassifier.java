@@ -0,0 +1,95 @@
+package hello.jdbc.repository.resilience;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Set;
+
+/**
+ * SQLException -> SqlErrorType
+ *
+ * 1. 예외 타입 (JDBC 4 드라이버가 채워주는 경우)
+ *  - SQLTransientConnectionException : 커넥션을 얻지 못했다 (HikariCP 풀 대기 타임아웃 포함) -> SQL 실행 전이므로 TRANSIENT
+ *  - SQLTransactionRollbackException, SQLTimeoutException : TRANSIENT
+ *  - SQLRecoverableException : CONNECTION_LOST
+ *  - SQLNonTransientException : PERMANENT
+ * 2. SQLState (표준 코드 앞 2자리 class)
+ *  - 08 (connection exception) : CONNECTION_LOST, 40 (transaction rollback) : TRANSIENT
+ *  - HYT00/HYT01 (timeout) : TRANSIENT
+ * 3. 벤더(H2) 에러 코드
+ *  - 50200 LOCK_TIMEOUT_1, 40001 DEADLOCK_1, 90131 CONCURRENT_UPDATE_1 : TRANSIENT
+ *  - 90067 CONNECTION_BROKEN_1, 90098 DATABASE_IS_CLOSED, 90121 DATABASE_CALLED_AT_SHUTDOWN : CONNECTION_LOST
+ *
+ * 그 외는 PERMANENT - 모르는 에러를 다시 시도하면 장애 때 DB 부하만 늘린다.
+ * 배치 실패(BatchUpdateException)처럼 원인이 getNextException/getCause에 있으면 따라가면서 가장 먼저 분류되는 것을 사용한다.
+ */
+public final class SqlExceptionClassifier {
+
+    private static final Set<Integer> H2_TRANSIENT_CODES = Set.of( 50200, 40001, 90131 );
+    private static final Set<Integer> H2_CONNECTION_LOST_CODES = Set.of( 90067, 90098, 90121 );
+
+    private SqlExceptionClassifier() {
+    }
+
+    public static SqlErrorType classify( SQLException e ) {
+        if ( e instanceof CircuitOpenException ) {
+            return SqlErrorType.PERMANENT;
+        }
+
+        for ( Throwable next = e; next != null; next = nextOf( next ) ) {
+            if ( next instanceof SQLException ) {
+                SqlErrorType type = classifyOne( (SQLException) next );
+                if ( type != null ) {
+                    return type;
+                }
+            }
+        }
+        return SqlErrorType.PERMANENT;
+    }
+
+    public static boolean isTransient( SQLException e ) {
+        return classify( e ) != SqlErrorType.PERMANENT;
+    }
+
+    private static SqlErrorType classifyOne( SQLException e ) {
+        if ( e instanceof SQLTransientConnectionException || e instanceof SQLTransactionRollbackException || e instanceof SQLTimeoutException ) {
+            return SqlErrorType.TRANSIENT;
+        }
+        if ( e instanceof SQLRecoverableException ) {
+            return SqlErrorType.CONNECTION_LOST;
+        }
+
+        if ( H2_TRANSIENT_CODES.contains( e.getErrorCode() ) ) {
+            return SqlErrorType.TRANSIENT;
+        }
+        if ( H2_CONNECTION_LOST_CODES.contains( e.getErrorCode() ) ) {
+            return SqlErrorType.CONNECTION_LOST;
+        }
+
+        String sqlState = e.getSQLState();
+        if ( sqlState != null && sqlState.length() >= 2 ) {
+            if ( sqlState.startsWith( "08" ) ) {
+                return SqlErrorType.CONNECTION_LOST;
+            }
+            if ( sqlState.startsWith( "40" ) || "HYT00".equals( sqlState ) || "HYT01".equals( sqlState ) ) {
+                return SqlErrorType.TRANSIENT;
+            }
+        }
+
+        if ( e instanceof SQLNonTransientException ) {
+            return SqlErrorType.PERMANENT;
+        }
+        return null;
+    }
+
+    private static Throwable nextOf( Throwable e ) {
+        if ( e instanceof SQLException && ( (SQLException) e ).getNextException() != null ) {
+            return ( (SQLException) e ).getNextException();
+        }
+        return e.getCause() == e ? null : e.getCause();
+    }
+
+}
@@ -0,0 +1,271 @@
+package hello.jdbc.repository.snapshot;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * 회원 전체의 memberId -> money 스냅샷 (불변)
+ *
+ * 1. 저장 구조 - Member 객체 없이 컬럼(배열) 4개
+ *  - idChars : 모든 memberId의 문자를 이어 붙인 char 배열 (회원마다 String/byte[] 객체를 두지 않는다)
+ *  - idOffsets : i번째 회원의 memberId = idChars[ idOffsets[i] ~ idOffsets[i+1] )
+ *  - money : i번째 회원의 money
+ *  - slots : open addressing(linear probing) 해시 인덱스. 회원 번호 + 1 (0 = 빈 칸), 크기는 회원 수의 2배 이상인 2의 제곱수
+ *  회원 1명당 약 (memberId 길이 x 2 + 16) 바이트 -> Member + HashMap 엔트리(100바이트 이상)의 몇 분의 1 이다.
+ *
+ * 2. 조회
+ *  - 해시는 String.hashCode()와 같은 식으로 만들어두므로 조회할 때는 String에 캐시된 hashCode를 그대로 쓴다.
+ *  - 비교도 charAt으로 직접 하므로 조회할 때 객체를 만들지 않는다.
+ *
+ * 3. offHeap
+ *  - true이면 컬럼을 direct ByteBuffer에 두어서 GC가 스캔/복사하지 않는다. (heap이면 int[]/char[]를 감싼 버퍼)
+ */
+public final class MemberSnapshot {
+
+    private static final MemberSnapshot EMPTY = new Builder( 0, false ).build( 0 );
+
+    private final int size;
+    private final CharBuffer idChars;
+    private final IntBuffer idOffsets;
+    private final IntBuffer money;
+    private final IntBuffer slots;
+    private final int mask;
+    private final boolean offHeap;
+    // 몇 번째 스냅샷인지 (load/refresh 마다 1씩 증가)
+    private final long version;
+
+    private MemberSnapshot( int size, CharBuffer idChars, IntBuffer idOffsets, IntBuffer money, IntBuffer slots, boolean offHeap, long version ) {
+        this.size = size;
+        this.idChars = idChars;
+        this.idOffsets = idOffsets;
+        this.money = money;
+        this.slots = slots;
+        this.mask = slots.capacity() - 1;
+        this.offHeap = offHeap;
+        this.version = version;
+    }
+
+    public static MemberSnapshot empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * 컬럼이 차지하는 바이트 수
+     */
+    public long memoryBytes() {
+        return (long) idChars.capacity() * Character.BYTES
+                + (long) ( idOffsets.capacity() + money.capacity() + slots.capacity() ) * Integer.BYTES;
+    }
+
+    public boolean contains( String memberId ) {
+        return indexOf( memberId ) >= 0;
+    }
+
+    /**
+     * @throws NoSuchElementException 회원이 없으면
+     */
+    public int getMoney( String memberId ) {
+        int index = indexOf( memberId );
+        if ( index < 0 ) {
+            throw new NoSuchElementException( "member not found, memberId = " + memberId );
+        }
+        return money.get( index );
+    }
+
+    public int getMoney( String memberId, int defaultValue ) {
+        int index = indexOf( memberId );
+        return index < 0 ? defaultValue : money.get( index );
+    }
+
+    /**
+     * @return 회원 번호 (0 ~ size-1), 없으면 -1
+     */
+    int indexOf( String memberId ) {
+        for ( int slot = spread( memberId.hashCode() ) & mask; ; slot = ( slot + 1 ) & mask ) {
+            int entry = slots.get( slot );
+            if ( entry == 0 ) {
+                return -1;
+            }
+            if ( idEquals( entry - 1, memberId ) ) {
+                return entry - 1;
+            }
+        }
+    }
+
+    int moneyAt( int index ) {
+        return money.get( index );
+    }
+
+    /**
+     * money만 바뀐 경우 - memberId 컬럼과 인덱스는 그대로 공유하고 money 컬럼만 복사한다
+     */
+    MemberSnapshot withMoney( int[] indexes, int[] values, int count ) {
+        IntBuffer copy = allocateInts( size, offHeap );
+        for ( int i = 0; i < size; i++ ) {
+            copy.put( i, money.get( i ) );
+        }
+        for ( int i = 0; i < count; i++ ) {
+            copy.put( indexes[i], values[i] );
+        }
+        return new MemberSnapshot( size, idChars, idOffsets, copy, slots, offHeap, version + 1 );
+    }
+
+    /**
+     * 회원 추가/삭제가 있는 경우 - deleted를 뺀 기존 회원을 복사한 Builder (DB를 다시 읽지 않는다)
+     */
+    Builder toBuilder( boolean[] deleted, int extraMembers ) {
+        Builder builder = new Builder( size + extraMembers, offHeap );
+        for ( int i = 0; i < size; i++ ) {
+            if ( deleted != null && deleted[i] ) {
+                continue;
+            }
+            int from = idOffsets.get( i );
+            int to = idOffsets.get( i + 1 );
+            builder.beginId();
+            for ( int c = from; c < to; c++ ) {
+                builder.appendChar( idChars.get( c ) );
+            }
+            builder.endId( money.get( i ) );
+        }
+        return builder;
+    }
+
+    private boolean idEquals( int index, String memberId ) {
+        int from = idOffsets.get( index );
+        int length = idOffsets.get( index + 1 ) - from;
+        if ( length != memberId.length() ) {
+            return false;
+        }
+        for ( int i = 0; i < length; i++ ) {
+            if ( idChars.get( from + i ) != memberId.charAt( i ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread( int hash ) {
+        return hash ^ ( hash >>> 16 );
+    }
+
+    private static IntBuffer allocateInts( int count, boolean offHeap ) {
+        return offHeap
+                ? ByteBuffer.allocateDirect( count * Integer.BYTES ).order( ByteOrder.nativeOrder() ).asIntBuffer()
+                : IntBuffer.allocate( count );
+    }
+
+    private static CharBuffer allocateChars( int count, boolean offHeap ) {
+        return offHeap
+                ? ByteBuffer.allocateDirect( count * Character.BYTES ).order( ByteOrder.nativeOrder() ).asCharBuffer()
+                : CharBuffer.allocate( count );
+    }
+
+    /**
+     * 회원을 한 명씩 추가해서 스냅샷을 만든다 (heap 배열에 모은 뒤 build에서 최종 크기로 복사한다)
+     * - memberId 중복은 확인하지 않는다. (PK 순서로 읽은 결과만 넣는다)
+     */
+    static final class Builder {
+
+        private final boolean offHeap;
+        private char[] chars;
+        private int charCount;
+        private int[] offsets;
+        private int[] values;
+        private int[] hashes;
+        private int count;
+        private int hash;
+
+        Builder( int expectedMembers, boolean offHeap ) {
+            int capacity = Math.max( expectedMembers, 16 );
+            this.offHeap = offHeap;
+            this.chars = new char[ capacity * 8 ];
+            this.offsets = new int[ capacity + 1 ];
+            this.values = new int[ capacity ];
+            this.hashes = new int[ capacity ];
+        }
+
+        void add( String memberId, int money ) {
+            beginId();
+            for ( int i = 0; i < memberId.length(); i++ ) {
+                appendChar( memberId.charAt( i ) );
+            }
+            endId( money );
+        }
+
+        private void beginId() {
+            if ( count == values.length ) {
+                int capacity = values.length * 2;
+                offsets = Arrays.copyOf( offsets, capacity + 1 );
+                values = Arrays.copyOf( values, capacity );
+                hashes = Arrays.copyOf( hashes, capacity );
+            }
+            offsets[ count ] = charCount;
+            hash = 0;
+        }
+
+        private void appendChar( char c ) {
+            if ( charCount == chars.length ) {
+                chars = Arrays.copyOf( chars, chars.length * 2 );
+            }
+            chars[ charCount++ ] = c;
+            // String.hashCode()와 같은 식
+            hash = 31 * hash + c;
+        }
+
+        private void endId( int money ) {
+            values[ count ] = money;
+            hashes[ count ] = hash;
+            count++;
+        }
+
+        int size() {
+            return count;
+        }
+
+        MemberSnapshot build( long version ) {
+            offsets[ count ] = charCount;
+
+            CharBuffer idChars = allocateChars( charCount, offHeap );
+            for ( int i = 0; i < charCount; i++ ) {
+                idChars.put( i, chars[i] );
+            }
+            IntBuffer idOffsets = allocateInts( count + 1, offHeap );
+            IntBuffer money = allocateInts( count, offHeap );
+            for ( int i = 0; i < count; i++ ) {
+                idOffsets.put( i, offsets[i] );
+                money.put( i, values[i] );
+            }
+            idOffsets.put( count, charCount );
+
+            // 사용률 50% 이하 -> 없는 memberId도 빈 칸을 금방 만난다
+            int capacity = Integer.highestOneBit( Math.max( count * 2, 2 ) - 1 ) << 1;
+            IntBuffer slots = allocateInts( capacity, offHeap );
+            int mask = capacity - 1;
+            for ( int i = 0; i < count; i++ ) {
+                int slot = spread( hashes[i] ) & mask;
+                while ( slots.get( slot ) != 0 ) {
+                    slot = ( slot + 1 ) & mask;
+                }
+                slots.put( slot, i + 1 );
+            }
+            return new MemberSnapshot( count, idChars, idOffsets, money, slots, offHeap, version );
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+package hello.jdbc.repository.snapshot;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import hello.jdbc.repository.MultiGetResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 읽기 전용 회원 스냅샷 (memberId -> money) - 최근 변경이 조금 늦게 보여도 되는 서비스용
+ *
+ * 1. 조회
+ *  - volatile 스냅샷(MemberSnapshot) 하나를 읽어서 찾으므로 락, DB 호출, 객체 생성이 없다.
+ *
+ * 2. 전체 로드 (load)
+ *  - findAll(콜백)로 member 테이블을 fetchSize 씩 읽으면서 바로 컬럼에 넣는다. (Member 목록을 만들어두지 않는다)
+ *
+ * 3. 증분 갱신 (refresh) - 변경 표시(markChanged) 기반
+ *  - member 테이블에는 변경 시각/버전 컬럼이 없으므로, 쓰기 쪽에서 커밋 후에 바뀐 memberId를 markChanged로 알려준다.
+ *  - refresh는 표시된 memberId만 findAllByIds로 다시 읽는다. 없으면 삭제된 것으로 본다.
+ *  - money만 바뀌었으면 money 컬럼만 복사하고, 추가/삭제가 있으면 기존 스냅샷에서 새로 만든다. (어느 쪽이든 DB는 바뀐 회원만 읽는다)
+ *  - 표시를 먼저 지우고 DB를 읽으므로, 읽는 도중에 바뀐 회원은 다시 표시되어 다음 refresh에 반영된다.
+ *  - 다른 애플리케이션이 바꾼 것은 표시되지 않으므로 주기적으로 load를 같이 사용한다.
+ *
+ * 4. 교체
+ *  - 새 스냅샷을 다 만든 뒤 volatile 필드에 한 번에 바꿔 넣는다. 조회하는 쓰레드는 이전 것 또는 새 것 하나만 본다.
+ *  - load/refresh는 synchronized 이므로 동시에 하나만 실행된다.
+ */
+@Slf4j
+public class MemberSnapshotStore {
+
+    private final MemberRepositoryV1 repository;
+    private final boolean offHeap;
+
+    private volatile MemberSnapshot snapshot = MemberSnapshot.empty();
+
+    // 다음 refresh에서 다시 읽을 memberId
+    private final Set<String> changedIds = ConcurrentHashMap.newKeySet();
+
+    public MemberSnapshotStore( MemberRepositoryV1 repository ) {
+        this( repository, false );
+    }
+
+    /**
+     * @param offHeap true이면 컬럼을 direct ByteBuffer에 둔다
+     */
+    public MemberSnapshotStore( MemberRepositoryV1 repository, boolean offHeap ) {
+        this.repository = repository;
+        this.offHeap = offHeap;
+    }
+
+    public MemberSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @throws NoSuchElementException 스냅샷에 회원이 없으면
+     */
+    public int getMoney( String memberId ) {
+        return snapshot.getMoney( memberId );
+    }
+
+    public int getMoney( String memberId, int defaultValue ) {
+        return snapshot.getMoney( memberId, defaultValue );
+    }
+
+    public boolean contains( String memberId ) {
+        return snapshot.contains( memberId );
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * 회원이 바뀌었다고 표시한다 (저장/수정/삭제를 커밋한 뒤에 호출)
+     */
+    public void markChanged( String memberId ) {
+        changedIds.add( memberId );
+    }
+
+    public int getPendingChanges() {
+        return changedIds.size();
+    }
+
+    /**
+     * member 테이블 전체를 다시 읽어서 교체한다
+     */
+    public synchronized MemberSnapshot load() throws SQLException {
+        // 읽는 도중에 표시된 변경은 남겨둔다 (다음 refresh에서 한 번 더 읽어도 결과는 같다)
+        changedIds.clear();
+
+        MemberSnapshot.Builder builder = new MemberSnapshot.Builder( snapshot.size(), offHeap );
+        repository.findAll( member -> builder.add( member.getMemberId(), member.getMoney() ) );
+
+        MemberSnapshot loaded = builder.build( snapshot.getVersion() + 1 );
+        snapshot = loaded;
+        log.info( "member snapshot loaded, size={}, bytes={}, version={}", loaded.size(), loaded.memoryBytes(), loaded.getVersion() );
+        return loaded;
+    }
+
+    /**
+     * markChanged로 표시된 회원만 다시 읽어서 반영한다
+     * @return 스냅샷에 반영된 회원 수 (money 변경 + 추가 + 삭제)
+     */
+    public synchronized int refresh() throws SQLException {
+        List<String> memberIds = drainChangedIds();
+        if ( memberIds.isEmpty() ) {
+            return 0;
+        }
+
+        MultiGetResult result;
+        try {
+            result = repository.findAllByIds( memberIds );
+        }
+        catch (SQLException e) {
+            // 반영하지 못했으므로 다음 refresh에서 다시 읽는다
+            changedIds.addAll( memberIds );
+            throw e;
+        }
+
+        MemberSnapshot current = snapshot;
+        int[] updatedIndexes = new int[ result.getFound().size() ];
+        int[] updatedMoney = new int[ result.getFound().size() ];
+        int updated = 0;
+        List<Member> inserted = new ArrayList<>();
+        for ( Member member : result.getFound().values() ) {
+            int index = current.indexOf( member.getMemberId() );
+            if ( index < 0 ) {
+                inserted.add( member );
+            }
+            else if ( current.moneyAt( index ) != member.getMoney() ) {
+                updatedIndexes[ updated ] = index;
+                updatedMoney[ updated ] = member.getMoney();
+                updated++;
+            }
+        }
+
+        boolean[] deleted = null;
+        int deletedCount = 0;
+        for ( String memberId : result.getMissingIds() ) {
+            int index = current.indexOf( memberId );
+            if ( index >= 0 ) {
+                if ( deleted == null ) {
+                    deleted = new boolean[ current.size() ];
+                }
+                deleted[ index ] = true;
+                deletedCount++;
+            }
+        }
+
+        int changes = updated + inserted.size() + deletedCount;
+        if ( changes == 0 ) {
+            return 0;
+        }
+
+        if ( inserted.isEmpty() && deleted == null ) {
+            snapshot = current.withMoney( updatedIndexes, updatedMoney, updated );
+        }
+        else {
+            // 수정분은 money가 바뀐 채로 복사되도록 먼저 반영한다
+            MemberSnapshot base = updated > 0 ? current.withMoney( updatedIndexes, updatedMoney, updated ) : current;
+            MemberSnapshot.Builder builder = base.toBuilder( deleted, inserted.size() );
+            for ( Member member : inserted ) {
+                builder.add( member.getMemberId(), member.getMoney() );
+            }
+            snapshot = builder.build( current.getVersion() + 1 );
+        }
+        log.debug( "member snapshot refreshed, updated={}, inserted={}, deleted={}", updated, inserted.size(), deletedCount );
+        return changes;
+    }
+
+    private List<String> drainChangedIds() {
+        List<String> memberIds = new ArrayList<>( changedIds.size() );
+        for ( Iterator<String> iterator = changedIds.iterator(); iterator.hasNext(); ) {
+            memberIds.add( iterator.next() );
+            iterator.remove();
+        }
+        return memberIds;
+    }
+
+}
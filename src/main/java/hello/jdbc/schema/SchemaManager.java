@@ -0,0 +1,370 @@
+package hello.jdbc.schema;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 기동시 member 스키마 관리 - 만들기/변경(migrate) + 인덱스 확인(verify)
+ *
+ * 지금까지는 member 테이블이 H2 서버(ConnectionConst.URL)에 이미 있다고 가정했고, PK/인덱스를 정의하는 곳이 없었다.
+ * PK가 없으면 findById/update/delete가 모두 테이블 전체를 읽는다.
+ *
+ * 1. H2 설정 (applySettings) - 환경별 값(SchemaProperties)을 기동할 때마다 적용한다. (CACHE_SIZE, DEFAULT_LOCK_TIMEOUT, WRITE_DELAY)
+ *
+ * 2. 변경 (migrate)
+ *  - 실행한 단계의 version을 schema_version 테이블에 남기고, 아직 실행하지 않은 단계만 version 순서로 실행한다.
+ *  - 기본 단계
+ *      1 : member 테이블 (없을 때만, tableType으로 만든다)
+ *      2 : member_id PK (예전에 PK 없이 만든 테이블이면 추가한다)
+ *      3 : money 보조 인덱스 idx_member_money (findAllByMoneyBetween)
+ *  - 그 뒤에 애플리케이션이 등록한 SchemaMigration(version 100 이상)을 실행한다.
+ *  - 기본 단계는 모두 "없으면 만든다" 이므로 이미 손으로 만든 테이블에 처음 적용해도 된다.
+ *  - 여러 인스턴스가 동시에 기동하면 같은 단계를 같이 실행할 수 있다. (기본 단계는 그래도 안전하고, schema_version PK로 한 번만 기록된다)
+ *
+ * 3. 확인 (verify)
+ *  - 리포지토리 쿼리가 사용하는 인덱스(REQUIRED_INDEXES)가 DB 메타데이터에 실제로 있는지 확인한다.
+ *    인덱스의 첫 번째 컬럼이 같아야 구간 조회에 쓸 수 있으므로 첫 번째 컬럼만 비교한다.
+ *  - 없으면 failOnMissingIndex에 따라 기동을 멈추거나 WARN 로그를 남긴다.
+ *
+ * InitializingBean이므로 빈을 만들 때 실행된다. -> ApplicationRunner(StartupWarmup 등)보다 먼저 끝난다.
+ */
+@Slf4j
+public class SchemaManager implements InitializingBean {
+
+    public static final String VERSION_TABLE = "schema_version";
+    public static final String MEMBER_TABLE = "member";
+    public static final String MONEY_INDEX = "idx_member_money";
+
+    // 리포지토리 쿼리가 사용하는 인덱스 - 테이블, 첫 번째 컬럼, 사용하는 쿼리
+    public static final List<RequiredIndex> REQUIRED_INDEXES = List.of(
+            new RequiredIndex( MEMBER_TABLE, "member_id", "findById, update, delete, findAllAfter, findAllByIds, findRange" ),
+            new RequiredIndex( MEMBER_TABLE, "money", "findAllByMoneyBetween" ) );
+
+    private final DataSource dataSource;
+    private final SchemaProperties properties;
+    private final List<SchemaMigration> migrations;
+
+    public SchemaManager( DataSource dataSource, SchemaProperties properties ) {
+        this( dataSource, properties, List.of() );
+    }
+
+    /**
+     * @param customMigrations 애플리케이션이 추가하는 단계 (version 100 이상)
+     */
+    public SchemaManager( DataSource dataSource, SchemaProperties properties, List<SchemaMigration> customMigrations ) {
+        this.dataSource = dataSource;
+        this.properties = properties;
+
+        List<SchemaMigration> all = new ArrayList<>( builtInMigrations( properties.getTableType() ) );
+        for ( SchemaMigration migration : customMigrations ) {
+            if ( migration.getVersion() < SchemaMigration.FIRST_CUSTOM_VERSION ) {
+                throw new IllegalArgumentException( "custom migration version must be at least " + SchemaMigration.FIRST_CUSTOM_VERSION
+                        + ", version = " + migration.getVersion() );
+            }
+            all.add( migration );
+        }
+        all.sort( Comparator.comparingInt( SchemaMigration::getVersion ) );
+
+        Set<Integer> versions = new HashSet<>();
+        for ( SchemaMigration migration : all ) {
+            if ( !versions.add( migration.getVersion() ) ) {
+                throw new IllegalArgumentException( "duplicate migration version, version = " + migration.getVersion() );
+            }
+        }
+        this.migrations = List.copyOf( all );
+    }
+
+    @Override
+    public void afterPropertiesSet() throws SQLException {
+        applySettings();
+        if ( properties.isMigrate() ) {
+            migrate();
+        }
+
+        List<RequiredIndex> missing = verify();
+        if ( missing.isEmpty() ) {
+            log.info( "schema verified, version={}", currentVersion() );
+            return;
+        }
+        if ( properties.isFailOnMissingIndex() ) {
+            throw new IllegalStateException( "required index missing, indexes = " + missing );
+        }
+        log.warn( "required index missing, indexes={}", missing );
+    }
+
+    public List<SchemaMigration> getMigrations() {
+        return migrations;
+    }
+
+    /**
+     * H2 설정 적용 (H2가 아니면 하지 않는다)
+     */
+    public void applySettings() throws SQLException {
+        Connection con = null;
+        Statement stmt = null;
+        try {
+            con = dataSource.getConnection();
+            if ( !"H2".equals( con.getMetaData().getDatabaseProductName() ) ) {
+                log.debug( "not H2, skip settings" );
+                return;
+            }
+            stmt = con.createStatement();
+            if ( properties.getCacheSizeKb() >= 0 ) {
+                stmt.execute( "set cache_size " + properties.getCacheSizeKb() );
+            }
+            if ( properties.getLockTimeoutMs() >= 0 ) {
+                stmt.execute( "set default_lock_timeout " + properties.getLockTimeoutMs() );
+            }
+            if ( properties.getWriteDelayMs() >= 0 ) {
+                stmt.execute( "set write_delay " + properties.getWriteDelayMs() );
+            }
+        }
+        catch (SQLException e) {
+            log.error( "db error", e );
+            throw e;
+        }
+        finally {
+            JdbcUtils.closeStatement( stmt );
+            JdbcUtils.closeConnection( con );
+        }
+    }
+
+    /**
+     * 아직 실행하지 않은 단계를 version 순서로 실행한다
+     * @return 실행한 단계 수
+     */
+    public int migrate() throws SQLException {
+        Connection con = null;
+        try {
+            con = dataSource.getConnection();
+            createVersionTable( con );
+            Set<Integer> applied = appliedVersions( con );
+
+            int count = 0;
+            boolean autoCommit = con.getAutoCommit();
+            for ( SchemaMigration migration : migrations ) {
+                if ( applied.contains( migration.getVersion() ) ) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                con.setAutoCommit( false );
+                try {
+                    migration.migrate( con );
+                    recordVersion( con, migration );
+                    con.commit();
+                }
+                catch (SQLException | RuntimeException e) {
+                    con.rollback();
+                    throw e;
+                }
+                finally {
+                    con.setAutoCommit( autoCommit );
+                }
+                log.info( "schema migrated, version={}, description={}, elapsedMs={}",
+                        migration.getVersion(), migration.getDescription(), ( System.nanoTime() - start ) / 1_000_000 );
+                count++;
+            }
+            return count;
+        }
+        catch (SQLException e) {
+            log.error( "db error", e );
+            throw e;
+        }
+        finally {
+            JdbcUtils.closeConnection( con );
+        }
+    }
+
+    /**
+     * @return 없는 인덱스 (모두 있으면 빈 목록)
+     */
+    public List<RequiredIndex> verify() throws SQLException {
+        Connection con = null;
+        try {
+            con = dataSource.getConnection();
+            DatabaseMetaData meta = con.getMetaData();
+
+            List<RequiredIndex> missing = new ArrayList<>();
+            for ( RequiredIndex index : REQUIRED_INDEXES ) {
+                if ( !hasIndexOn( meta, index.getTable(), index.getColumn() ) ) {
+                    missing.add( index );
+                }
+            }
+            return missing;
+        }
+        catch (SQLException e) {
+            log.error( "db error", e );
+            throw e;
+        }
+        finally {
+            JdbcUtils.closeConnection( con );
+        }
+    }
+
+    /**
+     * 마지막으로 실행한 version (schema_version이 없거나 비어있으면 0)
+     */
+    public int currentVersion() throws SQLException {
+        Connection con = null;
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            con = dataSource.getConnection();
+            if ( !tableExists( con.getMetaData(), VERSION_TABLE ) ) {
+                return 0;
+            }
+            stmt = con.createStatement();
+            rs = stmt.executeQuery( "select coalesce(max(version), 0) from " + VERSION_TABLE );
+            rs.next();
+            return rs.getInt(1);
+        }
+        catch (SQLException e) {
+            log.error( "db error", e );
+            throw e;
+        }
+        finally {
+            JdbcUtils.closeResultSet( rs );
+            JdbcUtils.closeStatement( stmt );
+            JdbcUtils.closeConnection( con );
+        }
+    }
+
+    private static List<SchemaMigration> builtInMigrations( SchemaProperties.TableType tableType ) {
+        return List.of(
+                SchemaMigration.sql( 1, "create member table",
+                        "create " + tableType.keyword() + "table if not exists member ( member_id varchar(10) not null, money integer not null default 0, "
+                                + "constraint pk_member primary key (member_id) )" ),
+                new SchemaMigration() {
+                    @Override
+                    public int getVersion() {
+                        return 2;
+                    }
+
+                    @Override
+                    public String getDescription() {
+                        return "add member primary key";
+                    }
+
+                    @Override
+                    public void migrate( Connection con ) throws SQLException {
+                        if ( hasPrimaryKey( con.getMetaData(), MEMBER_TABLE ) ) {
+                            return;
+                        }
+                        try ( Statement stmt = con.createStatement() ) {
+                            stmt.execute( "alter table member alter column member_id set not null" );
+                            stmt.execute( "alter table member add constraint pk_member primary key (member_id)" );
+                        }
+                    }
+                },
+                SchemaMigration.sql( 3, "create money index",
+                        "create index if not exists " + MONEY_INDEX + " on member (money)" ) );
+    }
+
+    private static void createVersionTable( Connection con ) throws SQLException {
+        try ( Statement stmt = con.createStatement() ) {
+            stmt.execute( "create table if not exists " + VERSION_TABLE + " ( version integer not null, description varchar(200) not null, "
+                    + "installed_on timestamp default current_timestamp not null, primary key (version) )" );
+        }
+    }
+
+    private static Set<Integer> appliedVersions( Connection con ) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try ( Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery( "select version from " + VERSION_TABLE ) ) {
+            while ( rs.next() ) {
+                versions.add( rs.getInt(1) );
+            }
+        }
+        return versions;
+    }
+
+    private static void recordVersion( Connection con, SchemaMigration migration ) throws SQLException {
+        try ( PreparedStatement pstmt = con.prepareStatement( "insert into " + VERSION_TABLE + "(version, description) values(?, ?)" ) ) {
+            pstmt.setInt(1, migration.getVersion() );
+            pstmt.setString(2, migration.getDescription() );
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static boolean tableExists( DatabaseMetaData meta, String table ) throws SQLException {
+        try ( ResultSet rs = meta.getTables( null, null, identifier( meta, table ), new String[] { "TABLE" } ) ) {
+            return rs.next();
+        }
+    }
+
+    private static boolean hasPrimaryKey( DatabaseMetaData meta, String table ) throws SQLException {
+        try ( ResultSet rs = meta.getPrimaryKeys( null, null, identifier( meta, table ) ) ) {
+            return rs.next();
+        }
+    }
+
+    private static boolean hasIndexOn( DatabaseMetaData meta, String table, String column ) throws SQLException {
+        try ( ResultSet rs = meta.getIndexInfo( null, null, identifier( meta, table ), false, false ) ) {
+            while ( rs.next() ) {
+                if ( rs.getShort( "ORDINAL_POSITION" ) == 1 && column.equalsIgnoreCase( rs.getString( "COLUMN_NAME" ) ) ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // 따옴표 없이 만든 이름을 메타데이터에 저장된 대소문자로 바꾼다 (H2는 대문자)
+    private static String identifier( DatabaseMetaData meta, String name ) throws SQLException {
+        if ( meta.storesUpperCaseIdentifiers() ) {
+            return name.toUpperCase( Locale.ROOT );
+        }
+        if ( meta.storesLowerCaseIdentifiers() ) {
+            return name.toLowerCase( Locale.ROOT );
+        }
+        return name;
+    }
+
+    /**
+     * 리포지토리 쿼리에 필요한 인덱스
+     */
+    public static final class RequiredIndex {
+
+        private final String table;
+        private final String column;
+        private final String usedBy;
+
+        private RequiredIndex( String table, String column, String usedBy ) {
+            this.table = table;
+            this.column = column;
+            this.usedBy = usedBy;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public String getUsedBy() {
+            return usedBy;
+        }
+
+        @Override
+        public String toString() {
+            return String.format( "%s(%s)[usedBy=%s]", table, column, usedBy );
+        }
+    }
+
+}
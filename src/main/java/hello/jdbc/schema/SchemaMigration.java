@@ -0,0 +1,53 @@
+package hello.jdbc.schema;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 스키마 변경 한 단계 - SchemaManager가 version 순서로 한 번씩만 실행한다
+ *
+ * - 1 ~ 99 는 SchemaManager의 기본 단계(member 테이블, PK, money 인덱스)가 사용한다.
+ * - 애플리케이션이 추가하는 단계는 FIRST_CUSTOM_VERSION(100) 이상으로 스프링 빈으로 등록하면 기본 단계 뒤에 실행된다.
+ * - 실행한 version은 schema_version 테이블에 남으므로 한 번 배포한 단계의 내용은 바꾸지 않는다. (바꿀 내용은 새 version으로 추가)
+ */
+public interface SchemaMigration {
+
+    int FIRST_CUSTOM_VERSION = 100;
+
+    int getVersion();
+
+    String getDescription();
+
+    /**
+     * @param con 이 단계 전용 커넥션 (autoCommit=false, 정상 종료하면 SchemaManager가 schema_version 기록과 함께 커밋한다)
+     */
+    void migrate( Connection con ) throws SQLException;
+
+    /**
+     * SQL 문장을 순서대로 실행하는 단계
+     */
+    static SchemaMigration sql( int version, String description, String... statements ) {
+        return new SchemaMigration() {
+            @Override
+            public int getVersion() {
+                return version;
+            }
+
+            @Override
+            public String getDescription() {
+                return description;
+            }
+
+            @Override
+            public void migrate( Connection con ) throws SQLException {
+                try ( Statement stmt = con.createStatement() ) {
+                    for ( String sql : statements ) {
+                        stmt.execute( sql );
+                    }
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,60 @@
+package hello.jdbc.schema;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 기동시 스키마 관리 설정 (application.properties - hello.jdbc.schema.*)
+ * - 환경별 값은 application-{profile}.properties 에 둔다. (mem: 메모리 DB, server: ConnectionConst.URL의 H2 TCP 서버)
+ */
+@Getter
+@Setter
+@ConfigurationProperties( prefix = "hello.jdbc.schema" )
+public class SchemaProperties {
+
+    // 스키마 관리 사용 여부
+    private boolean enabled = true;
+
+    // 아직 실행하지 않은 단계(SchemaMigration)를 실행. false이면 확인만 한다
+    private boolean migrate = true;
+
+    // 리포지토리 쿼리에 필요한 인덱스가 없으면 기동을 멈춘다. false이면 WARN 로그만 남긴다
+    private boolean failOnMissingIndex = true;
+
+    // member 테이블을 새로 만들 때의 H2 테이블 종류 (이미 있는 테이블은 바꾸지 않는다)
+    private TableType tableType = TableType.DEFAULT;
+
+    // H2 페이지 캐시 크기(KB) - SET CACHE_SIZE. -1이면 H2 기본값
+    private int cacheSizeKb = -1;
+
+    // 락을 기다리는 최대 시간(ms) - SET DEFAULT_LOCK_TIMEOUT. -1이면 H2 기본값
+    private int lockTimeoutMs = -1;
+
+    // 커밋 후 디스크에 쓰기까지 모아두는 시간(ms) - SET WRITE_DELAY. -1이면 H2 기본값 (메모리 DB는 의미 없다)
+    private int writeDelayMs = -1;
+
+    /**
+     * H2 테이블 종류
+     */
+    public enum TableType {
+
+        // DB 기본값 (파일 DB는 CACHED)
+        DEFAULT( "" ),
+        // 모든 row를 힙에 둔다 - 조회가 가장 빠르지만 테이블 크기만큼 힙을 쓴다
+        MEMORY( "memory " ),
+        // MVStore 페이지 캐시(cacheSizeKb)에 필요한 부분만 올린다 - 힙보다 큰 테이블
+        CACHED( "cached " );
+
+        private final String keyword;
+
+        TableType( String keyword ) {
+            this.keyword = keyword;
+        }
+
+        public String keyword() {
+            return keyword;
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+package hello.jdbc.warmup;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.SimpleConnectionPool;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 기동시 워밍업
+ *
+ * HikariCP는 "connection adder" 쓰레드가 백그라운드에서 풀을 채우기 때문에, 애플리케이션이 뜨자마자 들어온 요청은
+ * 아직 만들어지지 않은 커넥션과 JIT 컴파일 전의 코드 때문에 느리다. (ConnectionTest의 Thread.sleep(1000)도 같은 이유)
+ *
+ * 1. pool      : poolSize 개의 커넥션을 여러 쓰레드에서 동시에 빌려서 풀을 채운다.
+ *                모두 빌릴 때까지 반납하지 않아야 서로 다른 커넥션이 만들어진다.
+ * 2. prepare   : 빌린 커넥션마다 리포지토리 SQL을 prepare 해둔다. (StatementCachingDataSource를 쓰면 그대로 캐시에 남는다)
+ * 3. jit       : findById(와 선택적으로 save/update/delete)를 jitIterations 번 반복해서 JIT 컴파일을 유도한다.
+ *                save/update/delete는 트랜잭션 안에서 실행하고 롤백하므로 워밍업 회원이 테이블에 남지 않는다.
+ *
+ * 준비 상태(readiness)
+ *  - ApplicationRunner는 스프링 부트가 ReadinessState.ACCEPTING_TRAFFIC을 알리기 전에 실행된다.
+ *    따라서 워밍업이 끝나야 /actuator/health/readiness 가 UP이 된다.
+ *  - 워밍업은 최적화일 뿐이므로 실패해도 기동을 막지 않고 로그만 남긴다.
+ */
+@Slf4j
+public class StartupWarmup implements ApplicationRunner {
+
+    private static final String WARMUP_MEMBER_ID = "__warmup";
+
+    private final DataSource dataSource;
+    private final MemberRepositoryV1 repository;
+    private final WarmupProperties properties;
+
+    private volatile WarmupReport lastReport;
+
+    public StartupWarmup( DataSource dataSource, MemberRepositoryV1 repository, WarmupProperties properties ) {
+        this.dataSource = dataSource;
+        this.repository = repository;
+        this.properties = properties;
+    }
+
+    @Override
+    public void run( ApplicationArguments args ) {
+        WarmupReport report = new WarmupReport();
+        try {
+            warmup( report );
+            log.info( "warmup completed, {}", report );
+        }
+        catch (Exception e) {
+            log.warn( "warmup failed, {}", report, e );
+        }
+        lastReport = report;
+    }
+
+    public WarmupReport getLastReport() {
+        return lastReport;
+    }
+
+    private void warmup( WarmupReport report ) throws Exception {
+        // 풀 크기보다 많이 빌리면 모두 빌릴 때까지 반납하지 않으므로 타임아웃까지 막힌다
+        int maximumPoolSize = maximumPoolSize();
+        int poolSize = properties.getPoolSize() > 0 ? Math.min( properties.getPoolSize(), maximumPoolSize ) : maximumPoolSize;
+
+        long start = System.nanoTime();
+        long prepareNanos = fillPool( poolSize );
+        report.record( "pool", System.nanoTime() - start - prepareNanos );
+        if ( properties.isPrepareStatements() ) {
+            report.record( "prepare", prepareNanos );
+        }
+
+        if ( properties.getJitIterations() > 0 ) {
+            start = System.nanoTime();
+            warmupJit( properties.getJitIterations() );
+            report.record( "jit", System.nanoTime() - start );
+        }
+    }
+
+    /**
+     * poolSize 개의 쓰레드가 동시에 커넥션을 빌리고, 모두 빌린 뒤에 반납한다.
+     * @return prepare에 걸린 시간 (쓰레드 중 가장 오래 걸린 것)
+     */
+    private long fillPool( int poolSize ) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool( poolSize );
+        CountDownLatch allAcquired = new CountDownLatch( poolSize );
+        try {
+            List<Future<Long>> results = new ArrayList<>( poolSize );
+            for ( int i = 0; i < poolSize; i++ ) {
+                results.add( executor.submit( () -> {
+                    Connection acquired;
+                    try {
+                        acquired = dataSource.getConnection();
+                    }
+                    finally {
+                        // 실패해도 다른 쓰레드가 끝까지 기다리지 않도록 센다
+                        allAcquired.countDown();
+                    }
+                    try ( Connection con = acquired ) {
+                        long prepareStart = System.nanoTime();
+                        if ( properties.isPrepareStatements() ) {
+                            prepare( con );
+                        }
+                        long prepareNanos = System.nanoTime() - prepareStart;
+                        allAcquired.await( 30, TimeUnit.SECONDS );
+                        return prepareNanos;
+                    }
+                } ) );
+            }
+
+            long maxPrepareNanos = 0;
+            for ( Future<Long> result : results ) {
+                maxPrepareNanos = Math.max( maxPrepareNanos, result.get() );
+            }
+            return maxPrepareNanos;
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private void prepare( Connection con ) throws SQLException {
+        for ( String sql : MemberRepositoryV1.SQL_STATEMENTS ) {
+            try ( PreparedStatement pstmt = con.prepareStatement( sql ) ) {
+                log.trace( "prepared sql={}", sql );
+            }
+        }
+    }
+
+    private void warmupJit( int iterations ) throws SQLException {
+        for ( int i = 0; i < iterations; i++ ) {
+            try {
+                repository.findById( WARMUP_MEMBER_ID );
+            }
+            catch (NoSuchElementException e) {
+                // 워밍업 전용 id이므로 없는 것이 정상
+            }
+
+            if ( properties.isJitWrites() ) {
+                warmupWrites( i );
+            }
+        }
+    }
+
+    /**
+     * save/update/delete를 한 트랜잭션에서 실행하고 항상 롤백한다.
+     * - 중간에 프로세스가 죽어도 커밋되지 않으므로 워밍업 회원이 남지 않는다.
+     * - 이전 버전이 남긴 워밍업 회원이 있어도 먼저 지우고 저장하므로 PK 중복으로 실패하지 않는다. (지운 것도 롤백된다)
+     */
+    private void warmupWrites( int money ) throws SQLException {
+        try {
+            repository.inTransaction( tx -> {
+                tx.delete( WARMUP_MEMBER_ID );
+                tx.save( new Member( WARMUP_MEMBER_ID, 0 ) );
+                tx.update( WARMUP_MEMBER_ID, money );
+                tx.delete( WARMUP_MEMBER_ID );
+                throw new WarmupRollback();
+            } );
+        }
+        catch (WarmupRollback e) {
+            // 롤백되었다
+        }
+    }
+
+    private int maximumPoolSize() throws SQLException {
+        if ( dataSource.isWrapperFor( HikariDataSource.class ) ) {
+            return dataSource.unwrap( HikariDataSource.class ).getMaximumPoolSize();
+        }
+        if ( dataSource.isWrapperFor( SimpleConnectionPool.class ) ) {
+            return dataSource.unwrap( SimpleConnectionPool.class ).getMaximumPoolSize();
+        }
+        return 1;
+    }
+
+    /**
+     * 워밍업 쓰기를 롤백시키기 위한 예외 (스택 트레이스를 만들지 않는다)
+     */
+    private static final class WarmupRollback extends RuntimeException {
+        private WarmupRollback() {
+            super( "warmup rollback", null, false, false );
+        }
+    }
+
+}
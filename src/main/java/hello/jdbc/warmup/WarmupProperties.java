@@ -0,0 +1,30 @@
+package hello.jdbc.warmup;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 기동시 워밍업 설정 (application.properties - hello.jdbc.warmup.*)
+ */
+@Getter
+@Setter
+@ConfigurationProperties( prefix = "hello.jdbc.warmup" )
+public class WarmupProperties {
+
+    // 워밍업 사용 여부
+    private boolean enabled = false;
+
+    // 미리 채울 커넥션 수. 0이면 커넥션 풀의 maximumPoolSize
+    private int poolSize = 0;
+
+    // 채운 커넥션마다 리포지토리 SQL을 미리 prepare
+    private boolean prepareStatements = true;
+
+    // JIT 워밍업용 findById 반복 횟수. 0이면 하지 않는다
+    private int jitIterations = 0;
+
+    // JIT 워밍업에 save/update/delete도 포함 (워밍업 전용 회원을 트랜잭션 안에서 만들었다가 지우고 롤백한다)
+    private boolean jitWrites = false;
+
+}
@@ -0,0 +1,31 @@
+package hello.jdbc.warmup;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 워밍업 단계별 소요 시간
+ */
+@Getter
+public class WarmupReport {
+
+    private final Map<String, Duration> steps = new LinkedHashMap<>();
+    private Duration total = Duration.ZERO;
+
+    void record( String step, long nanos ) {
+        Duration duration = Duration.ofNanos( nanos );
+        steps.put( step, duration );
+        total = total.plus( duration );
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder( "total=" ).append( total.toMillis() ).append( "ms" );
+        steps.forEach( ( step, duration ) -> sb.append( ", " ).append( step ).append( '=' ).append( duration.toMillis() ).append( "ms" ) );
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,152 @@
+package hello.jdbc.bulk;
+
+import hello.jdbc.connection.MemberTestDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * H2 메모리 DB로 export -> 테이블 비우기 -> import 후 같은 데이터인지 확인한다
+ */
+@Slf4j
+class MemberBulkTest {
+
+    static final int MEMBERS = 5000;
+
+    @TempDir
+    Path dir;
+
+    DataSource dataSource;
+    MemberRepositoryV1 repository;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        dataSource = MemberTestDataSource.create( "bulk" );
+        repository = new MemberRepositoryV1( dataSource );
+    }
+
+    @Test
+    void csvRoundTrip() throws IOException, SQLException {
+        roundTrip( BulkFormat.CSV );
+    }
+
+    @Test
+    void binaryRoundTrip() throws IOException, SQLException {
+        roundTrip( BulkFormat.BINARY );
+    }
+
+    @Test
+    void importCsvText() throws IOException, SQLException {
+        Path file = dir.resolve( "members.csv" );
+        Files.write( file, "member_id,money\r\nmemberA,10000\r\n\r\nmemberB,-5\nmemberC,2147483647".getBytes( StandardCharsets.UTF_8 ) );
+
+        BulkProgress progress = new MemberImporter( repository ).importFile( file, BulkFormat.CSV );
+
+        assertThat( progress.getRowsWritten() ).isEqualTo( 3L );
+        assertThat( repository.findById( "memberA" ).getMoney() ).isEqualTo( 10000 );
+        assertThat( repository.findById( "memberB" ).getMoney() ).isEqualTo( -5 );
+        assertThat( repository.findById( "memberC" ).getMoney() ).isEqualTo( Integer.MAX_VALUE );
+    }
+
+    @Test
+    void importFailure() throws IOException {
+        Path file = dir.resolve( "duplicate.csv" );
+        Files.write( file, "memberA,1\nmemberA,2\n".getBytes( StandardCharsets.UTF_8 ) );
+
+        // 같은 회원이 두 번 있으면 PK 위반으로 실패한다
+        Assertions.assertThatThrownBy( () -> new MemberImporter( repository ).importFile( file, BulkFormat.CSV ) )
+                .isInstanceOf( SQLException.class );
+    }
+
+    @Test
+    void importBadRow() throws IOException, SQLException, InterruptedException {
+        // 가운데에 잘못된 row가 있는 파일
+        StringBuilder csv = new StringBuilder( BulkFormat.CSV_HEADER ).append( '\n' );
+        for ( int i = 0; i < MEMBERS; i++ ) {
+            csv.append( String.format( "m%05d", i ) ).append( ',' ).append( i == MEMBERS / 2 ? "bad" : String.valueOf( i ) ).append( '\n' );
+        }
+        Path file = dir.resolve( "bad.csv" );
+        Files.write( file, csv.toString().getBytes( StandardCharsets.UTF_8 ) );
+
+        MemberImporter importer = new MemberImporter( repository );
+        importer.setChunkSize( 1000 );
+        importer.setBatchSize( 64 );
+        importer.setWriterThreads( 3 );
+        importer.setQueueCapacity( 2 );
+        BulkProgress progress = new BulkProgress();
+        Assertions.assertThatThrownBy( () -> importer.importFile( file, BulkFormat.CSV, progress ) )
+                .isInstanceOf( IOException.class )
+                .hasMessageContaining( "invalid money" );
+
+        // 돌아간 뒤에는 쓰기 쓰레드가 더 커밋하지 않는다
+        int committed = repository.findAllAfter( "", MEMBERS + 1 ).size();
+        log.info( "committed={}, {}", committed, progress );
+        assertThat( (long) committed ).isEqualTo( progress.getRowsWritten() );
+        assertThat( committed ).isLessThan( MEMBERS / 2 + 1 );
+        Thread.sleep( 200 );
+        assertThat( repository.findAllAfter( "", MEMBERS + 1 ).size() ).isEqualTo( committed );
+    }
+
+    @Test
+    void headerMustMatchExactly() throws IOException, SQLException {
+        // 헤더가 없는 파일의 첫 줄은 두 번째 필드가 숫자여도 회원이다
+        Path file = dir.resolve( "noheader.csv" );
+        Files.write( file, "memberA,1\nmemberB,2\n".getBytes( StandardCharsets.UTF_8 ) );
+        assertThat( new MemberImporter( repository ).importFile( file, BulkFormat.CSV ).getRowsWritten() ).isEqualTo( 2L );
+
+        // 헤더와 비슷하지만 다른 첫 줄은 건너뛰지 않고 잘못된 row로 본다
+        MemberTestDataSource.truncate( dataSource );
+        Path other = dir.resolve( "otherheader.csv" );
+        Files.write( other, "id,money\nmemberA,1\n".getBytes( StandardCharsets.UTF_8 ) );
+        Assertions.assertThatThrownBy( () -> new MemberImporter( repository ).importFile( other, BulkFormat.CSV ) )
+                .isInstanceOf( IOException.class );
+    }
+
+    private void roundTrip( BulkFormat format ) throws IOException, SQLException {
+        List<Member> members = new ArrayList<>( MEMBERS );
+        for ( int i = 0; i < MEMBERS; i++ ) {
+            members.add( new Member( String.format( "m%05d", i ), i * 37 - 1000 ) );
+        }
+        repository.saveAll( members );
+
+        Path file = dir.resolve( "members." + format.name().toLowerCase() );
+        MemberExporter exporter = new MemberExporter( repository );
+        exporter.setBufferSize( 1024 );
+        BulkProgress exported = exporter.exportFile( file, format );
+        log.info( "export {}", exported );
+        assertThat( exported.getRowsWritten() ).isEqualTo( (long) MEMBERS );
+        assertThat( exported.getBytes() ).isEqualTo( Files.size( file ) );
+
+        MemberTestDataSource.truncate( dataSource );
+
+        // 청크와 배치를 작게 해서 청크 경계에 걸친 row, 여러 쓰기 쓰레드를 확인한다
+        MemberImporter importer = new MemberImporter( repository );
+        importer.setChunkSize( 1000 );
+        importer.setBatchSize( 64 );
+        importer.setWriterThreads( 3 );
+        importer.setQueueCapacity( 2 );
+        BulkProgress imported = importer.importFile( file, format );
+        log.info( "import {}", imported );
+
+        assertThat( imported.getRowsRead() ).isEqualTo( (long) MEMBERS );
+        assertThat( imported.getRowsWritten() ).isEqualTo( (long) MEMBERS );
+        assertThat( imported.getBytes() ).isEqualTo( Files.size( file ) );
+        assertThat( repository.findAllAfter( "", MEMBERS + 1 ) ).isEqualTo( members );
+    }
+
+}
@@ -0,0 +1,66 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class LeakDetectingDataSourceTest {
+
+    @Test
+    void holdTimePerCallSite() throws SQLException {
+        // 임계값 0 -> 검사 쓰레드 없이 보유 시간만 기록, 모든 커넥션의 스택을 얻는다
+        try ( LeakDetectingDataSource dataSource = new LeakDetectingDataSource( new DriverManagerDataSource( URL, USERNAME, PASSWORD ), 0, 1.0 ) ) {
+            MemberRepositoryV1 repository = new MemberRepositoryV1( dataSource );
+            Member member = new Member( "memberLD", 10000 );
+            repository.save( member );
+            try {
+                repository.findById( member.getMemberId() );
+            }
+            finally {
+                repository.delete( member.getMemberId() );
+            }
+
+            log.info( "{}", dataSource.dump( 5 ) );
+            assertThat( dataSource.getActiveCount() ).isZero();
+            assertThat( dataSource.getLeakCount() ).isZero();
+            assertThat( dataSource.getCheckoutCount() ).isEqualTo( 3L );
+            // 리포지토리의 getConnection 헬퍼가 아니라 그것을 호출한 메서드가 호출 위치가 된다
+            assertThat( dataSource.getTopHolders( 10 ).stream()
+                    .anyMatch( stats -> stats.getCallSite().startsWith( MemberRepositoryV1.class.getName() + ".findById:" ) ) ).isTrue();
+        }
+    }
+
+    @Test
+    void detectLeak() throws SQLException, InterruptedException {
+        try ( LeakDetectingDataSource dataSource = new LeakDetectingDataSource( new DriverManagerDataSource( URL, USERNAME, PASSWORD ), 50, 1.0 ) ) {
+            Connection con = dataSource.getConnection();
+            try {
+                Thread.sleep( 200 );
+                // 검사 쓰레드가 이미 찾았으면 0, 아니면 1 -> 같은 커넥션은 한 번만 센다
+                dataSource.checkLeaks();
+                assertThat( dataSource.getLeakCount() ).isEqualTo( 1L );
+                assertThat( dataSource.getLongestHeld( 1 ).get( 0 ).getHeldMs() ).isGreaterThanOrEqualTo( 200.0 );
+                assertThat( dataSource.dump( 5 ) ).contains( "detectLeak" );
+            }
+            finally {
+                con.close();
+                // 두 번 닫아도 한 번만 기록한다
+                con.close();
+            }
+
+            assertThat( dataSource.getActiveCount() ).isZero();
+            assertThat( dataSource.getTopHolders( 1 ).get( 0 ).getCount() ).isEqualTo( 1L );
+            assertThat( dataSource.getTopHolders( 1 ).get( 0 ).getLeaks() ).isEqualTo( 1L );
+        }
+    }
+
+}
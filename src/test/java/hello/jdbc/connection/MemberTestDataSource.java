@@ -0,0 +1,62 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.schema.SchemaManager;
+import hello.jdbc.schema.SchemaProperties;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 테스트용 H2 메모리 DB
+ * - 이름이 같으면 같은 DB다. 테스트 클래스마다 다른 이름을 쓴다.
+ * - DB_CLOSE_DELAY=-1 : 마지막 커넥션이 닫혀도 JVM이 살아있는 동안 DB를 유지한다.
+ */
+public abstract class MemberTestDataSource {
+
+    public static final String USERNAME = "sa";
+    public static final String PASSWORD = "";
+
+    public static String url( String name ) {
+        return "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+    }
+
+    /**
+     * 테이블이 없는 DriverManagerDataSource
+     */
+    public static DataSource empty( String name ) {
+        return new DriverManagerDataSource( url( name ), USERNAME, PASSWORD );
+    }
+
+    /**
+     * member 테이블을 (다시) 만들고 DriverManagerDataSource를 돌려준다
+     */
+    public static DataSource create( String name ) throws SQLException {
+        DataSource dataSource = empty( name );
+        createMemberTable( dataSource );
+        return dataSource;
+    }
+
+    /**
+     * member 테이블을 지우고 SchemaManager 기본 단계로 다시 만든다 (애플리케이션과 같은 스키마)
+     */
+    public static void createMemberTable( DataSource dataSource ) throws SQLException {
+        execute( dataSource, "drop table if exists member", "drop table if exists " + SchemaManager.VERSION_TABLE );
+        new SchemaManager( dataSource, new SchemaProperties() ).migrate();
+    }
+
+    public static void truncate( DataSource dataSource ) throws SQLException {
+        execute( dataSource, "truncate table member" );
+    }
+
+    private static void execute( DataSource dataSource, String... statements ) throws SQLException {
+        try ( Connection con = dataSource.getConnection(); Statement stmt = con.createStatement() ) {
+            for ( String sql : statements ) {
+                stmt.execute( sql );
+            }
+        }
+    }
+
+}
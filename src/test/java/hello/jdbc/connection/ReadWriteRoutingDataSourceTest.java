@@ -0,0 +1,176 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * replica 대신 H2 메모리 DB 여러 개를 띄워서 테스트한다
+ * - 같은 회원을 DB마다 다른 money로 넣어두면 어느 DB에서 조회했는지 알 수 있다. (primary: 0, replica-0: 1, replica-1: 2)
+ */
+@Slf4j
+class ReadWriteRoutingDataSourceTest {
+
+    static final String MEMBER_ID = "memberRW";
+
+    DataSource primary;
+    DataSource replica0;
+    DataSource replica1;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        primary = memoryDataSource( "rw-primary", 0 );
+        replica0 = memoryDataSource( "rw-replica0", 1 );
+        replica1 = memoryDataSource( "rw-replica1", 2 );
+    }
+
+    @Test
+    void roundRobin() throws SQLException {
+        ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource( primary, List.of( replica0, replica1 ) );
+        dataSource.setStickyWindowMs( 0 );
+        MemberRepositoryV1 repository = new MemberRepositoryV1( dataSource );
+
+        // 조회는 replica를 번갈아 사용한다
+        int first = repository.findById( MEMBER_ID ).getMoney();
+        int second = repository.findById( MEMBER_ID ).getMoney();
+        assertThat( List.of( first, second ) ).containsExactlyInAnyOrder( 1, 2 );
+
+        // 쓰기는 primary
+        repository.update( MEMBER_ID, 100 );
+        assertThat( money( primary ) ).isEqualTo( 100 );
+        assertThat( money( replica0 ) ).isEqualTo( 1 );
+
+        log.info( "stats={}", dataSource.getTargetStats() );
+        List<Long> requests = dataSource.getTargetStats().stream()
+                .map( ReadWriteRoutingDataSource.TargetStats::getRequests )
+                .collect( Collectors.toList() );
+        assertThat( requests ).containsExactly( 1L, 1L, 1L );
+    }
+
+    @Test
+    void leastInFlight() throws SQLException {
+        ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource( primary, List.of( replica0, replica1 ) );
+        dataSource.setBalancing( ReadWriteRoutingDataSource.Balancing.LEAST_IN_FLIGHT );
+
+        // 하나를 빌려둔 상태에서는 나머지 replica를 사용한다
+        try ( Connection held = dataSource.getReadConnection() ) {
+            for ( int i = 0; i < 3; i++ ) {
+                try ( Connection con = dataSource.getReadConnection() ) {
+                    // toString() = "replica-N[...]"
+                    assertThat( con.toString().substring( 0, 9 ) ).isNotEqualTo( held.toString().substring( 0, 9 ) );
+                }
+            }
+        }
+    }
+
+    @Test
+    void readYourWrites() throws SQLException {
+        ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource( primary, List.of( replica0, replica1 ) );
+        dataSource.setStickyWindowMs( 10_000 );
+        MemberRepositoryV1 repository = new MemberRepositoryV1( dataSource );
+
+        // 쓰기 직후 같은 쓰레드의 조회는 primary로 간다 (replica에는 아직 반영되지 않았다)
+        repository.update( MEMBER_ID, 100 );
+        assertThat( repository.findById( MEMBER_ID ).getMoney() ).isEqualTo( 100 );
+    }
+
+    @Test
+    void ejectSlowReplica() throws SQLException {
+        // 커넥션은 바로 주지만 조회가 5ms 걸리는 replica
+        execute( replica0, "create alias if not exists SLEEP for \"java.lang.Thread.sleep\"" );
+        ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource( primary, List.of( replica0 ) );
+        dataSource.setStickyWindowMs( 0 );
+        dataSource.setEjectLatencyMs( 1 );
+
+        for ( int i = 0; i < 10; i++ ) {
+            try ( Connection con = dataSource.getReadConnection();
+                  PreparedStatement pstmt = con.prepareStatement( "call sleep( ? )" ) ) {
+                assertThat( con.toString() ).startsWith( "replica-0" );
+                assertThat( pstmt.getConnection() ).isSameAs( con );
+                pstmt.setLong( 1, 5 );
+                pstmt.execute();
+            }
+        }
+
+        ReadWriteRoutingDataSource.TargetStats replicaStats = dataSource.getTargetStats().get( 1 );
+        log.info( "replica={}", replicaStats );
+        assertThat( replicaStats.isEjected() ).isTrue();
+        assertThat( replicaStats.getLatencyEwmaMs() ).isGreaterThan( 1.0 );
+
+        // 빠진 replica 대신 primary에서 조회한다
+        MemberRepositoryV1 repository = new MemberRepositoryV1( dataSource );
+        assertThat( repository.findById( MEMBER_ID ).getMoney() ).isEqualTo( 0 );
+    }
+
+    @Test
+    void holdTimeIsNotLatency() throws SQLException {
+        ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource( primary, List.of( replica0 ) );
+        dataSource.setStickyWindowMs( 0 );
+        dataSource.setEjectLatencyMs( 1 );
+
+        // 조회는 빠르고, 커넥션을 쥔 채로 다른 일을 하는 시간은 replica가 느리다는 뜻이 아니다
+        for ( int i = 0; i < 10; i++ ) {
+            try ( Connection con = dataSource.getReadConnection();
+                  Statement stmt = con.createStatement() ) {
+                stmt.executeQuery( "select 1" ).close();
+                sleep( 5 );
+            }
+        }
+
+        ReadWriteRoutingDataSource.TargetStats replicaStats = dataSource.getTargetStats().get( 1 );
+        log.info( "replica={}", replicaStats );
+        assertThat( replicaStats.isEjected() ).isFalse();
+    }
+
+    @Test
+    void ejectUnavailableReplica() throws SQLException {
+        DataSource broken = new DriverManagerDataSource( "jdbc:unknown:replica", "sa", "" );
+        ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource( primary, List.of( broken ) );
+        dataSource.setStickyWindowMs( 0 );
+        MemberRepositoryV1 repository = new MemberRepositoryV1( dataSource );
+
+        // 커넥션을 얻지 못한 replica는 빼고 primary에서 조회한다
+        assertThat( repository.findById( MEMBER_ID ).getMoney() ).isEqualTo( 0 );
+        assertThat( dataSource.getTargetStats().get( 1 ).isEjected() ).isTrue();
+    }
+
+    private static DataSource memoryDataSource( String name, int money ) throws SQLException {
+        DataSource dataSource = MemberTestDataSource.create( name );
+        new MemberRepositoryV1( dataSource ).save( new Member( MEMBER_ID, money ) );
+        return dataSource;
+    }
+
+    private static void sleep( long millis ) {
+        try {
+            Thread.sleep( millis );
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static void execute( DataSource dataSource, String sql ) throws SQLException {
+        try ( Connection con = dataSource.getConnection(); Statement stmt = con.createStatement() ) {
+            stmt.execute( sql );
+        }
+    }
+
+    private static int money( DataSource dataSource ) throws SQLException {
+        return new MemberRepositoryV1( dataSource ).findById( MEMBER_ID ).getMoney();
+    }
+
+}
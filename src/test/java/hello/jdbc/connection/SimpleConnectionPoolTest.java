@@ -0,0 +1,64 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class SimpleConnectionPoolTest {
+
+    SimpleConnectionPool pool;
+
+    @BeforeEach
+    void beforeEach() {
+        pool = new SimpleConnectionPool( new DriverManagerDataSource( URL, USERNAME, PASSWORD ), "TestPool" );
+        pool.setMaximumPoolSize( 1 );
+        pool.setConnectionTimeoutMs( 200 );
+    }
+
+    @AfterEach
+    void afterEach() {
+        pool.close();
+    }
+
+    @Test
+    void reuseConnection() throws SQLException {
+        Connection con1 = pool.getConnection();
+        String physical = con1.toString();
+        log.info( "connection={}", con1 );
+        con1.close();
+
+        // 반납한 물리 커넥션을 다시 빌려준다
+        Connection con2 = pool.getConnection();
+        assertThat( con2.toString() ).isEqualTo( physical );
+        assertThat( con1.isClosed() ).isTrue();
+        con2.close();
+
+        assertThat( pool.getTotalConnections() ).isEqualTo( 1 );
+        assertThat( pool.getIdleConnections() ).isEqualTo( 1 );
+        assertThat( pool.getBorrowCount() ).isEqualTo( 2L );
+    }
+
+    @Test
+    void timeout() throws SQLException {
+        try ( Connection con = pool.getConnection() ) {
+            // 풀 크기가 1이므로 반납 전에는 더 빌릴 수 없다 -> connectionTimeout 후 에러
+            Assertions.assertThatThrownBy( () -> pool.getConnection() )
+                    .isInstanceOf( SQLTransientConnectionException.class );
+        }
+
+        assertThat( pool.getTimeoutCount() ).isEqualTo( 1L );
+        assertThat( pool.getMaxWaitNanos() ).isGreaterThanOrEqualTo( 200_000_000L );
+    }
+
+}
@@ -0,0 +1,69 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class StatementCachingDataSourceTest {
+
+    @Test
+    void reuseStatement() throws SQLException {
+        StatementCachingDataSource dataSource = new StatementCachingDataSource( new DriverManagerDataSource( URL, USERNAME, PASSWORD ), 1 );
+
+        try ( Connection con = dataSource.getConnection() ) {
+            PreparedStatement first = con.prepareStatement( "select 1" );
+            first.close();
+            // close 한 PreparedStatement가 캐시에서 그대로 다시 나온다
+            PreparedStatement second = con.prepareStatement( "select 1" );
+            assertThat( second ).isSameAs( first );
+            second.close();
+
+            // 캐시 크기(1)를 넘으면 가장 오래 사용되지 않은 것을 닫는다
+            con.prepareStatement( "select 2" ).close();
+            assertThat( dataSource.evictionCount() ).isEqualTo( 1L );
+        }
+
+        assertThat( dataSource.hitCount() ).isEqualTo( 1L );
+        assertThat( dataSource.missCount() ).isEqualTo( 2L );
+    }
+
+    @Test
+    void withConnectionPool() throws SQLException {
+        StatementCachingDataSource cachingDataSource = new StatementCachingDataSource( new DriverManagerDataSource( URL, USERNAME, PASSWORD ) );
+
+        // 풀 안쪽에 두면 커넥션을 반환하고 다시 빌려도 같은 물리 커넥션의 캐시를 사용한다
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setDataSource( cachingDataSource );
+        dataSource.setMaximumPoolSize( 1 );
+        dataSource.setPoolName( "StatementCachePool" );
+
+        try {
+            MemberRepositoryV1 repository = new MemberRepositoryV1( dataSource );
+            Member member = new Member( "memberSC", 10000 );
+            repository.save( member );
+            try {
+                repository.findById( member.getMemberId() );
+                repository.findById( member.getMemberId() );
+                assertThat( cachingDataSource.hitCount() ).isGreaterThanOrEqualTo( 1L );
+            }
+            finally {
+                repository.delete( member.getMemberId() );
+            }
+        }
+        finally {
+            dataSource.close();
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class AsyncMemberRepositoryTest {
+
+    HikariDataSource dataSource;
+    AsyncMemberRepository repository;
+
+    @BeforeEach
+    void beforeEach(){
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl( URL );
+        dataSource.setUsername( USERNAME );
+        dataSource.setPassword( PASSWORD );
+        dataSource.setMaximumPoolSize( 4 );
+
+        // 풀 크기만큼만 동시에 실행
+        repository = new AsyncMemberRepository( new MemberRepositoryV1( dataSource ), 4 );
+    }
+
+    @AfterEach
+    void afterEach() throws InterruptedException {
+        repository.close();
+        dataSource.close();
+    }
+
+    @Test
+    void concurrentFindById() throws Exception {
+        List<Member> members = new ArrayList<>();
+        for ( int i = 0; i < 20; i++ ) {
+            members.add( new Member( "memberA" + i, i ) );
+        }
+        repository.saveAll( members ).get();
+
+        try {
+            // 풀 크기(4)보다 많이 동시에 요청해도 타임아웃 없이 모두 끝난다
+            List<CompletableFuture<Member>> futures = new ArrayList<>();
+            for ( Member member : members ) {
+                futures.add( repository.findById( member.getMemberId() ) );
+            }
+            CompletableFuture.allOf( futures.toArray( new CompletableFuture[0] ) ).get();
+
+            for ( int i = 0; i < members.size(); i++ ) {
+                assertThat( futures.get( i ).get() ).isEqualTo( members.get( i ) );
+            }
+        }
+        finally {
+            for ( Member member : members ) {
+                repository.delete( member.getMemberId() ).get();
+            }
+        }
+
+        // 예외는 future에 담겨서 돌아온다
+        Assertions.assertThatThrownBy( () -> repository.findById( "memberA0" ).get() )
+                .isInstanceOf( ExecutionException.class )
+                .hasCauseInstanceOf( NoSuchElementException.class );
+    }
+
+}
@@ -0,0 +1,170 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.connection.MemberTestDataSource;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class BatchingMemberRepositoryTest {
+
+    static final int THREADS = 32;
+
+    MemberRepositoryV1 repository;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        DataSource dataSource = MemberTestDataSource.create( "batching" );
+        repository = new MemberRepositoryV1( dataSource );
+
+        List<Member> members = new ArrayList<>();
+        for ( int i = 0; i < THREADS; i++ ) {
+            members.add( new Member( "m" + i, i ) );
+        }
+        repository.saveAll( members );
+    }
+
+    @Test
+    void single() throws SQLException {
+        BatchingMemberRepository batching = new BatchingMemberRepository( repository );
+
+        assertThat( batching.findById( "m1" ).getMoney() ).isEqualTo( 1 );
+        Assertions.assertThatThrownBy( () -> batching.findById( "noMember" ) ).isInstanceOf( NoSuchElementException.class );
+        assertThat( batching.getBatchCount() ).isEqualTo( 2L );
+    }
+
+    @Test
+    void inTransaction() throws Exception {
+        BatchingMemberRepository batching = new BatchingMemberRepository( repository );
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            Assertions.assertThatThrownBy( () -> repository.inTransaction( tx -> {
+                tx.save( new Member( "txMember", 7 ) );
+
+                // 트랜잭션 안에서는 모으지 않고 트랜잭션 커넥션으로 조회하므로 커밋 전 회원이 보인다
+                assertThat( batching.findById( "txMember" ).getMoney() ).isEqualTo( 7 );
+
+                // 다른 쓰레드는 이 트랜잭션의 커밋 전 회원을 보지 않는다
+                boolean seen = CompletableFuture.supplyAsync( () -> {
+                    try {
+                        batching.findById( "txMember" );
+                        return true;
+                    }
+                    catch (NoSuchElementException e) {
+                        return false;
+                    }
+                    catch (SQLException e) {
+                        throw new IllegalStateException( e );
+                    }
+                }, other ).join();
+                assertThat( seen ).isFalse();
+
+                throw new IllegalStateException( "rollback" );
+            } ) ).isInstanceOf( IllegalStateException.class );
+        }
+        finally {
+            other.shutdownNow();
+        }
+
+        // 롤백되었으므로 없다. 배치로 실행된 것은 다른 쓰레드와 롤백 후의 조회뿐이다
+        Assertions.assertThatThrownBy( () -> batching.findById( "txMember" ) ).isInstanceOf( NoSuchElementException.class );
+        assertThat( batching.getRequestCount() ).isEqualTo( 3L );
+        assertThat( batching.getBatchCount() ).isEqualTo( 2L );
+    }
+
+    @Test
+    void coalesce() throws Exception {
+        BatchingMemberRepository batching = new BatchingMemberRepository( repository );
+        // 넉넉한 시간 동안 모으고, 다 모이면 바로 실행한다
+        batching.setBatchWindowMicros( 1_000_000 );
+        batching.setMaxBatchSize( THREADS );
+
+        ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+        try {
+            CountDownLatch start = new CountDownLatch( 1 );
+            List<Future<Integer>> futures = new ArrayList<>();
+            for ( int i = 0; i < THREADS; i++ ) {
+                // 하나는 없는 회원
+                String memberId = i == 0 ? "noMember" : "m" + i;
+                futures.add( executor.submit( () -> {
+                    start.await();
+                    try {
+                        return batching.findById( memberId ).getMoney();
+                    }
+                    catch (NoSuchElementException e) {
+                        return -1;
+                    }
+                } ) );
+            }
+            start.countDown();
+
+            for ( int i = 0; i < THREADS; i++ ) {
+                assertThat( futures.get( i ).get() ).isEqualTo( i == 0 ? -1 : i );
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        // 32번의 호출이 커넥션 1번, SQL 1번으로 끝난다
+        log.info( "requests={}, batches={}", batching.getRequestCount(), batching.getBatchCount() );
+        assertThat( batching.getBatchCount() ).isEqualTo( 1L );
+        assertThat( repository.getMetrics().acquireTimer( RepositoryOperation.FIND_ALL_BY_IDS ).count() ).isEqualTo( 1L );
+    }
+
+    @Test
+    void duplicatesGetOwnCopy() throws Exception {
+        BatchingMemberRepository batching = new BatchingMemberRepository( repository );
+        batching.setBatchWindowMicros( 200_000 );
+
+        ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+        List<Member> members = new ArrayList<>();
+        try {
+            CountDownLatch start = new CountDownLatch( 1 );
+            List<Future<Member>> futures = new ArrayList<>();
+            for ( int i = 0; i < THREADS; i++ ) {
+                futures.add( executor.submit( () -> {
+                    start.await();
+                    return batching.findById( "m1" );
+                } ) );
+            }
+            start.countDown();
+            for ( Future<Member> future : futures ) {
+                members.add( future.get() );
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        // 같은 memberId를 찾은 호출들도 각자 다른 인스턴스를 받는다
+        log.info( "requests={}, batches={}", batching.getRequestCount(), batching.getBatchCount() );
+        Set<Member> instances = Collections.newSetFromMap( new IdentityHashMap<>() );
+        instances.addAll( members );
+        assertThat( instances.size() ).isEqualTo( THREADS );
+
+        members.get( 0 ).setMoney( -1 );
+        for ( int i = 1; i < THREADS; i++ ) {
+            assertThat( members.get( i ).getMoney() ).isEqualTo( 1 );
+        }
+    }
+
+}
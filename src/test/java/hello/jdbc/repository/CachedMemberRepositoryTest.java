@@ -0,0 +1,144 @@
+package hello.jdbc.repository;
+
+import com.sun.management.ThreadMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class CachedMemberRepositoryTest {
+
+    static final int HITS = 100_000;
+
+    HikariDataSource dataSource;
+    CachedMemberRepository repository;
+
+    @BeforeEach
+    void beforeEach(){
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl( URL );
+        dataSource.setUsername( USERNAME );
+        dataSource.setPassword( PASSWORD );
+
+        repository = new CachedMemberRepository( new MemberRepositoryV1( dataSource ), 2 );
+    }
+
+    @AfterEach
+    void afterEach() {
+        dataSource.close();
+    }
+
+    @Test
+    void cache() throws SQLException {
+        Member member = new Member( "memberC1", 10000 );
+        repository.save( member );
+
+        try {
+            /* 처음 조회는 DB, 두번째 조회는 캐시 */
+            Member first = repository.findById( member.getMemberId() );
+            Member second = repository.findById( member.getMemberId() );
+            assertThat( second ).isEqualTo( first );
+            assertThat( repository.missCount() ).isEqualTo( 1L );
+            assertThat( repository.hitCount() ).isEqualTo( 1L );
+
+            /* update 하면 캐시에서 제거되고 다시 DB에서 읽는다 */
+            repository.update( member.getMemberId(), 20000 );
+            assertThat( repository.findById( member.getMemberId() ).getMoney() ).isEqualTo( 20000 );
+            assertThat( repository.missCount() ).isEqualTo( 2L );
+        }
+        finally {
+            repository.delete( member.getMemberId() );
+        }
+
+        // 없는 회원은 캐시하지 않는다
+        Assertions.assertThatThrownBy( () -> repository.findById( member.getMemberId() ) )
+                .isInstanceOf( NoSuchElementException.class );
+        assertThat( repository.size() ).isEqualTo( 0 );
+    }
+
+    @Test
+    void readOnly() throws SQLException {
+        repository.save( new Member( "memberC1", 10000 ) );
+
+        try {
+            repository.findById( "memberC1" );
+            // 캐시 히트는 캐시에 담긴 인스턴스를 그대로 돌려주고, 수정할 수 없다
+            Member cached = repository.findById( "memberC1" );
+            assertThat( repository.findById( "memberC1" ) ).isSameAs( cached );
+            Assertions.assertThatThrownBy( () -> cached.setMoney( 0 ) ).isInstanceOf( UnsupportedOperationException.class );
+            assertThat( cached.getMoney() ).isEqualTo( 10000 );
+            assertThat( repository.hitCount() ).isEqualTo( 2L );
+        }
+        finally {
+            repository.delete( "memberC1" );
+        }
+    }
+
+    @Test
+    void hitDoesNotAllocate() throws SQLException {
+        repository.save( new Member( "memberC1", 10000 ) );
+
+        try {
+            repository.findById( "memberC1" );
+            ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long threadId = Thread.currentThread().getId();
+
+            // 워밍업 (JIT 컴파일 전 인터프리터 실행 중 할당 제외)
+            for ( int i = 0; i < HITS; i++ ) {
+                repository.findById( "memberC1" );
+            }
+
+            long before = threadMXBean.getThreadAllocatedBytes( threadId );
+            for ( int i = 0; i < HITS; i++ ) {
+                repository.findById( "memberC1" );
+            }
+            long allocated = threadMXBean.getThreadAllocatedBytes( threadId ) - before;
+            log.info( "allocated={} bytes, hits={}", allocated, HITS );
+
+            // 측정 자체의 할당(수백 byte)만 허용한다 - 히트 한 번에 1 byte 미만
+            assertThat( allocated < HITS ).isTrue();
+        }
+        finally {
+            repository.delete( "memberC1" );
+        }
+    }
+
+    @Test
+    void eviction() throws SQLException {
+        repository.save( new Member( "memberC1", 1 ) );
+        repository.save( new Member( "memberC2", 2 ) );
+        repository.save( new Member( "memberC3", 3 ) );
+
+        try {
+            repository.findById( "memberC1" );
+            repository.findById( "memberC2" );
+            // memberC1을 다시 사용했으므로 가장 오래 사용되지 않은 것은 memberC2
+            repository.findById( "memberC1" );
+            repository.findById( "memberC3" );
+
+            assertThat( repository.size() ).isEqualTo( 2 );
+            assertThat( repository.evictionCount() ).isEqualTo( 1L );
+
+            long misses = repository.missCount();
+            repository.findById( "memberC1" );
+            assertThat( repository.missCount() ).isEqualTo( misses );
+        }
+        finally {
+            repository.delete( "memberC1" );
+            repository.delete( "memberC2" );
+            repository.delete( "memberC3" );
+        }
+    }
+
+}
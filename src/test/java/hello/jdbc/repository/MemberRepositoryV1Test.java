@@ -9,7 +9,11 @@ import org.junit.jupiter.api.Test;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
 
 import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static hello.jdbc.connection.ConnectionConst.*;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -69,4 +73,203 @@ class MemberRepositoryV1Test {
         Thread.sleep( 1000 );
     }
 
-}
\ No newline at end of file
+    @Test
+    void batch() throws SQLException {
+        // 배치 크기보다 많은 row를 넣어서 executeBatch()가 여러 번 나눠서 실행되는 경우도 확인
+        repository.setBatchSize( 2 );
+
+        List<Member> members = List.of( new Member( "memberB1", 10000 ), new Member( "memberB2", 20000 ), new Member( "memberB3", 30000 ) );
+        List<String> memberIds = List.of( "memberB1", "memberB2", "memberB3" );
+
+        /* saveAll */
+        int[] saveCounts = repository.saveAll( members );
+        assertThat( saveCounts ).containsExactly( 1, 1, 1 );
+        assertThat( repository.findById( "memberB3" ) ).isEqualTo( members.get( 2 ) );
+
+        /* updateAll: 없는 회원은 영향받은 row 수가 0 */
+        int[] updateCounts = repository.updateAll( List.of( new Member( "memberB1", 0 ), new Member( "noMember", 0 ) ) );
+        assertThat( updateCounts ).containsExactly( 1, 0 );
+        assertThat( repository.findById( "memberB1" ).getMoney() ).isEqualTo( 0 );
+
+        /* deleteAll */
+        int[] deleteCounts = repository.deleteAll( memberIds );
+        assertThat( deleteCounts ).containsExactly( 1, 1, 1 );
+        Assertions.assertThatThrownBy( () -> repository.findById( "memberB2" ) )
+                .isInstanceOf( NoSuchElementException.class );
+    }
+
+    @Test
+    void scan() throws SQLException {
+        List<Member> members = List.of( new Member( "memberS1", 10000 ), new Member( "memberS2", 20000 ), new Member( "memberS3", 30000 ) );
+        List<String> memberIds = List.of( "memberS1", "memberS2", "memberS3" );
+        repository.saveAll( members );
+
+        try {
+            /* findAll: Stream을 닫으면 커넥션도 같이 반환된다 */
+            repository.setFetchSize( 2 );
+            try ( Stream<Member> stream = repository.findAll() ) {
+                List<Member> found = stream.filter( member -> member.getMemberId().startsWith( "memberS" ) )
+                        .collect( Collectors.toList() );
+                assertThat( found ).containsExactly( members.toArray() );
+            }
+
+            /* findAllAfter: 마지막으로 받은 member_id 다음부터 이어서 조회 */
+            List<Member> firstPage = repository.findAllAfter( "memberS0", 2 );
+            assertThat( firstPage ).containsExactly( members.get( 0 ), members.get( 1 ) );
+
+            String lastMemberId = firstPage.get( firstPage.size() - 1 ).getMemberId();
+            List<Member> nextPage = repository.findAllAfter( lastMemberId, 2 );
+            assertThat( nextPage ).startsWith( members.get( 2 ) );
+        }
+        finally {
+            repository.deleteAll( memberIds );
+        }
+    }
+
+    @Test
+    void metrics() throws SQLException {
+        Member member = new Member( "memberM1", 10000 );
+        repository.save( member );
+        repository.findById( member.getMemberId() );
+        repository.delete( member.getMemberId() );
+        Assertions.assertThatThrownBy( () -> repository.save( new Member( null, 0 ) ) )
+                .isInstanceOf( SQLException.class );
+
+        // operation 별로 커넥션 획득 시간, 실행 시간, row 수, 에러 수가 기록된다
+        RepositoryMetrics metrics = repository.getMetrics();
+        assertThat( metrics.acquireTimer( RepositoryOperation.FIND_BY_ID ).count() ).isEqualTo( 1L );
+        assertThat( metrics.executeTimer( RepositoryOperation.FIND_BY_ID ).count() ).isEqualTo( 1L );
+        assertThat( metrics.rows( RepositoryOperation.DELETE ).totalAmount() ).isEqualTo( 1.0 );
+        assertThat( metrics.errors( RepositoryOperation.SAVE ).count() ).isEqualTo( 1.0 );
+    }
+
+    @Test
+    void findAllByIds() throws SQLException {
+        List<Member> members = List.of( new Member( "memberI1", 10000 ), new Member( "memberI2", 20000 ), new Member( "memberI3", 30000 ) );
+        repository.saveAll( members );
+
+        try {
+            // IN 절 하나에 2개씩 -> 청크 2번, 마지막 청크는 빈 자리를 채워서 같은 SQL로 실행
+            repository.setInListChunkSize( 2 );
+            MultiGetResult result = repository.findAllByIds( List.of( "memberI1", "noMember", "memberI3", "memberI1" ) );
+
+            assertThat( result.getFound() ).hasSize( 2 );
+            assertThat( result.get( "memberI1" ) ).isEqualTo( members.get( 0 ) );
+            assertThat( result.get( "memberI3" ) ).isEqualTo( members.get( 2 ) );
+            // 없는 회원은 예외 대신 missingIds 로 알려준다
+            assertThat( result.getMissingIds() ).containsExactly( "noMember" );
+        }
+        finally {
+            repository.deleteAll( List.of( "memberI1", "memberI2", "memberI3" ) );
+        }
+    }
+
+    @Test
+    void addMoneyAndUpsert() throws SQLException {
+        Member member = new Member( "memberU1", 10000 );
+
+        try {
+            /* upsert: 없으면 저장, 있으면 수정 */
+            repository.upsert( member );
+            repository.upsert( new Member( member.getMemberId(), 20000 ) );
+            assertThat( repository.findById( member.getMemberId() ).getMoney() ).isEqualTo( 20000 );
+
+            /* addMoney: 한 문장으로 더하기 */
+            assertThat( repository.addMoney( member.getMemberId(), 500 ) ).isEqualTo( 1 );
+            assertThat( repository.addMoneyAndGet( member.getMemberId(), -1000 ) ).isEqualTo( 19500 );
+            assertThat( repository.addMoney( "noMember", 500 ) ).isEqualTo( 0 );
+            Assertions.assertThatThrownBy( () -> repository.addMoneyAndGet( "noMember", 500 ) )
+                    .isInstanceOf( NoSuchElementException.class );
+
+            /* 배치 */
+            repository.upsertAll( List.of( new Member( member.getMemberId(), 0 ), new Member( "memberU2", 0 ) ) );
+            assertThat( repository.addMoneyAll( Map.of( member.getMemberId(), 100, "memberU2", 200 ) ) ).containsOnly( 1 );
+            assertThat( repository.findById( "memberU2" ).getMoney() ).isEqualTo( 200 );
+        }
+        finally {
+            repository.deleteAll( List.of( member.getMemberId(), "memberU2" ) );
+        }
+    }
+
+    @Test
+    void inTransaction() throws SQLException {
+        Member memberA = new Member( "memberTxA", 10000 );
+        Member memberB = new Member( "memberTxB", 10000 );
+
+        try {
+            /* 커밋 */
+            repository.inTransaction( tx -> {
+                tx.save( memberA );
+                tx.save( memberB );
+                return null;
+            } );
+            assertThat( repository.findAllByIds( List.of( memberA.getMemberId(), memberB.getMemberId() ) ).hasMissing() ).isFalse();
+
+            /* 예외가 나면 앞에서 한 update도 롤백 */
+            Assertions.assertThatThrownBy( () -> repository.inTransaction( tx -> {
+                tx.update( memberA.getMemberId(), 0 );
+                throw new IllegalStateException( "rollback" );
+            } ) ).isInstanceOf( IllegalStateException.class );
+            assertThat( repository.findById( memberA.getMemberId() ).getMoney() ).isEqualTo( 10000 );
+
+            /* transfer */
+            repository.transfer( memberA.getMemberId(), memberB.getMemberId(), 2000 );
+            assertThat( repository.findById( memberA.getMemberId() ).getMoney() ).isEqualTo( 8000 );
+            assertThat( repository.findById( memberB.getMemberId() ).getMoney() ).isEqualTo( 12000 );
+
+            /* 받는 회원이 없으면 보낸 회원도 롤백 */
+            Assertions.assertThatThrownBy( () -> repository.transfer( memberA.getMemberId(), "noMember", 2000 ) )
+                    .isInstanceOf( NoSuchElementException.class );
+            assertThat( repository.findById( memberA.getMemberId() ).getMoney() ).isEqualTo( 8000 );
+        }
+        finally {
+            repository.deleteAll( List.of( memberA.getMemberId(), memberB.getMemberId() ) );
+        }
+    }
+
+    @Test
+    void queryProfile() throws SQLException {
+        List<Member> members = List.of( new Member( "memberQ1", 10000 ), new Member( "memberQ2", 20000 ), new Member( "memberQ3", 30000 ) );
+        List<String> memberIds = List.of( "memberQ1", "memberQ2", "memberQ3" );
+        repository.saveAll( members );
+
+        try {
+            /* maxRows: limit 보다 적게 받는다 */
+            repository.setQueryProfile( RepositoryOperation.FIND_ALL_AFTER, QueryProfile.DEFAULT.withMaxRows( 2 ) );
+            assertThat( repository.findAllAfter( "memberQ0", 10 ) ).containsExactly( members.get( 0 ), members.get( 1 ) );
+
+            /* scroll 커서 + readOnly 힌트로 조회한 뒤에도 그 커넥션으로 쓰기가 된다 */
+            repository.setQueryProfile( RepositoryOperation.FIND_ALL, new QueryProfile( 2, 0, 10, true, false ) );
+            try ( Stream<Member> stream = repository.findAll() ) {
+                List<Member> found = stream.filter( member -> member.getMemberId().startsWith( "memberQ" ) )
+                        .collect( Collectors.toList() );
+                assertThat( found ).containsExactly( members.toArray() );
+            }
+            repository.update( "memberQ1", 0 );
+
+            /* 트랜잭션 안에서는 readOnly 힌트를 적용하지 않는다 */
+            repository.setQueryProfile( RepositoryOperation.FIND_BY_ID, QueryProfile.DEFAULT.withReadOnly( true ) );
+            repository.inTransaction( tx -> {
+                tx.update( "memberQ2", tx.findById( "memberQ2" ).getMoney() + 1 );
+                return null;
+            } );
+            assertThat( repository.findById( "memberQ2" ).getMoney() ).isEqualTo( 20001 );
+
+            /* 설정 파일: 적은 항목만 덮어쓴다 */
+            QueryProfileProperties properties = new QueryProfileProperties();
+            QueryProfileProperties.Profile profile = new QueryProfileProperties.Profile();
+            profile.setQueryTimeoutSeconds( 5 );
+            properties.getProfiles().put( RepositoryOperation.FIND_ALL, profile );
+            properties.applyTo( repository );
+            assertThat( repository.getQueryProfile( RepositoryOperation.FIND_ALL ).getQueryTimeoutSeconds() ).isEqualTo( 5 );
+            assertThat( repository.getQueryProfile( RepositoryOperation.FIND_ALL ).getFetchSize() ).isEqualTo( 2 );
+
+            Assertions.assertThatThrownBy( () -> new QueryProfile( 10, 5, 0, false, true ) )
+                    .isInstanceOf( IllegalArgumentException.class );
+        }
+        finally {
+            repository.deleteAll( memberIds );
+        }
+    }
+
+}
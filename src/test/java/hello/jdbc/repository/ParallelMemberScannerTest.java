@@ -0,0 +1,115 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.MemberTestDataSource;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class ParallelMemberScannerTest {
+
+    static final int MEMBERS = 3000;
+
+    MemberRepositoryV1 repository;
+    ParallelMemberScanner scanner;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        DataSource dataSource = MemberTestDataSource.create( "scan" );
+        repository = new MemberRepositoryV1( dataSource );
+
+        List<Member> members = new ArrayList<>( MEMBERS );
+        for ( int i = 0; i < MEMBERS; i++ ) {
+            members.add( new Member( "m" + i, i ) );
+        }
+        repository.saveAll( members );
+
+        // 병렬도 8을 요청해도 상한(4)을 넘지 않는다 (DriverManagerDataSource는 풀이 없으므로 주어진 상한만 적용)
+        scanner = new ParallelMemberScanner( repository, 8, 4 );
+    }
+
+    @AfterEach
+    void afterEach() throws InterruptedException {
+        scanner.close();
+    }
+
+    @Test
+    void reducers() throws SQLException {
+        assertThat( scanner.getParallelism() ).isEqualTo( 4 );
+
+        assertThat( scanner.scan( ParallelMemberScanner.sumMoney() ) ).isEqualTo( (long) MEMBERS * ( MEMBERS - 1 ) / 2 );
+        assertThat( scanner.scan( ParallelMemberScanner.minMoney() ).getAsInt() ).isEqualTo( 0 );
+        assertThat( scanner.scan( ParallelMemberScanner.maxMoney() ).getAsInt() ).isEqualTo( MEMBERS - 1 );
+
+        SortedMap<Integer, Long> histogram = scanner.scan( ParallelMemberScanner.moneyHistogram( 1000 ) );
+        assertThat( histogram ).containsEntry( 0, 1000L ).containsEntry( 1000, 1000L ).containsEntry( 2000, 1000L ).hasSize( 3 );
+    }
+
+    @Test
+    void poolSizeFromDataSource() throws SQLException, InterruptedException {
+        HikariDataSource hikari = new HikariDataSource();
+        hikari.setJdbcUrl( MemberTestDataSource.url( "scan" ) );
+        hikari.setUsername( MemberTestDataSource.USERNAME );
+        hikari.setPassword( MemberTestDataSource.PASSWORD );
+        hikari.setMaximumPoolSize( 3 );
+        MemberRepositoryV1 pooled = new MemberRepositoryV1( hikari );
+
+        // 풀 크기를 DataSource에서 읽는다
+        try ( ParallelMemberScanner fromPool = new ParallelMemberScanner( pooled, 8 );
+              ParallelMemberScanner capped = new ParallelMemberScanner( pooled, 8, 2 ) ) {
+            assertThat( fromPool.getParallelism() ).isEqualTo( 3 );
+            assertThat( fromPool.scan( ParallelMemberScanner.sumMoney() ) ).isEqualTo( (long) MEMBERS * ( MEMBERS - 1 ) / 2 );
+            // 생성자에 준 값은 추가 상한
+            assertThat( capped.getParallelism() ).isEqualTo( 2 );
+        }
+        finally {
+            hikari.close();
+        }
+    }
+
+    @Test
+    void rangesCoverAllMembers() throws SQLException {
+        List<String> boundaries = scanner.sampleRanges();
+        log.info( "ranges={}", boundaries.size() + 1 );
+        List<String> sorted = new ArrayList<>( boundaries );
+        Collections.sort( sorted );
+        assertThat( boundaries ).isEqualTo( sorted );
+        assertThat( boundaries.size() ).isGreaterThan( 1 );
+
+        // 구간이 겹치거나 빠지면 memberId가 중복되거나 모자란다
+        Set<String> memberIds = scanner.scan( HashSet::new, ( set, member ) -> set.add( member.getMemberId() ), ( left, right ) -> {
+            assertThat( Collections.disjoint( left, right ) ).isTrue();
+            left.addAll( right );
+            return left;
+        } );
+        assertThat( memberIds ).hasSize( MEMBERS );
+
+        // 경계를 정한 뒤에 추가된 회원도 읽는다 (구간 크기만 달라진다)
+        repository.save( new Member( "zzz", 1 ) );
+        assertThat( scanner.scan( ParallelMemberScanner.sumMoney() ) ).isEqualTo( (long) MEMBERS * ( MEMBERS - 1 ) / 2 + 1 );
+    }
+
+    @Test
+    void emptyTable() throws SQLException {
+        MemberTestDataSource.truncate( MemberTestDataSource.empty( "scan" ) );
+
+        assertThat( scanner.sampleRanges() ).isEmpty();
+        assertThat( scanner.scan( ParallelMemberScanner.sumMoney() ) ).isEqualTo( 0L );
+        assertThat( scanner.scan( ParallelMemberScanner.maxMoney() ) ).isEmpty();
+    }
+
+}
@@ -0,0 +1,191 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.connection.MemberTestDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.resilience.CircuitBreaker;
+import hello.jdbc.repository.resilience.CircuitOpenException;
+import hello.jdbc.repository.resilience.RetryBudget;
+import hello.jdbc.repository.resilience.SqlErrorType;
+import hello.jdbc.repository.resilience.SqlExceptionClassifier;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTransientConnectionException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class ResilientMemberRepositoryTest {
+
+    FlakyDataSource dataSource;
+    MemberRepositoryV1 repository;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        dataSource = new FlakyDataSource();
+        MemberTestDataSource.createMemberTable( dataSource );
+        repository = new MemberRepositoryV1( dataSource );
+        repository.save( new Member( "memberR", 1000 ) );
+    }
+
+    @Test
+    void classify() {
+        assertThat( SqlExceptionClassifier.classify( new SQLTransientConnectionException( "pool timeout" ) ) ).isEqualTo( SqlErrorType.TRANSIENT );
+        assertThat( SqlExceptionClassifier.classify( new SQLException( "deadlock", "40001", 40001 ) ) ).isEqualTo( SqlErrorType.TRANSIENT );
+        assertThat( SqlExceptionClassifier.classify( new SQLException( "broken", "08006", 90067 ) ) ).isEqualTo( SqlErrorType.CONNECTION_LOST );
+        assertThat( SqlExceptionClassifier.classify( new SQLException( "closed", "90098", 90098 ) ) ).isEqualTo( SqlErrorType.CONNECTION_LOST );
+        assertThat( SqlExceptionClassifier.classify( new SQLException( "shutdown", "90121", 90121 ) ) ).isEqualTo( SqlErrorType.CONNECTION_LOST );
+        assertThat( SqlExceptionClassifier.classify( new SQLIntegrityConstraintViolationException( "pk", "23505", 23505 ) ) ).isEqualTo( SqlErrorType.PERMANENT );
+        assertThat( SqlExceptionClassifier.classify( new SQLException( "syntax", "42000", 42000 ) ) ).isEqualTo( SqlErrorType.PERMANENT );
+
+        // 배치 실패는 원인(next exception)으로 분류한다
+        BatchUpdateException batch = new BatchUpdateException( "batch", null, 0, new int[0] );
+        batch.setNextException( new SQLException( "lock timeout", "HYT00", 50200 ) );
+        assertThat( SqlExceptionClassifier.classify( batch ) ).isEqualTo( SqlErrorType.TRANSIENT );
+    }
+
+    @Test
+    void retryTransient() throws SQLException {
+        ResilientMemberRepository resilient = new ResilientMemberRepository( repository );
+        resilient.setBackoffMs( 1, 5 );
+
+        // 커넥션 획득이 2번 실패해도 3번째에 성공한다
+        dataSource.failures.set( 2 );
+        assertThat( resilient.findById( "memberR" ).getMoney() ).isEqualTo( 1000 );
+        assertThat( resilient.getRetryCount() ).isEqualTo( 2L );
+
+        // 3번 모두 실패하면 마지막 예외를 던진다
+        dataSource.failures.set( 3 );
+        Assertions.assertThatThrownBy( () -> resilient.findById( "memberR" ) ).isInstanceOf( SQLTransientConnectionException.class );
+    }
+
+    @Test
+    void noRetryPermanent() throws SQLException {
+        ResilientMemberRepository resilient = new ResilientMemberRepository( repository );
+
+        // PK 중복은 다시 시도하지 않는다
+        Assertions.assertThatThrownBy( () -> resilient.save( new Member( "memberR", 1 ) ) ).isInstanceOf( SQLException.class );
+        assertThat( resilient.getRetryCount() ).isEqualTo( 0L );
+        assertThat( resilient.getCircuitBreaker().getState() ).isEqualTo( CircuitBreaker.State.CLOSED );
+    }
+
+    @Test
+    void noRetryTransfer() {
+        // 데드락으로 실패하는 transfer (MemberRepositoryV1이 자체 재시도를 마친 뒤라고 본다)
+        AtomicInteger transfers = new AtomicInteger();
+        MemberRepositoryV1 deadlocked = new MemberRepositoryV1( dataSource ) {
+            @Override
+            public void transfer( String fromId, String toId, int amount ) throws SQLException {
+                transfers.incrementAndGet();
+                throw new SQLException( "deadlock", "40001", 40001 );
+            }
+        };
+        ResilientMemberRepository resilient = new ResilientMemberRepository( deadlocked );
+        resilient.setBackoffMs( 0, 0 );
+
+        // TRANSIENT여도 여기서는 다시 시도하지 않는다
+        Assertions.assertThatThrownBy( () -> resilient.transfer( "memberR", "memberT", 100 ) ).isInstanceOf( SQLException.class );
+        assertThat( transfers.get() ).isEqualTo( 1 );
+        assertThat( resilient.getRetryCount() ).isEqualTo( 0L );
+    }
+
+    @Test
+    void retryBudget() throws SQLException {
+        // 재시도 예산 1번
+        ResilientMemberRepository resilient = new ResilientMemberRepository( repository, new CircuitBreaker(), new RetryBudget( 0, 1 ) );
+        resilient.setBackoffMs( 0, 0 );
+
+        dataSource.failures.set( 1 );
+        resilient.findById( "memberR" );
+
+        dataSource.failures.set( 1 );
+        Assertions.assertThatThrownBy( () -> resilient.findById( "memberR" ) ).isInstanceOf( SQLTransientConnectionException.class );
+        assertThat( resilient.getBudgetExhaustedCount() ).isEqualTo( 1L );
+    }
+
+    @Test
+    void circuitBreaker() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker( 0.5, 4, 10_000, 100 );
+        ResilientMemberRepository resilient = new ResilientMemberRepository( repository, circuitBreaker, new RetryBudget() );
+        resilient.setMaxAttempts( 1 );
+
+        // 계속 실패하면 열린다
+        dataSource.failures.set( Integer.MAX_VALUE );
+        for ( int i = 0; i < 4; i++ ) {
+            Assertions.assertThatThrownBy( () -> resilient.findById( "memberR" ) ).isInstanceOf( SQLTransientConnectionException.class );
+        }
+        assertThat( circuitBreaker.getState() ).isEqualTo( CircuitBreaker.State.OPEN );
+
+        // 열려 있으면 DB를 호출하지 않는다
+        int attempts = dataSource.attempts.get();
+        Assertions.assertThatThrownBy( () -> resilient.findById( "memberR" ) ).isInstanceOf( CircuitOpenException.class );
+        assertThat( dataSource.attempts.get() ).isEqualTo( attempts );
+        assertThat( resilient.getRejectedCount() ).isEqualTo( 1L );
+
+        // openDuration이 지나고 probe가 성공하면 닫힌다
+        dataSource.failures.set( 0 );
+        Thread.sleep( 150 );
+        assertThat( resilient.findById( "memberR" ).getMoney() ).isEqualTo( 1000 );
+        assertThat( circuitBreaker.getState() ).isEqualTo( CircuitBreaker.State.CLOSED );
+    }
+
+    @Test
+    void circuitBreakerCountsRuntimeFailures() {
+        // 없는 회원은 DB가 정상 응답한 것이므로 열리지 않는다
+        CircuitBreaker circuitBreaker = new CircuitBreaker( 0.5, 4, 10_000, 100 );
+        ResilientMemberRepository resilient = new ResilientMemberRepository( repository, circuitBreaker, new RetryBudget() );
+        for ( int i = 0; i < 4; i++ ) {
+            Assertions.assertThatThrownBy( () -> resilient.findById( "noMember" ) ).isInstanceOf( NoSuchElementException.class );
+        }
+        assertThat( circuitBreaker.getState() ).isEqualTo( CircuitBreaker.State.CLOSED );
+
+        // 그 외 RuntimeException은 실패로 센다 (다시 시도하지는 않는다)
+        AtomicInteger calls = new AtomicInteger();
+        MemberRepositoryV1 broken = new MemberRepositoryV1( dataSource ) {
+            @Override
+            public Member findById( String memberId ) {
+                calls.incrementAndGet();
+                throw new IllegalStateException( "could not open jdbc connection for transaction" );
+            }
+        };
+        CircuitBreaker brokenCircuitBreaker = new CircuitBreaker( 0.5, 4, 10_000, 100 );
+        ResilientMemberRepository brokenResilient = new ResilientMemberRepository( broken, brokenCircuitBreaker, new RetryBudget() );
+        for ( int i = 0; i < 4; i++ ) {
+            Assertions.assertThatThrownBy( () -> brokenResilient.findById( "memberR" ) ).isInstanceOf( IllegalStateException.class );
+        }
+        assertThat( calls.get() ).isEqualTo( 4 );
+        assertThat( brokenCircuitBreaker.getState() ).isEqualTo( CircuitBreaker.State.OPEN );
+    }
+
+    /**
+     * failures 번 만큼 커넥션 획득에 실패하는 H2 메모리 DB
+     */
+    static class FlakyDataSource extends DriverManagerDataSource {
+
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        FlakyDataSource() {
+            super( MemberTestDataSource.url( "resilient" ), MemberTestDataSource.USERNAME, MemberTestDataSource.PASSWORD );
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            attempts.incrementAndGet();
+            if ( failures.getAndUpdate( count -> count > 0 ? count - 1 : 0 ) > 0 ) {
+                throw new SQLTransientConnectionException( "connection is not available" );
+            }
+            return super.getConnection();
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.connection.MemberTestDataSource;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 샤드 대신 H2 메모리 DB 여러 개를 띄워서 테스트한다
+ */
+@Slf4j
+class ShardedMemberRepositoryTest {
+
+    static final int MEMBERS = 1000;
+
+    ShardedMemberRepository repository;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        Map<String, DataSource> shards = new LinkedHashMap<>();
+        for ( int i = 0; i < 3; i++ ) {
+            shards.put( "shard" + i, MemberTestDataSource.create( "sharded-shard" + i ) );
+        }
+        repository = new ShardedMemberRepository( shards );
+    }
+
+    @AfterEach
+    void afterEach() throws InterruptedException {
+        repository.close();
+    }
+
+    @Test
+    void ring() {
+        ConsistentHashRing ring = new ConsistentHashRing( List.of( "shard0", "shard1", "shard2" ) );
+        ConsistentHashRing added = ring.withNode( "shard3" );
+
+        Map<String, Integer> counts = new HashMap<>();
+        int moved = 0;
+        for ( int i = 0; i < 10_000; i++ ) {
+            String memberId = "member" + i;
+            counts.merge( ring.nodeFor( memberId ), 1, Integer::sum );
+            String before = ring.nodeFor( memberId );
+            String after = added.nodeFor( memberId );
+            if ( !before.equals( after ) ) {
+                // 옮겨간다면 새 샤드로만 옮겨간다
+                assertThat( after ).isEqualTo( "shard3" );
+                moved++;
+            }
+        }
+        log.info( "counts={}, moved={}", counts, moved );
+
+        // 고르게 나뉘고 (1/3 +- 여유), 샤드를 추가하면 약 1/4 만 옮겨간다
+        assertThat( counts.values() ).allSatisfy( count -> assertThat( count ).isBetween( 2500, 4200 ) );
+        assertThat( moved ).isBetween( 1500, 3500 );
+    }
+
+    @Test
+    void crudAndFanOut() throws SQLException {
+        for ( int i = 0; i < MEMBERS; i++ ) {
+            repository.save( new Member( memberId( i ), i ) );
+        }
+
+        repository.update( memberId( 7 ), 700 );
+        assertThat( repository.findById( memberId( 7 ) ).getMoney() ).isEqualTo( 700 );
+        repository.delete( memberId( 8 ) );
+
+        MultiGetResult result = repository.findAllByIds( List.of( memberId( 1 ), memberId( 8 ), memberId( 500 ) ) );
+        assertThat( result.getFound() ).containsOnlyKeys( memberId( 1 ), memberId( 500 ) );
+        assertThat( result.getMissingIds() ).containsExactly( memberId( 8 ) );
+
+        // 전체 조회는 모든 샤드를 합쳐서 memberId 순서
+        List<Member> all = repository.findAll();
+        assertThat( all ).hasSize( MEMBERS - 1 );
+        List<String> memberIds = all.stream().map( Member::getMemberId ).collect( Collectors.toList() );
+        assertThat( memberIds ).isEqualTo( memberIds.stream().sorted().collect( Collectors.toList() ) );
+
+        // keyset 페이지를 이어 붙이면 전체 조회와 같다
+        List<Member> paged = new ArrayList<>();
+        String lastMemberId = "";
+        List<Member> page;
+        while ( !( page = repository.findAllAfter( lastMemberId, 100 ) ).isEmpty() ) {
+            paged.addAll( page );
+            lastMemberId = page.get( page.size() - 1 ).getMemberId();
+        }
+        assertThat( paged ).isEqualTo( all );
+    }
+
+    @Test
+    void addShardOnline() throws Exception {
+        for ( int i = 0; i < MEMBERS; i++ ) {
+            repository.save( new Member( memberId( i ), 0 ) );
+        }
+        repository.setRebalancePageSize( 50 );
+
+        // 이동 중에도 계속 쓴다
+        AtomicBoolean running = new AtomicBoolean( true );
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        Future<Integer> writes = writer.submit( () -> {
+            int count = 0;
+            while ( running.get() ) {
+                int i = count % MEMBERS;
+                repository.update( memberId( i ), count / MEMBERS + 1 );
+                count++;
+            }
+            return count;
+        } );
+
+        DataSource added = MemberTestDataSource.create( "sharded-shard3" );
+        long moved = repository.addShard( "shard3", added );
+        running.set( false );
+        int count = writes.get();
+        writer.shutdown();
+        log.info( "moved={}, writes={}", moved, count );
+
+        assertThat( moved ).isGreaterThan( 0 );
+        assertThat( repository.getShardNames() ).containsExactly( "shard0", "shard1", "shard2", "shard3" );
+
+        // 새 샤드로 옮겨간 회원도 마지막으로 쓴 값 그대로 보이고, 중복이 없다
+        List<Member> all = repository.findAll();
+        assertThat( all ).hasSize( MEMBERS );
+        for ( Member member : all ) {
+            int index = Integer.parseInt( member.getMemberId().substring( 1 ) );
+            int expected = index < count % MEMBERS ? count / MEMBERS + 1 : count / MEMBERS;
+            assertThat( member.getMoney() ).as( member.getMemberId() ).isEqualTo( expected );
+        }
+
+        // 새 샤드에는 새 샤드가 주인인 회원만 남는다
+        List<String> onAdded = new MemberRepositoryV1( added ).findAllAfter( "", MEMBERS ).stream()
+                .map( Member::getMemberId ).collect( Collectors.toList() );
+        assertThat( onAdded ).hasSize( (int) moved );
+        for ( String memberId : onAdded ) {
+            assertThat( repository.shardFor( memberId ) ).isEqualTo( "shard3" );
+        }
+    }
+
+    @Test
+    void addShardFailureRollsBack() throws SQLException {
+        for ( int i = 0; i < MEMBERS; i++ ) {
+            repository.save( new Member( memberId( i ), 0 ) );
+        }
+
+        // member 테이블이 없는 DB -> 복사 중에 실패한다
+        DataSource broken = MemberTestDataSource.empty( "sharded-broken" );
+        Assertions.assertThatThrownBy( () -> repository.addShard( "broken", broken ) ).isInstanceOf( SQLException.class );
+
+        // 이전 구성으로 돌아가서 이중 쓰기를 하지 않는다 (쓰기가 실패하지 않는다)
+        assertThat( repository.getShardNames() ).containsExactly( "shard0", "shard1", "shard2" );
+        for ( int i = 0; i < MEMBERS; i++ ) {
+            repository.update( memberId( i ), 1 );
+        }
+        List<Member> all = repository.findAll();
+        assertThat( all ).hasSize( MEMBERS );
+        assertThat( all.stream().allMatch( member -> member.getMoney() == 1 ) ).isTrue();
+    }
+
+    @Test
+    void addShardRetryAfterFailure() throws SQLException {
+        for ( int i = 0; i < MEMBERS; i++ ) {
+            repository.save( new Member( memberId( i ), 0 ) );
+        }
+        repository.setRebalancePageSize( 50 );
+
+        // 커넥션 몇 개를 준 뒤로는 실패하는 새 샤드 -> 일부만 복사한 채로 실패하고, 정리도 실패해서 사본이 남는다
+        DataSource shard3 = MemberTestDataSource.create( "sharded-shard3" );
+        AtomicInteger connections = new AtomicInteger( 5 );
+        DataSource flaky = new DelegatingDataSource( shard3 ) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if ( connections.decrementAndGet() < 0 ) {
+                    throw new SQLTransientConnectionException( "shard3 is not available" );
+                }
+                return super.getConnection();
+            }
+        };
+        Assertions.assertThatThrownBy( () -> repository.addShard( "shard3", flaky ) ).isInstanceOf( SQLException.class );
+
+        List<Member> stale = new MemberRepositoryV1( shard3 ).findAllAfter( "", MEMBERS );
+        assertThat( stale ).isNotEmpty();
+
+        // 실패한 뒤에 기존 샤드에서 지운 회원
+        String deleted = stale.get( 0 ).getMemberId();
+        repository.delete( deleted );
+
+        // 같은 DataSource로 다시 추가해도 지운 회원이 되살아나지 않는다
+        connections.set( Integer.MAX_VALUE );
+        repository.addShard( "shard3", flaky );
+        assertThat( repository.shardFor( deleted ) ).isEqualTo( "shard3" );
+        Assertions.assertThatThrownBy( () -> repository.findById( deleted ) ).isInstanceOf( NoSuchElementException.class );
+        assertThat( repository.findAll() ).hasSize( MEMBERS - 1 );
+    }
+
+    private static String memberId( int i ) {
+        return String.format( "m%04d", i );
+    }
+
+}
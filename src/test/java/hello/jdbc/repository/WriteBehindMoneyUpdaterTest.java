@@ -0,0 +1,68 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class WriteBehindMoneyUpdaterTest {
+
+    HikariDataSource dataSource;
+    MemberRepositoryV1 repository;
+
+    @BeforeEach
+    void beforeEach(){
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl( URL );
+        dataSource.setUsername( USERNAME );
+        dataSource.setPassword( PASSWORD );
+
+        repository = new MemberRepositoryV1( dataSource );
+    }
+
+    @AfterEach
+    void afterEach() {
+        dataSource.close();
+    }
+
+    @Test
+    void coalesceAndFlush() throws Exception {
+        Member member = new Member( "memberW1", 10000 );
+        repository.save( member );
+
+        // 주기적인 flush가 끼어들지 않도록 간격을 길게 잡는다
+        WriteBehindMoneyUpdater updater = new WriteBehindMoneyUpdater( repository, 100, 100, Duration.ofHours( 1 ) );
+        try {
+            updater.update( member.getMemberId(), 20000 );
+            updater.update( member.getMemberId(), 30000 );
+            updater.update( member.getMemberId(), 40000 );
+
+            // flush 전에는 DB에 반영되지 않는다
+            assertThat( repository.findById( member.getMemberId() ).getMoney() ).isEqualTo( 10000 );
+            assertThat( updater.pendingCount() ).isEqualTo( 1 );
+            assertThat( updater.coalescedCount() ).isEqualTo( 2L );
+
+            // 마지막 값만 한 번 쓴다
+            assertThat( updater.flush() ).isEqualTo( 1 );
+            assertThat( repository.findById( member.getMemberId() ).getMoney() ).isEqualTo( 40000 );
+
+            // close 하면 남은 수정을 flush 한다
+            updater.update( member.getMemberId(), 50000 );
+        }
+        finally {
+            updater.close();
+        }
+
+        assertThat( repository.findById( member.getMemberId() ).getMoney() ).isEqualTo( 50000 );
+        repository.delete( member.getMemberId() );
+    }
+
+}
@@ -0,0 +1,73 @@
+package hello.jdbc.repository.mapper;
+
+import hello.jdbc.connection.MemberTestDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemberRowMapperTest {
+
+    DataSource dataSource;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        dataSource = MemberTestDataSource.create( "mapper" );
+        new MemberRepositoryV1( dataSource ).saveAll( List.of( new Member( "memberA", 100 ), new Member( "memberB", 200 ) ) );
+    }
+
+    @Test
+    void mapByColumnIndex() throws SQLException {
+        // 컬럼 순서가 테이블과 달라도 이름으로 위치를 찾는다
+        try ( Connection con = dataSource.getConnection();
+              Statement stmt = con.createStatement();
+              ResultSet rs = stmt.executeQuery( "select money, member_id from member order by member_id" ) ) {
+            MemberRowMapper mapper = MemberRowMapper.of( rs );
+
+            assertThat( rs.next() ).isTrue();
+            assertThat( mapper.mapRow( rs ) ).isEqualTo( new Member( "memberA", 100 ) );
+
+            assertThat( rs.next() ).isTrue();
+            Member reused = new Member();
+            assertThat( mapper.mapInto( rs, reused ) ).isSameAs( reused ).isEqualTo( new Member( "memberB", 200 ) );
+            assertThat( mapper.memberId( rs ) ).isEqualTo( "memberB" );
+            assertThat( mapper.money( rs ) ).isEqualTo( 200 );
+        }
+    }
+
+    @Test
+    void missingColumn() throws SQLException {
+        try ( Connection con = dataSource.getConnection();
+              Statement stmt = con.createStatement();
+              ResultSet rs = stmt.executeQuery( "select member_id from member" ) ) {
+            Assertions.assertThatThrownBy( () -> MemberRowMapper.of( rs ) ).isInstanceOf( SQLException.class );
+        }
+    }
+
+    @Test
+    void columnOrderOfTableDoesNotMatter() throws SQLException {
+        // 컬럼 순서가 다른 member 테이블 (replica, 마이그레이션한 테이블)
+        DataSource reordered = MemberTestDataSource.empty( "mapper-reordered" );
+        try ( Connection con = reordered.getConnection(); Statement stmt = con.createStatement() ) {
+            stmt.execute( "drop table if exists member" );
+            stmt.execute( "create table member ( money integer not null default 0, member_id varchar(10), primary key (member_id) )" );
+        }
+
+        // 조회 SQL이 컬럼을 적어두었으므로 BY_POSITION으로 읽어도 맞게 읽는다
+        MemberRepositoryV1 repository = new MemberRepositoryV1( reordered );
+        repository.saveAll( List.of( new Member( "memberA", 100 ), new Member( "memberB", 200 ) ) );
+        assertThat( repository.findById( "memberB" ) ).isEqualTo( new Member( "memberB", 200 ) );
+        assertThat( repository.findAllAfter( "", 10 ) ).containsExactly( new Member( "memberA", 100 ), new Member( "memberB", 200 ) );
+    }
+
+}
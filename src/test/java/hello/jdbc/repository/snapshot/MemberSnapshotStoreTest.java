@@ -0,0 +1,104 @@
+package hello.jdbc.repository.snapshot;
+
+import hello.jdbc.connection.MemberTestDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class MemberSnapshotStoreTest {
+
+    static final int MEMBERS = 3000;
+
+    MemberRepositoryV1 repository;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        DataSource dataSource = MemberTestDataSource.create( "snapshot" );
+        repository = new MemberRepositoryV1( dataSource );
+
+        List<Member> members = new ArrayList<>( MEMBERS );
+        for ( int i = 0; i < MEMBERS; i++ ) {
+            members.add( new Member( "m" + i, i ) );
+        }
+        repository.saveAll( members );
+    }
+
+    @Test
+    void load() throws SQLException {
+        load( false );
+    }
+
+    @Test
+    void loadOffHeap() throws SQLException {
+        load( true );
+    }
+
+    @Test
+    void refresh() throws SQLException {
+        MemberSnapshotStore store = new MemberSnapshotStore( repository );
+        store.load();
+        MemberSnapshot loaded = store.getSnapshot();
+
+        /* money만 바뀐 경우 */
+        repository.update( "m1", -1 );
+        store.markChanged( "m1" );
+        store.markChanged( "m2" ); // 표시했지만 바뀌지 않은 회원
+        assertThat( store.refresh() ).isEqualTo( 1 );
+        assertThat( store.getMoney( "m1" ) ).isEqualTo( -1 );
+        // 이전 스냅샷은 그대로다 (조회 중이던 쓰레드는 한 스냅샷만 본다)
+        assertThat( loaded.getMoney( "m1" ) ).isEqualTo( 1 );
+        assertThat( store.getSnapshot().getVersion() ).isEqualTo( loaded.getVersion() + 1 );
+
+        /* 추가 + 삭제 + 수정 */
+        repository.save( new Member( "new1", 100 ) );
+        repository.delete( "m3" );
+        repository.update( "m4", 44 );
+        store.markChanged( "new1" );
+        store.markChanged( "m3" );
+        store.markChanged( "m4" );
+        store.markChanged( "noMember" );
+        assertThat( store.refresh() ).isEqualTo( 3 );
+
+        assertThat( store.size() ).isEqualTo( MEMBERS );
+        assertThat( store.getMoney( "new1" ) ).isEqualTo( 100 );
+        assertThat( store.contains( "m3" ) ).isFalse();
+        assertThat( store.getMoney( "m4" ) ).isEqualTo( 44 );
+        assertThat( store.getMoney( "m1" ) ).isEqualTo( -1 );
+        assertThat( store.getMoney( "m" + ( MEMBERS - 1 ) ) ).isEqualTo( MEMBERS - 1 );
+        assertThat( store.getPendingChanges() ).isEqualTo( 0 );
+
+        // 표시가 없으면 DB를 읽지 않는다
+        assertThat( store.refresh() ).isEqualTo( 0 );
+    }
+
+    private void load( boolean offHeap ) throws SQLException {
+        MemberSnapshotStore store = new MemberSnapshotStore( repository, offHeap );
+        assertThat( store.contains( "m0" ) ).isFalse();
+
+        MemberSnapshot snapshot = store.load();
+        log.info( "size={}, bytes={}, bytes/member={}", snapshot.size(), snapshot.memoryBytes(), snapshot.memoryBytes() / snapshot.size() );
+
+        assertThat( snapshot.isOffHeap() ).isEqualTo( offHeap );
+        assertThat( store.size() ).isEqualTo( MEMBERS );
+        for ( int i = 0; i < MEMBERS; i++ ) {
+            assertThat( store.getMoney( "m" + i ) ).isEqualTo( i );
+        }
+        assertThat( store.getMoney( "noMember", -1 ) ).isEqualTo( -1 );
+        Assertions.assertThatThrownBy( () -> store.getMoney( "noMember" ) ).isInstanceOf( NoSuchElementException.class );
+        // 회원 1명당 Member + HashMap 엔트리보다 훨씬 작다
+        assertThat( snapshot.memoryBytes() / snapshot.size() ).isLessThan( 40L );
+    }
+
+}
@@ -0,0 +1,114 @@
+package hello.jdbc.schema;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class SchemaManagerTest {
+
+    DataSource dataSource;
+    SchemaProperties properties;
+
+    @BeforeEach
+    void beforeEach() throws SQLException {
+        dataSource = new DriverManagerDataSource( "jdbc:h2:mem:schema;DB_CLOSE_DELAY=-1", "sa", "" );
+        execute( "drop table if exists member", "drop table if exists " + SchemaManager.VERSION_TABLE );
+        properties = new SchemaProperties();
+    }
+
+    @Test
+    void createSchema() throws SQLException {
+        properties.setTableType( SchemaProperties.TableType.MEMORY );
+        properties.setCacheSizeKb( 8192 );
+        properties.setLockTimeoutMs( 1000 );
+        SchemaManager schemaManager = new SchemaManager( dataSource, properties );
+
+        schemaManager.afterPropertiesSet();
+        assertThat( schemaManager.currentVersion() ).isEqualTo( 3 );
+        assertThat( schemaManager.verify() ).isEmpty();
+
+        // 이미 실행한 단계는 다시 실행하지 않는다
+        assertThat( schemaManager.migrate() ).isZero();
+
+        MemberRepositoryV1 repository = new MemberRepositoryV1( dataSource );
+        repository.saveAll( List.of( new Member( "memberA", 100 ), new Member( "memberB", 300 ), new Member( "memberC", 200 ) ) );
+        assertThat( repository.findAllByMoneyBetween( 150, 300, 10 ) )
+                .containsExactly( new Member( "memberC", 200 ), new Member( "memberB", 300 ) );
+        // PK가 있으므로 같은 member_id는 저장되지 않는다
+        assertThatThrownBy( () -> repository.save( new Member( "memberA", 0 ) ) ).isInstanceOf( SQLException.class );
+    }
+
+    @Test
+    void migrateExistingTable() throws SQLException {
+        // 예전처럼 PK/인덱스 없이 만든 테이블
+        execute( "create table member ( member_id varchar(10), money integer not null default 0 )",
+                "insert into member(member_id, money) values('memberA', 100)" );
+
+        SchemaManager schemaManager = new SchemaManager( dataSource, properties );
+        assertThat( schemaManager.verify() ).hasSize( 2 );
+
+        assertThat( schemaManager.migrate() ).isEqualTo( 3 );
+        assertThat( schemaManager.verify() ).isEmpty();
+        // 데이터는 그대로 남아있다
+        assertThat( new MemberRepositoryV1( dataSource ).findById( "memberA" ).getMoney() ).isEqualTo( 100 );
+    }
+
+    @Test
+    void customMigration() throws SQLException {
+        SchemaMigration addGrade = SchemaMigration.sql( 100, "add member grade", "alter table member add column grade varchar(10)" );
+        SchemaManager schemaManager = new SchemaManager( dataSource, properties, List.of( addGrade ) );
+
+        assertThat( schemaManager.migrate() ).isEqualTo( 4 );
+        assertThat( schemaManager.currentVersion() ).isEqualTo( 100 );
+        // 다시 실행해도 컬럼을 또 추가하지 않는다
+        assertThat( new SchemaManager( dataSource, properties, List.of( addGrade ) ).migrate() ).isZero();
+
+        // 기본 단계가 쓰는 version(1~99)과 중복 version은 등록할 수 없다
+        assertThatThrownBy( () -> new SchemaManager( dataSource, properties, List.of( SchemaMigration.sql( 3, "conflict" ) ) ) )
+                .isInstanceOf( IllegalArgumentException.class );
+        assertThatThrownBy( () -> new SchemaManager( dataSource, properties, List.of( addGrade, addGrade ) ) )
+                .isInstanceOf( IllegalArgumentException.class );
+    }
+
+    @Test
+    void missingIndex() throws SQLException {
+        SchemaManager schemaManager = new SchemaManager( dataSource, properties );
+        schemaManager.migrate();
+        execute( "drop index " + SchemaManager.MONEY_INDEX );
+
+        List<SchemaManager.RequiredIndex> missing = schemaManager.verify();
+        log.info( "missing={}", missing );
+        assertThat( missing ).hasSize( 1 );
+        assertThat( missing.get( 0 ).getColumn() ).isEqualTo( "money" );
+
+        // migrate=false 이면 만들지 않고 기동을 멈춘다
+        properties.setMigrate( false );
+        assertThatThrownBy( schemaManager::afterPropertiesSet ).isInstanceOf( IllegalStateException.class );
+
+        // failOnMissingIndex=false 이면 로그만 남긴다
+        properties.setFailOnMissingIndex( false );
+        schemaManager.afterPropertiesSet();
+    }
+
+    private void execute( String... statements ) throws SQLException {
+        try ( Connection con = dataSource.getConnection(); Statement stmt = con.createStatement() ) {
+            for ( String sql : statements ) {
+                stmt.execute( sql );
+            }
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package hello.jdbc.warmup;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV1;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class StartupWarmupTest {
+
+    @Test
+    void warmup() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl( URL );
+        dataSource.setUsername( USERNAME );
+        dataSource.setPassword( PASSWORD );
+        dataSource.setMaximumPoolSize( 4 );
+        dataSource.setPoolName( "WarmupPool" );
+
+        WarmupProperties properties = new WarmupProperties();
+        properties.setEnabled( true );
+        properties.setJitIterations( 10 );
+
+        try {
+            StartupWarmup warmup = new StartupWarmup( dataSource, new MemberRepositoryV1( dataSource ), properties );
+            warmup.run( null );
+
+            // Thread.sleep() 없이도 워밍업이 끝나면 풀이 다 차 있다
+            assertThat( dataSource.getHikariPoolMXBean().getTotalConnections() ).isEqualTo( 4 );
+
+            WarmupReport report = warmup.getLastReport();
+            log.info( "report={}", report );
+            assertThat( report.getSteps() ).containsKeys( "pool", "prepare", "jit" );
+        }
+        finally {
+            dataSource.close();
+        }
+    }
+
+    @Test
+    void jitWritesRollBack() throws SQLException {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl( URL );
+        dataSource.setUsername( USERNAME );
+        dataSource.setPassword( PASSWORD );
+        dataSource.setMaximumPoolSize( 2 );
+        MemberRepositoryV1 repository = new MemberRepositoryV1( dataSource );
+
+        WarmupProperties properties = new WarmupProperties();
+        properties.setEnabled( true );
+        properties.setJitIterations( 10 );
+        properties.setJitWrites( true );
+
+        // 이전 실행이 남긴 워밍업 회원
+        repository.save( new Member( "__warmup", 7 ) );
+        try {
+            StartupWarmup warmup = new StartupWarmup( dataSource, repository, properties );
+            warmup.run( null );
+
+            // 실패하지 않고, 쓰기는 모두 롤백된다
+            assertThat( warmup.getLastReport().getSteps() ).containsKeys( "pool", "jit" );
+            assertThat( repository.findById( "__warmup" ).getMoney() ).isEqualTo( 7 );
+        }
+        finally {
+            repository.delete( "__warmup" );
+            dataSource.close();
+        }
+    }
+
+}